@@ -44,6 +44,8 @@
  */
 package com.github.jaiimageio.jpeg2000;
 
+import java.util.concurrent.ExecutorService;
+
 import javax.imageio.ImageReadParam;
 
 /**
@@ -77,7 +79,44 @@ import javax.imageio.ImageReadParam;
  *    The default value, -1, means to use the resolution level at encoding.
  *    </td>
  * </tr>
+ * <tr>
+ *    <td>tileConcurrency</td>
+ *    <td>Specifies the maximum number of tiles of an image returned by
+ *    <code>readAsRenderedImage</code> which may be decoded at the same
+ *    time by different threads.  Each concurrently decoded tile uses its
+ *    own decoding chain over the shared input stream.  The default value,
+ *    1, serializes all tile requests.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>executorService</td>
+ *    <td>Specifies the <code>ExecutorService</code> on which the code-blocks
+ *    are entropy decoded in parallel.  It may be shared by any number of
+ *    readers and writers.  The default value, <code>null</code>, decodes
+ *    the code-blocks in the reading thread unless parallel decoding is
+ *    requested through the
+ *    <code>jj2000.j2k.entropy.decoder.StdEntropyDecoder.nthreads</code>
+ *    system property, in which case a default executor shared by all
+ *    readers and writers is used.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>lineBasedDecoding</td>
+ *    <td>Specifies whether the inverse wavelet transform reconstructs
+ *    only the stripe of lines being delivered instead of whole
+ *    tile-components.  This bounds the memory used to decode a tile by
+ *    a number of lines proportional to its width, at the cost of some
+ *    redundant filtering at the stripe boundaries.  The decoded image is
+ *    the same.  The default value, <code>false</code>, reconstructs whole
+ *    tile-components.
+ *    </td>
+ * </tr>
  * </table>
+ *
+ * <p>The decoding parameters apply whatever the input.  Only a
+ * <code>File</code> given to <code>ImageReader.setInput</code> is read
+ * through a memory mapping: <code>ImageIO.read(File)</code> and
+ * <code>FileImageInputStream</code> inputs are read through the stream.
  */
 public class J2KImageReadParam extends ImageReadParam {
     /** Specifies the decoding rate in bits per pixel (bpp) where the
@@ -98,6 +137,21 @@ public class J2KImageReadParam extends ImageReadParam {
      */
     private int resolution = -1;
 
+    /** Specifies the maximum number of tiles of a rendered image which may
+     *  be decoded at the same time.
+     */
+    private int tileConcurrency = 1;
+
+    /** The executor on which the code-blocks are decoded in parallel, or
+     *  <code>null</code>.
+     */
+    private ExecutorService executorService = null;
+
+    /** Specifies whether the inverse wavelet transform reconstructs only
+     *  the lines being delivered.
+     */
+    private boolean lineBasedDecoding = false;
+
     /** Constructs a default instance of <code>J2KImageReadParam</code>. */
     public J2KImageReadParam() {
         super();
@@ -144,4 +198,70 @@ public class J2KImageReadParam extends ImageReadParam {
     public int getResolution() {
         return resolution;
     }
+
+    /**
+     * Sets <code>tileConcurrency</code>.
+     *
+     * @param tileConcurrency the maximum number of tiles which may be
+     * decoded at the same time; values smaller than 1 are treated as 1.
+     * @see #getTileConcurrency()
+     */
+    public void setTileConcurrency(int tileConcurrency) {
+        this.tileConcurrency = Math.max(tileConcurrency, 1);
+    }
+
+    /**
+     * Gets <code>tileConcurrency</code>.
+     *
+     * @return the maximum number of tiles which may be decoded at the
+     * same time.
+     * @see #setTileConcurrency(int)
+     */
+    public int getTileConcurrency() {
+        return tileConcurrency;
+    }
+
+    /**
+     * Sets <code>executorService</code>.
+     *
+     * @param executorService the executor on which the code-blocks are
+     * decoded in parallel, or <code>null</code>.
+     * @see #getExecutorService()
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Gets <code>executorService</code>.
+     *
+     * @return the executor on which the code-blocks are decoded in
+     * parallel, or <code>null</code>.
+     * @see #setExecutorService(ExecutorService)
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Sets <code>lineBasedDecoding</code>.
+     *
+     * @param lineBasedDecoding whether the inverse wavelet transform
+     * reconstructs only the lines being delivered.
+     * @see #getLineBasedDecoding()
+     */
+    public void setLineBasedDecoding(boolean lineBasedDecoding) {
+        this.lineBasedDecoding = lineBasedDecoding;
+    }
+
+    /**
+     * Gets <code>lineBasedDecoding</code>.
+     *
+     * @return whether the inverse wavelet transform reconstructs only the
+     * lines being delivered.
+     * @see #setLineBasedDecoding(boolean)
+     */
+    public boolean getLineBasedDecoding() {
+        return lineBasedDecoding;
+    }
 }
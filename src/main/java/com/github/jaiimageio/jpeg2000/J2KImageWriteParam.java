@@ -45,6 +45,7 @@
 package com.github.jaiimageio.jpeg2000;
 
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import javax.imageio.ImageWriteParam;
 
@@ -141,6 +142,120 @@ import javax.imageio.ImageWriteParam;
  *    box is written.  The default value is false.
  *    </td>
  * </tr> 
+ * <tr>
+ *    <td>executorService</td>
+ *    <td>Specifies the <code>ExecutorService</code> on which the code-blocks
+ *    are entropy coded in parallel.  It may be shared by any number of
+ *    writers and readers.  The default value, <code>null</code>, codes the
+ *    code-blocks in the writing thread unless parallel coding is requested
+ *    through the
+ *    <code>jj2000.j2k.entropy.encoder.StdEntropyCoder.nthreads</code>
+ *    system property, in which case a default executor shared by all
+ *    writers and readers is used.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>lineBasedEncoding</td>
+ *    <td>Specifies whether the forward wavelet transform consumes the
+ *    source lines incrementally and delivers the code-blocks of a stripe
+ *    as soon as it is complete, instead of transforming whole
+ *    tile-components.  This bounds the memory used by the transform to a
+ *    few code-block heights per decomposition level, at the cost of some
+ *    redundant filtering at the stripe boundaries.  The codestream is the
+ *    same.  The default value, <code>false</code>, transforms whole
+ *    tile-components.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>packetPerTilePart</td>
+ *    <td>Specifies the maximum number of packets in each tile-part.  With
+ *    a positive value, the packets of each tile are split in tile-parts of
+ *    at most this number of packets.  It enables the SOP and EPH markers.
+ *    The default value, 0, puts all the packets of a tile in a single
+ *    tile-part.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>packPacketHeaderInTile</td>
+ *    <td>Specifies whether the packet headers of each tile are moved to
+ *    PPT marker segments in the header of the tile-parts.  It enables the
+ *    SOP and EPH markers, and cannot be used with
+ *    <code>packPacketHeaderInMain</code>.  The default value is false.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>packPacketHeaderInMain</td>
+ *    <td>Specifies whether the packet headers of all the tiles are moved
+ *    to PPM marker segments in the main header.  It enables the SOP and EPH
+ *    markers, and cannot be used with <code>packPacketHeaderInTile</code>.
+ *    The default value is false.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>codeStreamSpillThreshold</td>
+ *    <td>Specifies the maximum number of bytes of the code stream which
+ *    are kept in memory when the code stream has to be reparsed before
+ *    being written, i.e. when tile-parts or packed packet headers are
+ *    used.  A longer code stream is moved to a temporary file.  Otherwise
+ *    the code stream is written directly into the output stream.  The
+ *    default value is 16 MB.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>lengthMarkers</td>
+ *    <td>Specifies whether the lengths of the tile-parts and of the
+ *    packets are signalled, by a TLM marker segment in the main header and
+ *    PLT marker segments in each tile-part header, so that readers can
+ *    locate the tiles and packets without parsing the code stream.  It
+ *    cannot be used with tile-parts or packed packet headers.  The default
+ *    value is false.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>tileRateAllocation</td>
+ *    <td>Specifies whether the rate allocation is done tile by tile: each
+ *    tile is coded, its layers are formed and it is written before the next
+ *    tile is coded, so that the coded data of only one tile is kept in
+ *    memory.  The target length of each layer is shared between the tiles
+ *    in proportion of their areas, so that the quality may vary more
+ *    between the tiles than with the rate allocation over the whole image.
+ *    The TLM marker segment is not written in this mode, the tile-part
+ *    lengths not being known when the main header is written.  The default
+ *    value is false.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>layerQualities</td>
+ *    <td>Specifies the quality of each layer, as a PSNR in decibels, in
+ *    place of the encoding rate.  Each code-block is truncated as soon as
+ *    it is coded, at the rate-distortion slope corresponding to the PSNR of
+ *    each layer, so that no search over all the code-blocks is done and
+ *    the code-blocks do not keep the data beyond the last layer.  The
+ *    slopes are derived from a high-rate model of the coder, which holds
+ *    for images with dense detail; images which compress well get a higher
+ *    PSNR, a given quality rather giving the same trade-off between the
+ *    distortion and the length for all images.  The qualities must be
+ *    increasing, and <code>Double.POSITIVE_INFINITY</code> may be used for
+ *    the last layer to include all the coded data.  It cannot be used with
+ *    an encoding rate.  The default value is <code>null</code>.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>earlyTerminationMargin</td>
+ *    <td>Specifies whether the coding of a code-block stops before its last
+ *    bit-plane when its remaining coding passes are expected to be
+ *    discarded by the rate allocation, which saves most of the coding time
+ *    at low rates.  With a positive margin, the coding stops after a
+ *    bit-plane whose rate-distortion slope is lower than the slope
+ *    threshold of the last layer divided by the margin.  The threshold is
+ *    known in advance with <code>layerQualities</code>, and estimated from
+ *    the previous tile with <code>tileRateAllocation</code>; otherwise all
+ *    the coding passes are coded.  A margin of 1 saves the most time, and
+ *    larger margins, such as 4, code more passes in case the threshold is
+ *    overestimated.  The default value is 0, which codes all the coding
+ *    passes.
+ *    </td>
+ * </tr>
  * </table>
  */
 public class J2KImageWriteParam extends ImageWriteParam {
@@ -207,6 +322,50 @@ public class J2KImageWriteParam extends ImageWriteParam {
      */
     private boolean writeCodeStreamOnly = false;
 
+    /** The executor on which the code-blocks are coded in parallel, or
+     *  <code>null</code>.
+     */
+    private ExecutorService executorService = null;
+
+    /** Specifies whether the forward wavelet transform consumes the source
+     *  lines incrementally.
+     */
+    private boolean lineBasedEncoding = false;
+
+    /** The maximum number of packets in each tile-part, or 0.
+     */
+    private int packetPerTilePart = 0;
+
+    /** Specifies whether the packet headers are packed in the tile-part
+     *  headers.
+     */
+    private boolean packPacketHeaderInTile = false;
+
+    /** Specifies whether the packet headers are packed in the main header.
+     */
+    private boolean packPacketHeaderInMain = false;
+
+    /** Specifies the maximum number of bytes of the code stream which are
+     *  kept in memory when it has to be reparsed before being written.
+     */
+    private int codeStreamSpillThreshold = 16 * 1024 * 1024;
+
+    /** Specifies whether the TLM and PLT marker segments are written.
+     */
+    private boolean lengthMarkers = false;
+
+    /** Specifies whether the rate allocation is done tile by tile.
+     */
+    private boolean tileRateAllocation = false;
+
+    /** The PSNR, in decibels, of each layer, or null.
+     */
+    private double[] layerQualities = null;
+
+    /** The margin of the early termination of the coding, or 0.
+     */
+    private double earlyTerminationMargin = 0;
+
     /**
      * Constructor which sets the <code>Locale</code>.
      *
@@ -456,4 +615,233 @@ public class J2KImageWriteParam extends ImageWriteParam {
     public boolean  getWriteCodeStreamOnly() {
         return writeCodeStreamOnly;
     }
+
+    /** Sets <code>executorService</code>.
+     *
+     * @param executorService The executor on which the code-blocks are
+     *	       coded in parallel, or <code>null</code>.
+     * @see #getExecutorService()
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /** Gets <code>executorService</code>.
+     *
+     * @return the executor on which the code-blocks are coded in
+     *	       parallel, or <code>null</code>.
+     * @see #setExecutorService(ExecutorService)
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /** Sets <code>lineBasedEncoding</code>.
+     *
+     * @param lineBasedEncoding Whether the forward wavelet transform
+     *	       consumes the source lines incrementally.
+     * @see #getLineBasedEncoding()
+     */
+    public void setLineBasedEncoding(boolean lineBasedEncoding) {
+        this.lineBasedEncoding = lineBasedEncoding;
+    }
+
+    /** Gets <code>lineBasedEncoding</code>.
+     *
+     * @return whether the forward wavelet transform consumes the source
+     *	       lines incrementally.
+     * @see #setLineBasedEncoding(boolean)
+     */
+    public boolean getLineBasedEncoding() {
+        return lineBasedEncoding;
+    }
+
+    /** Sets <code>packetPerTilePart</code>.
+     *
+     * @param packetPerTilePart The maximum number of packets in each
+     *	       tile-part, or 0 to put all the packets of a tile in a single
+     *	       tile-part.
+     * @throws IllegalArgumentException if <code>packetPerTilePart</code>
+     *	       is negative.
+     * @see #getPacketPerTilePart()
+     */
+    public void setPacketPerTilePart(int packetPerTilePart) {
+        if (packetPerTilePart < 0)
+            throw new IllegalArgumentException("packetPerTilePart < 0");
+        this.packetPerTilePart = packetPerTilePart;
+    }
+
+    /** Gets <code>packetPerTilePart</code>.
+     *
+     * @return the maximum number of packets in each tile-part, or 0.
+     * @see #setPacketPerTilePart(int)
+     */
+    public int getPacketPerTilePart() {
+        return packetPerTilePart;
+    }
+
+    /** Sets <code>packPacketHeaderInTile</code>.
+     *
+     * @param value Whether the packet headers are packed in the tile-part
+     *	       headers.
+     * @see #getPackPacketHeaderInTile()
+     */
+    public void setPackPacketHeaderInTile(boolean value) {
+        packPacketHeaderInTile = value;
+    }
+
+    /** Gets <code>packPacketHeaderInTile</code>.
+     *
+     * @return whether the packet headers are packed in the tile-part
+     *	       headers.
+     * @see #setPackPacketHeaderInTile(boolean)
+     */
+    public boolean getPackPacketHeaderInTile() {
+        return packPacketHeaderInTile;
+    }
+
+    /** Sets <code>packPacketHeaderInMain</code>.
+     *
+     * @param value Whether the packet headers are packed in the main
+     *	       header.
+     * @see #getPackPacketHeaderInMain()
+     */
+    public void setPackPacketHeaderInMain(boolean value) {
+        packPacketHeaderInMain = value;
+    }
+
+    /** Gets <code>packPacketHeaderInMain</code>.
+     *
+     * @return whether the packet headers are packed in the main header.
+     * @see #setPackPacketHeaderInMain(boolean)
+     */
+    public boolean getPackPacketHeaderInMain() {
+        return packPacketHeaderInMain;
+    }
+
+    /** Sets <code>codeStreamSpillThreshold</code>.
+     *
+     * @param threshold The maximum number of bytes of the code stream
+     *	       which are kept in memory when it has to be reparsed before
+     *	       being written.
+     * @throws IllegalArgumentException if <code>threshold</code> is
+     *	       negative.
+     * @see #getCodeStreamSpillThreshold()
+     */
+    public void setCodeStreamSpillThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        codeStreamSpillThreshold = threshold;
+    }
+
+    /** Gets <code>codeStreamSpillThreshold</code>.
+     *
+     * @return the maximum number of bytes of the code stream which are
+     *	       kept in memory when it has to be reparsed before being
+     *	       written.
+     * @see #setCodeStreamSpillThreshold(int)
+     */
+    public int getCodeStreamSpillThreshold() {
+        return codeStreamSpillThreshold;
+    }
+
+    /** Sets <code>lengthMarkers</code>.
+     *
+     * @param value Whether the TLM and PLT marker segments are written.
+     * @see #getLengthMarkers()
+     */
+    public void setLengthMarkers(boolean value) {
+        lengthMarkers = value;
+    }
+
+    /** Gets <code>lengthMarkers</code>.
+     *
+     * @return whether the TLM and PLT marker segments are written.
+     * @see #setLengthMarkers(boolean)
+     */
+    public boolean getLengthMarkers() {
+        return lengthMarkers;
+    }
+
+    /** Sets <code>tileRateAllocation</code>.
+     *
+     * @param value Whether the rate allocation is done tile by tile.
+     * @see #getTileRateAllocation()
+     */
+    public void setTileRateAllocation(boolean value) {
+        tileRateAllocation = value;
+    }
+
+    /** Gets <code>tileRateAllocation</code>.
+     *
+     * @return whether the rate allocation is done tile by tile.
+     * @see #setTileRateAllocation(boolean)
+     */
+    public boolean getTileRateAllocation() {
+        return tileRateAllocation;
+    }
+
+    /** Sets <code>layerQualities</code>.  The quality of the last layer
+     *  must be infinite when <code>lossless</code> is set, and finite
+     *  otherwise; the writer rejects the other combinations.  Unlike the
+     *  encoding rate, the qualities do not change <code>lossless</code>
+     *  nor <code>filter</code>: the lossy scheme uses the filter set with
+     *  {@link #setFilter(String)}, and the lossless scheme always uses
+     *  <code>FILTER_53</code>.
+     *
+     * @param qualities The PSNR, in decibels, of each layer, or
+     *	       <code>null</code> to use the encoding rate.
+     * @throws IllegalArgumentException if <code>qualities</code> is
+     *	       empty or not strictly increasing.
+     * @see #getLayerQualities()
+     */
+    public void setLayerQualities(double[] qualities) {
+        if (qualities == null) {
+            layerQualities = null;
+            return;
+        }
+        if (qualities.length == 0)
+            throw new IllegalArgumentException("qualities.length == 0");
+        for (int i = 1; i < qualities.length; i++) {
+            if (!(qualities[i] > qualities[i-1]))
+                throw new IllegalArgumentException
+                    ("qualities[i] <= qualities[i-1]");
+        }
+        layerQualities = qualities.clone();
+    }
+
+    /** Gets <code>layerQualities</code>.
+     *
+     * @return the PSNR, in decibels, of each layer, or <code>null</code>.
+     * @see #setLayerQualities(double[])
+     */
+    public double[] getLayerQualities() {
+        return layerQualities == null ? null : layerQualities.clone();
+    }
+
+    /** Sets <code>earlyTerminationMargin</code>.
+     *
+     * @param margin The factor by which the slope threshold of the last
+     *	       layer is divided to give the slope below which the coding of
+     *	       a code-block stops, or 0 to code all the coding passes.
+     * @throws IllegalArgumentException if <code>margin</code> is
+     *	       negative.
+     * @see #getEarlyTerminationMargin()
+     */
+    public void setEarlyTerminationMargin(double margin) {
+        if (!(margin >= 0))
+            throw new IllegalArgumentException("margin < 0");
+        earlyTerminationMargin = margin;
+    }
+
+    /** Gets <code>earlyTerminationMargin</code>.
+     *
+     * @return the factor by which the slope threshold of the last layer is
+     *	       divided to give the slope below which the coding of a
+     *	       code-block stops, or 0.
+     * @see #setEarlyTerminationMargin(double)
+     */
+    public double getEarlyTerminationMargin() {
+        return earlyTerminationMargin;
+    }
 }
@@ -0,0 +1,142 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import jj2000.j2k.io.BEBufferedRandomAccessFile;
+import jj2000.j2k.io.RandomAccessIO;
+import jj2000.j2k.util.ISRandomAccessIO;
+
+/**
+ * This class buffers a codestream which has to be read again once it is
+ *  written, for instance to be divided into tile-parts.  The data is kept
+ *  in memory until its length exceeds a threshold, and is then moved to a
+ *  temporary file, which is deleted by <code>dispose()</code>.
+ */
+public class CodestreamBuffer extends OutputStream {
+
+    /** The maximum number of bytes kept in memory. */
+    private int threshold;
+
+    /** The data kept in memory, or <code>null</code> once it is moved to
+     *  the temporary file.
+     */
+    private byte[] buf;
+
+    /** The number of bytes written so far. */
+    private int count;
+
+    /** The temporary file, or <code>null</code> if the data is in memory. */
+    private File file;
+
+    /** The stream writing to the temporary file. */
+    private OutputStream out;
+
+    /** Constructs a <code>CodestreamBuffer</code> which keeps up to
+     *  <code>threshold</code> bytes in memory.
+     *
+     *  @param threshold The maximum number of bytes kept in memory.
+     */
+    public CodestreamBuffer(int threshold) {
+        this.threshold = threshold;
+        buf = new byte[Math.min(threshold, 4096)];
+    }
+
+    public void write(int b) throws IOException {
+        if (out == null && count == threshold) {
+            spill();
+        }
+        if (out != null) {
+            out.write(b);
+        } else {
+            ensureCapacity(count + 1);
+            buf[count] = (byte)b;
+        }
+        count++;
+    }
+
+    public void write(byte b[], int off, int len) throws IOException {
+        if (out == null && len > threshold - count) {
+            spill();
+        }
+        if (out != null) {
+            out.write(b, off, len);
+        } else {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+        }
+        count += len;
+    }
+
+    public void flush() throws IOException {
+        if (out != null)
+            out.flush();
+    }
+
+    public void close() throws IOException {
+        if (out != null)
+            out.close();
+    }
+
+    /** Returns the number of bytes written so far. */
+    public int getLength() {
+        return count;
+    }
+
+    /** Returns the written data for reading.  This object must be closed
+     *  first.
+     *
+     *  @return the written data, from position 0.
+     *  @throws IOException If the temporary file cannot be opened.
+     */
+    public RandomAccessIO getRandomAccessIO() throws IOException {
+        if (file != null)
+            return new BEBufferedRandomAccessFile(file, "r");
+        int size = Math.max(count, 1);
+        return new ISRandomAccessIO(new ByteArrayInputStream(buf, 0, count),
+                                    size, size, size);
+    }
+
+    /** Releases the memory and deletes the temporary file, if any. */
+    public void dispose() {
+        buf = null;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+            out = null;
+        }
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    /** Grows the memory buffer to hold at least <code>len</code> bytes. */
+    private void ensureCapacity(int len) {
+        if (len > buf.length) {
+            byte[] nbuf =
+                new byte[(int)Math.min(Math.max(2L * buf.length, len),
+                                       threshold)];
+            System.arraycopy(buf, 0, nbuf, 0, count);
+            buf = nbuf;
+        }
+    }
+
+    /** Moves the data written so far to a temporary file, to which the
+     *  following data is written.
+     */
+    private void spill() throws IOException {
+        file = File.createTempFile("jiio-", ".tmp");
+        file.deleteOnExit();
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        out.write(buf, 0, count);
+        buf = null;
+    }
+}
@@ -0,0 +1,289 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import javax.imageio.stream.ImageInputStream;
+
+import jj2000.j2k.io.EndianType;
+import jj2000.j2k.io.RandomAccessIO;
+
+/**
+ * A read-only <code>RandomAccessIO</code> over an
+ * <code>ImageInputStream</code> which may be shared by several decoding
+ * chains running in different threads.
+ *
+ * <p>Each instance keeps its own position and a small read buffer. The
+ * underlying stream is only accessed while holding its monitor, and every
+ * access seeks to the position of the requesting instance first, so the
+ * instances never disturb each other's position. Any number of instances
+ * may be created over the same stream.</p>
+ */
+public class ConcurrentIISRandomAccessIO implements RandomAccessIO {
+
+    /** The default size of the read buffer of each instance */
+    private static final int BUF_LEN = 8192;
+
+    /** The <code>ImageInputStream</code> that is shared, also used as the
+     *  lock for all accesses to it. */
+    private final ImageInputStream iis;
+
+    /** The read buffer */
+    private final byte[] buf;
+
+    /** The stream position of the first byte in the buffer */
+    private long bufPos;
+
+    /** The number of valid bytes in the buffer */
+    private int bufLen;
+
+    /** The current position of this instance */
+    private long pos;
+
+    /** The cached length of the stream, -1 if not yet known */
+    private long length = -1L;
+
+    /**
+     * Creates a <code>RandomAccessIO</code> instance from the supplied
+     * <code>ImageInputStream</code>. The initial position is the current
+     * position of the stream.
+     *
+     * @param iis The source <code>ImageInputStream</code>.
+     */
+    public ConcurrentIISRandomAccessIO(ImageInputStream iis)
+        throws IOException {
+        if (iis == null) {
+            throw new IllegalArgumentException("iis == null!");
+        }
+        this.iis = iis;
+        this.buf = new byte[BUF_LEN];
+        synchronized (iis) {
+            this.pos = iis.getStreamPosition();
+        }
+    }
+
+    /**
+     * Refills the buffer so that it starts at the current position.
+     *
+     * @return The number of bytes available in the buffer, 0 at the end
+     * of the stream.
+     */
+    private int fill() throws IOException {
+        synchronized (iis) {
+            iis.seek(pos);
+            int n = 0;
+            while (n < buf.length) {
+                int r = iis.read(buf, n, buf.length - n);
+                if (r < 0) break;
+                n += r;
+            }
+            bufPos = pos;
+            bufLen = n;
+        }
+        return bufLen;
+    }
+
+    /**
+     * Returns the number of buffered bytes available from the current
+     * position, refilling the buffer if needed.
+     */
+    private int available() throws IOException {
+        long off = pos - bufPos;
+        if (off >= 0 && off < bufLen) {
+            return bufLen - (int)off;
+        }
+        return fill();
+    }
+
+    /**
+     * A null operation as the shared stream is owned by the caller.
+     */
+    public void close() throws IOException {
+        // Intentionally empty.
+    }
+
+    public long getPos() throws IOException {
+        return pos;
+    }
+
+    public void seek(long off) throws IOException {
+        pos = off;
+    }
+
+    /**
+     * Returns the length of the data stream. The length is computed once
+     * and then cached, see <code>IISRandomAccessIO.length()</code>.
+     */
+    public long length() throws IOException {
+        if (length < 0) {
+            synchronized (iis) {
+                length = iis.length();
+                if (length == -1L) {
+                    // Read until the stream ends.
+                    iis.mark();
+                    byte[] b = new byte[1024];
+                    long p = iis.getStreamPosition();
+                    while (true) {
+                        int numRead = iis.read(b, 0, b.length);
+                        if (numRead == -1) break; // EOF
+                        p += numRead;
+                    }
+                    iis.reset();
+                    length = p;
+                }
+            }
+        }
+        return length;
+    }
+
+    public int read() throws IOException {
+        if (available() <= 0) {
+            return -1;
+        }
+        return buf[(int)(pos++ - bufPos)] & 0xFF;
+    }
+
+    public void readFully(byte b[], int off, int n) throws IOException {
+        while (n > 0) {
+            int avail = available();
+            if (avail <= 0) {
+                throw new EOFException();
+            }
+            int len = avail < n ? avail : n;
+            System.arraycopy(buf, (int)(pos - bufPos), b, off, len);
+            pos += len;
+            off += len;
+            n -= len;
+        }
+    }
+
+    public int getByteOrdering() {
+        return iis.getByteOrder() == ByteOrder.BIG_ENDIAN ?
+            EndianType.BIG_ENDIAN : EndianType.LITTLE_ENDIAN;
+    }
+
+    public byte readByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return (byte)b;
+    }
+
+    public int readUnsignedByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    public short readShort() throws IOException {
+        return (short)readUnsignedShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        int b1 = readUnsignedByte();
+        int b2 = readUnsignedByte();
+        if (iis.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+            return (b1 << 8) | b2;
+        }
+        return (b2 << 8) | b1;
+    }
+
+    public int readInt() throws IOException {
+        int s1 = readUnsignedShort();
+        int s2 = readUnsignedShort();
+        if (iis.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+            return (s1 << 16) | s2;
+        }
+        return (s2 << 16) | s1;
+    }
+
+    public long readUnsignedInt() throws IOException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    public long readLong() throws IOException {
+        long i1 = readUnsignedInt();
+        long i2 = readUnsignedInt();
+        if (iis.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+            return (i1 << 32) | i2;
+        }
+        return (i2 << 32) | i1;
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int skipBytes(int n) throws IOException {
+        long len = length();
+        if (pos + n > len) {
+            n = (int)(len - pos);
+        }
+        pos += n;
+        return n;
+    }
+
+    /**
+     * A null operation as writing is not supported.
+     */
+    public void flush() {
+        // Intentionally empty.
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void write(int b) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeByte(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeShort(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeInt(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeLong(long v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeFloat(float v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeDouble(double v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+}
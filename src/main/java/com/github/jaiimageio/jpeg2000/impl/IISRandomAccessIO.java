@@ -78,16 +78,11 @@ public class IISRandomAccessIO implements RandomAccessIO {
         iis.close();
     }
 
-    /**
-     * Returns the stream position clamped to a maximum of
-     * <code>Integer.MAX_VALUE</code>.
-     */
-    public int getPos() throws IOException {
-        long pos = iis.getStreamPosition();
-        return pos > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)pos;
+    public long getPos() throws IOException {
+        return iis.getStreamPosition();
     }
 
-    public void seek(int off) throws IOException {
+    public void seek(long off) throws IOException {
         iis.seek(off);
     }
 
@@ -95,19 +90,18 @@ public class IISRandomAccessIO implements RandomAccessIO {
      * Returns the length of the data stream.
      *
      * <p>If the length of the <code>ImageInputStream</code> is not
-     * <code>-1</code>, then it is returned after being clamped to
-     * a maximum value of <code>Integer.MAX_VALUE</code>. If the
+     * <code>-1</code>, then it is returned. If the
      * <code>ImageInputStream</code> is <code>-1</code>, the stream
-     * is read to a maximum position of <code>Integer.MAX_VALUE</code>
-     * and its final position is returned. The position of the stream
-     * is unchanged from the value it had prior to the call.</p>
+     * is read until its end and its final position is returned. The
+     * position of the stream is unchanged from the value it had prior to
+     * the call.</p>
      */
-    public int length() throws IOException {
+    public long length() throws IOException {
         long len = iis.length();
 
         // If the length is non-negative, use it.
         if(len != -1L) {
-            return len > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)len;
+            return len;
         }
 
         // If the length is negative, read until the stream ends.
@@ -115,7 +109,7 @@ public class IISRandomAccessIO implements RandomAccessIO {
         int bufLen = 1024;
         byte[] buf = new byte[bufLen];
         long pos = iis.getStreamPosition();
-        while(pos < Integer.MAX_VALUE) {
+        while(true) {
             int numRead = iis.read(buf, 0, bufLen);
             if(numRead == -1) break; // EOF
             pos += numRead;
@@ -123,7 +117,7 @@ public class IISRandomAccessIO implements RandomAccessIO {
         iis.reset();
 
         // Return the last position.
-        return pos > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)pos;
+        return pos;
     }
 
     public int read() throws IOException {
@@ -0,0 +1,41 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * This class is designed to wrap a <code>ImageOutputStream</code> into
+ *  a <code>OutputStream</code>, so that the JJ2000 JPEG 2000 packages can
+ *  write the codestream directly into the <code>ImageOutputStream</code>.
+ *  Closing the wrapper does not close the <code>ImageOutputStream</code>,
+ *  which belongs to the caller of the writer.
+ */
+public class ImageOutputStreamWrapper extends OutputStream {
+
+    /** The <code>ImageOutputStream</code> to be wrapped. */
+    private ImageOutputStream dst;
+
+    /** Constructs an <code>ImageOutputStreamWrapper</code> from the provided
+     *  <code>ImageOutputStream</code>.
+     *
+     *  @param dst The <code>ImageOutputStream</code> to be wrapped.
+     */
+    public ImageOutputStreamWrapper(ImageOutputStream dst) {
+        this.dst = dst;
+    }
+
+    // Override the methods defined in <code>OutputStream</code>
+    public void write(int b) throws IOException {
+        dst.write(b);
+    }
+
+    public void write(byte b[], int off, int len) throws IOException {
+        dst.write(b, off, len);
+    }
+
+    public void close() throws IOException {
+        // The wrapped stream is left open
+    }
+}
@@ -143,6 +143,9 @@ public class J2KImageReadParamJava extends J2KImageReadParam {
         }
         setDecodingRate(j2kParam.getDecodingRate());
         setResolution(j2kParam.getResolution());
+        setTileConcurrency(j2kParam.getTileConcurrency());
+        setExecutorService(j2kParam.getExecutorService());
+        setLineBasedDecoding(j2kParam.getLineBasedDecoding());
     }
 
     /** Sets <code>noROIDescaling</code> */
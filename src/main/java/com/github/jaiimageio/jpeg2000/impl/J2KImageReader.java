@@ -49,17 +49,24 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 
+import jj2000.j2k.codestream.reader.CodestreamIndex;
 import jj2000.j2k.codestream.reader.HeaderDecoder;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.MsgLogger;
@@ -72,11 +79,30 @@ import com.github.jaiimageio.jpeg2000.J2KImageReadParam;
  *  data type.  It may subsample the image, select bands, clip the image,
  *  and shift the decoded image origin if the proper decoding parameter
  *  are set in the provided <code>J2KImageReadParam</code>.
+ *
+ *  <p>A <code>File</code> input is read through a memory mapping of the
+ *  file.  Any other input, including the <code>ImageInputStream</code>
+ *  over a file given by <code>ImageIO.read(File)</code> or a
+ *  <code>FileImageInputStream</code>, is read through the stream.
  */
 public class J2KImageReader extends ImageReader implements MsgLogger {
     /** The input stream where reads from */
     private ImageInputStream iis = null;
 
+    /** The file opened for a <code>File</code> input, null otherwise. */
+    private RandomAccessFile raf = null;
+
+    /** The channel of the file opened for a <code>File</code> input, null
+     *  if the input is not a <code>File</code> or if it cannot be mapped.
+     *  Other inputs are read through the stream.
+     */
+    private FileChannel channel = null;
+
+    /** The mapping of the input file, shared by all the reading sessions,
+     *  null if not yet created.
+     */
+    private MappedRandomAccessIO mappedInput = null;
+
     /** Stream position when setInput() was called. */
     private long streamPosition0;
 
@@ -105,6 +131,12 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
      */
     private J2KReadState readState = null;
 
+    /** The index of the codestream of the current input, shared by all the
+     *  reading sessions so that the tile-part and packet headers are only
+     *  read once.
+     */
+    private CodestreamIndex codestreamIndex = new CodestreamIndex();
+
     /**
      * Whether to log JJ2000 messages.
      */
@@ -292,14 +324,35 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
         FacilityManager.registerMsgLogger(null, this);
     }
 
-    /** Overrides the method defined in the superclass. */
+    /** Overrides the method defined in the superclass.  A <code>File</code>
+     *  input is opened by this reader, which then reads it through a memory
+     *  mapping.  It is accepted whatever the originating provider and
+     *  remains the object returned by <code>getInput()</code>.
+     */
     public void setInput(Object input,
                          boolean seekForwardOnly,
                          boolean ignoreMetadata) {
-        super.setInput(input, seekForwardOnly, ignoreMetadata);
+        closeFile();
+        ImageInputStream stream;
+        if (input instanceof File) {
+            try {
+                raf = new RandomAccessFile((File)input, "r");
+                stream = new FileImageInputStream(raf);
+            } catch (IOException e) {
+                closeFile();
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            channel = raf.getChannel();
+            super.setInput(stream, seekForwardOnly, ignoreMetadata);
+            this.input = input;
+        } else {
+            super.setInput(input, seekForwardOnly, ignoreMetadata);
+            stream = (ImageInputStream) input; // Always works
+        }
         this.ignoreMetadata = ignoreMetadata;
-        iis = (ImageInputStream) input; // Always works
+        iis = stream;
         imageMetadata = null;
+        codestreamIndex.clear();
         try {
             this.streamPosition0 = iis.getStreamPosition();
         } catch(IOException e) {
@@ -516,6 +569,85 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
         return ras;
     }
 
+    /**
+     * Reads several regions of the image.  This is equivalent to calling
+     * <code>readRaster</code> with each of the parameters, but the regions
+     * which share their resolution level, bands and decoding rate are read
+     * with a single decoding chain: the codestream headers are only parsed
+     * once for them, and each tile is decoded once for all the regions
+     * which lie close together in it.
+     *
+     * @param imageIndex The index of the image, which must be 0.
+     * @param params The parameters of each region.  A <code>null</code>
+     *               element reads the whole image with the default
+     *               parameters.
+     * @return The rasters read, in the order of <code>params</code>.
+     */
+    public Raster[] readRasters(int imageIndex,
+                                ImageReadParam[] params) throws IOException {
+        checkIndex(imageIndex);
+        clearAbortRequest();
+        processImageStarted(imageIndex);
+
+        int n = params.length;
+        J2KImageReadParamJava[] j2kParams = new J2KImageReadParamJava[n];
+        for (int i = 0; i < n; i++)
+            j2kParams[i] = new J2KImageReadParamJava(params[i] != null ?
+                                                     params[i] :
+                                                     getDefaultReadParam());
+
+        // Group the regions which can share a decoding chain
+        Raster[] rasters = new Raster[n];
+        boolean[] done = new boolean[n];
+        for (int i = 0; i < n && !abortRequested(); i++) {
+            if (done[i])
+                continue;
+            List<J2KImageReadParamJava> group =
+                new ArrayList<J2KImageReadParamJava>();
+            for (int j = i; j < n; j++) {
+                if (!done[j] && sameChain(j2kParams[i], j2kParams[j])) {
+                    group.add(j2kParams[j]);
+                    done[j] = true;
+                }
+            }
+
+            iis.seek(streamPosition0);
+            if (!ignoreMetadata) {
+                imageMetadata = new J2KMetadata();
+                readState = new J2KReadState(iis, j2kParams[i],
+                                             imageMetadata, this);
+            } else {
+                readState = new J2KReadState(iis, j2kParams[i], this);
+            }
+
+            Raster[] read = readState.readRasters(
+                group.toArray(new J2KImageReadParamJava[group.size()]));
+            for (int j = i, k = 0; k < read.length; j++) {
+                if (group.get(k) == j2kParams[j])
+                    rasters[j] = read[k++];
+            }
+        }
+
+        if (abortRequested())
+            processReadAborted();
+        else
+            processImageComplete();
+        return rasters;
+    }
+
+    /** Returns whether the regions of two parameters can be read with the
+     *  same decoding chain.
+     */
+    private static boolean sameChain(J2KImageReadParamJava p1,
+                                     J2KImageReadParamJava p2) {
+        return p1.getResolution() == p2.getResolution() &&
+            p1.getDecodingRate() == p2.getDecodingRate() &&
+            p1.getLineBasedDecoding() == p2.getLineBasedDecoding() &&
+            Arrays.equals(p1.getSourceBands(), p2.getSourceBands()) &&
+            Arrays.equals(p1.getDestinationBands(),
+                          p2.getDestinationBands());
+    }
+
     public boolean isImageTiled(int imageIndex) {
         checkIndex(imageIndex);
         readHeader();
@@ -532,13 +664,67 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
         // reset local Java structures
         super.reset();
 
+        closeFile();
         iis = null;
         gotHeader = false;
         imageMetadata = null;
         readState = null;
+        codestreamIndex.clear();
         System.gc();
     }
 
+    public void dispose() {
+        closeFile();
+    }
+
+    /** Closes the file opened for a <code>File</code> input, and releases
+     *  the mapping of the input file.  The mapped windows are no longer
+     *  referenced by this reader or by the <code>RandomAccessIO</code>s
+     *  created over them, but Java offers no way to unmap them explicitly:
+     *  the memory, and on some platforms the file handle, are released when
+     *  the windows are garbage collected.  Images read earlier from the
+     *  mapping cannot read further data from it.
+     */
+    private synchronized void closeFile() {
+        if (mappedInput != null) {
+            mappedInput.release();
+            mappedInput = null;
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // XXX ignore
+            }
+            raf = null;
+        }
+        channel = null;
+    }
+
+    /** Returns a <code>RandomAccessIO</code> over the mapping of the input
+     *  file, with its own position, or null if the input is not a file or
+     *  cannot be mapped.  The file is mapped on the first call.
+     */
+    synchronized MappedRandomAccessIO getMappedInput() {
+        if (channel == null)
+            return null;
+        if (mappedInput == null) {
+            try {
+                mappedInput = new MappedRandomAccessIO(channel);
+            } catch (IOException e) {
+                // Read through the stream instead.
+                channel = null;
+                return null;
+            }
+        }
+        return new MappedRandomAccessIO(mappedInput);
+    }
+
+    /** Returns the index of the codestream of the current input. */
+    CodestreamIndex getCodestreamIndex() {
+        return codestreamIndex;
+    }
+
     /** This method wraps the protected method <code>abortRequested</code>
      *  to allow the abortions be monitored by <code>J2KReadState</code>.
      */
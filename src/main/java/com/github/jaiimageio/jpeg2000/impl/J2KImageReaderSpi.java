@@ -44,6 +44,7 @@
  */
 package com.github.jaiimageio.jpeg2000.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 
@@ -51,6 +52,7 @@ import javax.imageio.IIOException;
 import javax.imageio.ImageReader;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.spi.ServiceRegistry;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 
 import com.github.jaiimageio.impl.common.PackageUtil;
@@ -64,6 +66,8 @@ public class J2KImageReaderSpi extends ImageReaderSpi {
     private static String[] extensions =
         {"jp2"}; // Should add jpx or jpm
     private static String[] mimeTypes = {"image/jp2", "image/jpeg2000"};
+    private static Class<?>[] inputTypes =
+        {ImageInputStream.class, File.class};
     private boolean registered = false;
 
     public J2KImageReaderSpi() {
@@ -73,7 +77,7 @@ public class J2KImageReaderSpi extends ImageReaderSpi {
               extensions,
               mimeTypes,
               "com.github.jaiimageio.jpeg2000.impl.J2KImageReader",
-              STANDARD_INPUT_TYPE,
+              inputTypes,
               writerSpiNames,
               false,
               null, null,
@@ -117,6 +121,14 @@ public class J2KImageReaderSpi extends ImageReaderSpi {
     }
 
     public boolean canDecodeInput(Object source) throws IOException {
+        if (source instanceof File) {
+            ImageInputStream stream = new FileImageInputStream((File)source);
+            try {
+                return canDecodeInput(stream);
+            } finally {
+                stream.close();
+            }
+        }
         if (!(source instanceof ImageInputStream)) {
             return false;
         }
@@ -48,6 +48,7 @@ import java.awt.Rectangle;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageWriteParam;
@@ -626,6 +627,33 @@ public class J2KImageWriteParamJava extends ImageWriteParam {
     private int minX;
     private int minY;
 
+    /** The executor on which the code-blocks are coded in parallel, or
+     *  <code>null</code>.
+     */
+    private ExecutorService executorService = null;
+
+    /** Whether the forward wavelet transform consumes the source lines
+     *  incrementally.
+     */
+    private boolean lineBasedEncoding = false;
+
+    /** The maximum number of bytes of the code stream which are kept in
+     *  memory when it has to be reparsed before being written.
+     */
+    private int codeStreamSpillThreshold = 16 * 1024 * 1024;
+
+    /** Whether the TLM and PLT marker segments are written. */
+    private boolean lengthMarkers = false;
+
+    /** Whether the rate allocation is done tile by tile. */
+    private boolean tileRateAllocation = false;
+
+    /** The PSNR, in decibels, of each layer, or null. */
+    private double[] layerQualities = null;
+
+    /** The margin of the early termination of the coding, or 0. */
+    private double earlyTerminationMargin = 0;
+
     /** Constructor to set locales. */
     public J2KImageWriteParamJava(RenderedImage imgsrc, Locale locale) {
         super(locale);
@@ -676,6 +704,16 @@ public class J2KImageWriteParamJava extends ImageWriteParam {
         setCodeBlockSize("" + size[0] +" " + size[1]);
         enableCT = j2kParam.getComponentTransformation();
         setComponentTransformation("" + enableCT);
+        setExecutorService(j2kParam.getExecutorService());
+        setLineBasedEncoding(j2kParam.getLineBasedEncoding());
+        setPacketPerTilePart(j2kParam.getPacketPerTilePart());
+        setPackPacketHeaderInTile(j2kParam.getPackPacketHeaderInTile());
+        setPackPacketHeaderInMain(j2kParam.getPackPacketHeaderInMain());
+        setCodeStreamSpillThreshold(j2kParam.getCodeStreamSpillThreshold());
+        setLengthMarkers(j2kParam.getLengthMarkers());
+        setTileRateAllocation(j2kParam.getTileRateAllocation());
+        setLayerQualities(j2kParam.getLayerQualities());
+        setEarlyTerminationMargin(j2kParam.getEarlyTerminationMargin());
     }
 
 
@@ -794,6 +832,76 @@ public class J2KImageWriteParamJava extends ImageWriteParam {
     public boolean getLossless() {
         return lossless;
     }
+
+    /** Sets <code>executorService</code> */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /** Gets <code>executorService</code> */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /** Sets <code>lineBasedEncoding</code> */
+    public void setLineBasedEncoding(boolean lineBasedEncoding) {
+        this.lineBasedEncoding = lineBasedEncoding;
+    }
+
+    /** Gets <code>lineBasedEncoding</code> */
+    public boolean getLineBasedEncoding() {
+        return lineBasedEncoding;
+    }
+
+    /** Sets <code>codeStreamSpillThreshold</code> */
+    public void setCodeStreamSpillThreshold(int threshold) {
+        this.codeStreamSpillThreshold = threshold;
+    }
+
+    /** Gets <code>codeStreamSpillThreshold</code> */
+    public int getCodeStreamSpillThreshold() {
+        return codeStreamSpillThreshold;
+    }
+
+    /** Sets <code>lengthMarkers</code> */
+    public void setLengthMarkers(boolean lengthMarkers) {
+        this.lengthMarkers = lengthMarkers;
+    }
+
+    /** Gets <code>lengthMarkers</code> */
+    public boolean getLengthMarkers() {
+        return lengthMarkers;
+    }
+
+    /** Sets <code>tileRateAllocation</code> */
+    public void setTileRateAllocation(boolean tileRateAllocation) {
+        this.tileRateAllocation = tileRateAllocation;
+    }
+
+    /** Gets <code>tileRateAllocation</code> */
+    public boolean getTileRateAllocation() {
+        return tileRateAllocation;
+    }
+
+    /** Sets <code>layerQualities</code> */
+    public void setLayerQualities(double[] layerQualities) {
+        this.layerQualities = layerQualities;
+    }
+
+    /** Gets <code>layerQualities</code> */
+    public double[] getLayerQualities() {
+        return layerQualities;
+    }
+
+    /** Sets <code>earlyTerminationMargin</code> */
+    public void setEarlyTerminationMargin(double earlyTerminationMargin) {
+        this.earlyTerminationMargin = earlyTerminationMargin;
+    }
+
+    /** Gets <code>earlyTerminationMargin</code> */
+    public double getEarlyTerminationMargin() {
+        return earlyTerminationMargin;
+    }
     /** Sets <code>packetPerTilePart</code> */
     public void setPacketPerTilePart(int packetPerTilePart) {
         if (packetPerTilePart < 0)
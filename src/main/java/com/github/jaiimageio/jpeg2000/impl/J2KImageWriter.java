@@ -51,8 +51,9 @@ import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -75,6 +76,7 @@ import jj2000.j2k.fileformat.writer.FileFormatWriter;
 import jj2000.j2k.image.ImgDataConverter;
 import jj2000.j2k.image.Tiler;
 import jj2000.j2k.image.forwcomptransf.ForwCompTransf;
+import jj2000.j2k.io.RandomAccessIO;
 import jj2000.j2k.quantization.quantizer.Quantizer;
 import jj2000.j2k.roi.encoder.ROIScaler;
 import jj2000.j2k.util.CodestreamManipulator;
@@ -228,21 +230,40 @@ public class J2KImageWriter extends ImageWriter {
         if (param == null)
             param = getDefaultWriteParam();
 
-        J2KImageWriteParamJava j2kwparam =
-            new J2KImageWriteParamJava(image, param);
+        J2KImageWriteParamJava j2kwparam = createParamJava(image, param);
 
         // Packet header cannot exist in two places.
         if (j2kwparam.getPackPacketHeaderInTile() &&
             j2kwparam.getPackPacketHeaderInMain())
             throw new IllegalArgumentException(I18N.getString("J2KImageWriter1"));
 
+        // Length marker segments would not match the reparsed codestream
+        if (j2kwparam.getLengthMarkers() &&
+            (j2kwparam.getPacketPerTilePart() > 0 ||
+             j2kwparam.getPackPacketHeaderInTile() ||
+             j2kwparam.getPackPacketHeaderInMain()))
+            throw new IllegalArgumentException(I18N.getString("J2KImageWriter9"));
+
         // Lossless and encoding rate cannot be set at the same time
         if (j2kwparam.getLossless() &&
             j2kwparam.getEncodingRate()!=Double.MAX_VALUE)
             throw new IllegalArgumentException(I18N.getString("J2KImageWriter2"));
 
+        // The layer qualities replace the encoding rate
+        if (j2kwparam.getLayerQualities() != null &&
+            j2kwparam.getEncodingRate()!=Double.MAX_VALUE)
+            throw new IllegalArgumentException(I18N.getString("J2KImageWriter10"));
+
+        // Only an infinite quality of the last layer codes losslessly
+        double[] qualities = j2kwparam.getLayerQualities();
+        if (qualities != null &&
+            j2kwparam.getLossless() !=
+            (qualities[qualities.length-1] == Double.POSITIVE_INFINITY))
+            throw new IllegalArgumentException(I18N.getString("J2KImageWriter11"));
+
         // If the source image is bilevel or color-indexed, or, the
-        // encoding rate is Double.MAX_VALUE, use lossless
+        // encoding rate is Double.MAX_VALUE and no layer qualities are set
+        // for the lossy scheme, use lossless
         if ((!writeRaster && input.getColorModel() instanceof IndexColorModel) ||
              (writeRaster &&
               raster.getSampleModel() instanceof MultiPixelPackedSampleModel)) {
@@ -251,7 +272,9 @@ public class J2KImageWriter extends ImageWriter {
             j2kwparam.setEncodingRate(Double.MAX_VALUE);
             j2kwparam.setQuantizationType("reversible");
             j2kwparam.setFilters(J2KImageWriteParam.FILTER_53);
-        } else if (j2kwparam.getEncodingRate() == Double.MAX_VALUE) {
+        } else if (j2kwparam.getEncodingRate() == Double.MAX_VALUE &&
+                   (j2kwparam.getLayerQualities() == null ||
+                    j2kwparam.getLossless())) {
             j2kwparam.setLossless(true);
             j2kwparam.setQuantizationType("reversible");
             j2kwparam.setFilters(J2KImageWriteParam.FILTER_53);
@@ -333,72 +356,6 @@ public class J2KImageWriter extends ImageWriter {
 		j2kwparam.getMethodForMQLengthCalc(),
 		j2kwparam.getMethodForMQTermination());
 
-        // Rely on rate allocator to limit amount of data
-        File tmpFile = File.createTempFile("jiio-", ".tmp");
-        tmpFile.deleteOnExit();
-
-        // Creates CodestreamWriter
-        FileCodestreamWriter bwriter =
-            new FileCodestreamWriter(tmpFile, Integer.MAX_VALUE);
-
-        // Creates the rate allocator
-        float rate = (float)j2kwparam.getEncodingRate();
-        PostCompRateAllocator ralloc =
-            PostCompRateAllocator.createInstance(ecoder,
-                                                 rate,
-                                                 bwriter,
-                                                 j2kwparam);
-
-        // Instantiates the HeaderEncoder
-        HeaderEncoder headenc =
-            new HeaderEncoder(imgsrc, imsigned, dwt, imgtiler,
-                              j2kwparam, rois,ralloc);
-
-        ralloc.setHeaderEncoder(headenc);
-
-        // Writes header to be able to estimate header overhead
-        headenc.encodeMainHeader();
-
-        //Initializes rate allocator, with proper header
-        // overhead. This will also encode all the data
-        try {
-            ralloc.initialize();
-        } catch (RuntimeException e) {
-            if (WRITE_ABORTED.equals(e.getMessage())) {
-                bwriter.close();
-                tmpFile.delete();
-                processWriteAborted();
-                return;
-            } else throw e;
-        }
-
-        // Write header (final)
-        headenc.reset();
-        headenc.encodeMainHeader();
-
-        // Insert header into the codestream
-        bwriter.commitBitstreamHeader(headenc);
-
-        // Now do the rate-allocation and write result
-        ralloc.runAndWrite();
-
-        //Done for data encoding
-        bwriter.close();
-
-        // Calculate file length
-        int fileLength = bwriter.getLength();
-
-        // Tile-parts and packed packet headers
-        int pktspertp = j2kwparam.getPacketPerTilePart();
-        int ntiles = imgtiler.getNumTiles();
-        if (pktspertp>0 || pphTile || pphMain){
-            CodestreamManipulator cm =
-                new CodestreamManipulator(tmpFile, ntiles, pktspertp,
-                                          pphMain, pphTile, tempSop,
-                                          tempEph);
-            fileLength += cm.doCodestreamManipulation();
-        }
-
         // File Format
         int nc= imgsrc.getNumComps() ;
         int[] bpc = new int[nc];
@@ -467,20 +424,124 @@ public class J2KImageWriter extends ImageWriter {
             }
         }
 
+        // Whether tile-parts or packed packet headers are used
+        int pktspertp = j2kwparam.getPacketPerTilePart();
+        int ntiles = imgtiler.getNumTiles();
+        boolean manipulate = pktspertp>0 || pphTile || pphMain;
+
+        // The codestream is written directly into the output stream, after
+        // the file format boxes, unless it has to be reparsed to create the
+        // tile-parts and packed packet headers. In that case it is buffered
+        // in memory, or in a temporary file beyond the threshold.
+        CodestreamBuffer csbuf = null;
+        OutputStream csout;
+        if (manipulate) {
+            csbuf =
+                new CodestreamBuffer(j2kwparam.getCodeStreamSpillThreshold());
+            csout = csbuf;
+        } else {
+            csout =
+                new BufferedOutputStream(new ImageOutputStreamWrapper(stream),
+                                         FileCodestreamWriter.DEF_BUF_LEN);
+        }
+
+        // Rely on rate allocator to limit amount of data
+        // Creates CodestreamWriter
+        FileCodestreamWriter bwriter =
+            new FileCodestreamWriter(csout, Long.MAX_VALUE);
+
+        // Creates the rate allocator
+        float rate = (float)j2kwparam.getEncodingRate();
+        PostCompRateAllocator ralloc =
+            PostCompRateAllocator.createInstance(ecoder,
+                                                 rate,
+                                                 bwriter,
+                                                 j2kwparam);
+
+        // Instantiates the HeaderEncoder
+        HeaderEncoder headenc =
+            new HeaderEncoder(imgsrc, imsigned, dwt, imgtiler,
+                              j2kwparam, rois,ralloc);
+
+        ralloc.setHeaderEncoder(headenc);
+
+        // Writes header to be able to estimate header overhead
+        headenc.encodeMainHeader();
+
+        //Initializes rate allocator, with proper header
+        // overhead. This will also encode all the data, unless the rate
+        // allocation is done tile by tile. Nothing is written to the output
+        // stream yet.
+        try {
+            ralloc.initialize();
+        } catch (RuntimeException e) {
+            if (WRITE_ABORTED.equals(e.getMessage())) {
+                if (csbuf != null)
+                    csbuf.dispose();
+                processWriteAborted();
+                return;
+            } else throw e;
+        }
+
+        // Write the file format boxes up to the codestream
         FileFormatWriter ffw =
-            new FileFormatWriter(tmpFile, stream,
+            new FileFormatWriter(stream,
                                  imgsrc.getImgHeight(),
                                  imgsrc.getImgWidth(), nc, bpc,
-                                 fileLength,
                                  colorModel,
                                  sampleModel,
                                  metadata);
-        fileLength += ffw.writeFileFormat();
-        tmpFile.delete();
+        ffw.writeFileFormatHeader();
+
+        // Now do the rate-allocation and write result, starting with the
+        // final main header
+        try {
+            ralloc.runAndWrite();
+        } catch (RuntimeException e) {
+            if (WRITE_ABORTED.equals(e.getMessage())) {
+                if (csbuf != null)
+                    csbuf.dispose();
+                processWriteAborted();
+                return;
+            } else throw e;
+        }
+
+        //Done for data encoding
+        bwriter.close();
+
+        // Calculate file length
+        long fileLength = bwriter.getLength();
+
+        // Tile-parts and packed packet headers
+        if (manipulate) {
+            RandomAccessIO in = csbuf.getRandomAccessIO();
+            OutputStream out =
+                new BufferedOutputStream(new ImageOutputStreamWrapper(stream));
+            CodestreamManipulator cm =
+                new CodestreamManipulator(in, out, ntiles, pktspertp,
+                                          pphMain, pphTile, tempSop,
+                                          tempEph);
+            fileLength += cm.doCodestreamManipulation();
+            in.close();
+            csbuf.dispose();
+        }
+
+        // Set the codestream length in the file format
+        fileLength += ffw.completeFileFormat(fileLength);
 
         processImageComplete();
     }
 
+    /** Creates the JJ2000 encoding parameters of an image from the given
+     *  write parameters.  The entropy coding options, which
+     *  <code>J2KImageWriteParam</code> does not provide, keep their
+     *  defaults unless changed by an override of this method.
+     */
+    J2KImageWriteParamJava createParamJava(IIOImage image,
+                                           ImageWriteParam param) {
+        return new J2KImageWriteParamJava(image, param);
+    }
+
     public synchronized void abort() {
         super.abort();
     }
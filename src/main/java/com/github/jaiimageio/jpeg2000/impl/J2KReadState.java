@@ -51,7 +51,10 @@ import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
 import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
@@ -59,7 +62,11 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.List;
 
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
@@ -132,6 +139,14 @@ public class J2KReadState {
 
     private boolean noTransform = true;
 
+    /** The number of lines requested at a time from the decoding chain
+     *  when a tile is read. */
+    private static final int LINES_PER_BLOCK = 16;
+
+    /** The maximum ratio between the area decoded for a group of regions
+     *  read together, and the sum of their areas. */
+    private static final int MAX_GROUP_SPREAD = 2;
+
     /** The resolution level requested. */
     private int resolution;
 
@@ -141,6 +156,12 @@ public class J2KReadState {
     /** Tile step sizes. */
     private int tileStepX, tileStepY;
 
+    /** The area of the tile-components to which the decoding of the
+     *  current tile is restricted, and the index of this tile in the tile
+     *  grid.  The area is null if it is not set since the tile changed. */
+    private Rectangle decodedArea;
+    private int decodedTileX, decodedTileY;
+
     private J2KMetadata metadata;
 
     private BufferedImage destImage;
@@ -150,6 +171,11 @@ public class J2KReadState {
      */
     private J2KImageReader reader;
 
+    /** The stream position where the input starts.  Used to create other
+     *  decoding chains over the same input, -1 if not yet known.
+     */
+    private long streamPosition0 = -1L;
+
     /** Constructs <code>J2KReadState</code>.
      *  @param iis The input stream.
      *  @param param The reading parameters.
@@ -195,6 +221,30 @@ public class J2KReadState {
         initializeRead(0, param, null);
     }
 
+    /** Constructs a <code>J2KReadState</code> with its own decoding chain
+     *  over the same input and with the same parameters as
+     *  <code>state</code>.  Both states may then decode tiles concurrently
+     *  provided that <code>state</code> was created with a
+     *  <code>tileConcurrency</code> greater than one.
+     *  @param state The <code>J2KReadState</code> to duplicate.
+     */
+    J2KReadState(J2KReadState state) {
+        this.iis = state.iis;
+        this.j2krparam = state.j2krparam;
+        this.reader = state.reader;
+        this.streamPosition0 = state.streamPosition0;
+
+        // The boxes are parsed again, so do not add them to the metadata
+        // of the original state.
+        if (state.metadata != null)
+            this.metadata = new J2KMetadata();
+
+        initializeRead(0, j2krparam, metadata);
+
+        this.sampleModel = state.getSampleModel();
+        this.colorModel = state.getColorModel();
+    }
+
     public int getWidth() throws IOException {
         return width;
     }
@@ -203,10 +253,135 @@ public class J2KReadState {
         return height;
     }
 
+    /** Returns the number of tiles that may be decoded concurrently. */
+    int getTileConcurrency() {
+        return j2krparam.getTileConcurrency();
+    }
+
     public HeaderDecoder getHeader() {
         return hd;
     }
 
+    /** Changes the current tile of the decoding chain.  The data blocks
+     *  are emptied first, since the buffers of the previous tile they may
+     *  refer to are returned to the array pool.
+     */
+    private void setTile(int x, int y) {
+        for (int i = 0; i < dataBlocks.length; i++)
+            dataBlocks[i].setData(null);
+        ictransf.setTile(x, y);
+        decodedArea = null;
+    }
+
+    /** Writes the samples of a line of a band directly into the data
+     *  buffer of <code>raster</code>, without going through its sample
+     *  model.  This is only done for a <code>ComponentSampleModel</code>
+     *  over a byte or unsigned short buffer, the sample models created by
+     *  this reader for all but bilevel images.
+     *
+     *  <p>The samples are taken from <code>data</code> at <code>k1</code>
+     *  for the last one, then backwards by <code>step</code>, and are
+     *  shifted by <code>fracBit</code>, level shifted by <code>lS</code>
+     *  and clamped to [<code>min</code>, <code>max</code>].
+     *
+     *  @return <code>false</code> if the raster is not supported, in which
+     *          case nothing is written.
+     */
+    private static boolean setSamplesDirect(WritableRaster raster,
+                                            int x, int y, int len, int band,
+                                            int[] data, int k1, int step,
+                                            int fracBit, int lS,
+                                            int min, int max) {
+        SampleModel sm = raster.getSampleModel();
+        if (!(sm instanceof ComponentSampleModel))
+            return false;
+        DataBuffer buffer = raster.getDataBuffer();
+        int type = buffer.getDataType();
+        if (type != DataBuffer.TYPE_BYTE && type != DataBuffer.TYPE_USHORT)
+            return false;
+
+        ComponentSampleModel csm = (ComponentSampleModel)sm;
+        int bank = csm.getBankIndices()[band];
+        int pixelStride = csm.getPixelStride();
+        int index = buffer.getOffsets()[bank] +
+            csm.getOffset(x - raster.getSampleModelTranslateX() + len - 1,
+                          y - raster.getSampleModelTranslateY(),
+                          band);
+
+        if (type == DataBuffer.TYPE_BYTE) {
+            byte[] dst = ((DataBufferByte)buffer).getData(bank);
+            for (int j = len - 1; j >= 0; j--, k1 -= step,
+                     index -= pixelStride) {
+                int tmp = (data[k1] >> fracBit) + lS;
+                dst[index] =
+                    (byte)((tmp < min) ? min : ((tmp > max) ? max : tmp));
+            }
+        } else {
+            short[] dst = ((DataBufferUShort)buffer).getData(bank);
+            for (int j = len - 1; j >= 0; j--, k1 -= step,
+                     index -= pixelStride) {
+                int tmp = (data[k1] >> fracBit) + lS;
+                dst[index] =
+                    (short)((tmp < min) ? min : ((tmp > max) ? max : tmp));
+            }
+        }
+        return true;
+    }
+
+    /** Writes the 3 bands of an area of the current tile directly into
+     *  the data buffer of <code>raster</code>, doing the inverse component
+     *  transformation, level shift and clamping of all of them in a single
+     *  pass.  This is only done when the bands are the first 3 components,
+     *  in order, of a tile with a component transformation, and the
+     *  raster has a <code>ComponentSampleModel</code> with all the bands
+     *  in the same byte or unsigned short bank.
+     *
+     *  @param db The area to write, in the tile.  Only its
+     *            progressiveness is set on return.
+     *  @return <code>false</code> if this is not possible, in which case
+     *          nothing is written.
+     */
+    private boolean setPixelsDirect(WritableRaster raster, int x, int y,
+                                    DataBlkInt db) {
+        if (nComp != 3)
+            return false;
+        for (int i = 0; i < 3; i++)
+            if (channelMap[sourceBands[i]] != i)
+                return false;
+
+        SampleModel sm = raster.getSampleModel();
+        if (!(sm instanceof ComponentSampleModel))
+            return false;
+        DataBuffer buffer = raster.getDataBuffer();
+        int type = buffer.getDataType();
+        if (type != DataBuffer.TYPE_BYTE && type != DataBuffer.TYPE_USHORT)
+            return false;
+
+        ComponentSampleModel csm = (ComponentSampleModel)sm;
+        int[] banks = csm.getBankIndices();
+        int[] offsets = csm.getBandOffsets();
+        int bank = banks[destinationBands[0]];
+        int[] bOffsets = new int[3];
+        for (int i = 0; i < 3; i++) {
+            if (banks[destinationBands[i]] != bank)
+                return false;
+            bOffsets[i] = offsets[destinationBands[i]];
+        }
+
+        int scanw = csm.getScanlineStride();
+        int pixelStride = csm.getPixelStride();
+        int off = buffer.getOffsets()[bank] +
+            (y - raster.getSampleModelTranslateY()) * scanw +
+            (x - raster.getSampleModelTranslateX()) * pixelStride;
+        Object out = type == DataBuffer.TYPE_BYTE ?
+            (Object)((DataBufferByte)buffer).getData(bank) :
+            (Object)((DataBufferUShort)buffer).getData(bank);
+
+        return ictransf.getInterleavedData(db, out, off, scanw, pixelStride,
+                                           bOffsets, levelShift,
+                                           minValues, maxValues);
+    }
+
     public Raster getTile(int tileX, int tileY,
                           WritableRaster raster) throws IOException {
         Point nT = ictransf.getNumTiles(null);
@@ -215,7 +390,7 @@ public class J2KReadState {
             if (tileX >= nT.x || tileY >= nT.y)
                 throw new IllegalArgumentException(I18N.getString("J2KImageReader0"));
 
-            ictransf.setTile(tileX*tileStepX, tileY*tileStepY);
+            setTile(tileX*tileStepX, tileY*tileStepY);
 
             // The offset of the active tiles is the same for all components,
             // since we don't support different component dimensions.
@@ -264,67 +439,89 @@ public class J2KReadState {
             if (pixbuf == null || pixbuf.length < cTileWidth * numBands)
                 pixbuf = new int[cTileWidth * numBands];
             boolean prog = false;
+            boolean binary = ImageUtil.isBinary(sampleModel);
 
-            // Deliver in lines to reduce memory usage
-            for (int l=0; l < cTileHeight;l++) {
+            // Deliver in blocks of lines to reduce memory usage
+            for (int l0 = 0; l0 < cTileHeight; l0 += LINES_PER_BLOCK) {
                 if (reader.getAbortRequest())
                     break;
+                int nl = Math.min(LINES_PER_BLOCK, cTileHeight - l0);
+
+                if (!binary) {
+                    DataBlkInt db = dataBlocks[0];
+                    db.ulx = 0;
+                    db.uly = l0;
+                    db.w = cTileWidth;
+                    db.h = nl;
+                    if (setPixelsDirect(raster, tOffx, tOffy + l0, db)) {
+                        prog = prog || db.progressive;
+                        continue;
+                    }
+                }
 
-                // Request line data
+                // Request block data
                 for (int i = 0; i < numBands; i++) {
                     if (reader.getAbortRequest())
                         break;
                     DataBlkInt db = dataBlocks[i];
                     db.ulx = 0;
-                    db.uly = l;
+                    db.uly = l0;
                     db.w = cTileWidth;
-                    db.h = 1;
+                    db.h = nl;
                     ictransf.getInternCompData(db, channelMap[sourceBands[i]]);
                     prog = prog || db.progressive;
 
                     int[] data = db.data;
-                    int k1 = db.offset + cTileWidth - 1;
 
                     int fracBit = fracBits[i];
                     int lS = levelShift[i];
                     int min = minValues[i];
                     int max = maxValues[i];
 
-                    if (ImageUtil.isBinary(sampleModel)) {
-                        // Force min max to 0 and 1.
-                        min = 0;
-                        max = 1;
-                        if (bytebuf == null || bytebuf.length < cTileWidth * numBands)
-                            bytebuf = new byte[cTileWidth * numBands];
-                        for (int j = cTileWidth - 1;
-                             j >= 0; j--) {
-                            int tmp = (data[k1--] >> fracBit) + lS;
-                            bytebuf[j] =
-                                (byte)((tmp < min) ? min : 
-				       ((tmp > max) ? max : tmp));
-                        }
+                    for (int l = l0; l < l0 + nl; l++) {
+                        int k1 = db.offset + (l - l0) * db.scanw +
+                            cTileWidth - 1;
 
-                        ImageUtil.setUnpackedBinaryData(bytebuf,
-                                                        raster,
-                                                        new Rectangle(tOffx,
-                                                                      tOffy + l,
-                                                                      cTileWidth,
-                                                                      1));
-                    } else {
-
-                        for (int j = cTileWidth - 1;
-                             j >= 0; j--) {
-                            int tmp = (data[k1--] >> fracBit) + lS;
-                            pixbuf[j] = (tmp < min) ? min : 
-				((tmp > max) ? max : tmp);
-                        }
+                        if (binary) {
+                            // Force min max to 0 and 1.
+                            min = 0;
+                            max = 1;
+                            if (bytebuf == null || bytebuf.length < cTileWidth * numBands)
+                                bytebuf = new byte[cTileWidth * numBands];
+                            for (int j = cTileWidth - 1;
+                                 j >= 0; j--) {
+                                int tmp = (data[k1--] >> fracBit) + lS;
+                                bytebuf[j] =
+                                    (byte)((tmp < min) ? min :
+                                           ((tmp > max) ? max : tmp));
+                            }
+
+                            ImageUtil.setUnpackedBinaryData(bytebuf,
+                                                            raster,
+                                                            new Rectangle(tOffx,
+                                                                          tOffy + l,
+                                                                          cTileWidth,
+                                                                          1));
+                        } else if (!setSamplesDirect(raster, tOffx, tOffy + l,
+                                                     cTileWidth,
+                                                     destinationBands[i],
+                                                     data, k1, 1, fracBit,
+                                                     lS, min, max)) {
+
+                            for (int j = cTileWidth - 1;
+                                 j >= 0; j--) {
+                                int tmp = (data[k1--] >> fracBit) + lS;
+                                pixbuf[j] = (tmp < min) ? min :
+                                    ((tmp > max) ? max : tmp);
+                            }
 
-                        raster.setSamples(tOffx,
-                                          tOffy + l,
-                                          cTileWidth,
-                                          1,
-                                          destinationBands[i],
-                                          pixbuf);
+                            raster.setSamples(tOffx,
+                                              tOffy + l,
+                                              cTileWidth,
+                                              1,
+                                              destinationBands[i],
+                                              pixbuf);
+                        }
                     }
                 }
             }
@@ -374,6 +571,16 @@ public class J2KReadState {
     }
 
     public Raster readAsRaster() throws IOException {
+        WritableRaster raster = createRaster();
+        readSubsampledRaster(raster);
+        return raster;
+    }
+
+    /** Returns the raster to read the current region into: the one of the
+     *  destination image if any, otherwise a new one which also holds the
+     *  destination offset.
+     */
+    private WritableRaster createRaster() {
         BufferedImage image = j2krparam.getDestination();
         WritableRaster raster = null;
 
@@ -388,15 +595,246 @@ public class J2KReadState {
         } else
             raster = image.getWritableTile(0, 0);
 
-        readSubsampledRaster(raster);
         return raster;
     }
 
+    /** Reads several regions with this decoding chain, as
+     *  <code>readAsRaster</code> would for each of them.  The tiles are
+     *  read in order, each one once: the regions which lie close together
+     *  in a tile are all read from a single decoding of the area which
+     *  holds them, so that the code-blocks they share are only decoded
+     *  once.
+     *
+     *  @param params The parameters of each region.  They may only differ
+     *                from the ones this state was created with by the
+     *                source region, the subsampling and the destination.
+     *  @return The rasters read, in the order of <code>params</code>.
+     */
+    Raster[] readRasters(J2KImageReadParamJava[] params) throws IOException {
+        int n = params.length;
+        WritableRaster[] rasters = new WritableRaster[n];
+        int[][] bounds = new int[n][];
+        Rectangle[] ranges = new Rectangle[n];
+        Rectangle allTiles = null;
+        if (n == 0)
+            return rasters;
+
+        for (int i = 0; i < n; i++) {
+            setParam(params[i]);
+            rasters[i] = createRaster();
+            bounds[i] = getSourceBounds(rasters[i]);
+            ranges[i] = getTileRange(bounds[i]);
+            allTiles = allTiles == null ? ranges[i] : allTiles.union(ranges[i]);
+        }
+
+        for (int y = allTiles.y; y < allTiles.y + allTiles.height; y++) {
+            for (int x = allTiles.x; x < allTiles.x + allTiles.width; x++) {
+                if (reader.getAbortRequest())
+                    return rasters;
+
+                // The areas of the tile which the regions need, in the
+                // order of the tile lines
+                List<Integer> regions = new ArrayList<Integer>();
+                for (int i = 0; i < n; i++)
+                    if (ranges[i].contains(x, y))
+                        regions.add(Integer.valueOf(i));
+                if (regions.isEmpty())
+                    continue;
+
+                setTile(x*tileStepX, y*tileStepY);
+                final Rectangle[] areas = new Rectangle[n];
+                for (int k = 0; k < regions.size(); k++) {
+                    int i = regions.get(k).intValue();
+                    setParam(params[i]);
+                    int[] area = getTileArea(x, y, bounds[i]);
+                    areas[i] = new Rectangle(area[0], area[1],
+                                             area[2], area[3]);
+                }
+                Collections.sort(regions, new Comparator<Integer>() {
+                        public int compare(Integer o1, Integer o2) {
+                            Rectangle r1 = areas[o1.intValue()];
+                            Rectangle r2 = areas[o2.intValue()];
+                            return r1.y != r2.y ? r1.y - r2.y : r1.x - r2.x;
+                        }
+                    });
+
+                // Group the regions as long as the area which holds them
+                // is not much larger than theirs
+                List<Integer> group = new ArrayList<Integer>();
+                Rectangle groupArea = null;
+                long sum = 0;
+                for (int k = 0; k <= regions.size(); k++) {
+                    Rectangle area = null;
+                    if (k < regions.size())
+                        area = areas[regions.get(k).intValue()];
+                    if (area != null) {
+                        long size = (long)area.width * area.height;
+                        Rectangle union = groupArea == null ?
+                            area : groupArea.union(area);
+                        if (groupArea == null ||
+                            (long)union.width * union.height <=
+                            MAX_GROUP_SPREAD * (sum + size)) {
+                            group.add(regions.get(k));
+                            groupArea = union;
+                            sum += size;
+                            continue;
+                        }
+                    }
+
+                    // Decode the area of the group and read its regions
+                    if (decodedArea != null)
+                        setTile(x*tileStepX, y*tileStepY);
+                    setDecodedArea(x, y, groupArea);
+                    for (int j = 0; j < group.size(); j++) {
+                        int i = group.get(j).intValue();
+                        setParam(params[i]);
+                        readSubsampledRaster(rasters[i],
+                                             new Rectangle(x, y, 1, 1));
+                    }
+
+                    group.clear();
+                    if (area != null) {
+                        group.add(regions.get(k));
+                        groupArea = area;
+                        sum = (long)area.width * area.height;
+                    }
+                }
+            }
+        }
+
+        return rasters;
+    }
+
+    /** Sets the parameters of the region to read. */
+    private void setParam(J2KImageReadParamJava param) {
+        j2krparam = param;
+        setRegion(param);
+    }
+
+    /** Sets the region to read, and the subsampling and offsets of the
+     *  destination, from <code>param</code>.  The resolution level is also
+     *  taken from it, but must be the one the decoding chain was created
+     *  for.
+     */
+    private void setRegion(J2KImageReadParamJava param) {
+        this.width = hd.getImgWidth();
+        this.height = hd.getImgHeight();
+
+        Rectangle sourceRegion = param.getSourceRegion();
+        sourceOrigin = new Point();
+        sourceRegion =
+            new Rectangle(hd.getImgULX(), hd.getImgULY(),
+                          this.width, this.height);
+
+        // Get minimum number of resolution levels available across
+        // all tile-components.
+        int minResLevels = hd.getDecoderSpecs().dls.getMin();
+
+        // Set current resolution level.
+        this.resolution = param != null ?
+            param.getResolution() : minResLevels;
+        if(resolution < 0 || resolution > minResLevels) {
+            resolution = minResLevels;
+        }
+
+        // Convert source region to lower resolution level.
+        if(resolution != minResLevels || stepX != 1 || stepY != 1) {
+            sourceRegion =
+                J2KImageReader.getReducedRect(sourceRegion, minResLevels,
+                                              resolution, stepX, stepY);
+        }
+
+        destinationRegion = (Rectangle)sourceRegion.clone();
+
+        J2KImageReader.computeRegionsWrapper(param,
+                                             false,
+                                             this.width,
+                                             this.height,
+                                             param.getDestination(),
+                                             sourceRegion,
+                                             destinationRegion);
+
+        sourceOrigin = new Point(sourceRegion.x, sourceRegion.y);
+        scaleX = param.getSourceXSubsampling();
+        scaleY = param.getSourceYSubsampling();
+        xOffset = param.getSubsamplingXOffset();
+        yOffset = param.getSubsamplingYOffset();
+
+        this.width = destinationRegion.width;
+        this.height = destinationRegion.height;
+
+        Point tileOffset = hd.getTilingOrigin(null);
+
+        this.tileWidth = hd.getNomTileWidth();
+        this.tileHeight = hd.getNomTileHeight();
+
+        // Convert tile 0 to lower resolution level.
+        if(resolution != minResLevels || stepX != 1 || stepY != 1) {
+            Rectangle tileRect = new Rectangle(tileOffset);
+            tileRect.width = tileWidth;
+            tileRect.height = tileHeight;
+            tileRect =
+                J2KImageReader.getReducedRect(tileRect, minResLevels,
+                                              resolution, stepX, stepY);
+            tileOffset = tileRect.getLocation();
+            tileWidth = tileRect.width;
+            tileHeight = tileRect.height;
+        }
+
+        tileXOffset = tileOffset.x;
+        tileYOffset = tileOffset.y;
+
+
+        // Set the tile step sizes. These values are used because it
+        // is possible that tiles will be empty. In particular at lower
+        // resolution levels when subsampling is used this may be the
+        // case. This method of calculation will work at least for
+        // Profile-0 images.
+        if(tileWidth*(1 << (minResLevels - resolution))*stepX >
+           hd.getNomTileWidth()) {
+            tileStepX =
+                (tileWidth*(1 << (minResLevels - resolution))*stepX +
+                 hd.getNomTileWidth() - 1)/hd.getNomTileWidth();
+        } else {
+            tileStepX = 1;
+        }
+
+        if(tileHeight*(1 << (minResLevels - resolution))*stepY >
+           hd.getNomTileHeight()) {
+            tileStepY =
+                (tileHeight*(1 << (minResLevels - resolution))*stepY +
+                 hd.getNomTileHeight() - 1)/hd.getNomTileHeight();
+        } else {
+            tileStepY = 1;
+        }
+
+        noTransform = destinationRegion.equals(sourceRegion);
+    }
+
     private void initializeRead(int imageIndex, J2KImageReadParamJava param,
                                 J2KMetadata metadata) {
         try {
-            iis.mark();
-            in = new IISRandomAccessIO(iis);
+            MappedRandomAccessIO mapped =
+                reader != null ? reader.getMappedInput() : null;
+            if (mapped != null) {
+                // The input file is mapped: the stream is not used, and the
+                // mapping may be shared with other decoding chains.
+                in = mapped;
+                if (streamPosition0 < 0L)
+                    streamPosition0 = iis.getStreamPosition();
+                in.seek(streamPosition0);
+            } else if (param.getTileConcurrency() > 1) {
+                // The input is shared with other decoding chains: never move
+                // the stream position outside of the shared accessor.
+                in = new ConcurrentIISRandomAccessIO(iis);
+                if (streamPosition0 < 0L)
+                    streamPosition0 = in.getPos();
+                else
+                    in.seek(streamPosition0);
+            } else {
+                iis.mark();
+                in = new IISRandomAccessIO(iis);
+            }
 
             // **** File Format ****
             // If the codestream is wrapped in the jp2 fileformat, Read the
@@ -414,15 +852,6 @@ public class J2KReadState {
                 throw new RuntimeException(ioe);
             }
 
-            this.width = hd.getImgWidth();
-            this.height = hd.getImgHeight();
-
-            Rectangle sourceRegion = param.getSourceRegion();
-            sourceOrigin = new Point();
-            sourceRegion =
-                new Rectangle(hd.getImgULX(), hd.getImgULY(),
-                              this.width, this.height);
-
             // if the subsample rate for components are not consistent
             boolean compConsistent = true;
             stepX = hd.getCompSubsX(0);
@@ -432,90 +861,7 @@ public class J2KReadState {
                     throw new RuntimeException(I18N.getString("J2KReadState12"));
             }
 
-            // Get minimum number of resolution levels available across
-            // all tile-components.
-            int minResLevels = hd.getDecoderSpecs().dls.getMin();
-
-            // Set current resolution level.
-            this.resolution = param != null ?
-                param.getResolution() : minResLevels;
-            if(resolution < 0 || resolution > minResLevels) {
-                resolution = minResLevels;
-            }
-
-            // Convert source region to lower resolution level.
-            if(resolution != minResLevels || stepX != 1 || stepY != 1) {
-                sourceRegion =
-                    J2KImageReader.getReducedRect(sourceRegion, minResLevels,
-                                                  resolution, stepX, stepY);
-            }
-
-            destinationRegion = (Rectangle)sourceRegion.clone();
-
-            J2KImageReader.computeRegionsWrapper(param,
-                                                 false,
-                                                 this.width,
-                                                 this.height,
-                                                 param.getDestination(),
-                                                 sourceRegion,
-                                                 destinationRegion);
-
-            sourceOrigin = new Point(sourceRegion.x, sourceRegion.y);
-            scaleX = param.getSourceXSubsampling();
-            scaleY = param.getSourceYSubsampling();
-            xOffset = param.getSubsamplingXOffset();
-            yOffset = param.getSubsamplingYOffset();
-
-            this.width = destinationRegion.width;
-            this.height = destinationRegion.height;
-
-            Point tileOffset = hd.getTilingOrigin(null);
-
-            this.tileWidth = hd.getNomTileWidth();
-            this.tileHeight = hd.getNomTileHeight();
-
-            // Convert tile 0 to lower resolution level.
-            if(resolution != minResLevels || stepX != 1 || stepY != 1) {
-                Rectangle tileRect = new Rectangle(tileOffset);
-                tileRect.width = tileWidth;
-                tileRect.height = tileHeight;
-                tileRect =
-                    J2KImageReader.getReducedRect(tileRect, minResLevels,
-                                                  resolution, stepX, stepY);
-                tileOffset = tileRect.getLocation();
-                tileWidth = tileRect.width;
-                tileHeight = tileRect.height;
-            }
-
-            tileXOffset = tileOffset.x;
-            tileYOffset = tileOffset.y;
-
-
-            // Set the tile step sizes. These values are used because it
-            // is possible that tiles will be empty. In particular at lower
-            // resolution levels when subsampling is used this may be the
-            // case. This method of calculation will work at least for
-            // Profile-0 images.
-            if(tileWidth*(1 << (minResLevels - resolution))*stepX >
-               hd.getNomTileWidth()) {
-                tileStepX =
-                    (tileWidth*(1 << (minResLevels - resolution))*stepX +
-                     hd.getNomTileWidth() - 1)/hd.getNomTileWidth();
-            } else {
-                tileStepX = 1;
-            }
-
-            if(tileHeight*(1 << (minResLevels - resolution))*stepY >
-               hd.getNomTileHeight()) {
-                tileStepY =
-                    (tileHeight*(1 << (minResLevels - resolution))*stepY +
-                     hd.getNomTileHeight() - 1)/hd.getNomTileHeight();
-            } else {
-                tileStepY = 1;
-            }
-
-            if (!destinationRegion.equals(sourceRegion))
-                noTransform = false;
+            setRegion(param);
 
             // **** Header decoder ****
             // Instantiate header decoder and read main header
@@ -558,7 +904,8 @@ public class J2KReadState {
                 breader =
                     BitstreamReaderAgent.createInstance(in, hd,
                                                         j2krparam, decSpec,
-							logJJ2000Messages, hi);
+							logJJ2000Messages, hi,
+                                                        reader.getCodestreamIndex());
             } catch (IOException e) {
                 throw new RuntimeException(I18N.getString("J2KReadState3") + " " +
                           ((e.getMessage() != null) ?
@@ -600,7 +947,9 @@ public class J2KReadState {
             // **** Inverse wavelet transform ***
             try {
                 // full page inverse wavelet transform
-                invWT = InverseWT.createInstance(deq,decSpec);
+                invWT = InverseWT.createInstance(deq,decSpec,
+                                 j2krparam.getExecutorService(),
+                                 j2krparam.getLineBasedDecoding());
             } catch (IllegalArgumentException e) {
                 throw new RuntimeException(I18N.getString("J2KReadState8") + " " +
                               ((e.getMessage() != null) ?
@@ -675,7 +1024,8 @@ public class J2KReadState {
                 fracBits[i] = ictransf.getFixedPoint(sourceBands[i]);
             }
 
-            iis.reset();
+            if (in instanceof IISRandomAccessIO)
+                iis.reset();
         } catch (IllegalArgumentException e){
 	    throw new RuntimeException(e.getMessage(), e);
 	} catch (Error e) {
@@ -697,6 +1047,130 @@ public class J2KReadState {
     }
 
     private Raster readSubsampledRaster(WritableRaster raster) throws IOException {
+        return readSubsampledRaster(raster, null);
+    }
+
+    /** Returns the bounds, in the source at the decoded resolution level,
+     *  of the part of the current region which is read into
+     *  <code>raster</code>, as {first column, first line, last column,
+     *  last line}.
+     */
+    private int[] getSourceBounds(Raster raster) {
+        Rectangle destRect = raster.getBounds().intersection(destinationRegion);
+
+        int offx = destinationRegion.x;
+        int offy = destinationRegion.y;
+
+        int sourceSX = (destRect.x - offx) * scaleX + sourceOrigin.x;
+        int sourceSY = (destRect.y - offy) * scaleY + sourceOrigin.y;
+        int sourceEX = (destRect.width - 1)* scaleX + sourceSX;
+        int sourceEY = (destRect.height - 1) * scaleY + sourceSY;
+
+        return new int[] {sourceSX, sourceSY, sourceEX, sourceEY};
+    }
+
+    /** Returns the indexes of the tiles which hold the given bounds in the
+     *  source, as a rectangle of the tile grid.
+     */
+    private Rectangle getTileRange(int[] bounds) {
+        Point nT = ictransf.getNumTiles(null);
+
+        int startXTile = (bounds[0] - tileXOffset) / tileWidth;
+        int startYTile = (bounds[1] - tileYOffset) / tileHeight;
+        int endXTile = (bounds[2] - tileXOffset) / tileWidth;
+        int endYTile = (bounds[3] - tileYOffset) / tileHeight;
+
+        startXTile = clip(startXTile, 0, nT.x - 1);
+        startYTile = clip(startYTile, 0, nT.y - 1);
+        endXTile = clip(endXTile, 0, nT.x - 1);
+        endYTile = clip(endYTile, 0, nT.y - 1);
+
+        return new Rectangle(startXTile, startYTile,
+                             endXTile - startXTile + 1,
+                             endYTile - startYTile + 1);
+    }
+
+    /** Returns the area of the current tile, at index (x, y) of the tile
+     *  grid, which holds the given bounds in the source.  The area is
+     *  returned as {horizontal and vertical offsets in the tile-component,
+     *  width, height, first column and first line in the source}.
+     */
+    private int[] getTileArea(int x, int y, int[] bounds) {
+        int sourceSX = bounds[0];
+        int sourceSY = bounds[1];
+        int sourceEX = bounds[2];
+        int sourceEY = bounds[3];
+
+        int sx = hd.getCompSubsX(0);
+        int cTileWidth = (ictransf.getTileWidth() + sx - 1)/sx;
+        int sy = hd.getCompSubsY(0);
+        int cTileHeight = (ictransf.getTileHeight() + sy - 1)/sy;
+
+        // Offsets within the tile.
+        int tx = 0;
+        int ty = 0;
+
+        // The region for this tile
+        int startX = tileXOffset + x * tileWidth;
+        int startY = tileYOffset + y * tileHeight;
+
+        // sourceSX is guaranteed to be >= startX
+        if (sourceSX > startX) {
+            if(startX >= hd.getImgULX()) {
+                tx = sourceSX - startX; // Intra-tile offset.
+                cTileWidth -= tx;       // Reduce effective width.
+            }
+            startX = sourceSX;      // Absolute position.
+        }
+
+        // sourceSY is guaranteed to be >= startY
+        if (sourceSY > startY) {
+            if(startY >= hd.getImgULY()) {
+                ty = sourceSY - startY; // Intra-tile offset.
+                cTileHeight -= ty;      // Reduce effective width.
+            }
+            startY = sourceSY;      // Absolute position.
+        }
+
+        // Decrement dimensions if end position is within tile.
+        if (sourceEX < startX + cTileWidth - 1) {
+            cTileWidth += sourceEX - startX - cTileWidth + 1;
+        }
+        if (sourceEY < startY + cTileHeight - 1) {
+            cTileHeight += sourceEY - startY - cTileHeight + 1;
+        }
+
+        return new int[] {tx, ty, cTileWidth, cTileHeight, startX, startY};
+    }
+
+    /** Restricts the decoding of the current tile, at index (x, y) of the
+     *  tile grid, to an area of its tile-components.  Only the packets and
+     *  code-blocks needed for it are read and decoded.  The area is kept
+     *  until the tile changes, so that the regions which lie in it may be
+     *  read without decoding the tile again.
+     */
+    private void setDecodedArea(int x, int y, Rectangle area) {
+        // Unless the line-based transform is used, which does not restrict
+        // its reconstruction to the area, only the packets needed for it
+        // are read.
+        for (int i=0; i<sourceBands.length; i++) {
+            invWT.setDecodedArea(channelMap[sourceBands[i]],
+                                 area.x, area.y, area.width, area.height);
+            if (!j2krparam.getLineBasedDecoding())
+                breader.setDecodedArea(channelMap[sourceBands[i]],
+                                       area.x, area.y, area.width,
+                                       area.height);
+        }
+        decodedArea = area;
+        decodedTileX = x;
+        decodedTileY = y;
+    }
+
+    /** Reads the current region into <code>raster</code>, from the tiles
+     *  in <code>tiles</code> only if it is not <code>null</code>.
+     */
+    private Raster readSubsampledRaster(WritableRaster raster,
+                                        Rectangle tiles) throws IOException {
         if (raster == null)
             raster = Raster.createWritableRaster(
                 sampleModel.createCompatibleSampleModel(destinationRegion.x +
@@ -710,25 +1184,18 @@ public class J2KReadState {
         Point nT = ictransf.getNumTiles(null);
         int numBands = sourceBands.length;
 
-        Rectangle destRect = raster.getBounds().intersection(destinationRegion);
-
         int offx = destinationRegion.x;
         int offy = destinationRegion.y;
 
-        int sourceSX = (destRect.x - offx) * scaleX + sourceOrigin.x;
-        int sourceSY = (destRect.y - offy) * scaleY + sourceOrigin.y;
-        int sourceEX = (destRect.width - 1)* scaleX + sourceSX;
-        int sourceEY = (destRect.height - 1) * scaleY + sourceSY;
+        int[] bounds = getSourceBounds(raster);
+        Rectangle range = getTileRange(bounds);
+        if (tiles != null)
+            range = range.intersection(tiles);
 
-        int startXTile = (sourceSX - tileXOffset) / tileWidth;
-        int startYTile = (sourceSY - tileYOffset) / tileHeight;
-        int endXTile = (sourceEX - tileXOffset) / tileWidth;
-        int endYTile = (sourceEY - tileYOffset) / tileHeight;
-
-        startXTile = clip(startXTile, 0, nT.x - 1);
-        startYTile = clip(startYTile, 0, nT.y - 1);
-        endXTile = clip(endXTile, 0, nT.x - 1);
-        endYTile = clip(endYTile, 0, nT.y - 1);
+        int startXTile = range.x;
+        int startYTile = range.y;
+        int endXTile = range.x + range.width - 1;
+        int endYTile = range.y + range.height - 1;
 
         int totalXTiles = endXTile - startXTile + 1;
         int totalYTiles = endYTile - startYTile + 1;
@@ -747,46 +1214,20 @@ public class J2KReadState {
                 float initialFraction =
                     (x - startXTile + (y - startYTile)*totalXTiles)/totalTiles;
 
-		ictransf.setTile(x*tileStepX,y*tileStepY);
-
-                int sx = hd.getCompSubsX(0);
-                int cTileWidth = (ictransf.getTileWidth() + sx - 1)/sx;
-                int sy = hd.getCompSubsY(0);
-                int cTileHeight = (ictransf.getTileHeight() + sy - 1)/sy;
-
-                // Offsets within the tile.
-                int tx = 0;
-                int ty = 0;
-
-                // The region for this tile
-                int startX = tileXOffset + x * tileWidth;
-                int startY = tileYOffset + y * tileHeight;
-
-                // sourceSX is guaranteed to be >= startX
-                if (sourceSX > startX) {
-                    if(startX >= hd.getImgULX()) {
-                        tx = sourceSX - startX; // Intra-tile offset.
-                        cTileWidth -= tx;       // Reduce effective width.
-                    }
-                    startX = sourceSX;      // Absolute position.
-                }
-
-                // sourceSY is guaranteed to be >= startY
-                if (sourceSY > startY) {
-                    if(startY >= hd.getImgULY()) {
-                        ty = sourceSY - startY; // Intra-tile offset.
-                        cTileHeight -= ty;      // Reduce effective width.
-                    }
-                    startY = sourceSY;      // Absolute position.
-                }
-
-                // Decrement dimensions if end position is within tile.
-                if (sourceEX < startX + cTileWidth - 1) {
-                    cTileWidth += sourceEX - startX - cTileWidth + 1;
-                }
-                if (sourceEY < startY + cTileHeight - 1) {
-                    cTileHeight += sourceEY - startY - cTileHeight + 1;
-                }
+                // The tile may already be decoded in an area which holds
+                // the one to read
+                boolean decoded = decodedArea != null &&
+                    decodedTileX == x && decodedTileY == y;
+                if (!decoded)
+                    setTile(x*tileStepX,y*tileStepY);
+
+                int[] area = getTileArea(x, y, bounds);
+                int tx = area[0];
+                int ty = area[1];
+                int cTileWidth = area[2];
+                int cTileHeight = area[3];
+                int startX = area[4];
+                int startY = area[5];
 
                 // The start X in the destination
                 int x1 = (startX + scaleX - 1 - sourceOrigin.x) / scaleX;
@@ -802,6 +1243,16 @@ public class J2KReadState {
                 x1 += offx;
                 y1 += offy;
 
+                // Only decode the area of the tile to read
+                if (decoded &&
+                    !decodedArea.contains(tx, ty, cTileWidth, cTileHeight)) {
+                    setTile(x*tileStepX,y*tileStepY);
+                    decoded = false;
+                }
+                if (!decoded)
+                    setDecodedArea(x, y, new Rectangle(tx, ty, cTileWidth,
+                                                       cTileHeight));
+
                 // check to see if we have YCbCr data
                 boolean ycbcr = false;
 
@@ -821,6 +1272,11 @@ public class J2KReadState {
                   }
                 }
 
+                // The chrominance data is not read in the area, decode the
+                // whole tile
+                if (ycbcr)
+                    setTile(x*tileStepX,y*tileStepY);
+
                 // Deliver in lines to reduce memory usage
                 for (int l = ty, m = y1;
                      l < ty + cTileHeight;
@@ -907,8 +1363,20 @@ public class J2KReadState {
                       continue;
                     }
 
+                    // All bands at once if possible
+                    boolean direct = false;
+                    if (scaleX == 1 && !ImageUtil.isBinary(sampleModel)) {
+                        DataBlkInt db = dataBlocks[0];
+                        db.ulx = tx + x2 - lineLength + 1;
+                        db.uly = l;
+                        db.w = lineLength;
+                        db.h = 1;
+                        direct = setPixelsDirect(raster, x1, m, db);
+                        prog = prog || (direct && db.progressive);
+                    }
+
                     // Request line data
-                    for (int i = 0; i < numBands; i++) {
+                    for (int i = 0; !direct && i < numBands; i++) {
                         DataBlkInt db = dataBlocks[i];
                         db.ulx = tx;
                         db.uly = l;
@@ -944,7 +1412,10 @@ public class J2KReadState {
                                                                           m,
                                                                           lineLength,
                                                                           1));
-                        } else {
+                        } else if (!setSamplesDirect(raster, x1, m, lineLength,
+                                                     destinationBands[i],
+                                                     data, k1, scaleX,
+                                                     fracBit, lS, min, max)) {
                             for (int j = lineLength - 1; j >= 0; j--, k1-=scaleX) {
                                 int tmp = (data[k1] >> fracBit) + lS;
                                 pixbuf[j] = (tmp < min) ? min : 
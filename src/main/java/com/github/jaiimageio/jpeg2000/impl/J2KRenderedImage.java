@@ -49,6 +49,7 @@ import java.awt.Rectangle;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.LinkedList;
 
 import javax.imageio.stream.ImageInputStream;
 
@@ -62,6 +63,12 @@ public class J2KRenderedImage extends SimpleRenderedImage {
 
     private J2KReadState readState;
 
+    /** The decoding chains not currently decoding a tile. */
+    private LinkedList<J2KReadState> idleStates;
+
+    /** The number of decoding chains created so far. */
+    private int numStates;
+
     public J2KRenderedImage(ImageInputStream iis,
                             J2KImageReadParamJava param,
                             J2KMetadata metadata,
@@ -95,9 +102,91 @@ public class J2KRenderedImage extends SimpleRenderedImage {
 
         sampleModel = readState.getSampleModel();
         colorModel = readState.getColorModel();
+
+        idleStates = new LinkedList<J2KReadState>();
+        idleStates.add(readState);
+        numStates = 1;
+    }
+
+    public Raster getTile(int tileX, int tileY) {
+        if (readState.getTileConcurrency() <= 1)
+            return getTileSerial(tileX, tileY);
+
+        synchronized (this) {
+            if (currentTile != null &&
+                currentTileGrid.x == tileX &&
+                currentTileGrid.y == tileY)
+                return currentTile;
+        }
+
+        if (tileX >= getNumXTiles() || tileY >= getNumYTiles())
+            throw new IllegalArgumentException(I18N.getString("J2KReadState1"));
+
+        J2KReadState state = acquireState();
+        Raster tile;
+        try {
+            int x = tileXToX(tileX);
+            int y = tileYToY(tileY);
+            tile = Raster.createWritableRaster(sampleModel, new Point(x, y));
+            tile = state.getTile(tileX, tileY, (WritableRaster)tile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            releaseState(state);
+        }
+
+        synchronized (this) {
+            currentTile = tile;
+            currentTileGrid = new Point(tileX, tileY);
+        }
+
+        return tile;
+    }
+
+    /** Returns an idle decoding chain, creating a new one while fewer than
+     *  <code>tileConcurrency</code> exist, or waiting for one to be released
+     *  otherwise.
+     */
+    private J2KReadState acquireState() {
+        synchronized (idleStates) {
+            while (idleStates.isEmpty()) {
+                if (numStates < readState.getTileConcurrency()) {
+                    numStates++;
+                    break;
+                }
+                try {
+                    idleStates.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            if (!idleStates.isEmpty())
+                return idleStates.removeFirst();
+        }
+
+        // Parse the headers outside of the lock so that the other chains
+        // keep decoding meanwhile.
+        try {
+            return new J2KReadState(readState);
+        } catch (RuntimeException e) {
+            synchronized (idleStates) {
+                numStates--;
+                idleStates.notify();
+            }
+            throw e;
+        }
+    }
+
+    /** Makes <code>state</code> available to other threads again. */
+    private void releaseState(J2KReadState state) {
+        synchronized (idleStates) {
+            idleStates.addLast(state);
+            idleStates.notify();
+        }
     }
 
-    public synchronized Raster getTile(int tileX, int tileY) {
+    private synchronized Raster getTileSerial(int tileX, int tileY) {
         if (currentTile != null &&
             currentTileGrid.x == tileX &&
             currentTileGrid.y == tileY)
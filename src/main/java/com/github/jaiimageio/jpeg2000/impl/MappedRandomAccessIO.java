@@ -0,0 +1,340 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import jj2000.j2k.io.ByteBufferIO;
+import jj2000.j2k.io.EndianType;
+import jj2000.j2k.io.RandomAccessIO;
+
+/**
+ * A read-only <code>RandomAccessIO</code> over a file which is mapped in
+ * memory, so that reading a byte is an access to a buffer instead of a call
+ * to the underlying stream.
+ *
+ * <p>The file is mapped in windows of fixed length, so that files larger
+ * than a single mapping can be read. The windows are mapped when first
+ * accessed and are shared by all the instances created with the copy
+ * constructor, while each instance keeps its own position. Several
+ * instances may thus be used by decoding chains running in different
+ * threads. The positions are the ones in the file.</p>
+ *
+ * <p>Views of the data are given without copying it, as long as they do
+ * not span two windows.</p>
+ */
+public class MappedRandomAccessIO implements RandomAccessIO, ByteBufferIO {
+
+    /** The length of the mapped windows */
+    private static final int WINDOW_LEN = 1<<26;
+
+    /** The channel of the mapped file */
+    private final FileChannel channel;
+
+    /** The length of the file */
+    private final long length;
+
+    /** The mapped windows, null if not yet mapped, shared by all the
+     *  instances over the same file and also used as the lock to map them */
+    private final MappedByteBuffer[] windows;
+
+    /** The view of this instance on the current window, null if none */
+    private ByteBuffer buf;
+
+    /** The file position of the first byte of the current window */
+    private long bufPos;
+
+    /** The current position, when there is no current window */
+    private long pos;
+
+    /**
+     * Creates a <code>RandomAccessIO</code> instance over the file of the
+     * supplied channel. The initial position is 0. The channel is not
+     * closed by this class.
+     *
+     * @param channel The channel of the file to read.
+     */
+    public MappedRandomAccessIO(FileChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel == null!");
+        }
+        this.channel = channel;
+        this.length = channel.size();
+        this.windows =
+            new MappedByteBuffer[(int)((length+WINDOW_LEN-1)/WINDOW_LEN)];
+    }
+
+    /**
+     * Creates a new instance which shares the mapped windows of
+     * <code>other</code>. The initial position is 0.
+     *
+     * @param other The instance whose windows are to be shared.
+     */
+    public MappedRandomAccessIO(MappedRandomAccessIO other) {
+        this.channel = other.channel;
+        this.length = other.length;
+        this.windows = other.windows;
+    }
+
+    /**
+     * Makes the window containing a position the current one, mapping it if
+     * needed, and moves to the position.
+     *
+     * @param p The position to move to.
+     *
+     * @return False if the position is at or beyond the end of the file,
+     * in which case there is no current window.
+     */
+    private boolean select(long p) throws IOException {
+        if (p < 0 || p >= length) {
+            buf = null;
+            pos = p;
+            return false;
+        }
+        int w = (int)(p/WINDOW_LEN);
+        buf = window(w).duplicate();
+        bufPos = (long)w*WINDOW_LEN;
+        buf.position((int)(p-bufPos));
+        return true;
+    }
+
+    /**
+     * Returns a window, mapping it if needed.
+     *
+     * @param w The index of the window.
+     */
+    private MappedByteBuffer window(int w) throws IOException {
+        synchronized (windows) {
+            MappedByteBuffer win = windows[w];
+            if (win == null) {
+                long start = (long)w*WINDOW_LEN;
+                win = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                  Math.min(WINDOW_LEN, length-start));
+                windows[w] = win;
+            }
+            return win;
+        }
+    }
+
+    /**
+     * Returns a view of some data of the file, without copying it. The view
+     * is only available if the data is in a single window.
+     *
+     * @param off The position of the first byte to view.
+     *
+     * @param len The number of bytes to view.
+     *
+     * @return The view of the data, or null if it spans two windows or is
+     * not in the file.
+     */
+    public ByteBuffer getByteBuffer(long off, int len) throws IOException {
+        if (off < 0 || len < 0 || off+len > length) {
+            return null;
+        }
+        int w = (int)(off/WINDOW_LEN);
+        int start = (int)(off-(long)w*WINDOW_LEN);
+        ByteBuffer win = window(w);
+        if (start+len > win.capacity()) {
+            return null;
+        }
+        ByteBuffer view = win.duplicate();
+        view.position(start);
+        view.limit(start+len);
+        return view.slice();
+    }
+
+    /**
+     * Drops the mapped windows shared by this instance and the ones created
+     * from it with the copy constructor, so that they can be garbage
+     * collected once no view of them is referenced anymore. There is no
+     * portable way to unmap them explicitly. The instances sharing the
+     * windows map them again if they are read afterwards, which fails if the
+     * channel has been closed.
+     */
+    public void release() {
+        synchronized (windows) {
+            Arrays.fill(windows, null);
+        }
+        if (buf != null) {
+            pos = bufPos+buf.position();
+            buf = null;
+        }
+    }
+
+    /**
+     * A null operation as the channel is owned by the caller.
+     */
+    public void close() throws IOException {
+        // Intentionally empty.
+    }
+
+    public long getPos() throws IOException {
+        return buf != null ? bufPos+buf.position() : pos;
+    }
+
+    public void seek(long off) throws IOException {
+        if (buf != null && off >= bufPos && off-bufPos <= buf.limit()) {
+            buf.position((int)(off-bufPos));
+        } else {
+            buf = null;
+            pos = off;
+        }
+    }
+
+    public long length() throws IOException {
+        return length;
+    }
+
+    public int read() throws IOException {
+        if ((buf == null || !buf.hasRemaining()) && !select(getPos())) {
+            return -1;
+        }
+        return buf.get() & 0xFF;
+    }
+
+    public void readFully(byte b[], int off, int n) throws IOException {
+        while (n > 0) {
+            if ((buf == null || !buf.hasRemaining()) && !select(getPos())) {
+                throw new EOFException();
+            }
+            int len = Math.min(buf.remaining(), n);
+            buf.get(b, off, len);
+            off += len;
+            n -= len;
+        }
+    }
+
+    /**
+     * Returns the byte ordering, which is always big-endian as in the
+     * codestream.
+     */
+    public int getByteOrdering() {
+        return EndianType.BIG_ENDIAN;
+    }
+
+    public byte readByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return (byte)b;
+    }
+
+    public int readUnsignedByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    public short readShort() throws IOException {
+        return (short)readUnsignedShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        if (buf != null && buf.remaining() >= 2) {
+            return buf.getShort() & 0xFFFF;
+        }
+        // Across windows
+        int b1 = readUnsignedByte();
+        int b2 = readUnsignedByte();
+        return (b1 << 8) | b2;
+    }
+
+    public int readInt() throws IOException {
+        if (buf != null && buf.remaining() >= 4) {
+            return buf.getInt();
+        }
+        // Across windows
+        int s1 = readUnsignedShort();
+        int s2 = readUnsignedShort();
+        return (s1 << 16) | s2;
+    }
+
+    public long readUnsignedInt() throws IOException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    public long readLong() throws IOException {
+        long i1 = readUnsignedInt();
+        long i2 = readUnsignedInt();
+        return (i1 << 32) | i2;
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int skipBytes(int n) throws IOException {
+        long p = getPos();
+        if (p + n > length) {
+            n = (int)(length - p);
+        }
+        seek(p + n);
+        return n;
+    }
+
+    /**
+     * A null operation as writing is not supported.
+     */
+    public void flush() {
+        // Intentionally empty.
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void write(int b) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeByte(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeShort(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeInt(int v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeLong(long v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeFloat(float v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+
+    /**
+     * Throws an <code>IOException</code> as writing is not supported.
+     */
+    public void writeDouble(double v) throws IOException {
+        throw new IOException("Writing is not supported!");
+    }
+}
@@ -212,7 +212,7 @@ public class HeaderInfo implements Markers,ProgressionType,FilterTypes,
     public class SOT {
         public int lsot;
         public int isot;
-        public int psot;
+        public long psot;
         public int tpsot;
         public int tnsot;
 
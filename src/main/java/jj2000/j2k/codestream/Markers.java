@@ -170,6 +170,12 @@ public interface Markers {
     /** Maximum length of PPM marker segment */
     public final static int MAX_LPPM = 65535;
 
+    /** Maximum length of TLM marker segment */
+    public final static int MAX_LTLM = 65535;
+
+    /** Maximum length of PLT marker segment */
+    public final static int MAX_LPLT = 65535;
+
 
     // ----> In bit stream markers and marker segments <----
 
@@ -202,10 +202,10 @@ public abstract class BitstreamReaderAgent implements CodedCBlkDataSrcDec {
     protected final HeaderDecoder hd;
 
     /** Number of bytes targeted to be read */
-    protected int tnbytes;
+    protected long tnbytes;
 
     /** Actual number of read bytes */
-    protected int anbytes;
+    protected long anbytes;
 
     /** Target decoding rate in bpp */
     protected float trate;
@@ -674,6 +674,29 @@ public abstract class BitstreamReaderAgent implements CodedCBlkDataSrcDec {
      * */
     public abstract void nextTile();
 
+    /**
+     * Restricts the decoding of the specified component, in the current
+     * tile, to the given area, so that the data which is not needed to
+     * reconstruct it may not be read. The area is reset to the whole
+     * tile-component when the tile changes.
+     *
+     * <P>This implementation does nothing, all the data of the tile is read.
+     *
+     * @param c The index of the component.
+     *
+     * @param ulx The horizontal coordinate of the upper-left corner of the
+     * area, in the tile-component at the decoded resolution level.
+     *
+     * @param uly The vertical coordinate of the upper-left corner of the
+     * area, in the tile-component at the decoded resolution level.
+     *
+     * @param w The width of the area.
+     *
+     * @param h The height of the area.
+     * */
+    public void setDecodedArea(int c,int ulx,int uly,int w,int h) {
+    }
+
     /**
      * Returns the indexes of the current tile. These are the horizontal and
      * vertical indexes of the current tile.
@@ -842,7 +865,48 @@ public abstract class BitstreamReaderAgent implements CodedCBlkDataSrcDec {
             throw new IllegalArgumentException("Invalid header length");
         }
 */
-        return new FileBitstreamReaderAgent(hd,in,decSpec,j2krparam,cdstrInfo,hi);
+        return createInstance(in,hd,j2krparam,decSpec,cdstrInfo,hi,null);
+    }
+
+    /**
+     * Creates a bit stream reader of the correct type that works on the
+     * provided RandomAccessIO, with the special parameters from the parameter
+     * list, and that uses the given codestream index to avoid reading again
+     * the tile-part and packet headers already read from the same input.
+     *
+     * @param in The RandomAccessIO source from which to read the bit stream.
+     *
+     * @param hd Header of the codestream.
+     *
+     * @param j2krparam The parameters applicable to the
+     * bit stream read (other parameters may also be present).
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param cdstrInfo Whether or not to print information found in
+     * codestream. 
+     *
+     * @param hi Reference to the HeaderInfo instance.
+     *
+     * @param index The index of the codestream, or null if none is used.
+     *
+     * @exception IOException If an I/O error occurs while reading initial
+     * data from the bit stream.
+     * @exception IllegalArgumentException If an unrecognised bit stream
+     * reader option is present.
+     *
+     * @see CodestreamIndex
+     * */
+    public static BitstreamReaderAgent createInstance(RandomAccessIO in,
+                                                      HeaderDecoder hd,
+                                                      J2KImageReadParamJava j2krparam,
+                                                      DecoderSpecs decSpec,
+                                                      boolean cdstrInfo,
+                                                      HeaderInfo hi,
+                                                      CodestreamIndex index)
+        throws IOException {
+        return new FileBitstreamReaderAgent(hd,in,decSpec,j2krparam,cdstrInfo,
+                                            hi,index);
     }
 
 
@@ -1052,7 +1116,7 @@ public abstract class BitstreamReaderAgent implements CodedCBlkDataSrcDec {
      *
      * @return Target decoding rate in bytes.
      * */
-    public int getTargetNbytes(){
+    public long getTargetNbytes(){
         return tnbytes;
     }
 
@@ -1061,7 +1125,7 @@ public abstract class BitstreamReaderAgent implements CodedCBlkDataSrcDec {
      *
      * @return Actual decoding rate in bytes.
      * */
-    public int getActualNbytes(){
+    public long getActualNbytes(){
         return anbytes;
     }
 
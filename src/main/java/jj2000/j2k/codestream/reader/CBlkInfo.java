@@ -77,7 +77,7 @@ public class CBlkInfo{
     public int[] len;
 
     /** Offset of each piece of code-block's codewords in the file */
-    public int[] off;
+    public long[] off;
 
     /** The number of truncation point for each layer */
     public int[] ntp;
@@ -113,7 +113,7 @@ public class CBlkInfo{
         this.uly = uly;
         this.w = w;
         this.h = h;
-        off = new int[nl];
+        off = new long[nl];
         len = new int[nl];
         ntp = new int[nl];
         segLen = new int[nl][];
@@ -0,0 +1,245 @@
+/*
+ * $RCSfile: CodestreamIndex.java,v $
+ *
+ * Class:                   CodestreamIndex
+ *
+ * Description:             Locations of tile-parts and code-blocks of a codestream
+ */
+
+package jj2000.j2k.codestream.reader;
+
+/**
+ * This class keeps the locations found by a FileBitstreamReaderAgent while
+ * reading a codestream, so that other agents reading the same codestream
+ * later on do not need to find them again. It records the position of the
+ * SOT marker of every tile-part and, for each tile, the code-block
+ * information (offsets and lengths of the code-block segments) obtained by
+ * decoding its packet headers.
+ *
+ * <p>The tile-part positions are only made available once every tile-part
+ * of the codestream has been read, in which case they are used in the same
+ * way as the ones found in a TLM marker segment: the tile-part headers of a
+ * tile are read directly, without reading the ones of the previous tiles.
+ * The code-block information of a tile is available as soon as its packet
+ * headers have been decoded once and is then shared, read-only, by all the
+ * agents using this index.</p>
+ *
+ * <p>An index is only valid for one codestream and must be cleared when the
+ * input changes. All methods are synchronized so that an index may be
+ * shared by agents decoding tiles concurrently.</p>
+ *
+ * @see FileBitstreamReaderAgent
+ * */
+public class CodestreamIndex {
+
+    /** The offset of the codestream in the input, -1 if not yet known */
+    private long cdstreamStart = -1;
+
+    /** The number of tiles in the codestream */
+    private int nt;
+
+    /** The positions of the tile-parts found so far for each tile */
+    private long[][] tilePartPos;
+
+    /** The number of tile-parts found so far for each tile */
+    private int[] nTileParts;
+
+    /** Whether or not the positions of all the tile-parts are known */
+    private boolean complete;
+
+    /** The code-block information of each tile, null if not yet known */
+    private CBlkInfo[][][][][][] cbI;
+
+    /** The precincts whose packets have been read in each tile, null if
+     * they have all been read */
+    private boolean[][][][] precRead;
+
+    /** The lengths of the packets of each tile, null if not known */
+    private int[][] pktLen;
+
+    /**
+     * Prepares this index for the codestream starting at the given offset
+     * and containing the given number of tiles. If the index was built for
+     * another codestream it is cleared.
+     *
+     * @param cdstreamStart The offset of the codestream in the input.
+     *
+     * @param nt The number of tiles in the codestream.
+     * */
+    public synchronized void init(long cdstreamStart,int nt) {
+        if(this.cdstreamStart==cdstreamStart && this.nt==nt) {
+            return;
+        }
+        this.cdstreamStart = cdstreamStart;
+        this.nt = nt;
+        tilePartPos = new long[nt][];
+        nTileParts = new int[nt];
+        complete = false;
+        cbI = new CBlkInfo[nt][][][][][];
+        precRead = new boolean[nt][][][];
+        pktLen = new int[nt][];
+    }
+
+    /**
+     * Clears this index.
+     * */
+    public synchronized void clear() {
+        cdstreamStart = -1;
+        nt = 0;
+        tilePartPos = null;
+        nTileParts = null;
+        complete = false;
+        cbI = null;
+        precRead = null;
+        pktLen = null;
+    }
+
+    /**
+     * Records the position of the SOT marker of a tile-part. This has no
+     * effect once the positions of all the tile-parts are known.
+     *
+     * @param t The index of the tile.
+     *
+     * @param tp The index of the tile-part in the tile.
+     *
+     * @param pos The position of the SOT marker of the tile-part.
+     * */
+    public synchronized void addTilePart(int t,int tp,long pos) {
+        if(complete || tilePartPos==null || tp!=nTileParts[t]) {
+            return;
+        }
+        long[] tpPos = tilePartPos[t];
+        if(tpPos==null || tpPos.length==tp) {
+            tpPos = new long[tp+4];
+            if(tp>0) {
+                System.arraycopy(tilePartPos[t],0,tpPos,0,tp);
+            }
+            tilePartPos[t] = tpPos;
+        }
+        tpPos[tp] = pos;
+        nTileParts[t]++;
+    }
+
+    /**
+     * Signals that every tile-part of the codestream has been read, so that
+     * the recorded positions can be used by other agents.
+     * */
+    public synchronized void setComplete() {
+        if(tilePartPos==null) {
+            return;
+        }
+        for(int t=0; t<nt; t++) {
+            if(nTileParts[t]==0) {
+                return;
+            }
+        }
+        complete = true;
+    }
+
+    /**
+     * Returns the positions of the tile-parts of each tile, as would be
+     * found in a TLM marker segment, or null if they are not all known.
+     *
+     * @return The positions of the tile-parts indexed by tile and
+     * tile-part, or null.
+     * */
+    public synchronized long[][] getTilePartPositions() {
+        if(!complete) {
+            return null;
+        }
+        long[][] pos = new long[nt][];
+        for(int t=0; t<nt; t++) {
+            pos[t] = new long[nTileParts[t]];
+            System.arraycopy(tilePartPos[t],0,pos[t],0,nTileParts[t]);
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the code-block information of a tile, or null if its packet
+     * headers have not been decoded yet. If only some of them have been
+     * decoded (see getReadPrecincts()), the code-blocks of the other
+     * precincts are missing. The returned array must not be modified.
+     *
+     * @param t The index of the tile.
+     *
+     * @return The code-block information of the tile, or null.
+     * */
+    public synchronized CBlkInfo[][][][][] getCBlkInfo(int t) {
+        return (cbI!=null) ? cbI[t] : null;
+    }
+
+    /**
+     * Records the code-block information of a tile. The array must not be
+     * modified afterwards.
+     *
+     * @param t The index of the tile.
+     *
+     * @param tcbI The code-block information of the tile.
+     * */
+    public synchronized void setCBlkInfo(int t,CBlkInfo[][][][][] tcbI) {
+        setCBlkInfo(t,tcbI,null);
+    }
+
+    /**
+     * Records the code-block information of a tile, found by decoding the
+     * packet headers of some of its precincts only. The arrays must not be
+     * modified afterwards.
+     *
+     * @param t The index of the tile.
+     *
+     * @param tcbI The code-block information of the tile.
+     *
+     * @param read Whether or not the packets of each precinct have been
+     * read, indexed by component, resolution level and precinct, or null if
+     * they have all been read.
+     * */
+    public synchronized void setCBlkInfo(int t,CBlkInfo[][][][][] tcbI,
+                                         boolean[][][] read) {
+        if(cbI!=null) {
+            cbI[t] = tcbI;
+            precRead[t] = read;
+        }
+    }
+
+    /**
+     * Returns the precincts of a tile whose packets have been read to find
+     * its code-block information (see getCBlkInfo()).
+     *
+     * @param t The index of the tile.
+     *
+     * @return Whether or not the packets of each precinct have been read,
+     * indexed by component, resolution level and precinct, or null if they
+     * have all been read or if the code-block information is not known.
+     * */
+    public synchronized boolean[][][] getReadPrecincts(int t) {
+        return (precRead!=null) ? precRead[t] : null;
+    }
+
+    /**
+     * Returns the lengths of the packets of a tile, as signalled by the PLT
+     * or PLM marker segments. The returned array must not be modified.
+     *
+     * @param t The index of the tile.
+     *
+     * @return The lengths of the packets, in the order of the codestream, or
+     * null if they are not known.
+     * */
+    public synchronized int[] getPacketLengths(int t) {
+        return (pktLen!=null) ? pktLen[t] : null;
+    }
+
+    /**
+     * Records the lengths of the packets of a tile. The array must not be
+     * modified afterwards.
+     *
+     * @param t The index of the tile.
+     *
+     * @param len The lengths of the packets, in the order of the codestream.
+     * */
+    public synchronized void setPacketLengths(int t,int[] len) {
+        if(pktLen!=null) {
+            pktLen[t] = len;
+        }
+    }
+}
@@ -47,6 +47,7 @@ import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Vector;
 
 import javax.imageio.stream.ImageInputStream;
@@ -54,7 +55,7 @@ import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import jj2000.j2k.JJ2KExceptionHandler;
 import jj2000.j2k.NoNextElementException;
-import jj2000.j2k.NotImplementedError;
+import jj2000.j2k.codestream.CBlkCoordInfo;
 import jj2000.j2k.codestream.CorruptedCodestreamException;
 import jj2000.j2k.codestream.HeaderInfo;
 import jj2000.j2k.codestream.Markers;
@@ -63,12 +64,14 @@ import jj2000.j2k.codestream.ProgressionType;
 import jj2000.j2k.decoder.DecoderSpecs;
 import jj2000.j2k.entropy.StdEntropyCoderOptions;
 import jj2000.j2k.entropy.decoder.DecLyrdCBlk;
+import jj2000.j2k.io.ByteBufferIO;
 import jj2000.j2k.io.RandomAccessIO;
 import jj2000.j2k.quantization.dequantizer.StdDequantizerParams;
 import jj2000.j2k.util.ArrayUtil;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.MathUtil;
 import jj2000.j2k.util.MsgLogger;
+import jj2000.j2k.wavelet.Subband;
 import jj2000.j2k.wavelet.synthesis.SubbandSyn;
 
 import com.github.jaiimageio.jpeg2000.impl.J2KImageReadParamJava;
@@ -109,7 +112,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     private int nt;
 
     /** Offset of the first packet in each tile-part in each tile */
-    private int[][] firstPackOff;
+    private long[][] firstPackOff;
 
     /**
      * Returns the number of tile-part found for a given tile
@@ -127,7 +130,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     /** Number of bytes allocated to each tile. In parsing mode, this number
      * is related to the tile length in the codestream whereas in truncation
      * mode all the rate is affected to the first tiles. */
-    private int[] nBytes;
+    private long[] nBytes;
 
     /** Whether or not to print information found in codestream */
     private boolean printInfo = false;
@@ -138,13 +141,13 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
      * codestream is read several times (for instance when decoding an R,G,B
      * image to three output files)
      * */
-    private int[] baknBytes;
+    private long[] baknBytes;
 
     /** Length of each tile-part (written in Psot) */
-    private int[][] tilePartLen;
+    private long[][] tilePartLen;
 
     /** Total length of each tile */
-    private int[] totTileLen;
+    private long[] totTileLen;
 
     /** Total length of tiles' header */
     private int[] totTileHeadLen;
@@ -191,6 +194,58 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     /** The number of the tile-part in the codestream */
     private int[][] tilePartNum;
 
+    /** The lengths of the packets of each tile-part, as signalled by the PLT
+     * or PLM marker segments, or null if they are not signalled */
+    private int[][][] tilePartPktLen;
+
+    /** The positions of all the tile-parts, in increasing order, if they
+     * are known before reading the tile-part headers */
+    private long[] sortedTilePartPos;
+
+    /** The lengths of the packets of the current tile, in the order of the
+     * codestream, if they are used to skip the packets which are not
+     * needed. Null otherwise. */
+    private int[] pktLen;
+
+    /** The index of the next packet to read in the current tile */
+    private int curPkt;
+
+    /** Whether or not the packets of each precinct of the current tile have
+     * been read, if packets may be skipped. Null otherwise. */
+    private boolean[][][] precRead;
+
+    /** The code-block information of the current tile found by a previous
+     * reading of the codestream which skipped some packets, or null */
+    private CBlkInfo[][][][][] idxCbI;
+
+    /** The precincts read by the previous reading which found 'idxCbI' */
+    private boolean[][][] idxPrecRead;
+
+    /** Whether or not the packets of the current tile have been read */
+    private boolean tilePktsRead;
+
+    /** The highest resolution level of the packets to read in the current
+     * tile, when the packets which follow the ones of this level in the
+     * codestream are all at higher levels and are not needed. The reading
+     * of the tile then stops before them. Integer.MAX_VALUE if all the
+     * packets are read. */
+    private int stopRes;
+
+    /** Whether or not the reading of the current tile stopped before some
+     * packets (see 'stopRes') */
+    private boolean pktsLeft;
+
+    /** The area to decode in each component of the current tile, as
+     * {ulx,uly,w,h}, or null for the whole tile-component (see
+     * setDecodedArea()) */
+    private int[][] areas;
+
+    /** The code-blocks needed to decode the areas of the current tile, for
+     * each component, resolution level and subband, as {first line, last
+     * line, first column, last column} of code-blocks, or null if no
+     * code-block is needed */
+    private int[][][][] cbRanges;
+
     /** Whether or not a EOC marker has been found instead of a SOT */
     private boolean isEOCFound = false;
 
@@ -198,6 +253,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
      * segments) */
     private HeaderInfo hi;
 
+    /** The index where the tile-part positions and code-block information
+     * of the codestream are kept between successive readings, null if not
+     * used */
+    private CodestreamIndex index;
+
     /** Array containing info. for all the code-blocks:<br>
      * - 1st dim: component index.<br>
      * - 2nd dim: resolution level index.<br>
@@ -208,6 +268,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
     /** Gets the reference to the CBlkInfo array */
     public CBlkInfo[][][][][] getCBlkInfo() {
+        if(!tilePktsRead) {
+            readCurTilePkts();
+        }
         return cbI;
     }
 
@@ -240,6 +303,41 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                     J2KImageReadParamJava j2krparam,
                                     boolean cdstrInfo,HeaderInfo hi)
         throws IOException {
+        this(hd,ehs,decSpec,j2krparam,cdstrInfo,hi,null);
+    }
+
+    /**
+     * Reads all tiles headers and keep offset of their first packet, using
+     * and completing the given codestream index. Finally it calls the rate
+     * allocation method.
+     *
+     * <p>The index is only used when the whole codestream is decoded
+     * (i.e. no decoding rate is specified) and no PPM marker segment is
+     * present in the main header.</p>
+     *
+     * @param hd HeaderDecoder of the codestream.
+     *
+     * @param ehs The input stream where to read bit-stream.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param j2krparam The J2KImageReadParam instance created from the
+     * command-line arguments.
+     *
+     * @param cdstrInfo Whether or not to print information found in
+     * codestream.
+     *
+     * @param index The index of the codestream, shared with the previous
+     * readings of the same input. If null no index is used.
+     *
+     * @see #allocateRate
+     * */
+    public FileBitstreamReaderAgent(HeaderDecoder hd,RandomAccessIO ehs,
+                                    DecoderSpecs decSpec,
+                                    J2KImageReadParamJava j2krparam,
+                                    boolean cdstrInfo,HeaderInfo hi,
+                                    CodestreamIndex index)
+        throws IOException {
         super(hd,decSpec);
 
         this.j2krparam = j2krparam;
@@ -255,9 +353,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         // Get decoding rate
         if (j2krparam.getDecodingRate() == Double.MAX_VALUE)
-            tnbytes = Integer.MAX_VALUE;
+            tnbytes = Long.MAX_VALUE;
         else
-            tnbytes = (int)(j2krparam.getDecodingRate() * hd.getMaxCompImgWidth() *
+            tnbytes = (long)(j2krparam.getDecodingRate() * hd.getMaxCompImgWidth() *
                         hd.getMaxCompImgHeight()) / 8;
         //isTruncMode = !j2krparam.getParsing();
         isTruncMode = true;
@@ -280,15 +378,17 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         tileParts = new int[nt];
         totTileParts = new int[nt];
-        totTileLen = new int[nt];
-	tilePartLen = new int[nt][];
+        totTileLen = new long[nt];
+	tilePartLen = new long[nt][];
         tilePartNum = new int[nt][];
-        firstPackOff = new int[nt][];
+        firstPackOff = new long[nt][];
         tilePartsRead = new int[nt];
         totTileHeadLen = new int[nt];
 	tilePartHeadLen = new int[nt][];
-	nBytes = new int[nt];
-        baknBytes = new int[nt];
+        tilePartPktLen = new int[nt][][];
+        areas = new int[nc][];
+	nBytes = new long[nt];
+        baknBytes = new long[nt];
         hd.nTileParts = new int[nt];
 
 
@@ -296,7 +396,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         // Keeps main header's length, takes file format overhead into account
         cdstreamStart = hd.mainHeadOff; // Codestream offset in the file
-        mainHeadLen = in.getPos() - cdstreamStart;
+        mainHeadLen = (int)(in.getPos() - cdstreamStart);
         headLen = mainHeadLen;
 
         // If ncb and lbody quit conditions are used, headers are not counted
@@ -347,6 +447,65 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         // Initialize tile part positions from TLM marker segment.
         initTLM();
+
+        // Otherwise use the ones of the codestream index, locating them
+        // first if this was not done by a previous reading. Tile-parts
+        // cannot be read out of order when packet headers are packed in the
+        // main header.
+        if(index!=null && tnbytes==Long.MAX_VALUE &&
+           !((Boolean)decSpec.pphs.getDefault()).booleanValue()) {
+            this.index = index;
+            index.init(cdstreamStart,nt);
+            if(tilePartPositions==null) {
+                tilePartPositions = index.getTilePartPositions();
+                if(tilePartPositions==null) {
+                    indexTileParts();
+                    tilePartPositions = index.getTilePartPositions();
+                }
+            }
+        }
+    }
+
+    /**
+     * Locates all the tile-parts of the codestream and records their
+     * positions in the codestream index. Only the SOT marker segment of each
+     * tile-part is read, the rest of the tile-part being skipped using its
+     * length (Psot). The positions are only made available by the index if
+     * the EOC marker, or a tile-part extending to it, is reached. Before
+     * return the stream is returned to its position when the method was
+     * invoked.
+     * */
+    private void indexTileParts() throws IOException {
+        long savePos = in.getPos();
+        try {
+            long pos = lastPos;
+            while(true) {
+                in.seek(pos);
+                short marker = in.readShort();
+                if(marker==EOC) {
+                    index.setComplete();
+                    break;
+                } else if(marker!=SOT || in.readUnsignedShort()!=10) {
+                    break;
+                }
+                int tile = in.readUnsignedShort();
+                long psot = in.readInt() & 0xFFFFFFFFL;
+                int tilePart = in.read();
+                if(tile>=nt) {
+                    break;
+                }
+                index.addTilePart(tile,tilePart,pos);
+                if(psot==0) {
+                    // The last tile-part contains all data until EOC
+                    index.setComplete();
+                    break;
+                }
+                pos += psot;
+            }
+        } catch(EOFException e) {
+            // Truncated codestream, the positions are not used
+        }
+        in.seek(savePos);
     }
 
     // An array of the positions of tile parts:
@@ -364,7 +523,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     //
     private void initTLM() throws IOException {
         // Save the position to return to at the end of this method.
-        int savePos = in.getPos();
+        long savePos = in.getPos();
 
         // Array to store contents of TLM segments. The first index is
         // Ztlm. The contents of tlmSegments[i] is the bytes in the TLM
@@ -491,13 +650,14 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         in.seek(savePos);
     }
 
-    int cdstreamStart = 0;
-    int t=0, pos=-1, tp=0, tptot=0;
-    int tilePartStart = 0;
+    long cdstreamStart = 0;
+    int t=0, tp=0, tptot=0;
+    long pos=-1;
+    long tilePartStart = 0;
     boolean rateReached = false;
     int numtp = 0;
     int maxTP = nt; // If maximum 1 tile part per tile specified
-    int lastPos = 0, maxPos = 0;
+    long lastPos = 0, maxPos = 0;
 
     /**
      * Read all tile-part headers of the requested tile. All tile-part
@@ -521,7 +681,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                 isTilePartRead = true;
 
                 if(tilePartPositions != null) {
-                    in.seek((int)tilePartPositions[tileNum][tpNum++]);
+                    in.seek(tilePartPositions[tileNum][tpNum++]);
                 }
                 tilePartStart = in.getPos();
 
@@ -558,7 +718,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
                 // Set tile part position and header length
                 firstPackOff[t][tp] = pos;
-                tilePartHeadLen[t][tp] = (pos-tilePartStart);
+                tilePartHeadLen[t][tp] = (int)(pos-tilePartStart);
 
                 if(printInfo)
                     strInfo += "Tile-part "+tp+" of tile "+t+" : "+tilePartStart
@@ -596,7 +756,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
                 // Go to the beginning of next tile part
                 tilePartsRead[t]++;
-                int nextMarkerPos = tilePartStart+tilePartLen[t][tp];
+                long nextMarkerPos = tilePartStart+tilePartLen[t][tp];
                 if(tilePartPositions == null) {
                     in.seek(nextMarkerPos);
                 }
@@ -628,7 +788,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                 printmsg(MsgLogger.WARNING,"Codestream truncated in tile "+t);
 
             // Set specified rate to end of file if valid
-            int fileLen = in.length();
+            long fileLen = in.length();
             if(fileLen<tnbytes) {
                 tnbytes = fileLen;
                 trate = tnbytes*8f/hd.getMaxCompImgWidth()/
@@ -681,7 +841,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                 // if this marker has not been found yet
                 if(!isEOCFound && !isPsotEqualsZero && !rateReached) {
                     try {
-                        int savePos = in.getPos();
+                        long savePos = in.getPos();
                         in.seek(maxPos);
                         if(in.readShort()!=EOC) {
                             FacilityManager.getMsgLogger().
@@ -725,7 +885,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
      * codestream.
      * */
     private void allocateRate() throws IOException {
-	int stopOff = tnbytes;
+	long stopOff = tnbytes;
 
 	// In parsing mode, the bitrate is allocated related to each tile's
 	// length in the bit stream
@@ -740,10 +900,10 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         }
 
         // Calculate bitrate for each tile
-        int rem = stopOff-anbytes;
-        int totnByte = rem;
+        long rem = stopOff-anbytes;
+        long totnByte = rem;
         for(int t=nt-1; t>0; t--){
-            rem -= nBytes[t]=(int)(totnByte*(totTileLen[t]/totAllTileLen));
+            rem -= nBytes[t]=(long)(totnByte*(totTileLen[t]/totAllTileLen));
         }
         nBytes[0] = rem;
     }
@@ -787,14 +947,10 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                                    "tile-part.");
         }
 
-        // Psot
-        int psot = in.readInt();
+        // Psot (unsigned 32 bit value)
+        long psot = in.readInt() & 0xFFFFFFFFL;
         ms.psot = psot;
         isPsotEqualsZero = (psot!=0) ? false : true;
-        if(psot<0) {
-            throw new NotImplementedError("Tile length larger "+
-                                          "than maximum supported");
-        }
         // TPsot
         int tilePart = in.read();
         ms.tpsot = tilePart;
@@ -831,23 +987,23 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                          nrOfTileParts+" tile-parts for this tile.");
 
             // Increase and re-copy tilePartLen array
-            int[] tmpA = tilePartLen[tile];
-            tilePartLen[tile] = new int[nrOfTileParts];
+            long[] tmpL = tilePartLen[tile];
+            tilePartLen[tile] = new long[nrOfTileParts];
             for(int i=0; i<nrOfTileParts-nExtraTp; i++) {
-                tilePartLen[tile][i] = tmpA[i];
+                tilePartLen[tile][i] = tmpL[i];
             }
             // Increase and re-copy tilePartNum array
-            tmpA = tilePartNum[tile];
+            int[] tmpA = tilePartNum[tile];
             tilePartNum[tile] = new int[nrOfTileParts];
             for(int i=0; i<nrOfTileParts-nExtraTp; i++) {
                 tilePartNum[tile][i] = tmpA[i];
             }
 
             // Increase and re-copy firsPackOff array
-            tmpA = firstPackOff[tile];
-            firstPackOff[tile] = new int[nrOfTileParts];
+            tmpL = firstPackOff[tile];
+            firstPackOff[tile] = new long[nrOfTileParts];
             for(int i=0; i<nrOfTileParts-nExtraTp; i++) {
-                firstPackOff[tile][i] = tmpA[i];
+                firstPackOff[tile][i] = tmpL[i];
             }
 
             // Increase and re-copy tilePartHeadLen array
@@ -866,9 +1022,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             if(tileParts[tile]==0) { // First tile-part: OK
                 remainingTileParts += nrOfTileParts- 1;
                 tileParts[tile] = nrOfTileParts;
-                tilePartLen[tile] = new int[nrOfTileParts];
+                tilePartLen[tile] = new long[nrOfTileParts];
                 tilePartNum[tile] = new int[nrOfTileParts];
-                firstPackOff[tile] = new int[nrOfTileParts];
+                firstPackOff[tile] = new long[nrOfTileParts];
                 tilePartHeadLen[tile] = new int[nrOfTileParts];
             } else if(tileParts[tile] > nrOfTileParts ) {
                 // Already found more tile-parts than signaled here
@@ -883,24 +1039,24 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                 if(tileParts[tile]!=nrOfTileParts) {
 
                     // Increase and re-copy tilePartLen array
-                    int[] tmpA = tilePartLen[tile];
-                    tilePartLen[tile] = new int[nrOfTileParts];
+                    long[] tmpL = tilePartLen[tile];
+                    tilePartLen[tile] = new long[nrOfTileParts];
                     for(int i=0; i<tileParts[tile]-1; i++) {
-                        tilePartLen[tile][i] = tmpA[i];
+                        tilePartLen[tile][i] = tmpL[i];
                     }
 
                     // Increase and re-copy tilePartNum array
-                    tmpA = tilePartNum[tile];
+                    int[] tmpA = tilePartNum[tile];
                     tilePartNum[tile] = new int[nrOfTileParts];
                     for(int i=0; i<tileParts[tile]-1; i++) {
                         tilePartNum[tile][i] = tmpA[i];
                     }
 
                     // Increase and re-copy firstPackOff array
-                    tmpA = firstPackOff[tile];
-                    firstPackOff[tile] = new int[nrOfTileParts];
+                    tmpL = firstPackOff[tile];
+                    firstPackOff[tile] = new long[nrOfTileParts];
                     for(int i=0; i<tileParts[tile]-1; i++) {
-                        firstPackOff[tile][i] = tmpA[i];
+                        firstPackOff[tile][i] = tmpL[i];
                     }
 
                     // Increase and re-copy tilePartHeadLen array
@@ -917,14 +1073,37 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         hd.resetHeaderMarkers();
         hd.nTileParts[tile] = nrOfTileParts;
         // Decode and store the tile-part header (i.e. until a SOD marker is
-        // found)
+        // found). The PLT marker segments are skipped if the packet lengths
+        // of the tile are already known.
+        boolean pltKnown = index!=null && index.getPacketLengths(tile)!=null;
         do {
-            hd.extractTilePartMarkSeg(in.readShort(),in,tile,tilePart);
+            marker = in.readShort();
+            if(marker==PLT && pltKnown) {
+                int len = in.readUnsignedShort();
+                in.seek(in.getPos()+len-2);
+                continue;
+            }
+            hd.extractTilePartMarkSeg(marker,in,tile,tilePart);
         } while ((hd.getNumFoundMarkSeg() & hd.SOD_FOUND)==0);
 
         // Read each marker segment previously found
         hd.readFoundTilePartMarkSeg(tile,tilePart);
 
+        // Store the packet lengths signalled by PLT or PLM marker segments
+        int[] pl = hd.getPacketLengths(getTilePartRank());
+        if(pl!=null) {
+            if(tilePartPktLen[tile]==null ||
+               tilePartPktLen[tile].length<tilePartLen[tile].length) {
+                int[][] tmpP = tilePartPktLen[tile];
+                tilePartPktLen[tile] = new int[tilePartLen[tile].length][];
+                if(tmpP!=null) {
+                    System.arraycopy(tmpP,0,tilePartPktLen[tile],0,
+                                     tmpP.length);
+                }
+            }
+            tilePartPktLen[tile][tilePart] = pl;
+        }
+
         tilePartLen[tile][tilePart] = psot;
 
         tilePartNum[tile][tilePart] = totTilePartsRead;
@@ -938,6 +1117,257 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
     }
 
+    /**
+     * Returns the index of the tile-part whose header is being read, among
+     * all the tile-parts of the codestream, in their order in the
+     * codestream.
+     *
+     * @return The index of the tile-part in the codestream.
+     * */
+    private int getTilePartRank() {
+        if(tilePartPositions==null) {
+            // Tile-parts are read in the order of the codestream
+            return totTilePartsRead;
+        }
+        if(sortedTilePartPos==null) {
+            int n = 0;
+            for(int i=0; i<tilePartPositions.length; i++) {
+                n += tilePartPositions[i].length;
+            }
+            sortedTilePartPos = new long[n];
+            n = 0;
+            for(int i=0; i<tilePartPositions.length; i++) {
+                System.arraycopy(tilePartPositions[i],0,sortedTilePartPos,n,
+                                 tilePartPositions[i].length);
+                n += tilePartPositions[i].length;
+            }
+            Arrays.sort(sortedTilePartPos);
+        }
+        return Arrays.binarySearch(sortedTilePartPos,tilePartStart);
+    }
+
+    /**
+     * Returns the lengths of all the packets of a tile, as signalled by the
+     * PLT or PLM marker segments. The lengths are only returned if they are
+     * signalled for all the tile-parts of the tile and if, in each
+     * tile-part, they add up to the length of its data.
+     *
+     * @param t The index of the tile.
+     *
+     * @return The lengths of the packets, in the order of the codestream, or
+     * null if they are not known.
+     * */
+    private int[] getTilePktLen(int t) {
+        int[] lens = (index!=null) ? index.getPacketLengths(t) : null;
+        if(lens!=null) {
+            return lens;
+        }
+        int[][] tpl = tilePartPktLen[t];
+        int ntp = firstPackOff[t].length;
+        if(tpl==null || tpl.length<ntp) {
+            return null;
+        }
+        int n = 0;
+        for(int tp=0; tp<ntp; tp++) {
+            if(tpl[tp]==null) {
+                return null;
+            }
+            long len = 0;
+            for(int i=tpl[tp].length-1; i>=0; i--) {
+                len += tpl[tp][i];
+            }
+            if(len!=tilePartLen[t][tp]-tilePartHeadLen[t][tp]) {
+                FacilityManager.getMsgLogger().
+                    printmsg(MsgLogger.WARNING,"Packet lengths of tile-part "+
+                             tp+" of tile "+t+" do not match its length. "+
+                             "They are not used.");
+                return null;
+            }
+            n += tpl[tp].length;
+        }
+        lens = new int[n];
+        n = 0;
+        for(int tp=0; tp<ntp; tp++) {
+            System.arraycopy(tpl[tp],0,lens,n,tpl[tp].length);
+            n += tpl[tp].length;
+        }
+        if(index!=null) {
+            index.setPacketLengths(t,lens);
+        }
+        return lens;
+    }
+
+    /**
+     * Finds the code-blocks needed to reconstruct the areas to decode in the
+     * current tile (see setDecodedArea()), at the decoded resolution
+     * level. For each component, the area is projected on the subbands as
+     * by the inverse wavelet transform (see InvWTFull), and the needed
+     * code-blocks are stored in 'cbRanges'.
+     * */
+    private void initCBlkRanges() {
+        int minRes = decSpec.dls.getMin();
+        cbRanges = new int[nc][][][];
+        for(int c=0; c<nc; c++) {
+            cbRanges[c] = new int[mdl[c]+1][4][];
+
+            // Find the tile-component at the decoded resolution level
+            SubbandSyn sb = subbTrees[c];
+            while(sb.isNode && sb.resLvl>targetRes-minRes+mdl[c]) {
+                sb = (SubbandSyn)sb.getLL();
+            }
+
+            int[] area = areas[c];
+            if(area==null) {
+                findCBlkRanges(subbTrees[c],c,0,0,sb.w,sb.h);
+            } else {
+                findCBlkRanges(subbTrees[c],c,Math.max(0,area[0]),
+                               Math.max(0,area[1]),
+                               Math.min(sb.w,area[0]+area[2]),
+                               Math.min(sb.h,area[1]+area[3]));
+            }
+        }
+    }
+
+    /**
+     * Finds the code-blocks needed to reconstruct an area of a subband, in
+     * the same way as the inverse wavelet transform reconstructs it (see
+     * InvWTFull). This method is recursive, the first call to it the 'sb'
+     * must be the root of the subband tree.
+     *
+     * @param sb The subband to reconstruct.
+     *
+     * @param c The index of the component.
+     *
+     * @param x0 The index of the first column of the area, in the subband.
+     *
+     * @param y0 The index of the first line of the area, in the subband.
+     *
+     * @param x1 The index after the last column of the area, in the
+     * subband.
+     *
+     * @param y1 The index after the last line of the area, in the subband.
+     * */
+    private void findCBlkRanges(SubbandSyn sb,int c,
+                                int x0,int y0,int x1,int y1) {
+        if(!sb.isNode) {
+            if (sb.w==0 || sb.h==0 || x0>=x1 || y0>=y1) {
+                return;
+            }
+
+            // Project code-block partition origin to subband
+            int acb0x = getCbULX();
+            int acb0y = getCbULY();
+            if(sb.sbandIdx==Subband.WT_ORIENT_HL ||
+               sb.sbandIdx==Subband.WT_ORIENT_HH) {
+                acb0x = 0;
+            }
+            if(sb.sbandIdx==Subband.WT_ORIENT_LH ||
+               sb.sbandIdx==Subband.WT_ORIENT_HH) {
+                acb0y = 0;
+            }
+            int offx = sb.ulcx-acb0x-
+                ((sb.ulcx-acb0x+sb.nomCBlkW)/sb.nomCBlkW-1)*sb.nomCBlkW;
+            int offy = sb.ulcy-acb0y-
+                ((sb.ulcy-acb0y+sb.nomCBlkH)/sb.nomCBlkH-1)*sb.nomCBlkH;
+
+            cbRanges[c][sb.resLvl][sb.sbandIdx] = new int[] {
+                (y0+offy)/sb.nomCBlkH,
+                Math.min(sb.numCb.y-1,(y1-1+offy)/sb.nomCBlkH),
+                (x0+offx)/sb.nomCBlkW,
+                Math.min(sb.numCb.x-1,(x1-1+offx)/sb.nomCBlkW) };
+        } else if(sb.resLvl<=targetRes-decSpec.dls.getMin()+mdl[c] &&
+                  x0<x1 && y0<y1) {
+            // Extend the area by the margin needed by the synthesis filters
+            int mx = 2*Math.max(
+                Math.max(sb.hFilter.getSynLowNegSupport(),
+                         sb.hFilter.getSynLowPosSupport()),
+                Math.max(sb.hFilter.getSynHighNegSupport(),
+                         sb.hFilter.getSynHighPosSupport()));
+            int my = 2*Math.max(
+                Math.max(sb.vFilter.getSynLowNegSupport(),
+                         sb.vFilter.getSynLowPosSupport()),
+                Math.max(sb.vFilter.getSynHighNegSupport(),
+                         sb.vFilter.getSynHighPosSupport()));
+            x0 = Math.max(0,x0-mx);
+            y0 = Math.max(0,y0-my);
+            x1 = Math.min(sb.w,x1+mx);
+            y1 = Math.min(sb.h,y1+my);
+            if(x0>0 && (sb.ulcx+x0)%2!=0) x0--;
+            if(y0>0 && (sb.ulcy+y0)%2!=0) y0--;
+
+            // Area of the low-pass and high-pass child subbands
+            int lx0 = (sb.ulcx+x0+1)/2-(sb.ulcx+1)/2;
+            int lx1 = (sb.ulcx+x1+1)/2-(sb.ulcx+1)/2;
+            int ly0 = (sb.ulcy+y0+1)/2-(sb.ulcy+1)/2;
+            int ly1 = (sb.ulcy+y1+1)/2-(sb.ulcy+1)/2;
+            int hx0 = x0-lx0, hx1 = x1-lx1;
+            int hy0 = y0-ly0, hy1 = y1-ly1;
+
+            findCBlkRanges((SubbandSyn)sb.getLL(),c,lx0,ly0,lx1,ly1);
+            findCBlkRanges((SubbandSyn)sb.getHL(),c,hx0,ly0,hx1,ly1);
+            findCBlkRanges((SubbandSyn)sb.getLH(),c,lx0,hy0,lx1,hy1);
+            findCBlkRanges((SubbandSyn)sb.getHH(),c,hx0,hy0,hx1,hy1);
+        } else {
+            // The LL subband is at the same position
+            findCBlkRanges((SubbandSyn)sb.getLL(),c,x0,y0,x1,y1);
+        }
+    }
+
+    /**
+     * Skips the next packet of the current tile if it contains no
+     * code-block needed to reconstruct the areas to decode, using its length
+     * signalled by the PLT or PLM marker segments. The packet header is not
+     * read. This method must be called once for each packet of the tile,
+     * after the stream has been positioned at the start of the packet.
+     *
+     * @param c The component of the packet.
+     *
+     * @param r The resolution level of the packet.
+     *
+     * @param p The precinct of the packet.
+     *
+     * @return True if the packet has been skipped.
+     * */
+    private boolean skipPkt(int c,int r,int p) throws IOException {
+        if(pktLen==null) {
+            return false;
+        }
+        if(curPkt>=pktLen.length) {
+            // More packets than signalled lengths, do not skip any more
+            pktLen = null;
+            return false;
+        }
+        int len = pktLen[curPkt++];
+        if(p>=pktDec.getNumPrecinct(c,r)) {
+            return false;
+        }
+
+        // Check if a code-block of the packet's precinct is needed, unless
+        // the precinct was read by a previous reading of the codestream
+        if(idxPrecRead==null || !idxPrecRead[c][r][p]) {
+            PrecInfo prec = pktDec.getPrecInfo(c,r,p);
+            for(int s=(r==0)?0:1; s<((r==0)?1:4); s++) {
+                int[] rg = cbRanges[c][r][s];
+                CBlkCoordInfo[][] cbs = prec.cblk[s];
+                if(rg==null || cbs==null || cbs.length==0 ||
+                   cbs[0].length==0) {
+                    continue;
+                }
+                Point first = cbs[0][0].idx;
+                Point last = cbs[cbs.length-1][cbs[0].length-1].idx;
+                if(first.y<=rg[1] && last.y>=rg[0] &&
+                   first.x<=rg[3] && last.x>=rg[2]) {
+                    precRead[c][r][p] = true;
+                    return false;
+                }
+            }
+        }
+
+        in.seek(in.getPos()+len);
+        pktDec.skipPkt();
+        return true;
+    }
+
     /**
      * Reads packets of the current tile according to the
      * layer-resolution-component-position progressiveness.
@@ -973,9 +1403,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         }
 
         int t = getTileIdx();
-        int start;
+        long start;
         boolean status = false;
-        int lastByte = firstPackOff[t][curTilePart]+
+        long lastByte = firstPackOff[t][curTilePart]+
             tilePartLen[t][curTilePart]-1-
             tilePartHeadLen[t][curTilePart];
         int numLayers = ((Integer)decSpec.nls.getTileDef(t)).intValue();
@@ -990,6 +1420,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         }
         for(int l=minlys; l<lye; l++) { // loop on layers
             for(int r=ress; r<rese; r++) { // loop on resolution levels
+                // In the last layer, the following packets are not needed
+                if(l==lye-1 && r>stopRes) {
+                    pktsLeft = true;
+                    break;
+                }
                 for(int c=comps; c<compe; c++) { // loop on components
                     // Checks if component exists
                     if(c>=mdl.length) continue;
@@ -1020,6 +1455,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                 tilePartHeadLen[t][curTilePart];
                         }
 
+                        // Skip the packet if it is not needed
+                        if(skipPkt(c,r,p)) {
+                            continue;
+                        }
+
                         // Read SOP marker segment if necessary
                         status = pktDec.readSOPMarker(nBytes,p,c,r);
 
@@ -1045,12 +1485,12 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                         }
 
                         // Store packet's head length
-                        hlen = in.getPos()-start;
+                        hlen = (int)(in.getPos()-start);
                         pktHL.addElement(new Integer(hlen));
 
                         // Reads packet's body
                         status = pktDec.readPktBody(l,r,c,p,cbI[c][r],nBytes);
-                        plen = in.getPos()-start;
+                        plen = (int)(in.getPos()-start);
                         if(printInfo)
                             strInfo+= " Pkt l="+l+",r="+r+",c="+c+",p="+p+": "+
                                 start+", "+plen+", "+hlen+"\n";
@@ -1098,7 +1538,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         int t = getTileIdx(); // Current tile index
         boolean status=false; // True if decoding rate is reached when
-        int lastByte = firstPackOff[t][curTilePart]+
+        long lastByte = firstPackOff[t][curTilePart]+
             tilePartLen[t][curTilePart]-1-
             tilePartHeadLen[t][curTilePart];
         int minlys = 10000;
@@ -1123,9 +1563,14 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             pph = true;
         }
         int nPrec = 1;
-        int start;
+        long start;
         int hlen,plen;
         for(int r=ress; r<rese; r++) { // loop on resolution levels
+            // The following packets are not needed
+            if(r>stopRes) {
+                pktsLeft = true;
+                break;
+            }
             for(int l=minlys; l<lye; l++) { // loop on layers
                 for(int c=comps; c<compe; c++) { // loop on components
                     // Checks if component exists
@@ -1158,6 +1603,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                 tilePartHeadLen[t][curTilePart];
                         }
 
+                        // Skip the packet if it is not needed
+                        if(skipPkt(c,r,p)) {
+                            continue;
+                        }
+
                         // Read SOP marker segment if necessary
                         status = pktDec.readSOPMarker(nBytes,p,c,r);
 
@@ -1184,12 +1634,12 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                         }
 
                         // Store packet's head length
-                        hlen = in.getPos()-start;
+                        hlen = (int)(in.getPos()-start);
                         pktHL.addElement(new Integer(hlen));
 
                         // Reads packet's body
                         status = pktDec.readPktBody(l,r,c,p,cbI[c][r],nBytes);
-                        plen = in.getPos()-start;
+                        plen = (int)(in.getPos()-start);
                         if(printInfo)
                             strInfo+= " Pkt l="+l+",r="+r+",c="+c+",p="+p+": "+
                                 start+", "+plen+", "+hlen+"\n";
@@ -1312,9 +1762,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         int pxend = (maxx-minx)/gcd_x+1;
         int x,y;
         int hlen,plen;
-        int start;
+        long start;
         boolean status = false;
-        int lastByte = firstPackOff[t][curTilePart]+
+        long lastByte = firstPackOff[t][curTilePart]+
             tilePartLen[t][curTilePart]-1-
             tilePartHeadLen[t][curTilePart];
         int numLayers = ((Integer)decSpec.nls.getTileDef(t)).intValue();
@@ -1326,6 +1776,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             pph = true;
         }
         for(int r=ress; r<rese; r++) { // loop on resolution levels
+            // The following packets are not needed
+            if(r>stopRes) {
+                pktsLeft = true;
+                break;
+            }
             y = ty0;
             x = tx0;
             for(int py=0; py<=pyend; py++) { // Vertical precincts
@@ -1364,6 +1819,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                     tilePartHeadLen[t][curTilePart];
                             }
 
+                            // Skip the packet if it is not needed
+                            if(skipPkt(c,r,nextPrec[c][r])) {
+                                continue;
+                            }
+
                             // Read SOP marker segment if necessary
                             status = pktDec.readSOPMarker(nBytes,
                                                           nextPrec[c][r],c,r);
@@ -1392,14 +1852,14 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                             }
 
                             // Store packet's head length
-                            hlen = in.getPos()-start;
+                            hlen = (int)(in.getPos()-start);
                             pktHL.addElement(new Integer(hlen));
 
 
                             // Reads packet's body
                             status = pktDec.readPktBody(l,r,c,nextPrec[c][r],
                                                         cbI[c][r],nBytes);
-                            plen = in.getPos()-start;
+                            plen = (int)(in.getPos()-start);
                             if(printInfo)
                                 strInfo+= " Pkt l="+l+",r="+r+",c="+c+",p="+
                                     nextPrec[c][r]+": "+
@@ -1529,9 +1989,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         int pyend = (maxy-miny)/gcd_y+1;
         int pxend = (maxx-minx)/gcd_x+1;
         int hlen,plen;
-        int start;
+        long start;
         boolean status = false;
-        int lastByte = firstPackOff[t][curTilePart]+
+        long lastByte = firstPackOff[t][curTilePart]+
             tilePartLen[t][curTilePart]-1-
             tilePartHeadLen[t][curTilePart];
         int numLayers = ((Integer)decSpec.nls.getTileDef(t)).intValue();
@@ -1571,6 +2031,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                 pktDec.readPktHead(l,r,c,nextPrec[c][r],
                                                    cbI[c][r],nBytes);
                             }
+                            // Skip the packet if it is not needed
+                            if(skipPkt(c,r,nextPrec[c][r])) {
+                                continue;
+                            }
+
                             // Read SOP marker segment if necessary
                             status = pktDec.readSOPMarker(nBytes,
                                                           nextPrec[c][r],c,r);
@@ -1599,13 +2064,13 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                             }
 
                             // Store packet's head length
-                            hlen = in.getPos()-start;
+                            hlen = (int)(in.getPos()-start);
                             pktHL.addElement(new Integer(hlen));
 
                             // Reads packet's body
                             status = pktDec.readPktBody(l,r,c,nextPrec[c][r],
                                                         cbI[c][r],nBytes);
-                            plen = in.getPos()-start;
+                            plen = (int)(in.getPos()-start);
                             if(printInfo)
                                 strInfo+= " Pkt l="+l+",r="+r+",c="+c+",p="+
                                     nextPrec[c][r]+": "+
@@ -1736,9 +2201,9 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         int pyend = (maxy-miny)/gcd_y+1;
         int pxend = (maxx-minx)/gcd_x+1;
         int hlen,plen;
-        int start;
+        long start;
         boolean status = false;
-        int lastByte = firstPackOff[t][curTilePart]+
+        long lastByte = firstPackOff[t][curTilePart]+
             tilePartLen[t][curTilePart]-1-
             tilePartHeadLen[t][curTilePart];
         int numLayers = ((Integer)decSpec.nls.getTileDef(t)).intValue();
@@ -1791,6 +2256,11 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                     tilePartHeadLen[t][curTilePart];
                             }
 
+                            // Skip the packet if it is not needed
+                            if(skipPkt(c,r,nextPrec[c][r])) {
+                                continue;
+                            }
+
                             // Read SOP marker segment if necessary
                             status = pktDec.readSOPMarker(nBytes,
                                                           nextPrec[c][r],c,r);
@@ -1819,13 +2289,13 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                             }
 
                             // Store packet's head length
-                            hlen = in.getPos()-start;
+                            hlen = (int)(in.getPos()-start);
                             pktHL.addElement(new Integer(hlen));
 
                             // Reads packet's body
                             status = pktDec.readPktBody(l,r,c,nextPrec[c][r],
                                                         cbI[c][r],nBytes);
-                            plen = in.getPos()-start;
+                            plen = (int)(in.getPos()-start);
                             if(printInfo)
                                 strInfo+= " Pkt l="+l+",r="+r+",c="+c+",p="+
                                     nextPrec[c][r]+": "+
@@ -1879,7 +2349,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     private void readTilePkts(int t) throws IOException {
         pktHL = new Vector();
 
-        int oldNBytes = nBytes[t];
+        long oldNBytes = nBytes[t];
 
         // Number of layers
         int nl = ((Integer)decSpec.nls.getTileDef(t)).intValue();
@@ -1946,10 +2416,55 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         curTilePart = 0;
 
+        // Packets which are not needed are skipped using their lengths, if
+        // known, unless the packet headers are packed or a decoding rate is
+        // used
+        pktLen = null;
+        curPkt = 0;
+        precRead = null;
+        if(!((Boolean)decSpec.pphs.getTileDef(t)).booleanValue() &&
+           tnbytes==Long.MAX_VALUE) {
+            pktLen = getTilePktLen(t);
+        }
+        if(pktLen!=null) {
+            initCBlkRanges();
+            precRead = new boolean[nc][][];
+            for(int c=0; c<nc; c++) {
+                precRead[c] = new boolean[mdl[c]+1][];
+                for(int r=0; r<=mdl[c]; r++) {
+                    precRead[c][r] = new boolean[pktDec.getNumPrecinct(c,r)];
+                    if(idxPrecRead!=null) {
+                        System.arraycopy(idxPrecRead[c][r],0,precRead[c][r],0,
+                                         precRead[c][r].length);
+                    }
+                }
+            }
+
+            // Keep the code-blocks of the precincts read by a previous
+            // reading
+            if(idxCbI!=null) {
+                for(int c=0; c<nc; c++) {
+                    for(int r=0; r<=mdl[c]; r++) {
+                        for(int s=0; s<cbI[c][r].length; s++) {
+                            if(cbI[c][r][s]==null) continue;
+                            for(int m=0; m<cbI[c][r][s].length; m++) {
+                                for(int n=0; n<cbI[c][r][s][m].length; n++) {
+                                    cbI[c][r][s][m][n] =
+                                        idxCbI[c][r][s][m][n];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } else {
+            idxPrecRead = null;
+        }
+
         // Start and end indexes for layers, resolution levels and components.
         int lye,ress,rese,comps,compe;
         boolean status = false;
-        int nb = nBytes[t];
+        long nb = nBytes[t];
         int[][] lys = new int[nc][];
         for(int c=0; c<nc; c++) {
             lys[c] = new int[((Integer)decSpec.dls.getTileCompVal(t,c)).
@@ -1957,9 +2472,20 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
         }
 
 
+        // Unless a decoding rate is used, the packets of the resolution
+        // levels above the decoded one are not read if they are at the end of
+        // the tile, in its last progression
+        int maxRes = 0;
+        for(int c=0; c<nc; c++) {
+            maxRes = Math.max(maxRes,targetRes-decSpec.dls.getMin()+mdl[c]);
+        }
+        pktsLeft = false;
+
         try {
             for(int chg=0; chg<nChg; chg++) {
 
+                stopRes = (chg==nChg-1 && tnbytes==Long.MAX_VALUE) ?
+                    maxRes : Integer.MAX_VALUE;
                 lye = change[chg][1];
                 ress = change[chg][2];
                 rese = change[chg][3];
@@ -2136,7 +2662,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                                     } else {
                                         // Refuses code-block
                                         // Forgets code-block's data
-                                        cb.len[l]=cb.off[l]=cb.ntp[l]= 0;
+                                        cb.off[l]=cb.len[l]=cb.ntp[l]= 0;
                                         // Refuses all other code-block in
                                         // current and next component
                                         reject=true;
@@ -2234,13 +2760,105 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             initSubbandsFields(c,subbTrees[c]);
         }
 
-        // Read tile's packets
+        // Reset the areas to decode
+        for(int c=0; c<nc; c++) {
+            areas[c] = null;
+        }
+
+        // Use the code-blocks located by a previous reading of the
+        // codestream, if any. Otherwise the tile's packets are read when the
+        // first code-block is requested, so that the areas to decode can be
+        // set before. If the previous reading skipped some packets, only the
+        // precincts it did not read may then be read.
+        CBlkInfo[][][][][] tcbI = (index!=null) ? index.getCBlkInfo(t) : null;
+        idxCbI = null;
+        idxPrecRead = null;
+        if(tcbI!=null && index.getReadPrecincts(t)==null) {
+            cbI = tcbI;
+            tilePktsRead = true;
+        } else {
+            if(tcbI!=null) {
+                idxCbI = tcbI;
+                idxPrecRead = index.getReadPrecincts(t);
+            }
+            tilePktsRead = false;
+        }
+    }
+
+    /**
+     * Reads the packets of the current tile and locates its code-blocks,
+     * which are recorded in the codestream index, if any, along with the
+     * precincts which have been read if some packets have been skipped.
+     * */
+    private void readCurTilePkts() {
+        int t = getTileIdx();
         try {
             readTilePkts(t);
+            if(index!=null) {
+                boolean[][][] read = null;
+                if(pktsLeft && precRead==null) {
+                    // Only the packets of the decoded resolution levels have
+                    // all been read. Forget the code-blocks of the other
+                    // ones, which may have been found in some layers only.
+                    precRead = new boolean[nc][][];
+                    for(int c=0; c<nc; c++) {
+                        precRead[c] = new boolean[mdl[c]+1][];
+                        for(int r=0; r<=mdl[c]; r++) {
+                            precRead[c][r] =
+                                new boolean[pktDec.getNumPrecinct(c,r)];
+                            Arrays.fill(precRead[c][r],r<=stopRes);
+                            for(int sb=0; r>stopRes && cbI[c][r]!=null &&
+                                    sb<cbI[c][r].length; sb++) {
+                                for(int m=0; cbI[c][r][sb]!=null &&
+                                        m<cbI[c][r][sb].length; m++) {
+                                    Arrays.fill(cbI[c][r][sb][m],null);
+                                }
+                            }
+                        }
+                    }
+                }
+                for(int c=0; precRead!=null && c<nc; c++) {
+                    for(int r=0; r<=mdl[c]; r++) {
+                        for(int p=precRead[c][r].length-1; p>=0; p--) {
+                            if(!precRead[c][r][p]) {
+                                read = precRead;
+                            }
+                        }
+                    }
+                }
+                index.setCBlkInfo(t,cbI,read);
+            }
         } catch(IOException e) {
             e.printStackTrace();
-            throw new Error("IO Error when reading tile "+x+" x "+y);
+            throw new Error("IO Error when reading tile "+ctX+" x "+ctY);
         }
+        tilePktsRead = true;
+    }
+
+    /**
+     * Restricts the decoding of the specified component, in the current
+     * tile, to the given area. If the lengths of the packets are signalled
+     * by PLT or PLM marker segments, the packets which contain no
+     * code-block needed to reconstruct the area (see InvWTFull) are skipped
+     * without reading their header, and their code-blocks are returned
+     * without any data. The area is only taken into account if it is set
+     * before the first code-block of the tile is requested, and it is reset
+     * to the whole tile-component when the tile changes.
+     *
+     * @param c The index of the component.
+     *
+     * @param ulx The horizontal coordinate of the upper-left corner of the
+     * area, in the tile-component at the decoded resolution level.
+     *
+     * @param uly The vertical coordinate of the upper-left corner of the
+     * area, in the tile-component at the decoded resolution level.
+     *
+     * @param w The width of the area.
+     *
+     * @param h The height of the area.
+     * */
+    public void setDecodedArea(int c,int ulx,int uly,int w,int h) {
+        areas[c] = new int[] {ulx,uly,w,h};
     }
 
 
@@ -2313,6 +2931,10 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
     public DecLyrdCBlk getCodeBlock(int c,int m,int n,SubbandSyn sb,int fl,
                                     int nl,DecLyrdCBlk ccb) {
 
+        if(!tilePktsRead) {
+            readCurTilePkts();
+        }
+
         int t = getTileIdx();
         CBlkInfo rcb; // requested code-block
         int r = sb.resLvl;  // Resolution level
@@ -2437,8 +3059,27 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             nts = 1;
         }
 
+        // When all the data is in a single layer, it is contiguous in the
+        // codestream and a view of it is used instead of a copy, if the
+        // input provides views
+        ccb.dataBuf = null;
+        if(in instanceof ByteBufferIO && ccb.dl>0) {
+            for(l=fl-1; l<fl+nl-1; l++) {
+                if(rcb.len[l]!=0) break;
+            }
+            if(rcb.len[l]==ccb.dl) {
+                try {
+                    ccb.dataBuf =
+                        ((ByteBufferIO)in).getByteBuffer(rcb.off[l],ccb.dl);
+                } catch (IOException e) {
+                    JJ2KExceptionHandler.handleException(e);
+                }
+            }
+        }
+
         // ccb.data creation
-        if(ccb.data==null || ccb.data.length<ccb.dl) {
+        if(ccb.dataBuf==null &&
+           (ccb.data==null || ccb.data.length<ccb.dl)) {
             ccb.data = new byte[ccb.dl];
         }
 
@@ -2466,13 +3107,15 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             // Read data
             // NOTE: we should never get an EOFException here since all
             // data is checked to be within the file.
-            try {
-                in.seek(rcb.off[l]);
-                in.readFully(ccb.data,dataIdx+1,rcb.len[l]);
-                dataIdx += rcb.len[l];
-            } catch (IOException e) {
-                JJ2KExceptionHandler.handleException(e);
+            if(ccb.dataBuf==null) {
+                try {
+                    in.seek(rcb.off[l]);
+                    in.readFully(ccb.data,dataIdx+1,rcb.len[l]);
+                } catch (IOException e) {
+                    JJ2KExceptionHandler.handleException(e);
+                }
             }
+            dataIdx += rcb.len[l];
 
             // Get the terminated segment lengths, if any
             if(nts==1) continue;
@@ -168,6 +168,12 @@ public class HeaderDecoder implements ProgressionType, Markers,
     /** Counts number of PPT markers found in the header */
     private int[][] nPPTMarkSeg = null;
 
+    /** Counts number of PLM markers found in the header */
+    private int nPLMMarkSeg = 0;
+
+    /** Counts number of PLT markers found in the current tile-part header */
+    private int nPLTMarkSeg = 0;
+
     /** Flag bit for SIZ marker segment found */
     private static final int SIZ_FOUND = 1;
 
@@ -238,7 +244,7 @@ public class HeaderDecoder implements ProgressionType, Markers,
     boolean precinctPartitionIsUsed;
 
     /** The offset of the main header in the input stream */
-    public int mainHeadOff;
+    public long mainHeadOff;
 
     /** Vector containing info as to which tile each tilepart belong */
     public Vector tileOfTileParts;
@@ -249,8 +255,17 @@ public class HeaderDecoder implements ProgressionType, Markers,
     /** Array containing the Ippm fields of the PPT marker segments */
     private byte[][][][] tilePartPkdPktHeaders;
 
-    /** The packed packet headers if the PPM or PPT markers are used */
-    private ByteArrayOutputStream[] pkdPktHeaders;
+    /** Array containing the Nplm and Iplm fields of the PLM marker
+     * segments */
+    private byte[][] pLMMarkerData;
+
+    /** Array containing the Iplt fields of the PLT marker segments of the
+     * current tile-part header */
+    private byte[][] pLTMarkerData;
+
+    /** The packet lengths of each tile-part, in the order of the
+     * codestream, if the PLM marker segments are used */
+    private Vector<int[]> plmPktLengths;
 
     /** 
      * Return the maximum height among all components 
@@ -1658,9 +1673,9 @@ public class HeaderDecoder implements ProgressionType, Markers,
     }
 
     /**
-     * Reads PLM marker segment and realigns the codestream where the next
-     * marker should be found. Informations stored in these fields are
-     * currently not taken into account.
+     * Reads PLM marker segment of the main header. The Nplm and Iplm fields
+     * are stored, the packet lengths being decoded when they are first
+     * requested (see getPacketLengths()).
      *
      * @param ehs The encoder header stream.
      *
@@ -1668,20 +1683,37 @@ public class HeaderDecoder implements ProgressionType, Markers,
      * encoder header stream
      * */
     private void readPLM(DataInputStream ehs) throws IOException{
-	int length;
+        int curMarkSegLen;
+        int indx;
 
-	length = ehs.readUnsignedShort();
-	//Ignore all informations contained
-	ehs.skipBytes(length-2);
+        // If first time readPLM method is called allocate arrays for the
+        // marker segments data
+        if(pLMMarkerData==null) {
+            pLMMarkerData = new byte[nPLMMarkSeg][];
+        }
 
-        FacilityManager.getMsgLogger().
-            printmsg(MsgLogger.INFO,"Skipping unsupported PLM marker");
+        // Lplm (marker length)
+        curMarkSegLen = ehs.readUnsignedShort();
+
+        // Zplm (index of PLM marker)
+        indx = ehs.readUnsignedByte();
+        if(indx>=nPLMMarkSeg) {
+            throw new CorruptedCodestreamException("Wrong index of PLM "+
+                                                   "marker segment: "+indx);
+        }
+
+        // Nplm and Iplm fields
+        pLMMarkerData[indx] = new byte[curMarkSegLen-3];
+        ehs.readFully(pLMMarkerData[indx]);
+
+        // Check marker length
+        checkMarkerLength(ehs,"PLM marker");
     }
 
     /**
-     * Reads the PLT fields and realigns the codestream where the next marker
-     * should be found. Informations stored in these fields are currently NOT
-     * taken into account.
+     * Reads the PLT marker segment of a tile-part header. The Iplt field is
+     * stored until the packet lengths of the tile-part are requested (see
+     * getPacketLengths()).
      *
      * @param ehs The encoder header stream.
      *
@@ -1689,14 +1721,125 @@ public class HeaderDecoder implements ProgressionType, Markers,
      * encoder header stream
      * */
     private void readPLTFields(DataInputStream ehs) throws IOException{
-	int length;
+        int curMarkSegLen;
+        int indx;
 
-	length = ehs.readUnsignedShort();
-	//Ignore all informations contained
-	ehs.skipBytes(length-2);
+        if(pLTMarkerData==null) {
+            pLTMarkerData = new byte[nPLTMarkSeg][];
+        }
 
-        FacilityManager.getMsgLogger().
-            printmsg(MsgLogger.INFO,"Skipping unsupported PLT marker");
+        // Lplt (marker length)
+        curMarkSegLen = ehs.readUnsignedShort();
+
+        // Zplt (index of PLT marker)
+        indx = ehs.readUnsignedByte();
+        if(indx>=nPLTMarkSeg) {
+            throw new CorruptedCodestreamException("Wrong index of PLT "+
+                                                   "marker segment: "+indx);
+        }
+
+        // Iplt (packet lengths)
+        pLTMarkerData[indx] = new byte[curMarkSegLen-3];
+        ehs.readFully(pLTMarkerData[indx]);
+
+        // Check marker length
+        checkMarkerLength(ehs,"PLT marker");
+    }
+
+    /**
+     * Decodes packet lengths, as coded in the Iplm and Iplt fields of the PLM
+     * and PLT marker segments. Each length is coded on as many bytes as
+     * needed, with 7 bits per byte, the most significant bit of a byte
+     * indicating that the length continues in the next byte.
+     *
+     * @param buf The bytes of the coded packet lengths.
+     *
+     * @return The decoded packet lengths, or null if the last length is
+     * incomplete.
+     * */
+    private static int[] decodePktLengths(byte[] buf) {
+        int n = 0;
+        for(int i=0; i<buf.length; i++) {
+            if((buf[i]&0x80)==0) n++;
+        }
+        if(buf.length>0 && (buf[buf.length-1]&0x80)!=0) {
+            return null;
+        }
+        int[] lens = new int[n];
+        int len = 0;
+        for(int i=0, k=0; i<buf.length; i++) {
+            len = (len<<7)|(buf[i]&0x7F);
+            if((buf[i]&0x80)==0) {
+                lens[k++] = len;
+                len = 0;
+            }
+        }
+        return lens;
+    }
+
+    /**
+     * Returns the lengths of the packets of a tile-part, as signalled by the
+     * PLT marker segments of the last read tile-part header or, if there are
+     * none, by the PLM marker segments of the main header. The lengths
+     * include the packet headers, as well as the SOP and EPH markers if any.
+     *
+     * @param tpRank The index of the tile-part in the codestream, among all
+     * the tile-parts of all the tiles. It identifies the packet lengths
+     * signalled by the PLM marker segments.
+     *
+     * @return The packet lengths, in the order of the codestream, or null if
+     * they are not signalled.
+     * */
+    public int[] getPacketLengths(int tpRank) {
+        if((nfMarkSeg&PLT_FOUND)!=0) {
+            // Concatenate all Iplt fields
+            ByteArrayOutputStream iplt = new ByteArrayOutputStream();
+            for(int i=0; i<nPLTMarkSeg; i++) {
+                if(pLTMarkerData[i]==null) {
+                    return null;
+                }
+                iplt.write(pLTMarkerData[i],0,pLTMarkerData[i].length);
+            }
+            return decodePktLengths(iplt.toByteArray());
+        }
+        if(pLMMarkerData==null) {
+            return null;
+        }
+
+        if(plmPktLengths==null) {
+            // If this is the first time the packet lengths are requested,
+            // decode them from the Nplm and Iplm fields. The lengths of a
+            // tile-part may continue in the next PLM marker segment.
+            plmPktLengths = new Vector<int[]>();
+            ByteArrayOutputStream iplm = new ByteArrayOutputStream();
+            for(int i=0; i<nPLMMarkSeg; i++) {
+                byte[] seg = pLMMarkerData[i];
+                if(seg==null) {
+                    break;
+                }
+                int off = 0;
+                while(off<seg.length) {
+                    int nplm = seg[off++]&0xFF;
+                    if(off+nplm>seg.length) {
+                        FacilityManager.getMsgLogger().
+                            printmsg(MsgLogger.WARNING,"Wrong length of "+
+                                     "Iplm field in PLM marker segment "+i);
+                        return null;
+                    }
+                    iplm.write(seg,off,nplm);
+                    off += nplm;
+                    if(nplm==0 || (seg[off-1]&0x80)==0) {
+                        plmPktLengths.
+                            addElement(decodePktLengths(iplm.toByteArray()));
+                        iplm.reset();
+                    }
+                }
+            }
+        }
+        if(tpRank<0 || tpRank>=plmPktLengths.size()) {
+            return null;
+        }
+        return plmPktLengths.elementAt(tpRank);
     }
 
     /**
@@ -1973,16 +2116,8 @@ public class HeaderDecoder implements ProgressionType, Markers,
             nfMarkSeg |= TLM_FOUND;
             break;
         case PLM:
-            if((nfMarkSeg & PLM_FOUND) != 0) {
-                throw new CorruptedCodestreamException("More than one PLM "+
-                                                      "marker "+
-                                                      "found in main header");
-            }
-            FacilityManager.getMsgLogger().
-                printmsg(MsgLogger.WARNING,"PLM marker segment found but "+
-                         "not used by by JJ2000 decoder.");
             nfMarkSeg |= PLM_FOUND;
-            htKey = "PLM";
+            htKey = "PLM"+(nPLMMarkSeg++);
             break;
         case POC:
             if( (nfMarkSeg&POC_FOUND)!=0) {
@@ -2131,10 +2266,8 @@ public class HeaderDecoder implements ProgressionType, Markers,
                                                        "though PLM marker "+
                                                        "found in main header");
             }
-            FacilityManager.getMsgLogger().
-                printmsg(MsgLogger.WARNING,"PLT marker segment found but "+
-                         "not used by JJ2000 decoder.");
-            htKey = "UNKNOWN";
+            nfMarkSeg |= PLT_FOUND;
+            htKey = "PLT"+(nPLTMarkSeg++);
             break;
         default:
             htKey = "UNKNOWN";
@@ -2240,6 +2373,14 @@ public class HeaderDecoder implements ProgressionType, Markers,
             }
         }
 
+        // PLM marker segments
+        if((nfMarkSeg&PLM_FOUND) != 0) {
+            for(int i=0;i<nPLMMarkSeg; i++) {
+                bais = new ByteArrayInputStream( (byte[])(ht.get("PLM"+i)));
+                readPLM(new DataInputStream(bais));
+            }
+        }
+
         // Reset the hashtable
         ht = null;
     }
@@ -2318,6 +2459,14 @@ public class HeaderDecoder implements ProgressionType, Markers,
             }
         }
 
+        // PLT marker segments
+        if((nfMarkSeg&PLT_FOUND) != 0) {
+            for(int i=0;i<nPLTMarkSeg; i++) {
+                bais = new ByteArrayInputStream( (byte[])(ht.get("PLT"+i)) );
+                readPLTFields(new DataInputStream(bais));
+            }
+        }
+
         // Reset ht
         ht = null;
     }
@@ -2405,7 +2554,8 @@ public class HeaderDecoder implements ProgressionType, Markers,
         // Get maximum number of bit planes from m quit condition
 //        int mMax = j2krparam.getMQuit();
         int mMax = -1;
-        return new StdEntropyDecoder(src,decSpec,doer,verber,mMax);
+        return new StdEntropyDecoder(src,decSpec,doer,verber,mMax,
+                                     j2krparam.getExecutorService());
     }
 
 
@@ -2519,6 +2669,8 @@ public class HeaderDecoder implements ProgressionType, Markers,
         nQCCMarkSeg = 0;
         nCOMMarkSeg = 0;
         nRGNMarkSeg = 0;
+        nPLTMarkSeg = 0;
+        pLTMarkerData = null;
     }
 
 
@@ -2556,7 +2708,10 @@ public class HeaderDecoder implements ProgressionType, Markers,
     }
 
     /**
-     * Return the packed packet headers for a given tile.
+     * Return the packed packet headers for a given tile. The tile-part
+     * headers are read as the tiles are requested, so the headers are
+     * gathered again at each call, from the tile-parts read so far, which
+     * include all the tile-parts of the tile.
      *
      * @return An input stream containing the packed packet headers for a
      * particular tile
@@ -2566,57 +2721,52 @@ public class HeaderDecoder implements ProgressionType, Markers,
      * */
      public ByteArrayInputStream getPackedPktHead(int tile)
          throws IOException {
+        ByteArrayOutputStream pkdPktHeaders = new ByteArrayOutputStream();
+        int i;
 
-        if(pkdPktHeaders==null) {
-            int i,t;
-            pkdPktHeaders = new ByteArrayOutputStream[nTiles];
-            for(i=nTiles-1; i>=0; i--) {
-                pkdPktHeaders[i] = new ByteArrayOutputStream();
+        if(nPPMMarkSeg!=0) {
+            // Create the packed packet headers from the Nppm and Ippm
+            // fields of the tile-parts of the tile
+            int t,nppm;
+            int nTileParts = tileOfTileParts.size();
+            byte[] temp;
+            ByteArrayInputStream pph;
+            ByteArrayOutputStream allNppmIppm =
+                new ByteArrayOutputStream();
+
+            // Concatenate all Nppm and Ippm fields
+            for(i=0 ; i<nPPMMarkSeg ; i++) {
+                allNppmIppm.write(pPMMarkerData[i]);
             }
-            if(nPPMMarkSeg!=0) {
-                // If this is first time packed packet headers are requested,
-                // create packed packet headers from Nppm and Ippm fields
-                int nppm;
-                int nTileParts = tileOfTileParts.size();
-                byte[] temp;
-                ByteArrayInputStream pph;
-                ByteArrayOutputStream allNppmIppm =
-                    new ByteArrayOutputStream();
-
-                // Concatenate all Nppm and Ippm fields
-                for(i=0 ; i<nPPMMarkSeg ; i++) {
-                    allNppmIppm.write(pPMMarkerData[i]);
-                }
-                pph = new ByteArrayInputStream(allNppmIppm.toByteArray());
-
-                // Read all packed packet headers and concatenate for each
-                // tile part
-                for(i=0; i<nTileParts ; i++) {
-                    t = ((Integer)tileOfTileParts.elementAt(i)).intValue();
-                    // get Nppm value
-                    nppm = (pph.read()<<24)|(pph.read()<<16)|
-                        (pph.read()<<8)|(pph.read());
-
-                    temp = new byte[nppm];
-                    // get ippm field
-                    pph.read(temp);
-                    pkdPktHeaders[t].write(temp);
+            pph = new ByteArrayInputStream(allNppmIppm.toByteArray());
+
+            // Read the packed packet headers of each tile part and keep
+            // the ones of the tile
+            for(i=0; i<nTileParts ; i++) {
+                t = ((Integer)tileOfTileParts.elementAt(i)).intValue();
+                // get Nppm value
+                nppm = (pph.read()<<24)|(pph.read()<<16)|
+                    (pph.read()<<8)|(pph.read());
+
+                temp = new byte[nppm];
+                // get ippm field
+                pph.read(temp);
+                if(t==tile) {
+                    pkdPktHeaders.write(temp);
                 }
-            } else {
-                int tp;
-                // Write all packed packet headers to pkdPktHeaders
-                for(t=nTiles-1; t>=0; t--) {
-                    for(tp=0; tp<nTileParts[t]; tp++){
-                        for(i=0 ; i<nPPTMarkSeg[t][tp] ; i++) {
-                           pkdPktHeaders[t].
-                                write(tilePartPkdPktHeaders[t][tp][i]);
-                        }
-                    }
+            }
+        } else {
+            int tp;
+            // Write the packed packet headers of the tile
+            for(tp=0; tp<nTileParts[tile]; tp++){
+                for(i=0 ; i<nPPTMarkSeg[tile][tp] ; i++) {
+                    pkdPktHeaders.
+                        write(tilePartPkdPktHeaders[tile][tp][i]);
                 }
             }
         }
 
-        return new ByteArrayInputStream(pkdPktHeaders[tile].toByteArray());
+        return new ByteArrayInputStream(pkdPktHeaders.toByteArray());
     }
 
     /**
@@ -775,7 +775,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
      * @return True if specified output rate or EOF is reached.
      * */
     public boolean readPktHead(int l,int r,int c,int p,CBlkInfo[][][] cbI,
-                               int[] nb) throws IOException {
+                               long[] nb) throws IOException {
 
         CBlkInfo ccb;
         int nSeg;                   // number of segment to read
@@ -786,7 +786,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
         int tmp,tmp2,totnewtp,lblockCur,tpidx;
         int sumtotnewtp = 0;
         Point cbc;
-        int startPktHead = ehs.getPos();
+        long startPktHead = ehs.getPos();
         if(startPktHead>=ehs.length()) {
             // EOF reached at the beginning of this packet head
             return true;
@@ -837,7 +837,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
             // unless ncb quit condition is used in which case headers
             // are not counted
             if(isTruncMode && maxCB == -1) {
-                tmp = ehs.getPos()-startPktHead;
+                tmp = (int)(ehs.getPos()-startPktHead);
                 if(tmp>nb[tIdx]) {
                     nb[tIdx] = 0;
                     return true;
@@ -1085,7 +1085,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
                         // If truncation mode, checks if output rate is reached
                         // unless ncb and lbody quit contitions used.
                         if(isTruncMode && maxCB==-1) {
-                            tmp = ehs.getPos()-startPktHead;
+                            tmp = (int)(ehs.getPos()-startPktHead);
                             if(tmp>nb[tIdx]) {
                                 nb[tIdx] = 0;
                                 // Remove found information in this code-block
@@ -1127,7 +1127,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
 
         // If truncation mode, checks if output rate is reached
         if(isTruncMode && maxCB == -1) {
-            tmp = ehs.getPos()-startPktHead;
+            tmp = (int)(ehs.getPos()-startPktHead);
             if(tmp>nb[tIdx]) {
                 nb[tIdx] = 0;
                 return true;
@@ -1160,8 +1160,8 @@ public class PktDecoder implements StdEntropyCoderOptions{
      * @return True if decoding rate is reached 
      * */
     public boolean readPktBody(int l,int r,int c,int p,CBlkInfo[][][] cbI,
-                               int[] nb) throws IOException {
-        int curOff = ehs.getPos();
+                               long[] nb) throws IOException {
+        long curOff = ehs.getPos();
         Point curCB;
         CBlkInfo ccb;
         boolean stopRead = false;
@@ -1271,6 +1271,17 @@ public class PktDecoder implements StdEntropyCoderOptions{
         return decSpec.pss.getPPY(t,c,rl);
     }
 
+    /**
+     * Notifies that a packet of the current tile is skipped without being
+     * read, using its length. The index of the next packet, which is checked
+     * against the one of the SOP marker segments, is updated. The state of
+     * the precinct's tag trees is left unchanged, the following packets of
+     * the same precinct must then be skipped too.
+     * */
+    public void skipPkt() {
+        pktIdx++;
+    }
+
     /**
      * Try to read a SOP marker and check that its sequence number if not out
      * of sequence. If so, an error is thrown.
@@ -1283,7 +1294,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
      *
      * @param c Component index
      * */
-    public boolean readSOPMarker(int[] nBytes,int p,int c,int r)
+    public boolean readSOPMarker(long[] nBytes,int p,int c,int r)
         throws IOException {
         int val;
         byte sopArray[] = new byte[6];
@@ -1306,7 +1317,7 @@ public class PktDecoder implements StdEntropyCoderOptions{
         }
 
         // Check if SOP is used for this packet
-        int pos = ehs.getPos();
+        long pos = ehs.getPos();
         if( (short)((ehs.read()<<8) | ehs.read()) != Markers.SOP ) {
             ehs.seek(pos);
             return false;
@@ -70,11 +70,11 @@ import java.io.IOException;
 public abstract class CodestreamWriter {
 
     /** The number of bytes already written to the bit stream */
-    protected int ndata=0;
+    protected long ndata=0;
 
     /** The maximum number of bytes that can be written to the
      * bit stream */
-    protected int maxBytes;
+    protected long maxBytes;
 
     /**
      * Allocates this object and initializes the maximum numner of
@@ -83,7 +83,7 @@ public abstract class CodestreamWriter {
      * @param mb The maximum number of bytes that can be written to
      * the bit stream.
      * */
-    protected CodestreamWriter(int mb) {
+    protected CodestreamWriter(long mb) {
         maxBytes = mb;
     }
 
@@ -96,14 +96,14 @@ public abstract class CodestreamWriter {
      *
      * @return The number of bytes remaining available in the bit stream.
      * */
-    public abstract int getMaxAvailableBytes();
+    public abstract long getMaxAvailableBytes();
 
     /**
      * Returns the current length of the entire bit stream.
      *
      * @return the current length of the bit stream
      * */
-    public abstract int getLength();
+    public abstract long getLength();
 
     /**
      * Writes a packet head to the bit stream and returns the number of bytes
@@ -81,7 +81,7 @@ public class FileCodestreamWriter extends CodestreamWriter
 
     /** The number of bytes already written to the bit stream, excluding the
      * header length, magic number and header length info. */
-    int ndata=0;
+    long ndata=0;
 
     /** The default buffer length, 1024 bytes */
     public static int DEF_BUF_LEN = 1024;
@@ -117,7 +117,7 @@ public class FileCodestreamWriter extends CodestreamWriter
      * @exception IOException If an error occurs while trying to open the file
      * for writing or while writing the magic number.
      * */
-    public FileCodestreamWriter(File file, int mb)
+    public FileCodestreamWriter(File file, long mb)
         throws IOException {
 
         super(mb);
@@ -142,7 +142,7 @@ public class FileCodestreamWriter extends CodestreamWriter
      * @exception IOException If an error occurs while trying to open the file
      * for writing or while writing the magic number.
      * */
-    public FileCodestreamWriter(String fname, int mb)
+    public FileCodestreamWriter(String fname, long mb)
         throws IOException {
 
         super(mb);
@@ -166,7 +166,7 @@ public class FileCodestreamWriter extends CodestreamWriter
      * @exception IOException If an error occurs while writing the magic
      * number to the 'os' output stream.
      * */
-    public FileCodestreamWriter(OutputStream os, int mb)
+    public FileCodestreamWriter(OutputStream os, long mb)
         throws IOException {
 
         super(mb);
@@ -183,7 +183,7 @@ public class FileCodestreamWriter extends CodestreamWriter
      *
      * @return The number of bytes remaining available in the bit stream.
      * */
-    public final int getMaxAvailableBytes() {
+    public final long getMaxAvailableBytes() {
         return maxBytes-ndata;
     }
 
@@ -192,7 +192,7 @@ public class FileCodestreamWriter extends CodestreamWriter
      *
      * @return the current length of the bit stream
      * */
-    public int getLength() {
+    public long getLength() {
         if (getMaxAvailableBytes() >= 0) {
             return ndata;
         }
@@ -250,7 +250,7 @@ public class FileCodestreamWriter extends CodestreamWriter
         if(!sim){
 	    // Write the head bytes
 	    if(getMaxAvailableBytes()<len){
-		len = getMaxAvailableBytes();
+		len = (int)getMaxAvailableBytes();
 	    }
 
             if(len > 0){
@@ -326,7 +326,7 @@ public class FileCodestreamWriter extends CodestreamWriter
             // Write the body bytes
             len = blen;
             if(getMaxAvailableBytes() < len){
-                len = getMaxAvailableBytes();
+                len = (int)getMaxAvailableBytes();
             }
             if(blen > 0){
                 out.write(body,0,len);
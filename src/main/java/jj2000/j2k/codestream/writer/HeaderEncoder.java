@@ -148,6 +148,14 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
     /** The encoder specifications */
     protected J2KImageWriteParamJava wp;
 
+    /** The length of the tile-part of each tile, written in the TLM marker
+     * segments, or null if not yet known */
+    private int[] tilePartLens;
+
+    /** The lengths of the packets of each tile, written in the PLT marker
+     * segments, or null if not yet known */
+    private int[][] pktLens;
+
     /**
      * Initializes the header writer with the references to the coding chain.
      *
@@ -253,6 +261,153 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
         out.write(getBuffer(),0,getBufferLength());
     }
 
+    /**
+     * Sets the length of the tile-part of each tile, which is written in the
+     * TLM marker segments of the main header if the length marker segments
+     * are used (see J2KImageWriteParamJava.getLengthMarkers()). Until it is
+     * set, null lengths are written.
+     *
+     * @param len The length of the tile-part of each tile, including its
+     * header.
+     * */
+    public void setTilePartLengths(int[] len) {
+        tilePartLens = len;
+    }
+
+    /**
+     * Sets the lengths of the packets of a tile, which are written in the
+     * PLT marker segments of its tile-part header if the length marker
+     * segments are used (see J2KImageWriteParamJava.getLengthMarkers()). If
+     * the lengths do not fit in the PLT marker segments of one tile-part
+     * header, they are not written.
+     *
+     * @param t The index of the tile.
+     *
+     * @param len The lengths of the packets, in the order of the codestream.
+     * */
+    public void setPacketLengths(int t,int[] len) {
+        if(pktLens==null) {
+            pktLens = new int[ralloc.getNumTiles()][];
+        }
+        // Check that no more than 256 PLT marker segments are needed
+        int nseg = 0;
+        for(int i=0; i<len.length; i=getPLTEnd(len,i)) {
+            nseg++;
+        }
+        pktLens[t] = (nseg<=256) ? len : null;
+    }
+
+    /**
+     * Returns the index after the last packet length which fits in the PLT
+     * marker segment starting with the given one.
+     *
+     * @param len The lengths of the packets.
+     *
+     * @param start The index of the first length of the PLT marker segment.
+     * */
+    private static int getPLTEnd(int[] len,int start) {
+        int lplt = 3; // Lplt and Zplt
+        int i;
+        for(i=start; i<len.length; i++) {
+            int n = getPktLenSize(len[i]);
+            if(lplt+n>MAX_LPLT) {
+                break;
+            }
+            lplt += n;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the number of bytes of a packet length in a PLT marker
+     * segment, 7 bits being written per byte.
+     *
+     * @param len The length of the packet.
+     *
+     * @return The number of bytes of the length.
+     * */
+    public static int getPktLenSize(int len) {
+        int n = 1;
+        while((len>>>(7*n))!=0) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the TLM marker segments, which give the length of the
+     * tile-part of each tile, in the order of the codestream. Each tile
+     * being in a single tile-part, the tile indices are written in 8 bits
+     * if possible and the lengths in 32 bits.
+     * */
+    private void writeTLM() throws IOException {
+        int nt = ralloc.getNumTiles();
+        int st = (nt<=256) ? 1 : 2; // Size of Ttlm
+        int maxn = (MAX_LTLM-4)/(st+4); // Maximum tiles in a marker segment
+        int t = 0;
+        for(int z=0; t<nt; z++) {
+            int n = Math.min(maxn,nt-t);
+
+            // TLM marker
+            hbuf.writeShort(TLM);
+
+            // Ltlm
+            hbuf.writeShort(4+n*(st+4));
+
+            // Ztlm
+            hbuf.writeByte(z);
+
+            // Stlm: ST and SP=1 (32 bits lengths)
+            hbuf.writeByte((st<<4) | (1<<6));
+
+            // Ttlm and Ptlm
+            for(; n>0; n--, t++) {
+                if(st==1) {
+                    hbuf.writeByte(t);
+                } else {
+                    hbuf.writeShort(t);
+                }
+                hbuf.writeInt((tilePartLens!=null) ? tilePartLens[t] : 0);
+            }
+        }
+    }
+
+    /**
+     * Writes the PLT marker segments of a tile-part header, which give the
+     * lengths of its packets. Each length is written in as many bytes as
+     * needed, 7 bits per byte, the most significant first, the high bit
+     * being set in all but the last byte.
+     *
+     * @param len The lengths of the packets.
+     * */
+    private void writePLT(int[] len) throws IOException {
+        int i = 0;
+        for(int z=0; i<len.length; z++) {
+            int end = getPLTEnd(len,i);
+            int lplt = 3;
+            for(int j=i; j<end; j++) {
+                lplt += getPktLenSize(len[j]);
+            }
+
+            // PLT marker
+            hbuf.writeShort(PLT);
+
+            // Lplt
+            hbuf.writeShort(lplt);
+
+            // Zplt
+            hbuf.writeByte(z);
+
+            // Iplt
+            for(; i<end; i++) {
+                for(int n=getPktLenSize(len[i])-1; n>0; n--) {
+                    hbuf.writeByte(0x80 | ((len[i]>>>(7*n)) & 0x7F));
+                }
+                hbuf.writeByte(len[i] & 0x7F);
+            }
+        }
+    }
+
     /**
      * Start Of Codestream marker (SOC) signalling the beginning of a
      * codestream.
@@ -1516,7 +1671,7 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
      * sequence of marker
      * segments:<ol><li>SOC</li><li>SIZ</li><li>COD</li><li>COC (if
      * needed)</li><li>QCD</li><li>QCC (if needed)</li><li>POC (if
-     * needed)</li></ol>
+     * needed)</li><li>TLM (if needed)</li><li>COM</li></ol>
      * */
     public void encodeMainHeader() throws IOException {
         int i;
@@ -1585,6 +1740,14 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
         if(prog.length>1)
             writePOC(true, 0);
 
+        // +--------------------------+
+        // |    TLM maker segment     |
+        // +--------------------------+
+        // The tile-part lengths are not known when the tiles are written
+        // one at a time
+        if(wp.getLengthMarkers() && !wp.getTileRateAllocation())
+            writeTLM();
+
         // +--------------------------+
         // |      Comment (COM)       |
         // +--------------------------+
@@ -1691,7 +1854,7 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
      * following sequence of marker segments:<ol> <li>SOT</li> <li>COD (if
      * needed)</li> <li>COC (if needed)</li> <li>QCD (if needed)</li> <li>QCC
      * (if needed)</li> <li>RGN (if needed)</li> <li>POC (if needed)</li>
-     * <li>SOD</li> </ol>
+     * <li>PLT (if needed)</li> <li>SOD</li> </ol>
      *
      * @param length The length of the current tile-part.
      *
@@ -1851,6 +2014,12 @@ public class HeaderEncoder implements Markers, StdEntropyCoderOptions {
                 writePOC(false,tileIdx);
         }
 
+	// +--------------------------+
+        // |    PLT maker segment     |
+	// +--------------------------+
+        if(wp.getLengthMarkers() && pktLens!=null && pktLens[tileIdx]!=null)
+            writePLT(pktLens[tileIdx]);
+
 	// +--------------------------+
         // |         SOD maker        |
 	// +--------------------------+
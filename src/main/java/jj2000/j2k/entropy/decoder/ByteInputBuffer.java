@@ -54,6 +54,7 @@ package jj2000.j2k.entropy.decoder;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * This class provides a byte input facility from byte buffers. It is similar
@@ -67,6 +68,10 @@ import java.io.InputStream;
  * <P>This class can modify the contents of the buffer given to the
  * constructor, when the addByteArray() method is called.
  *
+ * <P>The data may also be read from a ByteBuffer, for instance a view of
+ * the codestream, instead of a byte array. Data can not then be added with
+ * the addByteArray() method.
+ *
  * @see InputStream
  * */
 public class ByteInputBuffer {
@@ -74,6 +79,9 @@ public class ByteInputBuffer {
     /** The byte array containing the data */
     private byte buf[];
 
+    /** The ByteBuffer containing the data, null if it is in 'buf' */
+    private ByteBuffer bbuf;
+
     /** The index one greater than the last valid character in the input
      *  stream buffer */
     private int count;
@@ -114,6 +122,23 @@ public class ByteInputBuffer {
         count = offset+length;
     }
 
+    /**
+     * Creates a new byte input stream that reads data from the specified
+     * ByteBuffer. Up to length bytes are to be read from the buffer,
+     * starting at the indicated offset (see setByteBuffer()).
+     *
+     * <P>The data is not copied.
+     *
+     * @param buf the input buffer.
+     *
+     * @param offset the index in the buffer of the first byte to read.
+     *
+     * @param length the maximum number of bytes to read from the buffer.
+     */
+    public ByteInputBuffer(ByteBuffer buf, int offset, int length) {
+        setByteBuffer(buf,offset,length);
+    }
+
     /**
      * Sets the underlying buffer byte array to the given one, with the given
      * offset and length. If 'buf' is null then the current byte buffer is
@@ -134,7 +159,8 @@ public class ByteInputBuffer {
     public void setByteArray(byte buf[], int offset, int length) {
         // In same buffer?
         if (buf == null) {
-            if (length < 0 || count+length>this.buf.length) {
+            int len = (bbuf != null) ? bbuf.limit() : this.buf.length;
+            if (length < 0 || count+length>len) {
                 throw new IllegalArgumentException();
             }
             if (offset < 0) {
@@ -149,11 +175,36 @@ public class ByteInputBuffer {
                 throw new IllegalArgumentException();
             }
             this.buf = buf;
+            bbuf = null;
             count = offset+length;
             pos = offset;
         }
     }
 
+    /**
+     * Sets the underlying buffer to the given ByteBuffer, with the given
+     * offset and length. The data is read with absolute accesses, so the
+     * position of the ByteBuffer is neither used nor modified. Subsequent
+     * calls to setByteArray() with a null 'buf' refer to this ByteBuffer.
+     *
+     * <P>The data is not copied.
+     *
+     * @param buf the input buffer.
+     *
+     * @param offset the index in the buffer of the first byte to read.
+     *
+     * @param length the maximum number of bytes to read from the buffer.
+     */
+    public void setByteBuffer(ByteBuffer buf, int offset, int length) {
+        if (offset < 0 || length < 0 || offset+length > buf.limit()) {
+            throw new IllegalArgumentException();
+        }
+        bbuf = buf;
+        this.buf = null;
+        count = offset+length;
+        pos = offset;
+    }
+
     /**
      * Adds the specified data to the end of the byte array stream. This
      * method modifies the byte array buffer. It can also discard the already
@@ -169,6 +220,9 @@ public class ByteInputBuffer {
      *
      * */
     public synchronized void addByteArray(byte data[], int off, int len) {
+        if (bbuf != null) {
+            throw new IllegalStateException("Data is in a ByteBuffer");
+        }
         // Check integrity
         if (len < 0 || off < 0 || len+off > buf.length) {
             throw new IllegalArgumentException();
@@ -212,6 +266,9 @@ public class ByteInputBuffer {
      * */
     public int readChecked() throws IOException {
         if (pos < count) {
+            if (bbuf != null) {
+                return (int)bbuf.get(pos++) & 0xFF;
+            }
             return (int)buf[pos++] & 0xFF;
         } else {
             throw new EOFException();
@@ -232,6 +289,9 @@ public class ByteInputBuffer {
      * */
     public int read() {
         if (pos < count) {
+            if (bbuf != null) {
+                return (int)bbuf.get(pos++) & 0xFF;
+            }
             return (int)buf[pos++] & 0xFF;
         } else {
             return -1;
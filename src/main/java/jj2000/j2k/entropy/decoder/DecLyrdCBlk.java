@@ -49,6 +49,8 @@
 
 package jj2000.j2k.entropy.decoder;
 
+import java.nio.ByteBuffer;
+
 import jj2000.j2k.entropy.CodedCBlk;
 
 /**
@@ -82,10 +84,15 @@ public class DecLyrdCBlk extends CodedCBlk {
     public int h;
 
     /** The coded (compressed) data length. The data is stored in the
-     * 'data' array (see super class).
+     * 'data' array (see super class), or in 'dataBuf'.
      */
     public int dl;
 
+    /** A view of the coded (compressed) data in the codestream, used instead
+     * of the 'data' array when the data is not copied. The data then starts
+     * at index 0 of the view. Null if the data is in 'data'. */
+    public ByteBuffer dataBuf;
+
     /** The progressive flag, false by default (see above). */
     public boolean prog;
 
@@ -47,6 +47,8 @@
  */
 package jj2000.j2k.entropy.decoder;
 
+import java.nio.ByteBuffer;
+
 import jj2000.j2k.util.ArrayUtil;
 
 /**
@@ -709,6 +711,27 @@ public class MQDecoder {
         init();
     }
 
+    /**
+     * Resets the MQ decoder to start a new segment read from a ByteBuffer,
+     * such as a view of the codestream. This is like recreating a new
+     * MQDecoder object with new input data.
+     *
+     * @param buf The ByteBuffer containing the MQ encoded data.
+     *
+     * @param off The index of the first element in 'buf' to be decoded.
+     *
+     * @param len The number of bytes in 'buf' to be decoded. Any subsequent
+     * bytes are taken to be 0xFF.
+     *
+     *
+     * */
+    public final void nextBufferSegment(ByteBuffer buf, int off, int len) {
+        // Set the new input
+        in.setByteBuffer(buf,off,len);
+        // Reinitialize MQ
+        init();
+    }
+
     /**
      * Returns the underlying 'ByteInputBuffer' from where the MQ
      * coded input bytes are read.
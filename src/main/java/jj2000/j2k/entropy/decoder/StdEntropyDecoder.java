@@ -42,6 +42,11 @@
  * Copyright (c) 1999/2000 JJ2000 Partners.
  * */
 package jj2000.j2k.entropy.decoder;
+import java.util.Hashtable;
+import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 import jj2000.j2k.decoder.DecoderSpecs;
 import jj2000.j2k.entropy.StdEntropyCoderOptions;
 import jj2000.j2k.image.DataBlk;
@@ -49,6 +54,7 @@ import jj2000.j2k.image.DataBlkInt;
 import jj2000.j2k.util.ArrayUtil;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.MsgLogger;
+import jj2000.j2k.util.WorkScheduler;
 import jj2000.j2k.wavelet.Subband;
 import jj2000.j2k.wavelet.synthesis.SubbandSyn;
 
@@ -66,6 +72,20 @@ import jj2000.j2k.wavelet.synthesis.SubbandSyn;
  * are used for zero-coding (ZC), contexts 11-15 are used for sign-coding (SC)
  * and contexts 16-18 are used for magnitude-refinement (MR).
  *
+ * <P>The number of threads used by this entropy decoder is specified by the
+ * "jj2000.j2k.entropy.decoder.StdEntropyDecoder.nthreads" Java system
+ * property. If set to "0", the default, code-blocks are decoded one at a time
+ * by the thread calling 'getCodeBlock()'. If set to 'n' ('n' larger than 0)
+ * then the code-blocks of the requested subband are read ahead, in raster
+ * order, and decoded in parallel by 'n' decompressors, each one with its own
+ * MQ decoder and state. The decompressors run on the executor given to the
+ * constructor or, if none, on the default executor of 'WorkScheduler'. If an
+ * executor is given and the property is not set the number of available
+ * processors is used for 'n'. The decoded code-blocks are returned in the
+ * same way in both modes. The multithreaded implementation assumes that the
+ * code-blocks of a subband are requested in raster order, as done by the
+ * inverse wavelet transform, otherwise the speed-up may be lost.
+ *
  * <P>This implementation also provides some timing features. They can be
  * enabled by setting the 'DO_TIMING' constant of this class to true and
  * recompiling. The timing uses the 'System.currentTimeMillis()' Java API
@@ -93,24 +113,31 @@ public class StdEntropyDecoder extends EntropyDecoder
      * component. */
     private long time[];
 
-    /** The bit based input for arithmetic coding bypass (i.e. raw) coding */
-    private ByteToBitInput bin;
+    /** The Java system property name for the number of threads to use:
+     jj2000.j2k.entropy.decoder.StdEntropyDecoder.nthreads */
+    public static final String THREADS_PROP_NAME =
+        "jj2000.j2k.entropy.decoder.StdEntropyDecoder.nthreads";
+
+    /** The maximum number of code-blocks, per decompressor thread, that are
+     * decoded ahead of the requests. Used only in the multithreaded
+     * implementation. */
+    private static final int DECODE_AHEAD = 4;
 
-    /** The MQ decoder to use. It has in as the underlying source of coded
-     * data. */
-    private MQDecoder mq;
+    /** The executor running the decompressors, for the threaded
+     * implementation. It is null, if non threaded implementation is used */
+    private ExecutorService executor;
+
+    /** The bit based input for arithmetic coding bypass (i.e. raw) coding,
+     * for each thread */
+    private ByteToBitInput binT[];
+
+    /** The MQ decoder to use, for each thread. It has in as the underlying
+     * source of coded data. */
+    private MQDecoder mqT[];
 
     /** The decoder spec */
     private DecoderSpecs decSpec;
 
-    /** The options that are turned on, as flag bits. The options are
-     * 'OPT_TERM_PASS', 'OPT_RESET_MQ', 'OPT_VERT_STR_CAUSAL', 'OPT_BYPASS' and
-     * 'OPT_SEG_SYMBOLS' as defined in the StdEntropyCoderOptions interface
-     *
-     * @see StdEntropyCoderOptions
-     **/
-    private int options;
-
     /** Flag to indicate if we should try to detect errors or just ignore any
      * error resilient information */
     private final boolean doer;
@@ -211,8 +238,10 @@ public class StdEntropyDecoder extends EntropyDecoder
      *
      * <P>The lower 16 bits are referred to as "row 1" ("R1") while the upper
      * 16 bits are referred to as "row 2" ("R2").
+     *
+     * <P>There is one state array for each thread.
      * */
-    private final int state[];
+    private final int stateT[][];
 
     /** The separation between the upper and lower bits in the state array: 16
      * */
@@ -389,6 +418,142 @@ public class StdEntropyDecoder extends EntropyDecoder
     /** The maximum number of bit planes to decode for any code-block */
     private int mQuit;
 
+    /** The queue of idle decompressors. It is also the lock for the
+     * batches of code-blocks below. Used in multithreaded implementation
+     * only. */
+    private Stack<Decompressor> idleDecomps;
+
+    /** The index of the tile of the batches of code-blocks. Used in
+     * multithreaded implementation only. */
+    private int batchT = -1;
+
+    /** The batch of code-blocks whose code-blocks are being decoded in
+     * parallel. Used in multithreaded implementation only. */
+    private Batch batch;
+
+    /** The batches of code-blocks of the subbands of the current tile, by
+     * subband. A batch which is not the current one keeps the code-blocks
+     * that were read or decoded ahead until its subband is requested
+     * again. Used in multithreaded implementation only. */
+    private Hashtable<SubbandSyn,Batch> batches =
+        new Hashtable<SubbandSyn,Batch>();
+
+    /** Marks the decoded code-blocks of a batch that have already been
+     * returned. */
+    private static final DataBlk RETURNED = new DataBlkInt();
+
+    /**
+     * The code-blocks of a subband which are decoded in parallel, in raster
+     * order, starting from the first one requested. Used only in
+     * multithreaded implementation.
+     * */
+    private static class Batch {
+        /** The subband of the code-blocks */
+        SubbandSyn sb;
+
+        /** The options to decode the code-blocks with */
+        int opts;
+
+        /** The coded code-blocks, in raster order, until they are taken by
+         * a decompressor. */
+        DecLyrdCBlk src[];
+
+        /** The decoded code-blocks, in raster order, until they are
+         * returned. */
+        DataBlk out[];
+
+        /** The index of the first code-block of the batch */
+        int first;
+
+        /** The index after the last code-block read from the source */
+        int nFetched;
+
+        /** The index after the last code-block taken for decoding */
+        int nTaken;
+
+        /** The first error or runtime exception thrown by a decompressor
+         * on a code-block of this batch. Null if none. */
+        Throwable err;
+    }
+
+    /**
+     * Class that takes care of decoding the code-blocks of the current
+     * subband with thread local arguments, in the order in which they were
+     * read. Used only in multithreaded implementation.
+     * */
+    private class Decompressor implements Runnable {
+        /** The index of this decompressor. Used to access thread local
+         * variables */
+        private final int idx;
+
+        /**
+         * Creates a new decompressor object with the given index.
+         *
+         * @param idx The index of this decompressor.
+         * */
+        Decompressor(int idx) {
+            this.idx = idx;
+        }
+
+        /**
+         * Decodes code-blocks of the current batch until all the ones read
+         * so far have been taken, and then joins the 'idleDecomps'
+         * queue. This last step occurs even if exceptions are thrown by the
+         * 'decodeCodeBlock()' method.
+         * */
+        public void run() {
+            DecLyrdCBlk ccb;    // The coded code-block
+            Batch b;            // The batch of the code-block
+            int k;              // The index of the code-block
+            DataBlk cblk;       // The decoded code-block
+
+            b = null;
+            try {
+                while (true) {
+                    synchronized (idleDecomps) {
+                        b = batch;
+                        if (b.nTaken >= b.nFetched) {
+                            idleDecomps.push(this);
+                            idleDecomps.notifyAll();
+                            return;
+                        }
+                        k = b.nTaken++;
+                        ccb = b.src[k];
+                        b.src[k] = null;
+                    }
+                    cblk = decodeCodeBlock(ccb.m,ccb.n,b.sb,ccb,null,b.opts,
+                                           idx);
+                    synchronized (idleDecomps) {
+                        b.out[k] = cblk;
+                        idleDecomps.notifyAll();
+                    }
+                }
+            } catch (RuntimeException e) {
+                failed(b,e);
+                throw e;
+            } catch (Error e) {
+                failed(b,e);
+                throw e;
+            }
+        }
+
+        /**
+         * Records the error condition in the batch and joins the
+         * 'idleDecomps' queue.
+         *
+         * @param b The batch of the code-block whose decoding failed.
+         *
+         * @param e The error or runtime exception that was thrown.
+         * */
+        private void failed(Batch b, Throwable e) {
+            synchronized (idleDecomps) {
+                if (b.err == null) b.err = e;
+                idleDecomps.push(this);
+                idleDecomps.notifyAll();
+            }
+        }
+    }
+
     /** Static initializer: initializes all the lookup tables. */
     static {
         int i,j;
@@ -616,6 +781,35 @@ public class StdEntropyDecoder extends EntropyDecoder
      * */
     public StdEntropyDecoder(CodedCBlkDataSrcDec src, DecoderSpecs decSpec,
 			     boolean doer, boolean verber, int mQuit) {
+        this(src,decSpec,doer,verber,mQuit,null);
+    }
+
+    /**
+     * Instantiates a new entropy decoder engine, with the specified source of
+     * data, nominal block width and height, which decodes code-blocks in
+     * parallel on the given executor.
+     *
+     * @param src The source of data
+     *
+     * @param decSpec The decoder specifications, which give the entropy
+     * coding options and the code-block sizes of each tile-component.
+     *
+     * @param doer If true error detection will be performed, if any error
+     * detection features have been enabled.
+     *
+     * @param verber This flag indicates if the entropy decoder should be
+     * verbose about bit stream errors that are detected and concealed.
+     *
+     * @param mQuit The maximum number of bit planes to decode for any
+     * code-block, or -1 to decode them all.
+     *
+     * @param executor The executor on which to decode code-blocks in
+     * parallel. If null the default executor is used if the
+     * THREADS_PROP_NAME property asks for parallel decoding.
+     * */
+    public StdEntropyDecoder(CodedCBlkDataSrcDec src, DecoderSpecs decSpec,
+			     boolean doer, boolean verber, int mQuit,
+                             ExecutorService executor) {
         super(src);
 
         this.decSpec = decSpec;
@@ -634,9 +828,55 @@ public class StdEntropyDecoder extends EntropyDecoder
         }
         */
 
-        // Initialize internal variables
-        state = new int[(decSpec.cblks.getMaxCBlkWidth()+2) *
-                       ((decSpec.cblks.getMaxCBlkHeight()+1)/2+2)];
+        int nt;     // The number of threads
+        int i;      // Counter
+
+        // Get the number of threads to use
+        nt = WorkScheduler.getParallelism(THREADS_PROP_NAME,executor);
+
+        // Initialize thread local variables. Index 0 is used by the calling
+        // thread, the others by the decompressors.
+        stateT = new int[nt+1][];
+        mqT = new MQDecoder[nt+1];
+        binT = new ByteToBitInput[nt+1];
+        for (i=0; i<=nt; i++) {
+            stateT[i] = new int[(decSpec.cblks.getMaxCBlkWidth()+2) *
+                                ((decSpec.cblks.getMaxCBlkHeight()+1)/2+2)];
+        }
+
+        // If using multithreaded implementation get necessary objects
+        if (nt > 0) {
+            this.executor = WorkScheduler.getExecutor(executor,nt);
+            idleDecomps = new Stack<Decompressor>();
+            for (i=nt; i>0; i--) {
+                idleDecomps.push(new Decompressor(i));
+            }
+        }
+    }
+
+    /**
+     * Changes the current tile, given the new indexes. The code-blocks read
+     * ahead by the multithreaded implementation are dropped, even if the
+     * tile does not change, since the code-blocks of the tile may then be
+     * read differently (see BitstreamReaderAgent.setDecodedArea()).
+     *
+     * @param x The horizontal indexes the tile.
+     *
+     * @param y The vertical indexes of the new tile.
+     * */
+    public void setTile(int x,int y) {
+        super.setTile(x,y);
+        batchT = -1;
+    }
+
+    /**
+     * Advances to the next tile, in standard scan-line order (by rows then
+     * columns). The code-blocks read ahead by the multithreaded
+     * implementation are dropped.
+     * */
+    public void nextTile() {
+        super.nextTile();
+        batchT = -1;
     }
 
     /**
@@ -709,6 +949,241 @@ public class StdEntropyDecoder extends EntropyDecoder
     public DataBlk getCodeBlock(int c, int m, int n, SubbandSyn sb,
                                 DataBlk cblk) {
         long stime = 0L;  // Start time for timed sections
+        int options;      // The options to decode with
+
+        if (executor != null) { // Use multiple threaded implementation
+            return getDecodedCodeBlock(c,m,n,sb,cblk);
+        }
+
+        // Get the code-block to decode
+        srcblk = src.getCodeBlock(c,m,n,sb,1,-1,srcblk);
+        if (DO_TIMING) stime = System.currentTimeMillis();
+
+        // Retrieve options from decSpec
+        options = ((Integer)decSpec.ecopts.
+                   getTileCompVal(tIdx,c)).intValue();
+
+        cblk = decodeCodeBlock(m,n,sb,srcblk,cblk,options,0);
+
+        if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
+
+        return cblk;
+    }
+
+    /**
+     * Returns the specified code-block, as 'getCodeBlock()' does, using the
+     * multithreaded implementation. If the code-block belongs to another
+     * subband than the one currently decoded, the batch of the new subband
+     * becomes the current one. It is created, starting at the requested
+     * code-block, if the subband was not requested before in the tile or if
+     * the code-block precedes the batch. The code-blocks that follow the
+     * requested one are read ahead and handed out, in order, to the idle
+     * decompressors. If the code-block has already been returned, it is
+     * decoded again by the calling thread. The calling thread also decodes
+     * the code-blocks up to the requested one which are not yet taken by a
+     * decompressor.
+     *
+     * @param c The component for which to return the code-block.
+     *
+     * @param m The vertical index of the code-block to return, in the
+     * specified subband.
+     *
+     * @param n The horizontal index of the code-block to return, in the
+     * specified subband.
+     *
+     * @param sb The subband in which the code-block to return is.
+     *
+     * @param cblk If non-null this object will be used to return the new
+     * code-block. If null a new one will be allocated and returned.
+     *
+     * @return The decoded code-block.
+     * */
+    private DataBlk getDecodedCodeBlock(int c, int m, int n, SubbandSyn sb,
+                                        DataBlk cblk) {
+        int k = m*sb.numCb.x+n;                // The code-block index
+        int nCblks = sb.numCb.x*sb.numCb.y;     // The number of code-blocks
+        int lim;            // The number of code-blocks to read ahead to
+        int j;              // The index of a code-block taken for decoding
+        DecLyrdCBlk ccb;    // A coded code-block
+        DataBlk dblk;       // The decoded code-block
+        Decompressor decomp;
+        Batch b;
+        boolean interrupted; // If interrupted while waiting
+
+        // Switch to the batch of the subband, if needed. The batches of the
+        // previous tile are dropped.
+        if (batchT != tIdx || batch.sb != sb || k < batch.first) {
+            synchronized (idleDecomps) {
+                if (batchT != tIdx) {
+                    batches.clear();
+                    batchT = tIdx;
+                }
+                b = batches.get(sb);
+                if (b == null || k < b.first) {
+                    b = new Batch();
+                    b.sb = sb;
+                    b.opts = ((Integer)decSpec.ecopts.
+                              getTileCompVal(tIdx,c)).intValue();
+                    b.src = new DecLyrdCBlk[nCblks];
+                    b.out = new DataBlk[nCblks];
+                    b.first = k;
+                    b.nFetched = k;
+                    b.nTaken = k;
+                    batches.put(sb,b);
+                }
+                batch = b;
+            }
+        }
+        b = batch;
+
+        // Read the coded code-blocks up to the look ahead limit. Only this
+        // thread reads from the source.
+        lim = Math.min(nCblks,k+1+DECODE_AHEAD*(stateT.length-1));
+        while (b.nFetched < lim) {
+            ccb = src.getCodeBlock(c,b.nFetched/sb.numCb.x,
+                                   b.nFetched%sb.numCb.x,sb,1,-1,null);
+            synchronized (idleDecomps) {
+                b.src[b.nFetched++] = ccb;
+            }
+        }
+
+        // Give work to all idle decompressors
+        while (true) {
+            synchronized (idleDecomps) {
+                if (b.nTaken >= b.nFetched || idleDecomps.empty()) break;
+                decomp = idleDecomps.pop();
+            }
+            try {
+                executor.execute(decomp);
+            } catch (RejectedExecutionException e) {
+                // The calling thread will decode the code-blocks itself
+                synchronized (idleDecomps) {
+                    idleDecomps.push(decomp);
+                }
+                break;
+            }
+        }
+
+        // Wait for the code-block. Instead of waiting for the decompressors
+        // to take the code-blocks up to the requested one, the calling
+        // thread decodes them itself. If interrupted while waiting for a
+        // decompressor, it still waits and restores the interrupt after.
+        ccb = null;
+        j = -1;
+        interrupted = false;
+        try {
+            while (true) {
+                synchronized (idleDecomps) {
+                    while (true) {
+                        if (b.err instanceof Error) throw (Error) b.err;
+                        if (b.err != null) {
+                            throw (RuntimeException) b.err;
+                        }
+
+                        dblk = b.out[k];
+                        if (dblk != null) {
+                            if (dblk != RETURNED) b.out[k] = RETURNED;
+                            break;
+                        }
+                        if (k >= b.nTaken) {
+                            j = b.nTaken++;
+                            ccb = b.src[j];
+                            b.src[j] = null;
+                            break;
+                        }
+                        try {
+                            idleDecomps.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                if (dblk != null) break;
+                if (j == k) {
+                    return decodeCodeBlock(m,n,sb,ccb,cblk,b.opts,0);
+                }
+                dblk = decodeCodeBlock(ccb.m,ccb.n,sb,ccb,null,b.opts,0);
+                synchronized (idleDecomps) {
+                    b.out[j] = dblk;
+                }
+            }
+        } catch (RuntimeException e) {
+            dropBatch(b);
+            throw e;
+        } catch (Error e) {
+            dropBatch(b);
+            throw e;
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        if (dblk == RETURNED) {
+            // Already returned once, decode it again
+            srcblk = src.getCodeBlock(c,m,n,sb,1,-1,srcblk);
+            return decodeCodeBlock(m,n,sb,srcblk,cblk,b.opts,0);
+        }
+        if (cblk == null) {
+            return dblk;
+        }
+        cblk.progressive = dblk.progressive;
+        cblk.ulx = dblk.ulx;
+        cblk.uly = dblk.uly;
+        cblk.w = dblk.w;
+        cblk.h = dblk.h;
+        cblk.offset = 0;
+        cblk.scanw = cblk.w;
+        cblk.setData(dblk.getData());
+        return cblk;
+    }
+
+    /**
+     * Drops a batch in which the decoding of a code-block failed, so that
+     * its code-blocks are read and decoded again if requested again. Used
+     * only in multithreaded implementation.
+     *
+     * @param b The batch to drop.
+     * */
+    private void dropBatch(Batch b) {
+        synchronized (idleDecomps) {
+            if (batches.get(b.sb) == b) batches.remove(b.sb);
+            // Look up the batch of the next code-block again
+            batchT = -1;
+        }
+    }
+
+    /**
+     * Decodes the code-block in 'srcblk' into 'cblk', using the specified
+     * options and the thread local decoding state of index 'idx'. Index 0 is
+     * reserved for the thread calling 'getCodeBlock()', the other indexes
+     * belong to the decompressors of the multithreaded implementation.
+     *
+     * @param m The vertical index of the code-block, in the subband. Used
+     * for error messages only.
+     *
+     * @param n The horizontal index of the code-block, in the
+     * subband. Used for error messages only.
+     *
+     * @param sb The subband in which the code-block is.
+     *
+     * @param srcblk The coded data of the code-block.
+     *
+     * @param cblk If non-null this object will be used to return the
+     * decoded code-block. If null a new one will be allocated and
+     * returned.
+     *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
+     * @param idx The index of the thread local decoding state to use.
+     *
+     * @return The decoded code-block.
+     * */
+    private DataBlk decodeCodeBlock(int m, int n, SubbandSyn sb,
+                                    DecLyrdCBlk srcblk, DataBlk cblk,
+                                    int options, int idx) {
+        int state[] = stateT[idx]; // The state information
+        MQDecoder mq = mqT[idx];   // The MQ decoder to use
+        ByteToBitInput bin = binT[idx]; // The bit input for bypass mode
         int zc_lut[];     // The ZC lookup table to use
         int out_data[];   // The outupt data buffer
         int npasses;      // The number of coding passes to perform
@@ -720,14 +1195,6 @@ public class StdEntropyDecoder extends EntropyDecoder
 
         boolean isterm;
 
-        // Get the code-block to decode
-        srcblk = src.getCodeBlock(c,m,n,sb,1,-1,srcblk);
-        if (DO_TIMING) stime = System.currentTimeMillis();
-
-        // Retrieve options from decSpec
-        options = ((Integer)decSpec.ecopts.
-                   getTileCompVal(tIdx,c)).intValue();
-
         // Reset state
         ArrayUtil.intArraySet(state,0);
 
@@ -763,12 +1230,21 @@ public class StdEntropyDecoder extends EntropyDecoder
         // Initialize for decoding
         npasses = srcblk.nTrunc;
         if (mq == null) {
-            in = new ByteInputBuffer(srcblk.data,0,tslen);
-            mq = new MQDecoder(in ,NUM_CTXTS,MQ_INIT);
+            // The data is either in a view of the codestream or in 'data'
+            if (srcblk.dataBuf != null) {
+                in = new ByteInputBuffer(srcblk.dataBuf,0,tslen);
+            } else {
+                in = new ByteInputBuffer(srcblk.data,0,tslen);
+            }
+            mq = mqT[idx] = new MQDecoder(in ,NUM_CTXTS,MQ_INIT);
         }
         else {
             // We always start by an MQ segment
-            mq.nextSegment(srcblk.data,0,tslen);
+            if (srcblk.dataBuf != null) {
+                mq.nextBufferSegment(srcblk.dataBuf,0,tslen);
+            } else {
+                mq.nextSegment(srcblk.data,0,tslen);
+            }
             mq.resetCtxts();
         }
         error = false;
@@ -776,7 +1252,7 @@ public class StdEntropyDecoder extends EntropyDecoder
         if ((options & OPT_BYPASS) != 0) {
             if(bin==null){
                 if (in == null) in = mq.getByteInputBuffer();
-                bin = new ByteToBitInput(in);
+                bin = binT[idx] = new ByteToBitInput(in);
             }
         }
 
@@ -819,7 +1295,8 @@ public class StdEntropyDecoder extends EntropyDecoder
             isterm = (options & OPT_TERM_PASS) != 0 ||
                 ((options & OPT_BYPASS) != 0 &&
                  (31-NUM_NON_BYPASS_MS_BP-srcblk.skipMSBP)>=curbp);
-            error = cleanuppass(cblk,mq,curbp,state,zc_lut,isterm);
+            error = cleanuppass(cblk,mq,curbp,state,zc_lut,isterm,
+                                options);
             npasses--;
             if (!error || !doer) curbp--;
         }
@@ -836,7 +1313,8 @@ public class StdEntropyDecoder extends EntropyDecoder
                     // Here starts a new raw segment
                     bin.setByteArray(null,-1,srcblk.tsLengths[++tsidx]);
                     isterm = (options & OPT_TERM_PASS) != 0;
-                    error = rawSigProgPass(cblk,bin,curbp,state,isterm);
+                    error = rawSigProgPass(cblk,bin,curbp,state,isterm,
+                                           options);
                     npasses--;
                     if (npasses <= 0 || (error && doer)) break;
 
@@ -847,7 +1325,8 @@ public class StdEntropyDecoder extends EntropyDecoder
                     isterm = (options & OPT_TERM_PASS) != 0 ||
                         ((options & OPT_BYPASS) != 0 &&
                          (31-NUM_NON_BYPASS_MS_BP-srcblk.skipMSBP>curbp));
-                    error = rawMagRefPass(cblk,bin,curbp,state,isterm);
+                    error = rawMagRefPass(cblk,bin,curbp,state,isterm,
+                                          options);
                 }
                 else {// Do not use bypass decoding mode
                     if ((options & OPT_TERM_PASS) != 0) {
@@ -855,7 +1334,8 @@ public class StdEntropyDecoder extends EntropyDecoder
                         mq.nextSegment(null,-1,srcblk.tsLengths[++tsidx]);
                     }
                     isterm = (options & OPT_TERM_PASS) != 0;
-                    error = sigProgPass(cblk,mq,curbp,state,zc_lut,isterm);
+                    error = sigProgPass(cblk,mq,curbp,state,zc_lut,isterm,
+                                        options);
                     npasses--;
                     if (npasses <= 0 || (error && doer)) break;
 
@@ -866,7 +1346,8 @@ public class StdEntropyDecoder extends EntropyDecoder
                     isterm = (options & OPT_TERM_PASS) != 0 ||
                         ((options & OPT_BYPASS) != 0 &&
                          (31-NUM_NON_BYPASS_MS_BP-srcblk.skipMSBP>curbp));
-                    error = magRefPass(cblk,mq,curbp,state,isterm);
+                    error = magRefPass(cblk,mq,curbp,state,isterm,
+                                       options);
                 }
 
                 npasses--;
@@ -881,7 +1362,8 @@ public class StdEntropyDecoder extends EntropyDecoder
                 isterm = (options & OPT_TERM_PASS) != 0 ||
                     ((options & OPT_BYPASS) != 0 &&
                      (31-NUM_NON_BYPASS_MS_BP-srcblk.skipMSBP)>=curbp);
-                error = cleanuppass(cblk,mq,curbp,state,zc_lut,isterm);
+                error = cleanuppass(cblk,mq,curbp,state,zc_lut,isterm,
+                                    options);
                 npasses--;
                 if (error) break;
                 // Goto next bit-plane
@@ -903,8 +1385,6 @@ public class StdEntropyDecoder extends EntropyDecoder
             conceal(cblk,curbp);
         }
 
-        if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
-
         // Return decoded block
         return cblk;
     }
@@ -984,10 +1464,14 @@ public class StdEntropyDecoder extends EntropyDecoder
      * @param isterm If this pass has been terminated. If the pass has been
      * terminated it can be used to check error resilience.
      *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
      * @return True if an error was detected in the bit stream, false otherwise.
      * */
     private boolean sigProgPass(DataBlk cblk, MQDecoder mq, int bp,
-                                int state[], int zc_lut[], boolean isterm) {
+                                int state[], int zc_lut[], boolean isterm,
+                                int options) {
         int j,sj;        // The state index for line and stripe
         int k,sk;        // The data index for line and stripe
         int dscanw;      // The data scan-width
@@ -1337,10 +1821,14 @@ public class StdEntropyDecoder extends EntropyDecoder
      * @param isterm If this pass has been terminated. If the pass has been
      * terminated it can be used to check error resilience.
      *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
      * @return True if an error was detected in the bit stream, false otherwise.
      * */
     private boolean rawSigProgPass(DataBlk cblk, ByteToBitInput bin, int bp,
-                                   int state[], boolean isterm) {
+                                   int state[], boolean isterm,
+                                   int options) {
         int j,sj;        // The state index for line and stripe
         int k,sk;        // The data index for line and stripe
         int dscanw;      // The data scan-width
@@ -1669,10 +2157,14 @@ public class StdEntropyDecoder extends EntropyDecoder
      * @param isterm If this pass has been terminated. If the pass has been
      * terminated it can be used to check error resilience.
      *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
      * @return True if an error was detected in the bit stream, false otherwise.
      * */
     private boolean magRefPass(DataBlk cblk, MQDecoder mq, int bp,
-                               int state[], boolean isterm) {
+                               int state[], boolean isterm,
+                               int options) {
         int j,sj;        // The state index for line and stripe
         int k,sk;        // The data index for line and stripe
         int dscanw;      // The data scan-width
@@ -1831,10 +2323,14 @@ public class StdEntropyDecoder extends EntropyDecoder
      * @param isterm If this pass has been terminated. If the pass has been
      * terminated it can be used to check error resilience.
      *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
      * @return True if an error was detected in the bit stream, false otherwise.
      * */
     private boolean rawMagRefPass(DataBlk cblk, ByteToBitInput bin, int bp,
-                                  int state[], boolean isterm) {
+                                  int state[], boolean isterm,
+                                  int options) {
         int j,sj;        // The state index for line and stripe
         int k,sk;        // The data index for line and stripe
         int dscanw;      // The data scan-width
@@ -1978,11 +2474,15 @@ public class StdEntropyDecoder extends EntropyDecoder
      * @param isterm If this pass has been terminated. If the pass has been
      * terminated it can be used to check error resilience.
      *
+     * @param options The options to use, as flag bits (see
+     * StdEntropyCoderOptions).
+     *
      * @return True if an error was detected in the bit stream, false
      * otherwise.
      * */
     private boolean cleanuppass(DataBlk cblk, MQDecoder mq, int bp,
-                                int state[], int zc_lut[], boolean isterm) {
+                                int state[], int zc_lut[], boolean isterm,
+                                int options) {
         int j,sj;        // The state index for line and stripe
         int k,sk;        // The data index for line and stripe
         int dscanw;      // The data scan-width
@@ -325,6 +325,32 @@ ploop:
         }
     }
 
+    /**
+     * Discards the valid truncation points which have a rate-distortion
+     * slope smaller than 'slope', together with the coded data that is only
+     * needed by them. It is used when the truncation points which can be
+     * included in the bit stream are known as soon as the code-block is
+     * coded.
+     *
+     * @param slope The smallest slope of the truncation points to keep.
+     * */
+    public void truncate(float slope) {
+        int n = nVldTrunc;
+        while (n > 0 && truncSlopes[n-1] < slope) {
+            n--;
+        }
+        if (n == nVldTrunc) {
+            return;
+        }
+        nVldTrunc = n;
+        int len = (n > 0) ? truncRates[truncIdxs[n-1]] : 0;
+        if (data != null && len < data.length) {
+            byte[] d = new byte[len];
+            System.arraycopy(data,0,d,0,len);
+            data = d;
+        }
+    }
+
     /**
      * Returns the contents of the object in a string. This is used for
      * debugging.
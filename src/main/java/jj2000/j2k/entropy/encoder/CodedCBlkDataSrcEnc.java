@@ -147,4 +147,16 @@ public interface CodedCBlkDataSrcEnc extends ForwWTDataProps {
      *
      */
     public boolean precinctPartitionUsed(int c, int t);
+
+    /**
+     * Sets the rate-distortion slope below which the coding of the
+     * code-blocks which are returned next may stop early. The coding of a
+     * code-block stops after a magnitude bit-plane which has, as a whole, a
+     * lower slope, since its remaining coding passes are then expected to be
+     * discarded by the rate allocation. A slope of 0 codes all the coding
+     * passes, which is the default.
+     *
+     * @param slope The slope below which the coding may stop, or 0.
+     * */
+    public void setStopSlope(float slope);
 }
@@ -51,8 +51,10 @@ import jj2000.j2k.codestream.PrecInfo;
 import jj2000.j2k.codestream.ProgressionType;
 import jj2000.j2k.codestream.writer.BitOutputBuffer;
 import jj2000.j2k.codestream.writer.CodestreamWriter;
+import jj2000.j2k.codestream.writer.HeaderEncoder;
 import jj2000.j2k.codestream.writer.PktEncoder;
 import jj2000.j2k.entropy.Progression;
+import jj2000.j2k.util.ArrayUtil;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.MathUtil;
 import jj2000.j2k.util.MsgLogger;
@@ -200,6 +202,54 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
     /** The minimum slope accross all code-blocks and truncation points. */
     private float minSlope;
 
+    /** The length of each packet, as found when simulating the layers,
+     * indexed by tile, layer, component, resolution level and precinct. It
+     * is only kept when the length marker segments are written. */
+    private int[][][][][] pktLens;
+
+    /** Whether the write methods only list the lengths of the packets, in
+     * the order in which they are written, instead of writing them */
+    private boolean listPkts;
+
+    /** The packet lengths listed by the write methods */
+    private int[] listedPktLens;
+
+    /** The number of packet lengths in 'listedPktLens' */
+    private int nListedPkts;
+
+    /** Whether each tile is coded, allocated and written before the next
+     * one is coded, with the layer lengths shared between the tiles in
+     * proportion of their areas (see
+     * J2KImageWriteParamJava.getTileRateAllocation()). */
+    private boolean tileByTile;
+
+    /** The target number of bytes of each layer and all the previous ones,
+     * for the whole image and including the header overhead, without the
+     * integer limit of 'EBCOTLayer.maxBytes'. It is only used in tile by
+     * tile mode. */
+    private double[] layerTargets;
+
+    /** The header overhead of the whole image, in bytes. It is only used in
+     * tile by tile mode. */
+    private int headOverhead;
+
+    /** The rate-distortion slope threshold of each layer, when the layers
+     * are specified by their quality instead of their length (see
+     * J2KImageWriteParamJava.getLayerQualities()), or null. */
+    private float[] layerSlopes;
+
+    /** The factor giving the slope threshold of a layer from its normalized
+     * mean squared error. At high rates, each additional bit per sample
+     * divides the distortion by 4, so that the decrease of the distortion
+     * per byte is 16*ln(2) times the mean squared error. */
+    private static final double MSE_TO_SLOPE = 16*Math.log(2);
+
+    /** The factor by which the estimated slope threshold of the last layer
+     * is divided to give the slope below which the coding of a code-block
+     * stops, or 0 if it does not stop early (see
+     * J2KImageWriteParamJava.getEarlyTerminationMargin()). */
+    private float stopMargin;
+
     /**
      * Initializes the EBCOT rate allocator of entropy coded data. The layout
      * of layers, and their bitrate constraints, is specified by the 'lyrs'
@@ -219,10 +269,7 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
 
         super(src,lyrs.getTotNumLayers(),writer,wp);
 
-        int minsbi, maxsbi;
-        int i;
-        SubbandAn sb, sb2;
-        Point ncblks = null;
+        SubbandAn sb;
 
         // If we do timing create necessary structures
         /* UNCOMMENT AT COMPILE TIME
@@ -252,14 +299,28 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
         int nt = src.getNumTiles();
         int nc = getNumComps();
 
+        // Whether the tiles are allocated, and written, one at a time
+        tileByTile = wp.getTileRateAllocation();
+
+        // The margin of the early termination of the coding
+        stopMargin = (float)wp.getEarlyTerminationMargin();
+
+        // The slope threshold of each layer, from its PSNR relative to the
+        // nominal range, if the layers are specified by their quality
+        double[] qualities = wp.getLayerQualities();
+        if (qualities != null) {
+            layerSlopes = new float[qualities.length];
+            for (int l=0; l<qualities.length; l++) {
+                layerSlopes[l] =
+                    (float)(MSE_TO_SLOPE*Math.pow(10,-qualities[l]/10));
+            }
+        }
+
         //Allocate the coded code-blocks and truncation points indexes arrays
-        cblks = new CBlkRateDistStats[nt][nc][][][];
-        truncIdxs = new int[nt][numLayers][nc][][][];
+        cblks = new CBlkRateDistStats[nt][][][][];
+        truncIdxs = new int[nt][][][][][];
 
-        int cblkPerSubband; // Number of code-blocks per subband
 	int mrl; // Number of resolution levels
-        int l; // layer index
-	int s; //subband index
 
         // Used to compute the maximum number of precincts for each resolution
         // level
@@ -319,12 +380,6 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                 tcx1 = (int)Math.ceil(tx1/(double)(xrsiz));
                 tcy1 = (int)Math.ceil(ty1/(double)(yrsiz));
 
-                cblks[t][c] = new CBlkRateDistStats[mrl][][];
-
-                for(l=0; l<numLayers; l++) {
-                    truncIdxs[t][l][c] = new int[mrl][][];
-                }
-
                 for(int r=0; r<mrl; r++) { // loop on resolution levels
 
                     // Tile's coordinates in the reduced resolution image
@@ -352,32 +407,14 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                     } else {
                         numPrec[t][c][r].y = 0;
                     }
-
-                    minsbi = (r==0) ? 0 : 1;
-                    maxsbi = (r==0) ? 1 : 4;
-
-                    cblks[t][c][r] = new CBlkRateDistStats[maxsbi][];
-                    for(l=0; l<numLayers; l++) {
-                        truncIdxs[t][l][c][r] = new int[maxsbi][];
-                    }
-
-                    for(s=minsbi; s<maxsbi; s++) { // loop on subbands
-                        //Get the number of blocks in the current subband
-                        sb2 = (SubbandAn)sb.getSubbandByIdx(r,s);
-                        ncblks = sb2.numCb;
-                        cblkPerSubband = ncblks.x*ncblks.y;
-                        cblks[t][c][r][s] =
-                            new CBlkRateDistStats[cblkPerSubband];
-
-                        for(l=0; l<numLayers; l++) {
-                            truncIdxs[t][l][c][r][s] = new int[cblkPerSubband];
-                            for(i=0; i<cblkPerSubband; i++) {
-                                truncIdxs[t][l][c][r][s][i] = -1;
-                            }
-                        }
-                    } // End loop on subbands
                 } // End lopp on resolution levels
             } // End loop on components
+
+            // In tile by tile mode the arrays of a tile are only allocated
+            // when it is coded
+            if (!tileByTile) {
+                allocateTile(t);
+            }
             if (t!=nt-1) {
                 src.nextTile();
             }
@@ -390,6 +427,60 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
         // it is needed that the bit stream header has been entirely written
     }
 
+    /**
+     * Allocates the coded code-blocks and truncation points indexes arrays
+     * of a tile.
+     *
+     * @param t The index of the tile.
+     * */
+    private void allocateTile(int t) {
+        int nc = getNumComps();
+        int minsbi, maxsbi;
+        int mrl; // Number of resolution levels
+        int cblkPerSubband; // Number of code-blocks per subband
+        SubbandAn sb, sb2;
+        Point ncblks;
+
+        cblks[t] = new CBlkRateDistStats[nc][][][];
+        truncIdxs[t] = new int[numLayers][nc][][][];
+
+        for(int c=0; c<nc; c++) { // loop on components
+            sb = src.getAnSubbandTree(t,c);
+            mrl = sb.resLvl+1;
+
+            cblks[t][c] = new CBlkRateDistStats[mrl][][];
+            for(int l=0; l<numLayers; l++) {
+                truncIdxs[t][l][c] = new int[mrl][][];
+            }
+
+            for(int r=0; r<mrl; r++) { // loop on resolution levels
+                minsbi = (r==0) ? 0 : 1;
+                maxsbi = (r==0) ? 1 : 4;
+
+                cblks[t][c][r] = new CBlkRateDistStats[maxsbi][];
+                for(int l=0; l<numLayers; l++) {
+                    truncIdxs[t][l][c][r] = new int[maxsbi][];
+                }
+
+                for(int s=minsbi; s<maxsbi; s++) { // loop on subbands
+                    //Get the number of blocks in the current subband
+                    sb2 = (SubbandAn)sb.getSubbandByIdx(r,s);
+                    ncblks = sb2.numCb;
+                    cblkPerSubband = ncblks.x*ncblks.y;
+                    cblks[t][c][r][s] =
+                        new CBlkRateDistStats[cblkPerSubband];
+
+                    for(int l=0; l<numLayers; l++) {
+                        truncIdxs[t][l][c][r][s] = new int[cblkPerSubband];
+                        for(int i=0; i<cblkPerSubband; i++) {
+                            truncIdxs[t][l][c][r][s][i] = -1;
+                        }
+                    }
+                } // End loop on subbands
+            } // End loop on resolution levels
+        } // End loop on components
+    }
+
     /**
      * Prints the timing information, if collected, and calls 'finalize' on
      * the super class.
@@ -447,14 +538,41 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
 
         long stime = 0L;
 
-        // Start by getting all the code-blocks, we need this in order to have
-        // an idea of the total encoded bitrate.
-        getAllCodeBlocks();
+        if (layerSlopes != null) {
+            // The layers are given by their thresholds, and the code-blocks
+            // are already truncated when they are coded, so that there is no
+            // target length.
+            if (!tileByTile) {
+                getAllCodeBlocks();
+            }
+            layers = new EBCOTLayer[numLayers];
+            for (n = 0; n<numLayers; n++) {
+                layers[n] = new EBCOTLayer();
+                layers[n].rdThreshold = layerSlopes[n];
+            }
+            return;
+        }
 
-        if (DO_TIMING) stime = System.currentTimeMillis();
+        if (tileByTile) {
+            // The code-blocks are only coded when writing the tiles. Use the
+            // length of the uncoded samples instead of the encoded length,
+            // which is not larger in practice.
+            long len = 0;
+            for(int c=0; c<numComps; c++) {
+                len += (long)getCompImgWidth(c)*getCompImgHeight(c)*
+                    getNomRangeBits(c);
+            }
+            totenclength = (int)Math.min(len/8,Integer.MAX_VALUE/2);
+        } else {
+            // Start by getting all the code-blocks, we need this in order to
+            // have an idea of the total encoded bitrate.
+            getAllCodeBlocks();
 
-        // Now get the total encoded length
-        totenclength = RDSlopesRates[0]; // all the encoded data
+            // Now get the total encoded length
+            totenclength = RDSlopesRates[0]; // all the encoded data
+        }
+
+        if (DO_TIMING) stime = System.currentTimeMillis();
         // Make a rough estimation of the packet head overhead, as 2 bytes per
         // packet in average (plus EPH / SOP) , and add that to the total
         // encoded length
@@ -506,10 +624,17 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
             ho += headEnc.getLength();
         }
 
+        // The PLT marker segment of each tile (its marker, Lplt and Zplt)
+        if(wp.getLengthMarkers()) {
+            ho += 5*numTiles;
+        }
+
         layers = new EBCOTLayer[numLayers];
         for (n = numLayers-1; n>=0; n--) {
             layers[n] = new EBCOTLayer();
         }
+        layerTargets = new double[numLayers];
+        headOverhead = ho;
 
         minlsz = 0; // To keep compiler happy
 	for( int t=0 ; t<numTiles ; t++ ){
@@ -559,6 +684,7 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                 }
                 lastbytes = (int)basebytes - ho;
                 layers[n].maxBytes = lastbytes;
+                layerTargets[n] = basebytes;
                 basebytes *= ls;
                 n++;
             }
@@ -589,6 +715,7 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
         n++;
         layers[n].maxBytes = nextbytes;
         layers[n].optimize = true;
+        layerTargets[n] = lyrSpec.getTotBitrate()*np;
 
 	// Re-initialize progression order changes if needed Default values
 	Progression[] prog1,prog2;
@@ -632,10 +759,40 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
      * into the mantissa-exponent representation.
      * */
     private void getAllCodeBlocks() {
+        int numTiles = src.getNumTiles();
+
+        maxSlope = 0f;
+        minSlope = Float.MAX_VALUE;
 
-        int numComps, numTiles, numBytes;
-        int c, r, t, s, sidx, k;
-        int slope;
+        //Get all coded code-blocks Goto first tile
+        src.setTile(0,0);
+        for (int t=0; t<numTiles; t++) { //loop on tiles
+            getTileCodeBlocks(t);
+
+            //Goto next tile
+            if(t<numTiles-1) //not at last tile
+                src.nextTile();
+        }
+    }
+
+    /**
+     * This method gets the coded code-blocks of the current tile from the
+     * EBCOT entropy coder, for every component, and stores them in the 5D
+     * array. Their contribution is added to the R-D summary table and to the
+     * range of slopes.
+     *
+     * <P>If early termination is used, the coding of the code-blocks stops
+     * below the slope threshold of the last layer divided by the margin. The
+     * threshold is known when the layers are specified by their quality, and
+     * estimated as the one of the previous tile in tile by tile mode.
+     * Otherwise all the coding passes are coded.
+     *
+     * @param t The index of the current tile.
+     * */
+    private void getTileCodeBlocks(int t) {
+
+        int numComps;
+        int c, r, s, sidx, k;
         SubbandAn subb;
         CBlkRateDistStats ccb = null;
         Point ncblks = null;
@@ -644,95 +801,99 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
 
         long stime = 0L;
 
-        maxSlope = 0f;
-        minSlope = Float.MAX_VALUE;
-
-        //Get the number of components and tiles
+        //Get the number of components
         numComps = src.getNumComps();
-        numTiles = src.getNumTiles();
 
         SubbandAn root,sb;
         int cblkToEncode = 0;
         int nEncCblk = 0;
         ProgressWatch pw = FacilityManager.getProgressWatch();
 
-        //Get all coded code-blocks Goto first tile
-        src.setTile(0,0);
-        for (t=0; t<numTiles; t++) { //loop on tiles
-            nEncCblk = 0;
-            cblkToEncode = 0;
-            for(c=0; c<numComps; c++) {
-                root = src.getAnSubbandTree(t,c);
-                for(r=0; r<=root.resLvl; r++) {
-                    if(r==0) {
-                        sb = (SubbandAn)root.getSubbandByIdx(0,0);
-                        if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
-                    } else {
-                        sb = (SubbandAn)root.getSubbandByIdx(r,1);
-                        if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
-                        sb = (SubbandAn)root.getSubbandByIdx(r,2);
-                        if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
-                        sb = (SubbandAn)root.getSubbandByIdx(r,3);
-                        if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
-                    }
+        for(c=0; c<numComps; c++) {
+            root = src.getAnSubbandTree(t,c);
+            for(r=0; r<=root.resLvl; r++) {
+                if(r==0) {
+                    sb = (SubbandAn)root.getSubbandByIdx(0,0);
+                    if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
+                } else {
+                    sb = (SubbandAn)root.getSubbandByIdx(r,1);
+                    if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
+                    sb = (SubbandAn)root.getSubbandByIdx(r,2);
+                    if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
+                    sb = (SubbandAn)root.getSubbandByIdx(r,3);
+                    if(sb!=null) cblkToEncode += sb.numCb.x*sb.numCb.y;
                 }
             }
-            if(pw!=null) {
-                pw.initProgressWatch(0,cblkToEncode,"Encoding tile "+t+"...");
+        }
+        if(pw!=null) {
+            pw.initProgressWatch(0,cblkToEncode,"Encoding tile "+t+"...");
+        }
+
+        // The slope below which the coding passes are expected to be
+        // discarded, if known
+        float stopSlope = 0f;
+        if(stopMargin>0f) {
+            if(layerSlopes!=null) {
+                stopSlope = layerSlopes[numLayers-1]/stopMargin;
+            } else if(tileByTile && t>0) {
+                stopSlope = layers[numLayers-1].rdThreshold/stopMargin;
             }
+        }
+        src.setStopSlope(stopSlope);
 
-            for (c=0; c<numComps; c++) { //loop on components
+        for (c=0; c<numComps; c++) { //loop on components
 
-                //Get next coded code-block coordinates
-                while ( (ccb = src.getNextCodeBlock(c,ccb)) != null) {
-                    if (DO_TIMING) stime = System.currentTimeMillis();
+            //Get next coded code-block coordinates
+            while ( (ccb = src.getNextCodeBlock(c,ccb)) != null) {
+                if (DO_TIMING) stime = System.currentTimeMillis();
 
-                    if(pw!=null) {
-                        nEncCblk++;
-                        pw.updateProgressWatch(nEncCblk,null);
-                    }
+                if(pw!=null) {
+                    nEncCblk++;
+                    pw.updateProgressWatch(nEncCblk,null);
+                }
 
-                    subb = ccb.sb;
+                subb = ccb.sb;
 
-                    //Get the coded code-block resolution level index
-                    r = subb.resLvl;
+                //Get the coded code-block resolution level index
+                r = subb.resLvl;
 
-                    //Get the coded code-block subband index
-                    s = subb.sbandIdx;
+                //Get the coded code-block subband index
+                s = subb.sbandIdx;
 
-                    //Get the number of blocks in the current subband
-                    ncblks = subb.numCb;
-
-                    // Add code-block contribution to summary R-D table
-                    // RDSlopesRates
-                    last_sidx = -1;
-                    for (k=ccb.nVldTrunc-1; k>=0; k--) {
-                        fslope = ccb.truncSlopes[k];
-                        if (fslope > maxSlope) maxSlope = fslope;
-                        if (fslope < minSlope) minSlope = fslope;
-                        sidx = getLimitedSIndexFromSlope(fslope);
-                        for (; sidx > last_sidx; sidx--) {
-                            RDSlopesRates[sidx] +=
-                                ccb.truncRates[ccb.truncIdxs[k]];
-                        }
-                        last_sidx = getLimitedSIndexFromSlope(fslope);
-                    }
+                //Get the number of blocks in the current subband
+                ncblks = subb.numCb;
 
-                    //Fills code-blocks array
-                    cblks[t][c][r][s][(ccb.m*ncblks.x)+ccb.n] = ccb;
-                    ccb = null;
+                // Drop the truncation points, and data, beyond the last layer
+                // if the layer thresholds are known
+                if (layerSlopes != null) {
+                    ccb.truncate(layerSlopes[numLayers-1]);
+                }
 
-                    if(DO_TIMING) initTime += System.currentTimeMillis()-stime;
+                // Add code-block contribution to summary R-D table
+                // RDSlopesRates
+                last_sidx = -1;
+                for (k=ccb.nVldTrunc-1; k>=0; k--) {
+                    fslope = ccb.truncSlopes[k];
+                    if (fslope > maxSlope) maxSlope = fslope;
+                    if (fslope < minSlope) minSlope = fslope;
+                    sidx = getLimitedSIndexFromSlope(fslope);
+                    for (; sidx > last_sidx; sidx--) {
+                        RDSlopesRates[sidx] +=
+                            ccb.truncRates[ccb.truncIdxs[k]];
+                    }
+                    last_sidx = getLimitedSIndexFromSlope(fslope);
                 }
-            }
 
-            if(pw!=null) {
-                pw.terminateProgressWatch();
+                //Fills code-blocks array
+                cblks[t][c][r][s][(ccb.m*ncblks.x)+ccb.n] = ccb;
+                ccb = null;
+
+                if(DO_TIMING) initTime += System.currentTimeMillis()-stime;
             }
+        }
 
-            //Goto next tile
-            if(t<numTiles-1) //not at last tile
-                src.nextTile();
+        if(pw!=null) {
+            pw.terminateProgressWatch();
         }
     }
 
@@ -743,41 +904,192 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
      * writes the layer bit streams according to the Progression type.
      * */
     private void buildAndWriteLayers() throws IOException {
+        int[] tileLengths; // Length of each tile
+        int nt = src.getNumTiles();
+
+        if (tileByTile) {
+            buildAndWriteTiles();
+            return;
+        }
+
+        long stime = 0L;
+
+        if (DO_TIMING) stime = System.currentTimeMillis();
+
+        tileLengths = new int[nt];
+
+        // Keep the packet lengths if they are signalled
+        if(wp.getLengthMarkers()) {
+            pktLens = new int[nt][][][][];
+        }
+
+        // +------------------------------+
+        // |  First we build the layers   |
+        // +------------------------------+
+        buildLayers(0,nt,layers,tileLengths);
+
+        if (DO_TIMING) buildTime += System.currentTimeMillis()-stime;
+
+        // The bit-stream was not yet generated (only simulated).
+
+        if (DO_TIMING) stime = System.currentTimeMillis();
+
+        // +--------------------------------------------------+
+        // |  Write the main header, with the tile-part and   |
+        // |  packet lengths if they are signalled            |
+        // +--------------------------------------------------+
+        if(pktLens!=null) {
+            for(int t=0; t<nt; t++) {
+                setPacketLengths(t,tileLengths);
+            }
+            listedPktLens = null;
+            pktLens = null;
+            headEnc.setTilePartLengths(tileLengths);
+        }
+        headEnc.reset();
+        headEnc.encodeMainHeader();
+        bsWriter.commitBitstreamHeader(headEnc);
+
+        // +--------------------------------------------------+
+        // | Write tiles according to their Progression order |
+        // +--------------------------------------------------+
+        // Reset the packet encoder before writing all packets
+        pktEnc.reset();
+        for(int t=0; t<nt; t++) { //loop on tiles
+            // Tile header
+            headEnc.reset();
+            headEnc.encodeTilePartHeader(tileLengths[t],t);
+            bsWriter.commitBitstreamHeader(headEnc);
+
+            writeTile(t);
+        } // End loop on tiles
+
+        if (DO_TIMING) writeTime += System.currentTimeMillis()-stime;
+    }
+
+    /**
+     * This method codes, builds the layers of, and writes each tile in turn,
+     * after writing the main header. The target length of each layer of a
+     * tile is the share of the layer target length for the whole image
+     * corresponding to the area of the tile. The coded code-blocks of a tile
+     * are released once it is written, so that only one tile is kept in
+     * memory.
+     *
+     * <P>The tile-part lengths not being known when the main header is
+     * written, the TLM marker segment is not written in this mode.
+     * */
+    private void buildAndWriteTiles() throws IOException {
+        int nt = src.getNumTiles();
+        int[] tileLengths = new int[nt]; // Length of each tile
+        EBCOTLayer[] tileLayers = new EBCOTLayer[numLayers];
+        double imgArea = (double)getImgWidth()*getImgHeight();
+        double share; // The share of the layer lengths of the current tile
+
+        // Keep the packet lengths if they are signalled
+        if(wp.getLengthMarkers()) {
+            pktLens = new int[nt][][][][];
+        }
+
+        // Main header
+        headEnc.reset();
+        headEnc.encodeMainHeader();
+        bsWriter.commitBitstreamHeader(headEnc);
+
+        src.setTile(0,0);
+        for(int t=0; t<nt; t++) { //loop on tiles
+            // Code the tile, with its own R-D summary information
+            allocateTile(t);
+            maxSlope = 0f;
+            minSlope = Float.MAX_VALUE;
+            ArrayUtil.intArraySet(RDSlopesRates,0);
+            getTileCodeBlocks(t);
+
+            // Build the layers of the tile with its share of the lengths
+            share = src.getTileWidth()*(double)src.getTileHeight()/imgArea;
+            for(int l=0; l<numLayers; l++) {
+                tileLayers[l] = new EBCOTLayer();
+                tileLayers[l].optimize = layers[l].optimize;
+                if(layerTargets!=null) {
+                    tileLayers[l].maxBytes =
+                        (int)Math.min((layerTargets[l]-headOverhead)*share,
+                                      Integer.MAX_VALUE);
+                }
+            }
+            buildLayers(t,t+1,tileLayers,tileLengths);
+            // The packets are written with the thresholds of the tile
+            for(int l=0; l<numLayers; l++) {
+                layers[l].rdThreshold = tileLayers[l].rdThreshold;
+            }
+
+            if(pktLens!=null) {
+                setPacketLengths(t,tileLengths);
+                pktLens[t] = null;
+            }
+
+            // Write the tile, after resetting its packet encoder state
+            pktEnc.reset(t);
+            headEnc.reset();
+            headEnc.encodeTilePartHeader(tileLengths[t],t);
+            bsWriter.commitBitstreamHeader(headEnc);
+            writeTile(t);
+
+            // Release the coded code-blocks of the tile
+            cblks[t] = null;
+            truncIdxs[t] = null;
+
+            if(t<nt-1) {
+                src.nextTile();
+            }
+        } // End loop on tiles
+        listedPktLens = null;
+        pktLens = null;
+    }
+
+    /**
+     * This method builds the bit stream layers of some tiles by computing
+     * the threshold of each layer according to its target length, and
+     * simulating the writing of the packets. The bit-stream is not
+     * generated.
+     *
+     * @param ts The index of the first tile.
+     *
+     * @param te The index after the last tile.
+     *
+     * @param lyrs The layers of the tiles, with their target lengths. The
+     * thresholds and actual lengths are set.
+     *
+     * @param tileLengths Where to add the length of each tile.
+     * */
+    private void buildLayers(int ts,int te,EBCOTLayer[] lyrs,
+                             int[] tileLengths) throws IOException {
         int nPrec = 0;
         int maxBytes, actualBytes;
         float rdThreshold;
         SubbandAn sb;
-        float threshold;
         BitOutputBuffer hBuff = null;
         byte[] bBuff = null;
-        int[] tileLengths; // Length of each tile
         int tmp;
         boolean sopUsed; // Should SOP markers be used ?
         boolean ephUsed; // Should EPH markers be used ?
         int nc = src.getNumComps();
-        int nt = src.getNumTiles();
         int mrl;
 
-        long stime = 0L;
-
-        if (DO_TIMING) stime = System.currentTimeMillis();
-
         // Start with the maximum slope
         rdThreshold = maxSlope;
 
-        tileLengths = new int[nt];
         actualBytes = 0;
 
-        // +------------------------------+
-        // |  First we build the layers   |
-        // +------------------------------+
         // Bitstream is simulated to know tile length
         for(int l=0; l<numLayers; l++){ //loop on layers
 
-            maxBytes = layers[l].maxBytes;
-            if(layers[l].optimize) {
+            maxBytes = lyrs[l].maxBytes;
+            if(layerSlopes!=null) {
+                // The threshold does not depend on the lengths
+                rdThreshold = layerSlopes[l];
+            } else if(lyrs[l].optimize) {
                 rdThreshold =
-                    optimizeBitstreamLayer(l,rdThreshold,maxBytes,actualBytes);
+                    optimizeBitstreamLayer(l,rdThreshold,maxBytes,actualBytes,
+                                           ts,te);
             } else {
                 if( l<=0 || l>=numLayers-1 ) {
                     throw new IllegalArgumentException("The first and the"+
@@ -785,15 +1097,19 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                                                        "thresholds"+
                                                        " must be optimized");
                 }
-                rdThreshold = estimateLayerThreshold(maxBytes,layers[l-1]);
+                rdThreshold = estimateLayerThreshold(maxBytes,lyrs[l-1]);
             }
 
-            for(int t=0; t<nt; t++) { //loop on tiles
+            for(int t=ts; t<te; t++) { //loop on tiles
                 if(l==0) {
                     // Tile header
                     headEnc.reset();
                     headEnc.encodeTilePartHeader(0,t);
                     tileLengths[t] += headEnc.getLength();
+
+                    if(pktLens!=null) {
+                        pktLens[t] = new int[numLayers][nc][][];
+                    }
                 }
 
                 for(int c=0; c<nc; c++) { //loop on components
@@ -813,9 +1129,16 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                         sb = sb.subb_LL;
                     }
 
+                    if(pktLens!=null) {
+                        pktLens[t][l][c] = new int[mrl][];
+                    }
+
                     for(int r=0; r<mrl ; r++) { // loop on resolution levels
 
                         nPrec = numPrec[t][c][r].x*numPrec[t][c][r].y;
+                        if(pktLens!=null) {
+                            pktLens[t][l][c][r] = new int[nPrec];
+                        }
                         for(int p=0; p<nPrec; p++) { // loop on precincts
 
                             findTruncIndices(l,c,r,t,sb,rdThreshold,p);
@@ -837,83 +1160,144 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                                                     pktEnc.getROILen());
                                 actualBytes += tmp;
                                 tileLengths[t] += tmp;
+                                if(pktLens!=null) {
+                                    pktLens[t][l][c][r][p] = tmp;
+                                    // Length in the PLT marker segment
+                                    actualBytes +=
+                                        HeaderEncoder.getPktLenSize(tmp);
+                                }
                             }
                         } // End loop on precincts
                         sb = sb.parent;
                     } // End loop on resolution levels
                 } // End loop on components
             } // end loop on tiles
-            layers[l].rdThreshold = rdThreshold;
-            layers[l].actualBytes = actualBytes;
+            lyrs[l].rdThreshold = rdThreshold;
+            lyrs[l].actualBytes = actualBytes;
         } // end loop on layers
+    }
 
-        if (DO_TIMING) buildTime += System.currentTimeMillis()-stime;
-
-        // The bit-stream was not yet generated (only simulated).
-
-        if (DO_TIMING) stime = System.currentTimeMillis();
+    /**
+     * Sets the lengths of the packets of a tile, as found when simulating
+     * the layers, in the header encoder, so that they are written in the
+     * PLT marker segments of its tile-part header. The length of the tile is
+     * updated accordingly.
+     *
+     * @param t Tile index.
+     *
+     * @param tileLengths The length of each tile.
+     * */
+    private void setPacketLengths(int t,int[] tileLengths)
+        throws IOException {
+        // List the packet lengths of the tile, in the order of the
+        // codestream. The tile-part header gets longer by the PLT marker
+        // segments. The packets of the position progressions are found from
+        // the tile geometry of the source, which must be the one of tile t.
+        Point nTiles = src.getNumTiles(null);
+        Point tileI = src.getTile(null);
+        src.setTile(t%nTiles.x,t/nTiles.x);
+        listPkts = true;
+        nListedPkts = 0;
+        writeTile(t);
+        listPkts = false;
+        src.setTile(tileI.x,tileI.y);
+        int[] lens = new int[nListedPkts];
+        System.arraycopy(listedPktLens,0,lens,0,nListedPkts);
+
+        headEnc.reset();
+        headEnc.encodeTilePartHeader(0,t);
+        tileLengths[t] -= headEnc.getLength();
+        headEnc.setPacketLengths(t,lens);
+        headEnc.reset();
+        headEnc.encodeTilePartHeader(0,t);
+        tileLengths[t] += headEnc.getLength();
+    }
 
-        // +--------------------------------------------------+
-        // | Write tiles according to their Progression order |
-        // +--------------------------------------------------+
-        // Reset the packet encoder before writing all packets
-        pktEnc.reset();
-        Progression[] prog; // Progression(s) in each tile
+    /**
+     * Writes the packets of a tile according to its progression order(s),
+     * or lists their lengths if 'listPkts' is set.
+     *
+     * @param t Tile index.
+     * */
+    private void writeTile(int t) throws IOException {
+        int nc = src.getNumComps();
+        Progression[] prog; // Progression(s) in the tile
         int cs,ce,rs,re,lye;
 
         int[] mrlc = new int[nc];
-        for(int t=0; t<nt; t++) { //loop on tiles
-            int[][] lysA; // layer index start for each component and
-            // resolution level
-            int[][] lys = new int[nc][];
-            for(int c=0; c<nc; c++){
-                mrlc[c] = src.getAnSubbandTree(t,c).resLvl;
-                lys[c] = new int[mrlc[c]+1];
-            }
+        int[][] lys = new int[nc][]; // layer index start for each component
+        // and resolution level
+        for(int c=0; c<nc; c++){
+            mrlc[c] = src.getAnSubbandTree(t,c).resLvl;
+            lys[c] = new int[mrlc[c]+1];
+        }
 
-            // Tile header
-            headEnc.reset();
-            headEnc.encodeTilePartHeader(tileLengths[t],t);
-            bsWriter.commitBitstreamHeader(headEnc);
-            prog = (Progression[])wp.getProgressionType().getTileDef(t);
-
-            for(int prg=0; prg<prog.length;prg++){ // Loop on progression
-                lye = prog[prg].lye;
-                cs = prog[prg].cs;
-                ce = prog[prg].ce;
-                rs = prog[prg].rs;
-                re = prog[prg].re;
-
-                switch(prog[prg].type){
-                case ProgressionType.RES_LY_COMP_POS_PROG:
-                    writeResLyCompPos(t,rs,re,cs,ce,lys,lye);
-                    break;
-                case ProgressionType.LY_RES_COMP_POS_PROG:
-                    writeLyResCompPos(t,rs,re,cs,ce,lys,lye);
-                    break;
-                case ProgressionType.POS_COMP_RES_LY_PROG:
-                    writePosCompResLy(t,rs,re,cs,ce,lys,lye);
-                    break;
-                case ProgressionType.COMP_POS_RES_LY_PROG:
-                    writeCompPosResLy(t,rs,re,cs,ce,lys,lye);
-                    break;
-                case ProgressionType.RES_POS_COMP_LY_PROG:
-                    writeResPosCompLy(t,rs,re,cs,ce,lys,lye);
-                    break;
-                default:
-                    throw new Error("Unsupported bit stream progression type");
-                } // switch on progression
-
-                // Update next first layer index 
-                for(int c=cs; c<ce; c++)
-                    for(int r=rs; r<re; r++){
-                        if(r>mrlc[c]) continue;
-                        lys[c][r] = lye;
-                    }
-            } // End loop on progression
-        } // End loop on tiles
+        prog = (Progression[])wp.getProgressionType().getTileDef(t);
 
-        if (DO_TIMING) writeTime += System.currentTimeMillis()-stime;
+        for(int prg=0; prg<prog.length;prg++){ // Loop on progression
+            lye = prog[prg].lye;
+            cs = prog[prg].cs;
+            ce = prog[prg].ce;
+            rs = prog[prg].rs;
+            re = prog[prg].re;
+
+            switch(prog[prg].type){
+            case ProgressionType.RES_LY_COMP_POS_PROG:
+                writeResLyCompPos(t,rs,re,cs,ce,lys,lye);
+                break;
+            case ProgressionType.LY_RES_COMP_POS_PROG:
+                writeLyResCompPos(t,rs,re,cs,ce,lys,lye);
+                break;
+            case ProgressionType.POS_COMP_RES_LY_PROG:
+                writePosCompResLy(t,rs,re,cs,ce,lys,lye);
+                break;
+            case ProgressionType.COMP_POS_RES_LY_PROG:
+                writeCompPosResLy(t,rs,re,cs,ce,lys,lye);
+                break;
+            case ProgressionType.RES_POS_COMP_LY_PROG:
+                writeResPosCompLy(t,rs,re,cs,ce,lys,lye);
+                break;
+            default:
+                throw new Error("Unsupported bit stream progression type");
+            } // switch on progression
+
+            // Update next first layer index 
+            for(int c=cs; c<ce; c++)
+                for(int r=rs; r<re; r++){
+                    if(r>mrlc[c]) continue;
+                    lys[c][r] = lye;
+                }
+        } // End loop on progression
+    }
+
+    /**
+     * Adds the length of a packet, as found when simulating the layers, to
+     * the listed packet lengths (see 'listPkts'). Nothing is added if the
+     * packet is not written.
+     *
+     * @param t Tile index.
+     *
+     * @param l Layer index.
+     *
+     * @param c Component index.
+     *
+     * @param r Resolution level index.
+     *
+     * @param p Precinct index.
+     * */
+    private void listPacket(int t,int l,int c,int r,int p) {
+        int len = pktLens[t][l][c][r][p];
+        if(len==0) {
+            return;
+        }
+        if(listedPktLens==null || nListedPkts==listedPktLens.length) {
+            int[] tmp = listedPktLens;
+            listedPktLens = new int[(tmp!=null) ? 2*tmp.length : 256];
+            if(tmp!=null) {
+                System.arraycopy(tmp,0,listedPktLens,0,nListedPkts);
+            }
+        }
+        listedPktLens[nListedPkts++] = len;
     }
 
     /** 
@@ -987,6 +1371,12 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                             sb = sb.subb_LL;
                         }
 
+                        // Only list the packet length if requested
+                        if(listPkts) {
+                            listPacket(t,l,c,r,p);
+                            continue;
+                        }
+
                         threshold = layers[l].rdThreshold;
                         findTruncIndices(l,c,r,t,sb,threshold,p);
 
@@ -1070,6 +1460,12 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                             sb = sb.subb_LL;
                         }
 
+                        // Only list the packet length if requested
+                        if(listPkts) {
+                            listPacket(t,l,c,r,p);
+                            continue;
+                        }
+
                         threshold = layers[l].rdThreshold;
                         findTruncIndices(l,c,r,t,sb,threshold,p);
 
@@ -1222,6 +1618,12 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                                 sb = sb.subb_LL;
                             }
 
+                            // Only list the packet length if requested
+                            if(listPkts) {
+                                listPacket(t,l,c,r,nextPrec[c][r]);
+                                continue;
+                            }
+
                             threshold = layers[l].rdThreshold;
                             findTruncIndices(l,c,r,t,sb,threshold,
                                              nextPrec[c][r]);
@@ -1410,6 +1812,12 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                                 sb = sb.subb_LL;
                             }
 
+                            // Only list the packet length if requested
+                            if(listPkts) {
+                                listPacket(t,l,c,r,nextPrec[c][r]);
+                                continue;
+                            }
+
                             threshold = layers[l].rdThreshold;
                             findTruncIndices(l,c,r,t,sb,threshold,
                                              nextPrec[c][r]);
@@ -1597,6 +2005,12 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
                                 sb = sb.subb_LL;
                             }
 
+                            // Only list the packet length if requested
+                            if(listPkts) {
+                                listPacket(t,l,c,r,nextPrec[c][r]);
+                                continue;
+                            }
+
                             threshold = layers[l].rdThreshold;
                             findTruncIndices(l,c,r,t,sb,threshold,
                                              nextPrec[c][r]);
@@ -1672,13 +2086,17 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
      *
      * @param prevBytes The number of bytes of all the previous layers.
      *
+     * @param ts The index of the first tile of the layer.
+     *
+     * @param te The index after the last tile of the layer.
+     *
      * @return The value of the slope threshold.
      * */
     private float optimizeBitstreamLayer (int layerIdx, float fmaxt,
-                                          int maxBytes, int prevBytes)
+                                          int maxBytes, int prevBytes,
+                                          int ts, int te)
         throws IOException {
 
-        int nt;         // The total number of tiles
         int nc;          // The total number of components
         int numLvls;          // The total number of resolution levels
         int actualBytes;      // Actual number of bytes for a layer
@@ -1692,11 +2110,15 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
         boolean ephUsed;      // Should EPH markers be used ?
         int precinctIdx;      // Precinct index for current packet
         int nPrec; // Number of precincts in the current resolution level
+        int pktBytes;         // Number of bytes of the current packet
+        // Whether the packet lengths are signalled in PLT marker segments
+        boolean lengthMarkers = wp.getLengthMarkers();
 
         // Save the packet encoder state
-        pktEnc.save();
+        for (int t=ts; t<te; t++) {
+            pktEnc.save(t);
+        }
 
-        nt = src.getNumTiles();
         nc = src.getNumComps();
         hBuff = null;
         bBuff = null;
@@ -1748,9 +2170,8 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
             // Get the number of bytes used by this layer, if 'ft' is the
             // threshold, by simulation.
             actualBytes = prevBytes;
-            src.setTile(0,0);
 
-            for (int t=0; t<nt; t++){
+            for (int t=ts; t<te; t++){
                 for (int c=0; c<nc; c++) {
                     // set boolean sopUsed here (SOP markers)
                     sopUsed = ((String)wp.getSOP().getTileDef(t)).equalsIgnoreCase("true");
@@ -1775,15 +2196,21 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
 
                             if(pktEnc.isPacketWritable()) {
                                 bBuff = pktEnc.getLastBodyBuf();
-                                actualBytes += bsWriter.
+                                pktBytes = bsWriter.
                                     writePacketHead(hBuff.getBuffer(),
                                                     hBuff.getLength(),
                                                     true, sopUsed,ephUsed);
-                                actualBytes += bsWriter.
+                                pktBytes += bsWriter.
                                     writePacketBody(bBuff,
                                                     pktEnc.getLastBodyLen(),
                                                     true,pktEnc.isROIinPkt(),
                                                     pktEnc.getROILen());
+                                actualBytes += pktBytes;
+                                // Length in the PLT marker segment
+                                if(lengthMarkers) {
+                                    actualBytes +=
+                                        HeaderEncoder.getPktLenSize(pktBytes);
+                                }
                             }
                         } // end loop on precincts
                         sb = sb.parent;
@@ -1812,7 +2239,9 @@ public class EBCOTRateAllocator extends PostCompRateAllocator {
             if (ft <= fmint) ft = fmaxt;
 
             // Restore previous packet encoder state
-            pktEnc.restore();
+            for (int t=ts; t<te; t++) {
+                pktEnc.restore(t);
+            }
 
             // We continue to iterate, until the threshold reaches the upper
             // limit of the interval, within a FLOAT_REL_PRECISION relative
@@ -317,6 +317,7 @@ public abstract class EntropyCoder extends ImgDataAdapter
                                               StringSpec tts) {
         // Check parameters
         //pl.checkList(OPT_PREFIX,pl.toNameArray(pinfo));
-        return new StdEntropyCoder(src,cblks,pss,bms,mqrs,rts,css,sss,lcs,tts);
+        return new StdEntropyCoder(src,cblks,pss,bms,mqrs,rts,css,sss,lcs,tts,
+                                   wp.getExecutorService());
     }
 }
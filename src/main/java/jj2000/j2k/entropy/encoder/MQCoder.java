@@ -782,6 +782,26 @@ public class MQCoder {
         }
     }
 
+    /**
+     * Terminates the arithmetic codeword after a coding pass for which the
+     * 'getNumCodedBytes()' method has already been called, as if the
+     * 'terminate()' method had been called instead. It is used when it is
+     * only known after the coding pass that it is the last one.
+     *
+     * <P>After calling this method the 'finishLengthCalculation()' method
+     * should be called, as after the 'terminate()' one.
+     *
+     * @return The length of the arithmetic codeword after termination, in
+     * bytes.
+     * */
+    public int terminateLastPass() {
+        // The pass is terminated, so its length is not calculated
+        if (ltype == LENGTH_NEAR_OPT && nSaved > 0) {
+            nSaved--;
+        }
+        return terminate();
+    }
+
     /**
      * This function flushes the remaining encoded bits and makes sure that
      * enough information is written to the bit stream to be able to finish
@@ -185,8 +185,10 @@ public abstract class PostCompRateAllocator extends ImgDataAdapter {
     public abstract void initialize() throws IOException;
 
     /**
-     * Runs the rate allocation algorithm and writes the data to the
-     * bit stream. This must be called after the initialize() method.
+     * Runs the rate allocation algorithm and writes the main header and the
+     * data to the bit stream. The main header is written once the layers
+     * are known, so that it may signal the tile-part lengths. This must be
+     * called after the initialize() method.
      *
      * @see #initialize
      * */
@@ -247,8 +249,19 @@ public abstract class PostCompRateAllocator extends ImgDataAdapter {
             }
         }
 
-        // Construct the layer specification from the Alayers option
-        LayersInfo lyrs = parseAlayers(lyropt,rate);
+        // Construct the layer specification from the Alayers option, or
+        // with one layer per quality when they are specified (the target
+        // bitrates are then not used)
+        LayersInfo lyrs;
+        double[] qualities = wp.getLayerQualities();
+        if (qualities != null) {
+            lyrs = new LayersInfo(rate);
+            for (int i=0; i<qualities.length-1; i++) {
+                lyrs.addOptPoint(i+1,0);
+            }
+        } else {
+            lyrs = parseAlayers(lyropt,rate);
+        }
 
 	int nTiles = wp.getNumTiles();
 	int nComp = wp.getNumComponents();
@@ -44,7 +44,10 @@
 package jj2000.j2k.entropy.encoder;
 import java.awt.Point;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import jj2000.j2k.ModuleSpec;
 import jj2000.j2k.StringSpec;
@@ -55,7 +58,7 @@ import jj2000.j2k.quantization.quantizer.CBlkQuantDataSrcEnc;
 import jj2000.j2k.util.ArrayUtil;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.MsgLogger;
-import jj2000.j2k.util.ThreadPool;
+import jj2000.j2k.util.WorkScheduler;
 import jj2000.j2k.wavelet.Subband;
 import jj2000.j2k.wavelet.analysis.CBlkWTData;
 
@@ -69,12 +72,16 @@ import jj2000.j2k.wavelet.analysis.CBlkWTData;
  * <p>The number of threads used by this entropy coder is specified by the
  * "jj2000.j2k.entropy.encoder.StdEntropyCoder.nthreads" Java system
  * property. If set to "0" the single threaded implementation is used. If set
- * to 'n' ('n' larger than 0) then 'n' extra threads are started by this class
+ * to 'n' ('n' larger than 0) then 'n' compressors are run by this class
  * which are used to encode the code-blocks in parallel (i.e. ideally 'n'
- * code-blocks will be encoded in parallel at a time). On multiprocessor
- * machines under a "native threads" Java Virtual Machine implementation each
- * one of these threads can run on a separate processor speeding up the
- * encoding time. By default the single-threaded implementation is used. The
+ * code-blocks will be encoded in parallel at a time). The compressors run on
+ * the executor given to the constructor or, if none, on the default executor
+ * of 'WorkScheduler', which is shared by all the encoders and decoders. If an
+ * executor is given and the property is not set the number of available
+ * processors is used for 'n'. When it needs a code-block, the calling thread
+ * runs itself the compressors which the executor has not started yet, so
+ * that it never waits for queued tasks, even when it is itself a thread of
+ * the executor. By default the single-threaded implementation is used. The
  * multi-threaded implementation currently assumes that the vast majority of
  * consecutive calls to 'getNextCodeBlock()' will be done on the same
  * component. If this is not the case, the speed-up that can be expected on
@@ -138,23 +145,19 @@ public class StdEntropyCoder extends EntropyCoder
     /** The default value for the property in THREADS_PROP_NAME: 0 */
     public static final String DEF_THREADS_NUM = "0";
 
-    /** The increase in priority for the compressor threads, currently 3. The
-     * compressor threads will have a priority of THREADS_PRIORITY_INC more
-     * than the priority of the thread calling this class constructor. Used
-     * only in the multi-threaded implementation. */
-    public static final int THREADS_PRIORITY_INC = 0;
+    /** The executor running the compressors, for the threaded
+     * implementation. It is null, if non threaded implementation is used */
+    private ExecutorService executor;
 
-    /** The pool of threads, for the threaded implementation. It is null, if
-     * non threaded implementation is used */
-    private ThreadPool tPool;
-
-    /** The queue of idle compressors. Used in multithreaded
-        implementation only */
+    /** The queue of idle compressors. It is also the lock for the state
+        of the busy compressors. Used in multithreaded implementation
+        only */
     private Stack idleComps;
 
-    /** The queue of completed compressors, for each component. Used
-        in multithreaded implementation only. */
-    private Stack completedComps[];
+    /** The busy compressors, of all the components, in the order in which
+        they were given a code-block. Used in multithreaded implementation
+        only. */
+    private LinkedList<Compressor> busyComps;
 
     /** The number of busy compressors, for each component. Used in
         multithreaded implementation only. */
@@ -546,6 +549,10 @@ public class StdEntropyCoder extends EntropyCoder
      *  each component and each tile.  */
     private boolean precinctPartition[][];
 
+    /** The rate-distortion slope below which the coding of a code-block may
+     * stop, or 0 to code all the coding passes (see 'setStopSlope()'). */
+    private float stopSlope = 0f;
+
     /**
      * Class that takes care of running the 'compressCodeBlock()' method with
      * thread local arguments. Used only in multithreaded implementation.
@@ -579,6 +586,22 @@ public class StdEntropyCoder extends EntropyCoder
         // Should be private, but some buggy JDK 1.1 compilers complain
         int tType;
 
+        /** The slope below which the compression may stop */
+        // Should be private, but some buggy JDK 1.1 compilers complain
+        float stopSlope;
+
+        /** Whether the compression of the current code-block has been
+         * started. Guarded by 'idleComps'. */
+        boolean started;
+
+        /** Whether the compression of the current code-block is done.
+         * Guarded by 'idleComps'. */
+        boolean done;
+
+        /** The error or runtime exception thrown by the compression of the
+         * current code-block, or null if none */
+        Throwable err;
+
         /** The cumulative wall time for this compressor, for each
          * component. */
         private long time[];
@@ -595,27 +618,35 @@ public class StdEntropyCoder extends EntropyCoder
 
         /**
          * Calls the 'compressCodeBlock()' method with thread local
-         * arguments. Once completed it adds itself to the 'completedComps[c]'
-         * stack, where 'c' is the component for which this compressor is
-         * running. This last step occurs even if exceptions are thrown by the
-         * 'compressCodeBlock()' method.
+         * arguments, unless the compression has already been started by
+         * another thread, in which case it returns at once. It is run by the
+         * executor, or by the thread calling 'getNextCodeBlock()' if the
+         * executor has not started it yet. Once done, it is marked as such,
+         * even if exceptions are thrown by the 'compressCodeBlock()'
+         * method, which are kept in 'err'.
          * */
         public void run() {
+            synchronized (idleComps) {
+                if (started) return;
+                started = true;
+            }
 	    // Start the code-block compression
+            long stime = 0L;
+            if (DO_TIMING) stime = System.currentTimeMillis();
             try {
-                long stime = 0L;
-                if (DO_TIMING) stime = System.currentTimeMillis();
                 compressCodeBlock(c,ccb,srcblkT[idx],mqT[idx],boutT[idx],
                                   outT[idx],stateT[idx],distbufT[idx],
                                   ratebufT[idx],istermbufT[idx],
                                   symbufT[idx],ctxtbufT[idx],options,
-                                  rev,lcType,tType);
+                                  rev,lcType,tType,stopSlope);
+            } catch (Throwable e) {
+                err = e;
+            } finally {
                 if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
-            }
-            finally {
-                // Join the queue of completed compression, even if exceptions
-                // occurred.
-                completedComps[c].push(this);
+                synchronized (idleComps) {
+                    done = true;
+                    idleComps.notifyAll();
+                }
             }
         }
 
@@ -922,6 +953,48 @@ public class StdEntropyCoder extends EntropyCoder
                            PrecinctSizeSpec pss,StringSpec bms,StringSpec mqrs,
                            StringSpec rts,StringSpec css,StringSpec sss,
                            StringSpec lcs,StringSpec tts) {
+        this(src,cblks,pss,bms,mqrs,rts,css,sss,lcs,tts,null);
+    }
+
+    /**
+     * Instantiates a new entropy coder engine, with the specified source of
+     * data, nominal block width and height, which encodes code-blocks in
+     * parallel on the given executor.
+     *
+     * <p>If the 'OPT_PRED_TERM' option is given then the MQ termination must
+     * be 'TERM_PRED_ER' or an exception is thrown.</p>
+     *
+     * @param src The source of data
+     *
+     * @param cbks Code-block size specifications
+     *
+     * @param pss Precinct partition specifications
+     *
+     * @param bms By-pass mode specifications
+     *
+     * @param mqrs MQ-reset specifications
+     *
+     * @param rts Regular termination specifications
+     *
+     * @param css Causal stripes specifications
+     *
+     * @param sss Error resolution segment symbol use specifications
+     *
+     * @param lcs Length computation specifications
+     *
+     * @param tts Termination type specifications
+     *
+     * @param executor The executor on which to encode code-blocks in
+     * parallel. If null the default executor is used if the
+     * THREADS_PROP_NAME property asks for parallel encoding.
+     *
+     * @see MQCoder
+     * */
+    public StdEntropyCoder(CBlkQuantDataSrcEnc src,CBlkSizeSpec cblks,
+                           PrecinctSizeSpec pss,StringSpec bms,StringSpec mqrs,
+                           StringSpec rts,StringSpec css,StringSpec sss,
+                           StringSpec lcs,StringSpec tts,
+                           ExecutorService executor) {
         super(src);
         this.cblks = cblks;
         this.pss = pss;
@@ -942,21 +1015,7 @@ public class StdEntropyCoder extends EntropyCoder
         maxCBlkHeight = cblks.getMaxCBlkHeight();
 
         // Get the number of threads to use, or default to one
-        try {
-            try {
-                nt = Integer.parseInt(System.getProperty(THREADS_PROP_NAME,
-                                                         DEF_THREADS_NUM));
-            } catch(SecurityException se) {
-                // Use the default value.
-                nt = Integer.parseInt(DEF_THREADS_NUM);
-            }
-            if (nt < 0) throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid number of threads "+
-                                               "for "+
-                                               "entropy coding in property "+
-                                               THREADS_PROP_NAME);
-        }
+        nt = WorkScheduler.getParallelism(THREADS_PROP_NAME,executor);
 
         // If we do timing create necessary structures
          /* UNCOMMENT AT COMPILE TIME
@@ -976,24 +1035,20 @@ public class StdEntropyCoder extends EntropyCoder
                          "Using multithreaded entropy coder "+
                          "with "+nt+" compressor threads.");
             tsl = nt;
-            tPool = new ThreadPool(nt,Thread.currentThread().getPriority()+
-                                   THREADS_PRIORITY_INC,"StdEntropyCoder");
+            this.executor = WorkScheduler.getExecutor(executor,nt);
 	    idleComps = new Stack();
-            completedComps = new Stack[src.getNumComps()];
+            busyComps = new LinkedList<Compressor>();
             nBusyComps = new int[src.getNumComps()];
             finishedTileComponent = new boolean[src.getNumComps()];
-            for (i=src.getNumComps()-1; i>=0; i--) {
-                completedComps[i] = new Stack();
-            }
 	    for (i=0; i<nt; i++) {
 		idleComps.push(new StdEntropyCoder.Compressor(i));
 	    }
         }
         else {
             tsl = 1;
-            tPool = null;
+            this.executor = null;
 	    idleComps = null;
-            completedComps = null;
+            busyComps = null;
             nBusyComps = null;
             finishedTileComponent = null;
         }
@@ -1039,7 +1094,7 @@ public class StdEntropyCoder extends EntropyCoder
             int c;
             StringBuffer sb;
 
-            if (tPool == null) { // Single threaded implementation
+            if (executor == null) { // Single threaded implementation
                 sb = new StringBuffer("StdEntropyCoder compression wall "+
                                       "clock time:");
                 for (c=0; c<time.length; c++) {
@@ -1145,7 +1200,7 @@ public class StdEntropyCoder extends EntropyCoder
      * */
     public CBlkRateDistStats getNextCodeBlock(int c, CBlkRateDistStats ccb) {
         long stime = 0L;     // Start time for timed sections
-        if (tPool == null) { // Use single threaded implementation
+        if (executor == null) { // Use single threaded implementation
             // Get code-block data from source
             srcblkT[0] = src.getNextInternCodeBlock(c,srcblkT[0]);
 
@@ -1166,7 +1221,7 @@ public class StdEntropyCoder extends EntropyCoder
                               stateT[0],distbufT[0],ratebufT[0],
                               istermbufT[0],symbufT[0],ctxtbufT[0],
                               opts[tIdx][c],isReversible(tIdx,c),
-                              lenCalc[tIdx][c],tType[tIdx][c]);
+                              lenCalc[tIdx][c],tType[tIdx][c],stopSlope);
             if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
             // Return result
             return ccb;
@@ -1198,10 +1253,21 @@ public class StdEntropyCoder extends EntropyCoder
                     compr.rev = isReversible(tIdx,c);
                     compr.lcType = lenCalc[tIdx][c];
                     compr.tType = tType[tIdx][c];
+                    compr.stopSlope = stopSlope;
+                    compr.err = null;
+                    synchronized (idleComps) {
+                        compr.started = false;
+                        compr.done = false;
+                    }
                     nBusyComps[c]++;
+                    busyComps.add(compr);
                     ccb = null;
-                    // Send compressor to execution in thread pool
-		    tPool.runTarget(compr,completedComps[c]);
+                    // Send compressor to execution in the executor. If
+                    // rejected the calling thread runs it when needed.
+                    try {
+                        executor.execute(compr);
+                    } catch (RejectedExecutionException e) {
+                    }
                 }
                 else {
                     // We finished with all the code-blocks in the current
@@ -1213,36 +1279,26 @@ public class StdEntropyCoder extends EntropyCoder
             // If there are threads for this component which result has not
             // been returned yet, get it
             if (nBusyComps[c] > 0) {
-                synchronized (completedComps[c]) {
-                    // If no compressor is done, wait until one is
-                    if (completedComps[c].empty()) {
-                        try {
-                            if (DO_TIMING) {
-                                time[c] += System.currentTimeMillis()-stime;
-                            }
-                            completedComps[c].wait();
-                            if (DO_TIMING) {
-                                stime = System.currentTimeMillis();
-                            }
-                        } catch (InterruptedException e) {
-                        }
-                    }
-                    // Remove the thread from the completed queue and put it
-                    // on the idle queue
-                    compr = (Compressor) completedComps[c].pop();
-                    cIdx = compr.getIdx();
-                    nBusyComps[c]--;
-                    idleComps.push(compr);
-                    // Check targets error condition
-                    tPool.checkTargetErrors();
-                    // Get the result of compression and return that.
-                    if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
-                    return compr.ccb;
+                // Wait until a compressor is done and remove it from the
+                // busy ones. Errors and runtime exceptions thrown by the
+                // compressor are thrown here.
+                if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
+                compr = waitCompressor(c);
+                if (DO_TIMING) stime = System.currentTimeMillis();
+                // Put it on the idle queue
+                nBusyComps[c]--;
+                busyComps.remove(compr);
+                idleComps.push(compr);
+                if (compr.err instanceof Error) throw (Error) compr.err;
+                if (compr.err instanceof RuntimeException) {
+                    throw (RuntimeException) compr.err;
                 }
+                if (compr.err != null) throw new RuntimeException(compr.err);
+                // Get the result of compression and return that.
+                if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
+                return compr.ccb;
             }
             else {
-                // Check targets error condition
-                tPool.checkTargetErrors();
                 // Printing timing info if necessary
                 if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
                 // Nothing is running => no more code-blocks
@@ -1251,6 +1307,62 @@ public class StdEntropyCoder extends EntropyCoder
         }
     }
 
+    /**
+     * Returns a busy compressor of component 'c' which is done, in the
+     * multithreaded implementation. Instead of waiting for the executor to
+     * start the compressors of component 'c', the calling thread runs
+     * them itself, in the order in which they were given their
+     * code-block. If the calling thread is interrupted while waiting for
+     * the compressors started by the executor, it still waits for them and
+     * returns with its interrupt status set.
+     *
+     * @param c The component, which must have busy compressors.
+     *
+     * @return A compressor of component 'c' which is done.
+     * */
+    private Compressor waitCompressor(int c) {
+        Compressor compr;           // The compressor to run
+        boolean interrupted = false; // If interrupted while waiting
+
+        try {
+            while (true) {
+                compr = null;
+                synchronized (idleComps) {
+                    for (Compressor busy : busyComps) {
+                        if (busy.c != c) continue;
+                        if (busy.done) return busy;
+                        if (!busy.started && compr == null) compr = busy;
+                    }
+                    if (compr == null) {
+                        try {
+                            idleComps.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                        continue;
+                    }
+                }
+                compr.run();
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets the rate-distortion slope below which the coding of the
+     * code-blocks which are returned next may stop early. The coding of a
+     * code-block stops after a magnitude bit-plane which has, as a whole, a
+     * lower slope. It does not stop for code-blocks which are coded with the
+     * bypass ("raw") coding option, or which contain ROI coefficients.
+     *
+     * @param slope The slope below which the coding may stop, or 0 to code
+     * all the coding passes.
+     * */
+    public void setStopSlope(float slope) {
+        stopSlope = slope;
+    }
+
     /**
      * Changes the current tile, given the new indexes. An
      * IllegalArgumentException is thrown if the indexes do not
@@ -1336,6 +1448,9 @@ public class StdEntropyCoder extends EntropyCoder
      *
      * @param tType The type of termination to use with the MQ coder.
      *
+     * @param stopSlope The rate-distortion slope below which the coding may
+     * stop after a magnitude bit-plane, or 0 to code all the bit-planes.
+     *
      * @see #getNextCodeBlock
      * */
     static private void compressCodeBlock(int c, CBlkRateDistStats ccb,
@@ -1347,7 +1462,8 @@ public class StdEntropyCoder extends EntropyCoder
                                           boolean istermbuf[], int symbuf[],
                                           int ctxtbuf[], int options,
                                           boolean rev,
-                                          int lcType, int tType) {
+                                          int lcType, int tType,
+                                          float stopSlope) {
         // NOTE: This method should not access any non-final instance or
         // static variables, either directly or indirectly through other
         // methods in order to be sure that the method is thread safe.
@@ -1362,6 +1478,7 @@ public class StdEntropyCoder extends EntropyCoder
         double msew;   // The distortion (MSE weight) for the current bit-plane
         double totdist;// The total cumulative distortion decrease
         int ltpidx;    // The index of the last pass which is terminated
+        int bppidx;    // The index of the last pass of the previous bit-plane
 
 
         // Check error-resilient termination
@@ -1445,8 +1562,25 @@ public class StdEntropyCoder extends EntropyCoder
             msew *= 0.25;
             curbp--;
         }
+        // The coding can not stop early with the bypass option, which does
+        // not terminate the passes with the MQ coder, nor with ROI
+        // coefficients, whose passes must all be coded
+        if ((options & OPT_BYPASS) != 0 || srcblk.nROIcoeff != 0) {
+            stopSlope = 0f;
+        }
+        bppidx = -1;
         // Other bit-planes have all passes
         while (curbp >= lmb) {
+            // Stop if the slope of the last bit-plane is below 'stopSlope',
+            // the following ones being expected to have lower slopes
+            if (stopSlope > 0f && npass > 0 &&
+                (ratebuf[npass-1]-((bppidx>=0) ? ratebuf[bppidx] : 0))*
+                (double)stopSlope >
+                distbuf[npass-1]-((bppidx>=0) ? distbuf[bppidx] : 0)) {
+                break;
+            }
+            bppidx = npass-1;
+
             // Do we need the "lossless" 'fs' and 'fm' tables ?
             if (rev && curbp == lmb) {
                 fs = FS_LOSSLESS;
@@ -1512,6 +1646,16 @@ public class StdEntropyCoder extends EntropyCoder
             curbp--;
         }
 
+        // If the coding stopped early the last pass may not be terminated
+        if (npass > 0 && !istermbuf[npass-1]) {
+            ratebuf[npass-1] = mq.terminateLastPass();
+            if (ltpidx >= 0) {
+                ratebuf[npass-1] += ratebuf[ltpidx];
+            }
+            mq.finishLengthCalculation(ratebuf,npass-1);
+            istermbuf[npass-1] = true;
+        }
+
         // Copy compressed data and rate-distortion statistics to output
         ccb.data = new byte[out.size()];
         out.toByteArray(0,out.size(),ccb.data,0);
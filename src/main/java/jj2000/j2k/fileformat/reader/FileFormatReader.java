@@ -156,9 +156,9 @@ public class FileFormatReader implements FileFormatBoxes{
 
         int foundCodeStreamBoxes=0;
         int box;
-        int length;
+        long length;
         long longLength=0;
-        int pos;
+        long pos;
         short marker;
         boolean jp2HeaderBoxFound=false;
         boolean lastBoxFound = false;
@@ -185,7 +185,7 @@ public class FileFormatReader implements FileFormatBoxes{
                 in.seek(pos);
                 if(codeStreamPos == null)
                     codeStreamPos = new Vector();
-                codeStreamPos.addElement(new Integer(pos));
+                codeStreamPos.addElement(new Long(pos));
                 return;
             }
 
@@ -193,29 +193,33 @@ public class FileFormatReader implements FileFormatBoxes{
                 metadata.addNode(new SignatureBox());
 
             // Read all remaining boxes
-            int inputLength = in.length();
+            long inputLength = in.length();
             while(!lastBoxFound){
                 pos = in.getPos();
-                length = in.readInt();
-                int remainingLength = inputLength - (pos+length);
-                if(remainingLength >=0 && remainingLength < 4)
-                    lastBoxFound = true;
-
+                // LBox is an unsigned 32 bit value
+                length = in.readInt() & 0xFFFFFFFFL;
                 box = in.readInt();
                 if (length == 0) {
+                    // The box extends to the end of the file
                     lastBoxFound = true;
-                    length = inputLength-in.getPos();
+                    length = inputLength-pos;
+                    longLength = (long) 0;
                 } else if(length == 1) {
+                    // The length is in the 8 byte XLBox field
                     longLength = in.readLong();
-                    throw new IOException("File too long.");
+                    length = longLength;
                 } else longLength = (long) 0;
+                long remainingLength = inputLength - (pos+length);
+                if(remainingLength >=0 && remainingLength < 4)
+                    lastBoxFound = true;
 
+                // Length of the box contents
+                length -= in.getPos()-pos;
                 pos = in.getPos();
-                length -= 8;
 
                 switch(box){
                 case FILE_TYPE_BOX:
-                    readFileTypeBox(length + 8, longLength);
+                    readFileTypeBox((int)length + 8, longLength);
                     break;
                 case CONTIGUOUS_CODESTREAM_BOX:
                     if(!jp2HeaderBoxFound)
@@ -228,58 +232,59 @@ public class FileFormatReader implements FileFormatBoxes{
                     if(jp2HeaderBoxFound)
                         throw new Error("Invalid JP2 file: Multiple "+
                                         "JP2Header boxes found");
-                    readJP2HeaderBox(length + 8);
+                    readJP2HeaderBox((int)length + 8);
                     jp2HeaderBoxFound = true;
                     length = 0;
                     break;
                 case IMAGE_HEADER_BOX:
-                    readImageHeaderBox(length);
+                    readImageHeaderBox((int)length);
                     break;
                 case INTELLECTUAL_PROPERTY_BOX:
-                    readIntPropertyBox(length);
+                    readIntPropertyBox((int)length);
                     break;
                 case XML_BOX:
-                    readXMLBox(length);
+                    readXMLBox((int)length);
                     break;
                 case UUID_INFO_BOX:
                     length = 0;
                     break;
                 case UUID_BOX:
-                    readUUIDBox(length);
+                    readUUIDBox((int)length);
                     break;
                 case UUID_LIST_BOX:
-                    readUUIDListBox(length);
+                    readUUIDListBox((int)length);
                     break;
                 case URL_BOX:
-                    readURLBox(length);
+                    readURLBox((int)length);
                     break;
                 case PALETTE_BOX:
-                    readPaletteBox(length + 8);
+                    readPaletteBox((int)length + 8);
                     break;
                 case BITS_PER_COMPONENT_BOX:
-                    readBitsPerComponentBox(length);
+                    readBitsPerComponentBox((int)length);
                     break;
                 case COMPONENT_MAPPING_BOX:
-                    readComponentMappingBox(length);
+                    readComponentMappingBox((int)length);
                     break;
                 case COLOUR_SPECIFICATION_BOX:
-                    readColourSpecificationBox(length);
+                    readColourSpecificationBox((int)length);
                     break;
                 case CHANNEL_DEFINITION_BOX:
-                    readChannelDefinitionBox(length);
+                    readChannelDefinitionBox((int)length);
                     break;
                 case RESOLUTION_BOX:
                     length = 0;
                     break;
                 case CAPTURE_RESOLUTION_BOX:
                 case DEFAULT_DISPLAY_RESOLUTION_BOX:
-                    readResolutionBox(box, length);
+                    readResolutionBox(box, (int)length);
                     break;
                 default:
                     if (metadata != null) {
-                        byte[] data = new byte[length];
-                        in.readFully(data, 0, length);
-                        metadata.addNode(new Box(length + 8,
+                        byte[] data = new byte[(int)length];
+                        in.readFully(data, 0, (int)length);
+                        metadata.addNode(new Box(longLength != 0 ? 1 :
+                                                 (int)length + 8,
                                                  box,
                                                  longLength,
                                                  data));
@@ -415,9 +420,11 @@ public class FileFormatReader implements FileFormatBoxes{
      *
      * @param pos The position in the file
      *
-     * @param length The length of the JP2Header box
+     * @param length The length of the Contiguous codestream box, which may
+     * be greater than 1<<32
      *
-     * @param long length The length of the JP2Header box if greater than 1<<32
+     * @param long length The length of the Contiguous codestream box given
+     * in the XLBox field, or 0 if there is no such field
      *
      * @return false if the Contiguous codestream box was not found or invalid
      * else true
@@ -426,21 +433,21 @@ public class FileFormatReader implements FileFormatBoxes{
      *
      * @exception java.io.EOFException If the end of file was reached
      * */
-    public boolean readContiguousCodeStreamBox(int length,
+    public boolean readContiguousCodeStreamBox(long length,
                                                long longLength)
         throws IOException, EOFException {
 
         // Add new codestream position to position vector
-        int ccpos = in.getPos();
+        long ccpos = in.getPos();
 
         if(codeStreamPos == null)
             codeStreamPos = new Vector();
-        codeStreamPos.addElement(new Integer(ccpos));
+        codeStreamPos.addElement(new Long(ccpos));
 
         // Add new codestream length to length vector
         if(codeStreamLength == null)
             codeStreamLength = new Vector();
-        codeStreamLength.addElement(new Integer(length));
+        codeStreamLength.addElement(new Long(length));
 
         return true;
     }
@@ -503,7 +510,7 @@ public class FileFormatReader implements FileFormatBoxes{
     /** This method reads the content of the palette box */
     public void readPaletteBox(int length) throws IOException {
         // Get current position in file
-        int pos = in.getPos();
+        long pos = in.getPos();
 
         int lutSize = in.readShort();
         int numComp = in.readByte();
@@ -637,7 +644,7 @@ public class FileFormatReader implements FileFormatBoxes{
         int size = codeStreamPos.size();
         long[] pos = new long[size];
         for(int i=0 ; i<size ; i++)
-            pos[i]=((Integer)(codeStreamPos.elementAt(i))).longValue();
+            pos[i]=((Long)(codeStreamPos.elementAt(i))).longValue();
         return pos;
     }
 
@@ -647,8 +654,8 @@ public class FileFormatReader implements FileFormatBoxes{
      *
      * @return The position of the first contiguous codestream in the file
      * */
-    public int getFirstCodeStreamPos(){
-        return ((Integer)(codeStreamPos.elementAt(0))).intValue();
+    public long getFirstCodeStreamPos(){
+        return ((Long)(codeStreamPos.elementAt(0))).longValue();
     }
 
     /**
@@ -657,8 +664,8 @@ public class FileFormatReader implements FileFormatBoxes{
      *
      * @return The length of the first contiguous codestream in the file
      * */
-    public int getFirstCodeStreamLength(){
-        return ((Integer)(codeStreamLength.elementAt(0))).intValue();
+    public long getFirstCodeStreamLength(){
+        return ((Long)(codeStreamLength.elementAt(0))).longValue();
     }
 
     /**
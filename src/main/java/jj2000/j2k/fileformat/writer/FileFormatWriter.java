@@ -92,10 +92,7 @@ public class FileFormatWriter implements FileFormatBoxes {
     private boolean bpcVaries;
 
     /** Length of codestream */
-    private int clength;
-
-    /** Length of Colour Specification Box */
-    private static final int CSB_LENGTH = 15;
+    private long clength;
 
     /** Length of File Type Box */
     private static final int FTB_LENGTH = 20;
@@ -126,6 +123,21 @@ public class FileFormatWriter implements FileFormatBoxes {
     /** cache the <code>J2KMetadataFormat</code> */
     J2KMetadataFormat format ;
 
+    /** The position of the length of the contiguous codestream box in the
+     * stream, or -1 if it is not written yet */
+    private long lboxPos = -1;
+
+    /** Whether the length of the contiguous codestream box is written in the
+     * 8 byte XLBox field */
+    private boolean xlbox;
+
+    /** The largest box length which can be written in the LBox field */
+    private static final long MAX_LBOX = 0xFFFFFFFFL;
+
+    /** The size of the uncompressed image data from which the XLBox field
+     * is used, so that the codestream length always fits */
+    private static final long XLBOX_THRESHOLD = 0x7FFFFFFFL;
+
     /**
      * The constructor of the FileFormatWriter. It receives all the
      * information necessary about a codestream to generate a legal JP2 file
@@ -145,7 +157,7 @@ public class FileFormatWriter implements FileFormatBoxes {
      */
     public FileFormatWriter(File file, ImageOutputStream stream,
                             int height, int width, int nc,
-                            int[] bpc, int clength,
+                            int[] bpc, long clength,
                             ColorModel colorModel,
                             SampleModel sampleModel,
                             J2KMetadata metadata){
@@ -173,6 +185,99 @@ public class FileFormatWriter implements FileFormatBoxes {
 
 
 
+    /**
+     * The constructor of the FileFormatWriter, for a codestream which is
+     * written directly to the stream (see writeFileFormatHeader()).
+     *
+     * @param stream The stream to write the JP2 file to
+     *
+     * @param height The height of the image
+     *
+     * @param width The width of the image
+     *
+     * @param nc The number of components
+     *
+     * @param bpc The number of bits per component
+     *
+     * @param colorModel The color model of the image to be compressed.
+     */
+    public FileFormatWriter(ImageOutputStream stream,
+                            int height, int width, int nc, int[] bpc,
+                            ColorModel colorModel,
+                            SampleModel sampleModel,
+                            J2KMetadata metadata){
+        this(null, stream, height, width, nc, bpc, 0, colorModel,
+             sampleModel, metadata);
+    }
+
+    /**
+     * This method writes the file format wrapper up to the beginning of the
+     * codestream, which is then to be written to the stream. The length of
+     * the contiguous codestream box is not known yet and is set by
+     * completeFileFormat(), once the codestream is written.
+     *
+     * @exception java.io.IOException If an I/O error ocurred.
+     * */
+    public void writeFileFormatHeader() throws IOException {
+        writeMetadata(metadata);
+
+        //when write a jp2 file
+        if (metadata != null) {
+            // Write box length (LBox). Until it is set by
+            // completeFileFormat() the box extends to the end of the file,
+            // which is legal since this box is always last.
+            // For large images the codestream may be longer than what
+            // LBox can signal, the length is then written in XLBox.
+            long size = 0;
+            for (int i = 0; i < nc; i++) {
+                size += ((long)width*height*bpc[i]+7)/8;
+            }
+            xlbox = size >= XLBOX_THRESHOLD;
+            lboxPos = stream.getStreamPosition();
+            stream.writeInt(xlbox ? 1 : 0);
+
+            // Write contiguous codestream box name (TBox)
+            stream.writeInt(CONTIGUOUS_CODESTREAM_BOX);
+
+            // Write XLBox
+            if (xlbox) {
+                stream.writeLong(0);
+            }
+        }
+    }
+
+    /**
+     * This method sets the length of the contiguous codestream box, once
+     * the codestream has been written to the stream after the header
+     * written by writeFileFormatHeader(). The stream is positioned back at
+     * the end of the codestream.
+     *
+     * <P>If the XLBox field was not written and the length of the box does
+     * not fit in LBox, LBox is left to 0, meaning that the box extends to
+     * the end of the file.
+     *
+     * @param clength Length of codestream
+     *
+     * @return The number of bytes increases because of the file format
+     *
+     * @exception java.io.IOException If an I/O error ocurred.
+     * */
+    public int completeFileFormat(long clength) throws IOException {
+        this.clength = clength;
+        if (lboxPos >= 0) {
+            long end = stream.getStreamPosition();
+            if (xlbox) {
+                stream.seek(lboxPos+8);
+                stream.writeLong(clength+16);
+            } else if (clength+8 <= MAX_LBOX) {
+                stream.seek(lboxPos);
+                stream.writeInt((int)(clength+8));
+            }
+            stream.seek(end);
+        }
+        return otherLength + (xlbox ? 16 : 8);
+    }
+
     /**
      * This method reads the codestream and writes the file format wrapper and
      * the codestream to the same file
@@ -187,7 +292,7 @@ public class FileFormatWriter implements FileFormatBoxes {
         // Write the Codestream box
         writeContiguousCodeStreamBox();
 
-        return CSB_LENGTH + otherLength;
+        return otherLength + (xlbox ? 16 : 8);
     }
 
     private void writeMetadata(J2KMetadata metadata) throws IOException {
@@ -262,22 +367,27 @@ public class FileFormatWriter implements FileFormatBoxes {
 
         //when write a jp2 file
         if (metadata != null) {
-            // Write box length (LBox)
-            // This value is set to 0 since in this implementation, this box is
-            // always last
-            stream.writeInt(clength+8);
+            // Write box length (LBox), or 1 if the length is written in
+            // XLBox
+            xlbox = clength+8 > MAX_LBOX;
+            stream.writeInt(xlbox ? 1 : (int)(clength+8));
 
             // Write contiguous codestream box name (TBox)
             stream.writeInt(CONTIGUOUS_CODESTREAM_BOX);
+
+            // Write XLBox
+            if (xlbox) {
+                stream.writeLong(clength+16);
+            }
         }
             // Read and buffer the codestream
         BEBufferedRandomAccessFile fi =
             new BEBufferedRandomAccessFile(file,"rw+");
-        int remainder = clength;
+        long remainder = clength;
         byte[] codestream = new byte[1024];
 
         while(remainder >0) {
-            int len = remainder > 1024 ? 1024 : remainder;
+            int len = remainder > 1024 ? 1024 : (int)remainder;
             fi.readFully(codestream, 0, len);
 
             // Write codestream
@@ -51,6 +51,7 @@ import jj2000.j2k.image.DataBlk;
 import jj2000.j2k.image.DataBlkFloat;
 import jj2000.j2k.image.DataBlkInt;
 import jj2000.j2k.image.ImgDataAdapter;
+import jj2000.j2k.util.ArrayPool;
 import jj2000.j2k.util.MathUtil;
 import jj2000.j2k.wavelet.synthesis.SynWTFilterSpec;
 
@@ -98,9 +99,14 @@ public class InvCompTransf extends ImgDataAdapter
      * part I only support NONE, FORW_RCT and FORW_ICT types*/
     private int transfType = NONE;
 
-    /** Buffer for each component of output data */
+    /** Buffer for each component of output data, which is not yet
+     * returned, null if none */
     private int[][] outdata = new int[3][];
 
+    /** The output buffer of each component, borrowed from the array pool
+     * and kept from a call to the next */
+    private int[][] outbuf = new int[3][];
+
     /** Block used to request component 0 */
     private DataBlk block0;
 
@@ -333,11 +339,58 @@ public class InvCompTransf extends ImgDataAdapter
         if (c>=3 || transfType == NONE) {
             return src.getCompData(blk,c);
         }
-        else { // We can use getInternCompData (since data is a copy anyways)
-            return getInternCompData(blk,c);
+        else {
+            // getInternCompData returns the output buffers, copy the data
+            Object dst = blk.getData();
+            int w = blk.w;
+            int h = blk.h;
+            blk = getInternCompData(blk,c);
+            int[] srcData = (int[]) blk.getData();
+            int[] dstData;
+            if (dst instanceof int[] && ((int[])dst).length >= w*h) {
+                dstData = (int[]) dst;
+            } else {
+                dstData = new int[w*h];
+            }
+            for (int i=0; i<h; i++) {
+                System.arraycopy(srcData,blk.offset+i*blk.scanw,
+                                 dstData,i*w,w);
+            }
+            blk.setData(dstData);
+            blk.offset = 0;
+            blk.scanw = w;
+            return blk;
+        }
+    }
+
+    /**
+     * Sets the output data of the 3 components to their output buffers,
+     * replacing the buffers that are too small with larger ones from the
+     * array pool.
+     *
+     * @param len The number of elements of the output data.
+     * */
+    private void getOutBuffers(int len) {
+        for (int i=0; i<3; i++) {
+            if (outbuf[i] == null || outbuf[i].length < len) {
+                ArrayPool.release(outbuf[i]);
+                outbuf[i] = ArrayPool.getInt(len);
+            }
+            outdata[i] = outbuf[i];
         }
     }
 
+    /**
+     * Forgets the output data not yet returned and the data of the blocks
+     * used to request the components, which belong to the previous tile.
+     * */
+    private void resetTileData() {
+        outdata[0] = outdata[1] = outdata[2] = null;
+        if (block0 != null) block0.setData(null);
+        if (block1 != null) block1.setData(null);
+        if (block2 != null) block2.setData(null);
+    }
+
     /**
      * Apply the inverse component transformation associated with the current
      * tile. If no component transformation has been requested by the user,
@@ -401,17 +454,9 @@ public class InvCompTransf extends ImgDataAdapter
 	    int w = blk.w; //width of output block
 	    int h = blk.h; //height of ouput block
 
-            //Reference to output block data array
-            outdata[c] = (int[]) blk.getData();
-
-            //Create data array of blk if necessary
-            if(outdata[c] == null || outdata[c].length!=h*w){
-                outdata[c] = new int[h * w];
-                blk.setData(outdata[c]);
-            }
-
-	    outdata[(c+1)%3] = new int[outdata[c].length];
-	    outdata[(c+2)%3] = new int[outdata[c].length];
+            //Get the output buffers of the 3 components
+            getOutBuffers(w*h);
+            blk.setData(outdata[c]);
 
 	    if(block0==null || block0.getDataType()!=DataBlk.TYPE_INT)
 		block0 = new DataBlkInt();
@@ -548,17 +593,9 @@ public class InvCompTransf extends ImgDataAdapter
 	    int w = blk.w; //width of output block
 	    int h = blk.h; //height of ouput block
 
-	    //Reference to output block data array
-	    outdata[c] = (int[]) blk.getData();
-
-	    //Create data array of blk if necessary
-	    if(outdata[c] == null || outdata[c].length!=w*h){
-		outdata[c] = new int[h * w];
-		blk.setData(outdata[c]);
-	    }
-
-	    outdata[(c+1)%3] = new int[outdata[c].length];
-	    outdata[(c+2)%3] = new int[outdata[c].length];
+            //Get the output buffers of the 3 components
+            getOutBuffers(w*h);
+            blk.setData(outdata[c]);
 
 	    if(block0==null || block0.getDataType()!=DataBlk.TYPE_FLOAT)
 		block0 = new DataBlkFloat();
@@ -631,6 +668,156 @@ public class InvCompTransf extends ImgDataAdapter
 	return blk;
     }
 
+    /**
+     * Returns the samples of the first 3 components in the specified area,
+     * interleaved into pixels of an output array. The inverse component
+     * transformation, the removal of the fractional bits, the DC level
+     * shift and the clipping to the nominal range of each component are all
+     * done in a single pass over the data, without going through the
+     * output buffers of each component.
+     *
+     * <P>The sample of component 'c' of the pixel at (x,y) of the area is
+     * stored at index 'off+y*scanw+x*pixelStride+bandOffsets[c]' of 'out',
+     * which must be a byte or short array. The samples are stored as
+     * unsigned values, which must thus fit in the type of the array.
+     *
+     * <P>Nothing is done, and false is returned, if there is no component
+     * transformation in the current tile, in which case the components must
+     * be requested separately.
+     *
+     * @param blk Determines the rectangular area to return. Only its
+     * progressiveness is set on return.
+     *
+     * @param out The output array, of type byte[] or short[].
+     *
+     * @param off The index in 'out' of the first pixel of the area.
+     *
+     * @param scanw The number of elements between the start of 2 lines in
+     * 'out'.
+     *
+     * @param pixelStride The number of elements between 2 pixels in 'out'.
+     *
+     * @param bandOffsets The offset of each of the 3 components in a pixel.
+     *
+     * @param levelShift The DC level shift to add to each of the 3
+     * components.
+     *
+     * @param minValues The minimum value of each of the 3 components.
+     *
+     * @param maxValues The maximum value of each of the 3 components.
+     *
+     * @return True if the data has been written to 'out', false if there is
+     * no component transformation in the current tile.
+     * */
+    public boolean getInterleavedData(DataBlk blk,Object out,int off,
+                                      int scanw,int pixelStride,
+                                      int[] bandOffsets,int[] levelShift,
+                                      int[] minValues,int[] maxValues) {
+        if(noCompTransf || getNumComps()<3 ||
+           (transfType!=INV_RCT && transfType!=INV_ICT)) {
+            return false;
+        }
+        byte[] bout = (out instanceof byte[]) ? (byte[])out : null;
+        short[] sout = (out instanceof short[]) ? (short[])out : null;
+        if(bout==null && sout==null) {
+            throw new IllegalArgumentException("Output must be a byte or "+
+                                               "short array");
+        }
+
+        // The buffered output data, if any, is not for this area
+        outdata[0] = outdata[1] = outdata[2] = null;
+
+        int dtype = transfType==INV_RCT ? DataBlk.TYPE_INT :
+            DataBlk.TYPE_FLOAT;
+        DataBlk[] blks = new DataBlk[3];
+        for(int c=0; c<3; c++) {
+            DataBlk b = c==0 ? block0 : (c==1 ? block1 : block2);
+            if(b==null || b.getDataType()!=dtype) {
+                b = dtype==DataBlk.TYPE_INT ?
+                    (DataBlk)new DataBlkInt() : (DataBlk)new DataBlkFloat();
+            }
+            b.ulx = blk.ulx;
+            b.uly = blk.uly;
+            b.w = blk.w;
+            b.h = blk.h;
+            blks[c] = src.getInternCompData(b,c);
+        }
+        block0 = blks[0];
+        block1 = blks[1];
+        block2 = blks[2];
+        blk.progressive = block0.progressive || block1.progressive ||
+            block2.progressive;
+
+        int w = blk.w;
+        int h = blk.h;
+        int fb0 = getFixedPoint(0), fb1 = getFixedPoint(1),
+            fb2 = getFixedPoint(2);
+        int ls0 = levelShift[0], ls1 = levelShift[1], ls2 = levelShift[2];
+        int min0 = minValues[0], min1 = minValues[1], min2 = minValues[2];
+        int max0 = maxValues[0], max1 = maxValues[1], max2 = maxValues[2];
+        int bo0 = bandOffsets[0], bo1 = bandOffsets[1], bo2 = bandOffsets[2];
+        int i,j,k,k0,k1,k2,v0,v1,v2;
+
+        for(i=0; i<h; i++) {
+            k = off+i*scanw;
+            k0 = block0.offset+i*block0.scanw;
+            k1 = block1.offset+i*block1.scanw;
+            k2 = block2.offset+i*block2.scanw;
+            if(transfType==INV_RCT) {
+                int[] data0 = (int[])block0.getData();
+                int[] data1 = (int[])block1.getData();
+                int[] data2 = (int[])block2.getData();
+                for(j=0; j<w; j++, k+=pixelStride, k0++, k1++, k2++) {
+                    v1 = data0[k0] - ((data1[k1]+data2[k2])>>2);
+                    v0 = data2[k2] + v1;
+                    v2 = data1[k1] + v1;
+                    v0 = (v0>>fb0)+ls0;
+                    v1 = (v1>>fb1)+ls1;
+                    v2 = (v2>>fb2)+ls2;
+                    v0 = (v0<min0) ? min0 : ((v0>max0) ? max0 : v0);
+                    v1 = (v1<min1) ? min1 : ((v1>max1) ? max1 : v1);
+                    v2 = (v2<min2) ? min2 : ((v2>max2) ? max2 : v2);
+                    if(bout!=null) {
+                        bout[k+bo0] = (byte)v0;
+                        bout[k+bo1] = (byte)v1;
+                        bout[k+bo2] = (byte)v2;
+                    } else {
+                        sout[k+bo0] = (short)v0;
+                        sout[k+bo1] = (short)v1;
+                        sout[k+bo2] = (short)v2;
+                    }
+                }
+            } else {
+                // Components 1 and 2 are Cb and Cr
+                float[] data0 = (float[])block0.getData();
+                float[] data1 = (float[])block1.getData();
+                float[] data2 = (float[])block2.getData();
+                for(j=0; j<w; j++, k+=pixelStride, k0++, k1++, k2++) {
+                    v0 = (int)(data0[k0]+1.402f*data2[k2]+0.5f);
+                    v1 = (int)(data0[k0]-0.34413f*data1[k1]-
+                               0.71414f*data2[k2]+0.5f);
+                    v2 = (int)(data0[k0]+1.772f*data1[k1]+0.5f);
+                    v0 = (v0>>fb0)+ls0;
+                    v1 = (v1>>fb1)+ls1;
+                    v2 = (v2>>fb2)+ls2;
+                    v0 = (v0<min0) ? min0 : ((v0>max0) ? max0 : v0);
+                    v1 = (v1<min1) ? min1 : ((v1>max1) ? max1 : v1);
+                    v2 = (v2<min2) ? min2 : ((v2>max2) ? max2 : v2);
+                    if(bout!=null) {
+                        bout[k+bo0] = (byte)v0;
+                        bout[k+bo1] = (byte)v1;
+                        bout[k+bo2] = (byte)v2;
+                    } else {
+                        sout[k+bo0] = (short)v0;
+                        sout[k+bo1] = (short)v1;
+                        sout[k+bo2] = (short)v2;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
         /**
      * Changes the current tile, given the new indexes. An
      * IllegalArgumentException is thrown if the indexes do not
@@ -647,6 +834,7 @@ public class InvCompTransf extends ImgDataAdapter
     public void setTile(int x, int y) {
         src.setTile(x,y);
 	tIdx = getTileIdx(); // index of the current tile
+        resetTileData();
 
         // initializations
         if( ((Integer)cts.getTileDef(tIdx)).intValue()==NONE )
@@ -686,6 +874,7 @@ public class InvCompTransf extends ImgDataAdapter
     public void nextTile() {
         src.nextTile();
 	tIdx = getTileIdx(); // index of the current tile
+        resetTileData();
 
         // initializations
         if( ((Integer)cts.getTileDef(tIdx)).intValue()==NONE )
@@ -104,7 +104,7 @@ public abstract class BufferedRandomAccessFile
      * The current offset of the buffer (which will differ from the offset of
      * the file)
      * */
-    protected int offset;
+    protected long offset;
 
     /**
      * The current position in the byte-buffer
@@ -223,7 +223,7 @@ public abstract class BufferedRandomAccessFile
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    protected final void readNewBuffer(int off) throws IOException{
+    protected final void readNewBuffer(long off) throws IOException{
 
 	/* If the buffer have changed. We need to write it to
 	 * the file before reading a new buffer.
@@ -270,7 +270,7 @@ public abstract class BufferedRandomAccessFile
     /**
      * Returns the current offset in the file
      * */
-    public int getPos(){
+    public long getPos(){
 	return (offset+pos);
     }
 
@@ -282,10 +282,10 @@ public abstract class BufferedRandomAccessFile
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    public int length() throws IOException{
-	int len;
+    public long length() throws IOException{
+	long len;
 
-	len = (int)theFile.length();
+	len = theFile.length();
 
 	// If the position in the buffer is not past the end of the file,
 	// the length of theFile is the length of the stream
@@ -308,7 +308,7 @@ public abstract class BufferedRandomAccessFile
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    public void seek(int off) throws IOException{
+    public void seek(long off) throws IOException{
 	/* If the new offset is within the buffer, only the pos value needs
 	 * to be modified. Else, the buffer must be moved. */
 	if( (off>=offset)&&(off<(offset+byteBuffer.length)) ){
@@ -316,7 +316,7 @@ public abstract class BufferedRandomAccessFile
                 // We are seeking beyond EOF in read-only mode!
                 throw new EOFException();
             }
-	    pos = off-offset;
+	    pos = (int)(off-offset);
 	}
 	else{
 	    readNewBuffer(off);
@@ -0,0 +1,41 @@
+/*
+ * $RCSfile: ByteBufferIO.java,v $
+ *
+ * Interface:               ByteBufferIO
+ *
+ * Description:             Input giving views of its data without copying
+ */
+
+package jj2000.j2k.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is implemented by the inputs which can give access to
+ * their data through a ByteBuffer view, without copying it, such as the
+ * inputs mapped in memory. It is used by the decoder to read the
+ * compressed data of the code-blocks directly from the input.
+ *
+ * @see RandomAccessIO
+ * */
+public interface ByteBufferIO {
+
+    /**
+     * Returns a read-only view of some data of the input, without copying
+     * it. The view starts at index 0 and its limit is the number of bytes
+     * viewed. The position of the input is not modified. A view may not be
+     * available for every range of the input, in which case the data is to
+     * be read in the usual way.
+     *
+     * @param off The offset, in the input, of the first byte to view.
+     *
+     * @param len The number of bytes to view.
+     *
+     * @return The view of the data, or null if no view of this range is
+     * available.
+     *
+     * @exception IOException If an I/O error ocurred.
+     * */
+    public ByteBuffer getByteBuffer(long off, int len) throws IOException;
+}
@@ -52,7 +52,10 @@ import java.io.IOException;
  * implements the <tt>BinaryDataInput</tt> and <tt>BinaryDataOutput</tt>
  * interfaces so that binary data input/output can be performed.
  *
- * <P>This interface supports streams of up to 2 GB in length.
+ * <P>Positions and lengths are 64 bit values, so that this interface
+ * supports streams larger than 2 GB. Implementations which are limited to
+ * smaller streams (e.g. in-memory ones) throw an IOException when seeking
+ * beyond their limit.
  *
  * @see BinaryDataInput
  * @see BinaryDataOutput
@@ -77,7 +80,7 @@ public interface RandomAccessIO
      *
      * @exception IOException If an I/O error ocurred.
      * */
-    public int getPos() throws IOException;
+    public long getPos() throws IOException;
 
     /**
      * Returns the current length of the stream, in bytes, taking into account
@@ -87,7 +90,7 @@ public interface RandomAccessIO
      *
      * @exception IOException If an I/O error ocurred.
      * */
-    public int length() throws IOException;
+    public long length() throws IOException;
 
     /**
      * Moves the current position for the next read or write operation to
@@ -103,7 +106,7 @@ public interface RandomAccessIO
      *
      * @exception IOException If an I/O error ocurred.
      * */
-    public void seek(int off) throws IOException;
+    public void seek(long off) throws IOException;
 
     /**
      * Reads a byte of data from the stream. Prior to reading, the stream is
@@ -0,0 +1,297 @@
+/*
+ * $RCSfile: ArrayPool.java,v $
+ *
+ * Class:                   ArrayPool
+ *
+ * Description:             Thread local pool of primitive arrays
+ */
+
+package jj2000.j2k.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a pool of 'int' and 'float' arrays, so that the modules
+ * which need large temporary buffers (e.g., the tile-components
+ * reconstructed by the inverse wavelet transform) can reuse the buffers
+ * released by other modules, or by themselves for a previous tile, instead
+ * of allocating new ones.
+ *
+ * <P>The arrays are allocated by size classes: the length of an array is
+ * the smallest class length that is not smaller than the requested one,
+ * with four classes between two consecutive powers of 2. Any array whose
+ * length is the one of a class can be released, whether it came from the
+ * pool or not. The contents of the arrays returned by the pool are
+ * undefined.
+ *
+ * <P>Each thread has its own pool, so that no synchronization is needed. A
+ * thread keeps at most a few arrays of each class, and at most
+ * 'jj2000.j2k.util.ArrayPool.maxbytes' bytes of arrays in total (Java
+ * system property, or 'setMaxBytes()'). Arrays larger than that are never
+ * pooled. Since the arrays kept by a thread are only released when the
+ * thread terminates, the pool is disabled by default (0 bytes): it is
+ * meant for applications decoding with a bounded set of threads, which can
+ * afford to keep that memory.
+ *
+ * <P>The number of requests to the pool and the number of requests served
+ * with a released array, over all the threads, are counted so that the hit
+ * rate of the pool can be monitored.
+ * */
+public class ArrayPool {
+
+    /** The name of the Java system property giving the maximum number of
+     * bytes of arrays kept by each thread */
+    public static final String MAX_BYTES_PROP =
+        "jj2000.j2k.util.ArrayPool.maxbytes";
+
+    /** The base 2 logarithm of the length of the smallest class: 6 */
+    private static final int LOG_MIN_LEN = 6;
+
+    /** The length of the smallest class */
+    private static final int MIN_LEN = 1<<LOG_MIN_LEN;
+
+    /** The maximum number of arrays of each class kept by a thread: 4 */
+    private static final int MAX_PER_CLASS = 4;
+
+    /** The number of classes, up to lengths of 2^31 */
+    private static final int NUM_CLASSES = (31-LOG_MIN_LEN)*4+1;
+
+    /** The maximum number of bytes of arrays kept by each thread, 0 if the
+     * pool is disabled */
+    private static volatile long maxBytes =
+        Math.max(0L,Long.getLong(MAX_BYTES_PROP,0L).longValue());
+
+    /** The number of requests to the pool */
+    private static final AtomicLong requests = new AtomicLong();
+
+    /** The number of requests served with a released array */
+    private static final AtomicLong hits = new AtomicLong();
+
+    /** The arrays kept by a thread */
+    private static class Cache {
+        /** The 'int' arrays kept, by class */
+        int[][][] ints = new int[NUM_CLASSES][MAX_PER_CLASS][];
+
+        /** The number of 'int' arrays kept, by class */
+        int[] nInts = new int[NUM_CLASSES];
+
+        /** The 'float' arrays kept, by class */
+        float[][][] floats = new float[NUM_CLASSES][MAX_PER_CLASS][];
+
+        /** The number of 'float' arrays kept, by class */
+        int[] nFloats = new int[NUM_CLASSES];
+
+        /** The total number of bytes of the arrays kept */
+        long bytes;
+    }
+
+    /** The arrays kept by each thread */
+    private static final ThreadLocal<Cache> cache = new ThreadLocal<Cache>() {
+            protected Cache initialValue() {
+                return new Cache();
+            }
+        };
+
+    /** Not instantiable */
+    private ArrayPool() {
+    }
+
+    /**
+     * Sets the maximum number of bytes of arrays kept by each thread. The
+     * arrays already kept by the threads are only dropped as they are
+     * reused.
+     *
+     * @param bytes The maximum number of bytes, 0 to disable the pool.
+     * */
+    public static void setMaxBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative size: "+bytes);
+        }
+        maxBytes = bytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes of arrays kept by each thread.
+     *
+     * @return The maximum number of bytes, 0 if the pool is disabled.
+     * */
+    public static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the index of the smallest class whose length is not smaller
+     * than 'len'.
+     *
+     * @param len The requested length.
+     * */
+    static int classIdx(int len) {
+        if (len <= MIN_LEN) {
+            return 0;
+        }
+        // 2^b < len <= 2^(b+1), divided in four classes
+        int b = 31-Integer.numberOfLeadingZeros(len-1);
+        int m = ((len-1)>>(b-2))+1; // between 5 and 8
+        return (b-LOG_MIN_LEN)*4+m-4;
+    }
+
+    /**
+     * Returns the length of the arrays of a class, or -1 if it does not fit
+     * in an 'int'.
+     *
+     * @param idx The index of the class.
+     * */
+    static int classLen(int idx) {
+        if (idx == 0) {
+            return MIN_LEN;
+        }
+        int b = (idx-1)/4+LOG_MIN_LEN;
+        long len = (long)((idx-1)%4+5)<<(b-2);
+        return len > Integer.MAX_VALUE ? -1 : (int)len;
+    }
+
+    /**
+     * Returns an 'int' array of at least 'len' elements. Its contents are
+     * undefined.
+     *
+     * @param len The minimum length of the array.
+     *
+     * @return The array.
+     * */
+    public static int[] getInt(int len) {
+        requests.incrementAndGet();
+        int idx = classIdx(len);
+        int clen = classLen(idx);
+        if (clen < 0 || 4L*clen > maxBytes) {
+            return new int[len];
+        }
+        Cache ch = cache.get();
+        int n = ch.nInts[idx];
+        if (n > 0) {
+            int[] a = ch.ints[idx][--n];
+            ch.ints[idx][n] = null;
+            ch.nInts[idx] = n;
+            ch.bytes -= 4L*clen;
+            hits.incrementAndGet();
+            return a;
+        }
+        return new int[clen];
+    }
+
+    /**
+     * Returns a 'float' array of at least 'len' elements. Its contents are
+     * undefined.
+     *
+     * @param len The minimum length of the array.
+     *
+     * @return The array.
+     * */
+    public static float[] getFloat(int len) {
+        requests.incrementAndGet();
+        int idx = classIdx(len);
+        int clen = classLen(idx);
+        if (clen < 0 || 4L*clen > maxBytes) {
+            return new float[len];
+        }
+        Cache ch = cache.get();
+        int n = ch.nFloats[idx];
+        if (n > 0) {
+            float[] a = ch.floats[idx][--n];
+            ch.floats[idx][n] = null;
+            ch.nFloats[idx] = n;
+            ch.bytes -= 4L*clen;
+            hits.incrementAndGet();
+            return a;
+        }
+        return new float[clen];
+    }
+
+    /**
+     * Releases an 'int' array to the pool of the current thread. The array
+     * must not be used anymore by the caller. It is only kept if its length
+     * is the one of a class and the pool of the thread is not full.
+     *
+     * @param a The array to release, may be null.
+     * */
+    public static void release(int[] a) {
+        if (a == null || 4L*a.length > maxBytes) {
+            return;
+        }
+        int idx = classIdx(a.length);
+        if (classLen(idx) != a.length) {
+            return;
+        }
+        Cache ch = cache.get();
+        int n = ch.nInts[idx];
+        if (n < MAX_PER_CLASS && ch.bytes+4L*a.length <= maxBytes) {
+            ch.ints[idx][n] = a;
+            ch.nInts[idx] = n+1;
+            ch.bytes += 4L*a.length;
+        }
+    }
+
+    /**
+     * Releases a 'float' array to the pool of the current thread. The array
+     * must not be used anymore by the caller. It is only kept if its length
+     * is the one of a class and the pool of the thread is not full.
+     *
+     * @param a The array to release, may be null.
+     * */
+    public static void release(float[] a) {
+        if (a == null || 4L*a.length > maxBytes) {
+            return;
+        }
+        int idx = classIdx(a.length);
+        if (classLen(idx) != a.length) {
+            return;
+        }
+        Cache ch = cache.get();
+        int n = ch.nFloats[idx];
+        if (n < MAX_PER_CLASS && ch.bytes+4L*a.length <= maxBytes) {
+            ch.floats[idx][n] = a;
+            ch.nFloats[idx] = n+1;
+            ch.bytes += 4L*a.length;
+        }
+    }
+
+    /**
+     * Returns the number of requests to the pool, over all the threads,
+     * since the start or the last call to 'resetCounters()'.
+     *
+     * @return The number of requests.
+     * */
+    public static long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of requests to the pool served with a released
+     * array, over all the threads, since the start or the last call to
+     * 'resetCounters()'.
+     *
+     * @return The number of hits.
+     * */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the fraction of the requests to the pool served with a
+     * released array, since the start or the last call to
+     * 'resetCounters()'.
+     *
+     * @return The hit rate, between 0 and 1, or 0 if there was no request.
+     * */
+    public static double getHitRate() {
+        long r = requests.get();
+        return r == 0 ? 0.0 : (double)hits.get()/r;
+    }
+
+    /**
+     * Resets the request and hit counters to 0.
+     * */
+    public static void resetCounters() {
+        requests.set(0);
+        hits.set(0);
+    }
+}
@@ -43,14 +43,17 @@
  * */
 package jj2000.j2k.util;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Vector;
 
 import jj2000.j2k.codestream.Markers;
 import jj2000.j2k.io.BEBufferedRandomAccessFile;
-import jj2000.j2k.io.BufferedRandomAccessFile;
+import jj2000.j2k.io.RandomAccessIO;
 
 /**
  * This class takes a legal JPEG 2000 codestream and performs some
@@ -83,6 +86,12 @@ public class CodestreamManipulator{
     /** The name of the outfile */
     private File file;
 
+    /** The original codestream, if not read from 'file' */
+    private RandomAccessIO in;
+
+    /** Where to write the new codestream, if not to 'file' */
+    private OutputStream out;
+
     /** The length of a SOT plus a SOD marker */
     private static int TP_HEAD_LEN = 14;
 
@@ -96,7 +105,7 @@ public class CodestreamManipulator{
     private int[] ppt = new int[nt];
 
     /** The positions of the SOT, SOP and EPH markers */
-    private Integer[] positions;
+    private Long[] positions;
 
     /** The main header */
     private byte[] mainHeader;
@@ -146,11 +155,41 @@ public class CodestreamManipulator{
         this.tempEph = tempEph;
     }
 
+    /**
+     * Instantiates a codestream manipulator which reads the original
+     * codestream from 'in' and writes the new one to 'out'. If 'tempSop' or
+     * 'tempEph' is set, 'in' must support writing.
+     *
+     * @param in The original codestream, starting at position 0
+     *
+     * @param out Where to write the new codestream. It is not closed.
+     *
+     * @param nt The number of tiles in the image
+     *
+     * @param pptp Packets per tile-part. If zero, no division into tileparts
+     * is performed
+     *
+     * @param ppm Flag indicating that PPM marker is used
+     *
+     * @param ppt Flag indicating that PPT marker is used
+     *
+     * @param tempSop Flag indicating whether SOP merker should be removed
+     *
+     * @param tempEph Flag indicating whether EPH merker should be removed
+     * */
+    public CodestreamManipulator(RandomAccessIO in, OutputStream out, int nt,
+                                 int pptp, boolean ppm, boolean ppt,
+                                 boolean tempSop, boolean tempEph) {
+        this((File)null,nt,pptp,ppm,ppt,tempSop,tempEph);
+        this.in = in;
+        this.out = out;
+    }
+
     /**
      * This method performs the actual manipulation of the codestream which is
      * the reparsing for tile parts and packed packet headers
      *
-     * @return The number of bytes that the file has increased by
+     * @return The number of bytes that the codestream has increased by
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
@@ -168,8 +207,10 @@ public class CodestreamManipulator{
             return 0;
 
         // Open file for reading and writing
-        BEBufferedRandomAccessFile fi =
-            new BEBufferedRandomAccessFile(file, "rw+");
+        RandomAccessIO fi = in;
+        if (file != null) {
+            fi = new BEBufferedRandomAccessFile(file, "rw+");
+        }
         addedHeaderBytes -= fi.length();
 
         // Parse the codestream for SOT, SOP and EPH markers
@@ -179,19 +220,24 @@ public class CodestreamManipulator{
         readAndBuffer(fi);
 
         // Close file and overwrite with new file
-        fi.close();
-        fi = new  BEBufferedRandomAccessFile(file, "rw");
+        OutputStream fo = out;
+        if (file != null) {
+            fi.close();
+            fo = new BufferedOutputStream(new FileOutputStream(file));
+        }
 
         // Create tile-parts
         createTileParts();
 
         // Write new codestream
-        writeNewCodestream(fi);
+        addedHeaderBytes += writeNewCodestream(fo);
 
         // Close file
-        fi.flush();
-        addedHeaderBytes += fi.length();
-        fi.close();
+        if (file != null) {
+            fo.close();
+        } else {
+            fo.flush();
+        }
 
         return addedHeaderBytes;
     }
@@ -205,11 +251,12 @@ public class CodestreamManipulator{
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    private void parseAndFind(BufferedRandomAccessFile fi) throws IOException{
-        int length,pos,i,t,sop=0,eph=0;
+    private void parseAndFind(RandomAccessIO fi) throws IOException{
+        int length,t,sop=0,eph=0;
+        long pos,i;
         short marker;
         int halfMarker;
-        int tileEnd;
+        long tileEnd;
         Vector markPos = new Vector();
 
         // Find position of first SOT marker
@@ -221,7 +268,7 @@ public class CodestreamManipulator{
 
             // If SOP and EPH markers were only used for parsing in this
             // class remove SOP and EPH markers from Scod field
-            if(marker == Markers.COD){
+            if(marker == Markers.COD && (tempSop || tempEph)){
                 int scod = fi.readUnsignedByte();
                 if(tempSop)
                     scod &= 0xfd; // Remove bits indicating SOP
@@ -242,11 +289,11 @@ public class CodestreamManipulator{
             // Read SOT marker
             fi.readUnsignedShort(); // Skip SOT
             pos = fi.getPos();
-            markPos.addElement(new Integer(fi.getPos()));
+            markPos.addElement(new Long(fi.getPos()));
             fi.readInt();           // Skip Lsot and Isot
-            length = fi.readInt();  // Read Psot
+            long psot = fi.readInt() & 0xFFFFFFFFL; // Read Psot
             fi.readUnsignedShort(); // Skip TPsot & TNsot
-            tileEnd = pos + length-2; // Last byte of tile
+            tileEnd = pos + psot-2; // Last byte of tile
 
             // Find position of SOD marker
             marker = (short)fi.readUnsignedShort();
@@ -256,7 +303,7 @@ public class CodestreamManipulator{
 
                 // If SOP and EPH markers were only used for parsing in this
                 // class remove SOP and EPH markers from Scod field
-                if(marker == Markers.COD){
+                if(marker == Markers.COD && (tempSop || tempEph)){
                     int scod = fi.readUnsignedByte();
                     if(tempSop)
                         scod &= 0xfd; // Remove bits indicating SOP
@@ -281,7 +328,7 @@ public class CodestreamManipulator{
                                         fi.readUnsignedByte());
                     i++;
                     if(marker == Markers.SOP){
-                        markPos.addElement(new Integer(fi.getPos()));
+                        markPos.addElement(new Long(fi.getPos()));
                         ppt[t]++;
                         sop++;
 			fi.skipBytes(4);
@@ -289,15 +336,15 @@ public class CodestreamManipulator{
                     }
 
                     if(marker == Markers.EPH){
-                        markPos.addElement(new Integer(fi.getPos()));
+                        markPos.addElement(new Long(fi.getPos()));
                         eph++;
                     }
                 }
                 i++;
             }
         }
-        markPos.addElement(new Integer(fi.getPos()+2));
-        positions = new Integer[markPos.size()];
+        markPos.addElement(new Long(fi.getPos()+2));
+        positions = new Long[markPos.size()];
         markPos.copyInto(positions);
     }
 
@@ -309,12 +356,12 @@ public class CodestreamManipulator{
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    private void readAndBuffer(BufferedRandomAccessFile fi)throws IOException{
+    private void readAndBuffer(RandomAccessIO fi)throws IOException{
         int p,prem,length,t,markIndex;
 
         // Buffer main header
         fi.seek(0);
-        length = ((Integer)positions[0]).intValue()-2;
+        length = (int)positions[0].longValue()-2;
         mainHeader = new byte[length];
         fi.readFully(mainHeader,0,length);
         markIndex = 0;
@@ -327,16 +374,16 @@ public class CodestreamManipulator{
             sopMarkSeg[t] = new byte[prem][];
 
             // Read tile header
-            length = positions[ markIndex+1 ].intValue() -
-                positions[ markIndex ].intValue();
+            length = (int)(positions[ markIndex+1 ].longValue() -
+                positions[ markIndex ].longValue());
             tileHeaders[t] = new byte[length];
             fi.readFully(tileHeaders[t],0,length);
             markIndex++;
 
             for(p=0; p<prem; p++){
                 // Read packet header
-                length = positions[ markIndex+1 ].intValue() -
-                    positions[ markIndex ].intValue();
+                length = (int)(positions[ markIndex+1 ].longValue() -
+                    positions[ markIndex ].longValue());
 
                 if(tempSop){ // SOP marker is skipped
                     length -= Markers.SOP_LENGTH;
@@ -357,8 +404,8 @@ public class CodestreamManipulator{
                 markIndex++;
 
                 // Read packet data
-                length = positions[ markIndex+1 ].intValue() -
-                    positions[ markIndex ].intValue();
+                length = (int)(positions[ markIndex+1 ].longValue() -
+                    positions[ markIndex ].longValue());
 
                 length -= Markers.EPH_LENGTH;
                  if(tempEph){ // EPH marker is used and is skipped
@@ -526,13 +573,16 @@ public class CodestreamManipulator{
     /**
      * This method writes the new codestream to the file.
      *
-     * @param fi The file to write the new codestream to
+     * @param fi The stream to write the new codestream to
+     *
+     * @return The length of the new codestream
      *
      * @exception java.io.IOException If an I/O error ocurred.
      * */
-    private void writeNewCodestream(BufferedRandomAccessFile fi)
+    private int writeNewCodestream(OutputStream fi)
         throws IOException{
         int i,t,p,tp;
+        int nbytes = 0;
         int numTiles = tileParts.length;
         int[][] packetHeaderLengths = new int[numTiles][maxtp];
         byte[] temp;
@@ -540,6 +590,7 @@ public class CodestreamManipulator{
 
         // Write main header up to SOT marker
         fi.write(mainHeader,0,mainHeader.length);
+        nbytes += mainHeader.length;
 
         // If PPM used write all packet headers in PPM markers
         if(ppmUsed){
@@ -617,6 +668,7 @@ public class CodestreamManipulator{
                             temp[2] = (byte)(length >>> 8);
                             temp[3] = (byte)length;
                             fi.write(temp,0,length+2);
+                            nbytes += length+2;
 
                             // Start new PPM marker segment
                             ppmMarkerSegment.reset();
@@ -650,6 +702,7 @@ public class CodestreamManipulator{
                                 temp[2] = (byte)(length >>> 8);
                                 temp[3] = (byte)length;
                                 fi.write(temp,0,length+2);
+                                nbytes += length+2;
 
                                 // Start new PPM marker segment
                                 ppmMarkerSegment.reset();
@@ -676,6 +729,7 @@ public class CodestreamManipulator{
             temp[2] = (byte)(length >>> 8);
             temp[3] = (byte)length;
             fi.write(temp,0,length+2);
+            nbytes += length+2;
         }
 
         // Write tile parts interleaved
@@ -685,9 +739,13 @@ public class CodestreamManipulator{
                     temp = tileParts[t][tp];
                     length = temp.length;
                     fi.write(temp,0,length);
+                    nbytes += length;
                 }
             }
-        fi.writeShort(Markers.EOC);
+        fi.write(Markers.EOC>>8);
+        fi.write(Markers.EOC);
+        nbytes += 2;
+        return nbytes;
     }
 }
 
@@ -239,7 +239,7 @@ public class ISRandomAccessIO implements RandomAccessIO {
      *
      * @exception IOException If an I/O error occurred.
      * */
-    public int getPos() throws IOException {
+    public long getPos() throws IOException {
         return pos;
     }
 
@@ -257,15 +257,20 @@ public class ISRandomAccessIO implements RandomAccessIO {
      * @exception EOFException If seeking beyond EOF and the data length is
      * known.
      *
-     * @exception IOException If an I/O error ocurred.
+     * @exception IOException If an I/O error ocurred, or if the offset is
+     * beyond the maximum cache size.
      * */
-    public void seek(int off) throws IOException {
+    public void seek(long off) throws IOException {
+        if (off > Integer.MAX_VALUE) {
+            throw new IOException("Offset beyond maximum cache size ("+off+
+                                  ")");
+        }
         if (complete) { /* we know the length, check seek is within length */
             if (off > len) {
                 throw new EOFException();
             }
         }
-        pos = off;
+        pos = (int)off;
     }
 
     /**
@@ -277,7 +282,7 @@ public class ISRandomAccessIO implements RandomAccessIO {
      *
      * @exception IOException If an I/O error ocurred.
      */
-    public int length() throws IOException {
+    public long length() throws IOException {
         if (Integer.MAX_VALUE != maxsize)
             return maxsize - 1;
         while (!complete) { // read until we reach EOF
@@ -110,6 +110,11 @@ package jj2000.j2k.util;
  * <P>All the threads in the pool are "daemon" threads and will automatically
  * terminate when no daemon threads are running.
  *
+ * <P>This class is no longer used by the codec, which schedules its parallel
+ * work on an 'ExecutorService' through 'WorkScheduler' instead.
+ *
+ * @see WorkScheduler
+ *
  * @see NativeServices
  *
  * @see #CONCURRENCY_PROP_NAME
@@ -0,0 +1,252 @@
+/*
+ * $RCSfile: WorkScheduler.java,v $
+ *
+ * Class:                   WorkScheduler
+ *
+ * Description:             Executors for the parallel parts of the codec
+ */
+
+package jj2000.j2k.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class schedules the work of the parallel parts of the codec (e.g.,
+ * the entropy coder and decoder) on an 'ExecutorService'.
+ *
+ * <P>The executor can be supplied by the application, in which case it is
+ * used as is and may be shared by any number of encoders and decoders
+ * (e.g., a 'ForkJoinPool' for work-stealing). Otherwise a single default
+ * executor is shared by all of them, so that running many encoders or
+ * decoders at the same time does not multiply the number of threads. Its
+ * threads are "daemon" threads which terminate when idle for some time.
+ *
+ * <P>The number of tasks that a module runs in parallel on the executor is
+ * its parallelism. It is read from a module specific Java system property,
+ * and defaults to the number of available processors when an executor is
+ * supplied by the application.
+ * */
+public class WorkScheduler {
+
+    /** The time, in seconds, after which idle threads of the default
+     * executor terminate: 60 */
+    private static final long KEEP_ALIVE_TIME = 60L;
+
+    /** The default executor, shared by all modules. Created on first
+     * use. */
+    private static ThreadPoolExecutor defaultExecutor;
+
+    /** The number of threads created so far by the default executor */
+    private static int nThreads;
+
+    /**
+     * The body of a loop run by 'forRange()'. It is called with disjoint
+     * ranges of the loop indexes, possibly by different threads at the same
+     * time.
+     * */
+    public interface RangeTask {
+        /**
+         * Runs the loop body for the indexes 'start' (included) to 'end'
+         * (excluded).
+         *
+         * @param start The first index.
+         *
+         * @param end The index after the last one.
+         * */
+        public void run(int start, int end);
+    }
+
+    /** Not instantiable */
+    private WorkScheduler() {
+    }
+
+    /**
+     * Returns the number of tasks that a module should run in parallel. It
+     * is given by the Java system property 'propName'. If the property is not
+     * set, or is "0", and 'executor' is not null then the number of available
+     * processors is returned.
+     *
+     * @param propName The name of the Java system property giving the
+     * parallelism.
+     *
+     * @param executor The executor supplied by the application, or null if
+     * none.
+     *
+     * @return The parallelism, 0 if the module should not run in parallel.
+     *
+     * @exception IllegalArgumentException If the property value is not a
+     * non-negative integer.
+     * */
+    public static int getParallelism(String propName,
+                                     ExecutorService executor) {
+        int nt;     // The number of tasks
+        String val; // The property value
+
+        try {
+            val = System.getProperty(propName);
+        } catch (SecurityException se) {
+            // Use the default value.
+            val = null;
+        }
+        try {
+            nt = (val == null) ? 0 : Integer.parseInt(val);
+            if (nt < 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of threads "+
+                                               "in property "+propName);
+        }
+        if (nt == 0 && executor != null) {
+            nt = Runtime.getRuntime().availableProcessors();
+        }
+        return nt;
+    }
+
+    /**
+     * Returns the executor to run 'nt' parallel tasks on: 'executor' if not
+     * null, the shared default executor otherwise. The default executor is
+     * grown, if necessary, so that it can run at least 'nt' tasks at the
+     * same time.
+     *
+     * @param executor The executor supplied by the application, or null if
+     * none.
+     *
+     * @param nt The number of tasks that will run in parallel.
+     *
+     * @return The executor to use.
+     * */
+    public static ExecutorService getExecutor(ExecutorService executor,
+                                              int nt) {
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (WorkScheduler.class) {
+            if (defaultExecutor == null) {
+                defaultExecutor =
+                    new ThreadPoolExecutor(nt,nt,KEEP_ALIVE_TIME,
+                                           TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<Runnable>(),
+                                           new ThreadFactory() {
+                            public Thread newThread(Runnable r) {
+                                Thread t;
+                                synchronized (WorkScheduler.class) {
+                                    t = new Thread(r,"JJ2000-worker-"+
+                                                   (nThreads++));
+                                }
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+                defaultExecutor.allowCoreThreadTimeOut(true);
+            }
+            else if (defaultExecutor.getMaximumPoolSize() < nt) {
+                defaultExecutor.setMaximumPoolSize(nt);
+                defaultExecutor.setCorePoolSize(nt);
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * Runs 'task' over the indexes 0 to 'n'-1, split in ranges of at least
+     * 'minLen' indexes which are run in parallel by up to 'nt' tasks on
+     * 'executor'. The calling thread runs ranges too, and runs all the ranges
+     * not yet started by the executor, so that it never waits for queued
+     * tasks. It returns once all the ranges have been run. If the executor
+     * is null, or if there is only one range, the loop is run by the calling
+     * thread alone. If the calling thread is interrupted while waiting for
+     * the ranges run by the executor, it still waits for them and returns
+     * with its interrupt status set.
+     *
+     * @param executor The executor on which to run the ranges in parallel,
+     * or null.
+     *
+     * @param nt The maximum number of tasks running ranges at the same time,
+     * including the calling thread.
+     *
+     * @param n The number of indexes.
+     *
+     * @param minLen The minimum number of indexes in a range.
+     *
+     * @param task The loop body.
+     *
+     * @exception Error If thrown by the loop body.
+     *
+     * @exception RuntimeException If thrown by the loop body.
+     * */
+    public static void forRange(ExecutorService executor, int nt, final int n,
+                                int minLen, final RangeTask task) {
+        final int nRanges;  // The number of ranges
+        final int len;      // The number of indexes in each range
+        final int state[];  // Next range to run and number of ranges run
+        final Throwable err[] = new Throwable[1]; // The first error thrown
+        Runnable runner;    // Runs ranges until none is left
+        boolean interrupted = false; // If interrupted while waiting
+        int i;
+
+        nRanges = (executor == null || nt <= 1) ? 1 :
+            Math.max(1,Math.min(nt*2,n/Math.max(minLen,1)));
+        if (nRanges <= 1) {
+            if (n > 0) task.run(0,n);
+            return;
+        }
+        len = (n+nRanges-1)/nRanges;
+        state = new int[2];
+
+        runner = new Runnable() {
+                public void run() {
+                    int r;
+                    while (true) {
+                        synchronized (state) {
+                            if (state[0] >= nRanges) return;
+                            r = state[0]++;
+                        }
+                        try {
+                            task.run(r*len,Math.min(n,(r+1)*len));
+                        } catch (Throwable e) {
+                            synchronized (state) {
+                                if (err[0] == null) err[0] = e;
+                            }
+                        } finally {
+                            synchronized (state) {
+                                state[1]++;
+                                if (state[1] == nRanges) state.notifyAll();
+                            }
+                        }
+                    }
+                }
+            };
+
+        for (i=Math.min(nt,nRanges)-1; i>0; i--) {
+            try {
+                executor.execute(runner);
+            } catch (RejectedExecutionException e) {
+                // The calling thread runs the ranges
+                break;
+            }
+        }
+        runner.run();
+
+        // All the ranges are started, and write to the caller's data, so
+        // wait for them even if interrupted and restore the interrupt after
+        synchronized (state) {
+            while (state[1] < nRanges) {
+                try {
+                    state.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (err[0] instanceof Error) throw (Error) err[0];
+        if (err[0] instanceof RuntimeException) {
+            throw (RuntimeException) err[0];
+        }
+        if (err[0] != null) throw new RuntimeException(err[0]);
+    }
+}
@@ -292,6 +292,119 @@ public abstract class AnWTFilter implements WaveletFilter{
                      Object lowSig, int lowOff, int lowStep,
                      Object highSig, int highOff, int highStep);
 
+    /**
+     * Filters several interleaved input signals by this analysis filter,
+     * with the low pass first filtering convention. The signals are the
+     * ones that analyze_lpf() would filter with the offsets inOff+k, lowOff+k
+     * and highOff+k, for k from 0 to nSig-1, typically adjacent columns of a
+     * 2-D signal stored in line by line order. The output is the same as
+     * when calling analyze_lpf() on each signal in turn.
+     *
+     * <P>This implementation just calls analyze_lpf() on each
+     * signal. Subclasses should override it to apply each lifting step to
+     * all the signals at once, which gives loops over contiguous samples
+     * that are much faster for column filtering.
+     *
+     * @param inSig This is the array that contains the input
+     * signals.
+     *
+     * @param inOff This is the index in inSig of the first sample of the
+     * first signal to filter.
+     *
+     * @param inLen This is the number of samples in each input signal
+     * to filter.
+     *
+     * @param inStep This is the step, or interleave factor, of the
+     * input signal samples in the inSig array.
+     *
+     * @param lowSig This is the array where the low-pass output
+     * signals are placed.
+     *
+     * @param lowOff This is the index in lowSig of the element where
+     * to put the first low-pass output sample of the first signal.
+     *
+     * @param lowStep This is the step, or interleave factor, of the
+     * low-pass output samples in the lowSig array.
+     *
+     * @param highSig This is the array where the high-pass output
+     * signals are placed.
+     *
+     * @param highOff This is the index in highSig of the element where
+     * to put the first high-pass output sample of the first signal.
+     *
+     * @param highStep This is the step, or interleave factor, of the
+     * high-pass output samples in the highSig array.
+     *
+     * @param nSig The number of signals to filter.
+     *
+     * @see #analyze_lpf
+     * */
+    public
+        void analyze_lpf_cols(Object inSig, int inOff, int inLen, int inStep,
+                              Object lowSig, int lowOff, int lowStep,
+                              Object highSig, int highOff, int highStep,
+                              int nSig) {
+        for (int k=0; k<nSig; k++) {
+            analyze_lpf(inSig,inOff+k,inLen,inStep,lowSig,lowOff+k,lowStep,
+                        highSig,highOff+k,highStep);
+        }
+    }
+
+    /**
+     * Filters several interleaved input signals by this analysis filter,
+     * with the high pass first filtering convention. The signals are the
+     * ones that analyze_hpf() would filter with the offsets inOff+k, lowOff+k
+     * and highOff+k, for k from 0 to nSig-1. The output is the same as when
+     * calling analyze_hpf() on each signal in turn.
+     *
+     * <P>This implementation just calls analyze_hpf() on each
+     * signal. Subclasses should override it as analyze_lpf_cols().
+     *
+     * @param inSig This is the array that contains the input
+     * signals.
+     *
+     * @param inOff This is the index in inSig of the first sample of the
+     * first signal to filter.
+     *
+     * @param inLen This is the number of samples in each input signal
+     * to filter.
+     *
+     * @param inStep This is the step, or interleave factor, of the
+     * input signal samples in the inSig array.
+     *
+     * @param lowSig This is the array where the low-pass output
+     * signals are placed.
+     *
+     * @param lowOff This is the index in lowSig of the element where
+     * to put the first low-pass output sample of the first signal.
+     *
+     * @param lowStep This is the step, or interleave factor, of the
+     * low-pass output samples in the lowSig array.
+     *
+     * @param highSig This is the array where the high-pass output
+     * signals are placed.
+     *
+     * @param highOff This is the index in highSig of the element where
+     * to put the first high-pass output sample of the first signal.
+     *
+     * @param highStep This is the step, or interleave factor, of the
+     * high-pass output samples in the highSig array.
+     *
+     * @param nSig The number of signals to filter.
+     *
+     * @see #analyze_hpf
+     * */
+    public
+        void analyze_hpf_cols(Object inSig, int inOff, int inLen, int inStep,
+                              Object lowSig, int lowOff, int lowStep,
+                              Object highSig, int highOff, int highStep,
+                              int nSig) {
+        for (int k=0; k<nSig; k++) {
+            analyze_hpf(inSig,inOff+k,inLen,inStep,lowSig,lowOff+k,lowStep,
+                        highSig,highOff+k,highStep);
+        }
+    }
+
     /**
      * Returns the time-reversed low-pass synthesis waveform of the
      * filter, which is the low-pass filter. This is the time-reversed
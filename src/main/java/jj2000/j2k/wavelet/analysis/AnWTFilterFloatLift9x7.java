@@ -460,6 +460,260 @@ public class AnWTFilterFloatLift9x7 extends AnWTFilterFloat {
         }
     }
 
+    /**
+     * An implementation of the analyze_lpf_cols() method that works on float
+     * data, for the forward 9x7 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of analyze_lpf(), each one
+     * being applied to all the signals before the next one, so that the
+     * innermost loops run over contiguous samples. The results are the same
+     * as the ones of analyze_lpf(). See the general description of the
+     * analyze_lpf_cols() method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_lpf_cols
+     * */
+    public
+        void analyze_lpf_cols(float inSig[], int inOff, int inLen, int inStep,
+                              float lowSig[], int lowOff, int lowStep,
+                              float highSig[], int highOff, int highStep,
+                              int nSig) {
+        int i,k,maxi;
+        int iStep = 2 * inStep; //Subsampling in inSig
+        int ik;    //Indexing inSig
+        int lk;    //Indexing lowSig
+        int hk;    //Indexing highSig
+
+        // Generate intermediate high frequency subband
+        ik = inOff + inStep;
+        hk = highOff;
+        for( i = 1, maxi = inLen-1; i < maxi; i += 2 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] +
+                    ALPHA*(inSig[ik-inStep+k] + inSig[ik+inStep+k]);
+            }
+            ik += iStep;
+            hk += highStep;
+        }
+        if(inLen % 2 == 0) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] + 2*ALPHA*inSig[ik-inStep+k];
+            }
+        }
+
+        // Generate intermediate low frequency subband
+        ik = inOff;
+        lk = lowOff;
+        hk = highOff;
+        if(inLen>1) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] + 2*BETA*highSig[hk+k];
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k];
+            }
+        }
+        ik += iStep;
+        lk += lowStep;
+        hk += highStep;
+        for( i = 2, maxi = inLen-1; i < maxi; i += 2 ) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] +
+                    BETA*(highSig[hk-highStep+k] + highSig[hk+k]);
+            }
+            ik += iStep;
+            lk += lowStep;
+            hk += highStep;
+        }
+        if((inLen % 2 == 1)&&(inLen>2)) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] + 2*BETA*highSig[hk-highStep+k];
+            }
+        }
+
+        // Generate high frequency subband
+        lk = lowOff;
+        hk = highOff;
+        for(i = 1, maxi = inLen-1; i < maxi; i += 2)  {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] += GAMMA*(lowSig[lk+k] + lowSig[lk+lowStep+k]);
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if(inLen % 2 == 0) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] += 2*GAMMA*lowSig[lk+k];
+            }
+        }
+
+        // Generate low frequency subband
+        lk = lowOff;
+        hk = highOff;
+        if(inLen>1){
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] += 2*DELTA*highSig[hk+k];
+            }
+        }
+        lk += lowStep;
+        hk += highStep;
+        for(i = 2, maxi = inLen-1; i < maxi; i += 2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] +=
+                    DELTA*(highSig[hk-highStep+k] + highSig[hk+k]);
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if((inLen % 2 == 1)&&(inLen>2)) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] += 2*DELTA*highSig[hk-highStep+k];
+            }
+        }
+
+        // Normalize low and high frequency subbands
+        lk = lowOff;
+        hk = highOff;
+        for( i=0 ; i<(inLen>>1); i++ ) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] *= KL;
+                highSig[hk+k] *= KH;
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if( inLen%2==1 && inLen != 1) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] *= KL;
+            }
+        }
+    }
+
+    /**
+     * An implementation of the analyze_hpf_cols() method that works on float
+     * data, for the forward 9x7 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of analyze_hpf(), applied as in
+     * analyze_lpf_cols(). The results are the same as the ones of
+     * analyze_hpf(). See the general description of the analyze_hpf_cols()
+     * method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_hpf_cols
+     * */
+    public
+        void analyze_hpf_cols(float inSig[], int inOff, int inLen, int inStep,
+                              float lowSig[], int lowOff, int lowStep,
+                              float highSig[], int highOff, int highStep,
+                              int nSig) {
+        int i,k;
+        int iStep = 2 * inStep; //Subsampling in inSig
+        int ik;    //Indexing inSig
+        int lk;    //Indexing lowSig
+        int hk;    //Indexing highSig
+
+        // Generate intermediate high frequency subband
+        ik = inOff;
+        hk = highOff;
+        if ( inLen>1 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] + 2*ALPHA*inSig[ik+inStep+k];
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k]*2;
+            }
+        }
+        ik += iStep;
+        hk += highStep;
+        for( i = 2 ; i < inLen-1 ; i += 2 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] +
+                    ALPHA*(inSig[ik-inStep+k] + inSig[ik+inStep+k]);
+            }
+            ik += iStep;
+            hk += highStep;
+        }
+        if( (inLen%2==1) && (inLen>1) ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] + 2*ALPHA*inSig[ik-inStep+k];
+            }
+        }
+
+        // Generate intermediate low frequency subband
+        ik = inOff + inStep;
+        lk = lowOff;
+        hk = highOff;
+        for(i = 1; i < inLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] +
+                    BETA*(highSig[hk+k] + highSig[hk+highStep+k]);
+            }
+            ik += iStep;
+            lk += lowStep;
+            hk += highStep;
+        }
+        if ( inLen>1 && inLen%2==0 ) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k]+2*BETA*highSig[hk+k];
+            }
+        }
+
+        // Generate high frequency subband
+        lk = lowOff;
+        hk = highOff;
+        if ( inLen>1 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] += GAMMA*2*lowSig[lk+k];
+            }
+        }
+        hk += highStep;
+        for(i = 2 ; i < inLen-1 ; i += 2)  {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] += GAMMA*(lowSig[lk+k] + lowSig[lk+lowStep+k]);
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if ( inLen>1 && inLen%2==1 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] += GAMMA*2*lowSig[lk+k];
+            }
+        }
+
+        // Generate low frequency subband
+        lk = lowOff;
+        hk = highOff;
+        for(i = 1 ; i < inLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] += DELTA*(highSig[hk+k] + highSig[hk+highStep+k]);
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if ( inLen>1 && inLen%2==0 ) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] += DELTA*2*highSig[hk+k];
+            }
+        }
+
+        // Normalize low and high frequency subbands
+        lk = lowOff;
+        hk = highOff;
+        for( i=0 ; i<(inLen>>1); i++ ) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] *= KL;
+                highSig[hk+k] *= KH;
+            }
+            lk += lowStep;
+            hk += highStep;
+        }
+        if( inLen%2==1 && inLen != 1) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] *= KH;
+            }
+        }
+    }
+
     /**
      * Returns the negative support of the low-pass analysis
      * filter. That is the number of taps of the filter in the
@@ -259,6 +259,78 @@ public abstract class AnWTFilterInt extends AnWTFilter {
                 (int[])lowSig, lowOff, lowStep,
                 (int[])highSig, highOff, highStep);
     }
+    /**
+     * A specific version of the analyze_lpf_cols() method that works on
+     * int data. This implementation calls analyze_lpf() on each
+     * signal. See the general description of the analyze_lpf_cols()
+     * method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_lpf_cols
+     * */
+    public
+        void analyze_lpf_cols(int inSig[], int inOff, int inLen, int inStep,
+                              int lowSig[], int lowOff, int lowStep,
+                              int highSig[], int highOff, int highStep,
+                              int nSig) {
+        for (int k=0; k<nSig; k++) {
+            analyze_lpf(inSig,inOff+k,inLen,inStep,lowSig,lowOff+k,lowStep,
+                        highSig,highOff+k,highStep);
+        }
+    }
+
+    /**
+     * The general version of the analyze_lpf_cols() method, it just calls
+     * the specialized version. See the description of the
+     * analyze_lpf_cols() method of the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_lpf_cols
+     * */
+    public
+        void analyze_lpf_cols(Object inSig, int inOff, int inLen, int inStep,
+                              Object lowSig, int lowOff, int lowStep,
+                              Object highSig, int highOff, int highStep,
+                              int nSig) {
+        analyze_lpf_cols((int[])inSig,inOff,inLen,inStep,
+                         (int[])lowSig,lowOff,lowStep,
+                         (int[])highSig,highOff,highStep,nSig);
+    }
+
+    /**
+     * A specific version of the analyze_hpf_cols() method that works on
+     * int data. This implementation calls analyze_hpf() on each
+     * signal. See the general description of the analyze_hpf_cols()
+     * method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_hpf_cols
+     * */
+    public
+        void analyze_hpf_cols(int inSig[], int inOff, int inLen, int inStep,
+                              int lowSig[], int lowOff, int lowStep,
+                              int highSig[], int highOff, int highStep,
+                              int nSig) {
+        for (int k=0; k<nSig; k++) {
+            analyze_hpf(inSig,inOff+k,inLen,inStep,lowSig,lowOff+k,lowStep,
+                        highSig,highOff+k,highStep);
+        }
+    }
+
+    /**
+     * The general version of the analyze_hpf_cols() method, it just calls
+     * the specialized version. See the description of the
+     * analyze_hpf_cols() method of the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_hpf_cols
+     * */
+    public
+        void analyze_hpf_cols(Object inSig, int inOff, int inLen, int inStep,
+                              Object lowSig, int lowOff, int lowStep,
+                              Object highSig, int highOff, int highStep,
+                              int nSig) {
+        analyze_hpf_cols((int[])inSig,inOff,inLen,inStep,
+                         (int[])lowSig,lowOff,lowStep,
+                         (int[])highSig,highOff,highStep,nSig);
+    }
+
     /**
      * Returns the type of data on which this filter works, as defined
      * in the DataBlk interface, which is always TYPE_INT for this
@@ -290,6 +290,150 @@ public class AnWTFilterIntLift5x3 extends AnWTFilterInt {
             lowSig[lk] = inSig[ik]+((2*highSig[hk]+2)>>2);
         }
     }
+
+    /**
+     * An implementation of the analyze_lpf_cols() method that works on int
+     * data, for the forward 5x3 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of analyze_lpf(), each one
+     * being applied to all the signals before the next one, so that the
+     * innermost loops run over contiguous samples. The results are the same
+     * as the ones of analyze_lpf(). See the general description of the
+     * analyze_lpf_cols() method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_lpf_cols
+     * */
+    public
+        void analyze_lpf_cols(int inSig[], int inOff, int inLen, int inStep,
+                              int lowSig[], int lowOff, int lowStep,
+                              int highSig[], int highOff, int highStep,
+                              int nSig) {
+        int i,k;
+        int iStep = 2 * inStep; //Subsampling in inSig
+        int ik; //Indexing inSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // Generate high frequency subband
+        ik = inOff + inStep;
+        hk = highOff;
+        for(i = 1; i < inLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] -
+                    ((inSig[ik-inStep+k] + inSig[ik+inStep+k])>>1);
+            }
+            ik += iStep;
+            hk += highStep;
+        }
+        if( inLen % 2 == 0 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] - ((2*inSig[ik-inStep+k])>>1);
+            }
+        }
+
+        // Generate low frequency subband
+        ik = inOff;
+        lk = lowOff;
+        hk = highOff;
+        if(inLen>1) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] + ((highSig[hk+k] + 1)>>1);
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k];
+            }
+        }
+        ik += iStep;
+        lk += lowStep;
+        hk += highStep;
+        for(i = 2; i < inLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] +
+                    ((highSig[hk-highStep+k] + highSig[hk+k] + 2)>> 2);
+            }
+            ik += iStep;
+            lk += lowStep;
+            hk += highStep;
+        }
+        if(inLen % 2 == 1 && inLen>2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] +
+                    ((2*highSig[hk-highStep+k]+2)>>2);
+            }
+        }
+    }
+
+    /**
+     * An implementation of the analyze_hpf_cols() method that works on int
+     * data, for the forward 5x3 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of analyze_hpf(), applied as in
+     * analyze_lpf_cols(). The results are the same as the ones of
+     * analyze_hpf(). See the general description of the analyze_hpf_cols()
+     * method in the AnWTFilter class for more details.
+     *
+     * @see AnWTFilter#analyze_hpf_cols
+     * */
+    public
+        void analyze_hpf_cols(int inSig[], int inOff, int inLen, int inStep,
+                              int lowSig[], int lowOff, int lowStep,
+                              int highSig[], int highOff, int highStep,
+                              int nSig) {
+        int i,k;
+        int iStep = 2 * inStep; //Subsampling in inSig
+        int ik; //Indexing inSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // Generate high frequency subband
+        ik = inOff;
+        hk = highOff;
+        if ( inLen>1 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] - inSig[ik+inStep+k];
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k]<<1;
+            }
+        }
+        ik += iStep;
+        hk += highStep;
+        for(i = 2; i < inLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] -
+                    ((inSig[ik-inStep+k] + inSig[ik+inStep+k])>>1);
+            }
+            ik += iStep;
+            hk += highStep;
+        }
+        if( inLen%2==1 && inLen>1 ) {
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] = inSig[ik+k] - inSig[ik-inStep+k];
+            }
+        }
+
+        // Generate low frequency subband
+        ik = inOff + inStep;
+        lk = lowOff;
+        hk = highOff;
+        for (i=1 ; i<inLen-1 ; i+=2) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k] +
+                    ((highSig[hk+k] + highSig[hk+highStep+k] + 2)>> 2);
+            }
+            ik += iStep;
+            lk += lowStep;
+            hk += highStep;
+        }
+        if ( inLen>1 && inLen%2==0) {
+            for (k=0; k<nSig; k++) {
+                lowSig[lk+k] = inSig[ik+k]+((2*highSig[hk+k]+2)>>2);
+            }
+        }
+    }
+
     /**
      * Returns the negative support of the low-pass analysis
      * filter. That is the number of taps of the filter in the
@@ -45,6 +45,7 @@
  * */
 package jj2000.j2k.wavelet.analysis;
 import java.awt.Point;
+import java.util.concurrent.ExecutorService;
 
 import jj2000.j2k.IntegerSpec;
 import jj2000.j2k.ModuleSpec;
@@ -57,6 +58,7 @@ import jj2000.j2k.image.DataBlk;
 import jj2000.j2k.image.DataBlkFloat;
 import jj2000.j2k.image.DataBlkInt;
 import jj2000.j2k.util.MathUtil;
+import jj2000.j2k.util.WorkScheduler;
 import jj2000.j2k.wavelet.Subband;
 import jj2000.j2k.wavelet.WaveletTransform;
 
@@ -64,9 +66,36 @@ import com.github.jaiimageio.jpeg2000.impl.J2KImageWriteParamJava;
 /**
  * This class implements the ForwardWT with the full-page approach to be used
  * either with integer or floating-point filters
+ *
+ * <P>The lines and columns of each subband can be filtered in parallel. The
+ * number of threads used is specified by the
+ * "jj2000.j2k.wavelet.analysis.ForwWTFull.nthreads" Java system property, or
+ * is the number of available processors if an executor is given in the
+ * parameters (see WorkScheduler). By default the filtering is done by the
+ * calling thread only. The result does not depend on the number of threads.
  * */
 public class ForwWTFull extends ForwardWT {
 
+    /** The Java system property name for the number of threads to use:
+     jj2000.j2k.wavelet.analysis.ForwWTFull.nthreads */
+    public static final String THREADS_PROP_NAME =
+        "jj2000.j2k.wavelet.analysis.ForwWTFull.nthreads";
+
+    /** The minimum number of lines or columns filtered by a thread at a
+     * time */
+    private static final int MIN_RANGE_LEN = 16;
+
+    /** The number of adjacent columns filtered together by the vertical
+     * decomposition */
+    private static final int COL_BATCH = 64;
+
+    /** The executor on which lines and columns are filtered in parallel. It
+     * is null if the filtering is done by the calling thread only */
+    private ExecutorService executor;
+
+    /** The number of threads filtering lines and columns in parallel */
+    private int nThreads;
+
     /** Boolean to know if one are currently dealing with int or float
         data. */
     private boolean intData;
@@ -165,6 +194,13 @@ public class ForwWTFull extends ForwardWT {
 	subbTrees = new SubbandAn[ntiles][ncomp];
         lastn = new int[ncomp];
         lastm = new int[ncomp];
+
+        nThreads = WorkScheduler.getParallelism(THREADS_PROP_NAME,
+                                                wp.getExecutorService());
+        if (nThreads > 1) {
+            executor = WorkScheduler.getExecutor(wp.getExecutorService(),
+                                                 nThreads);
+        }
     }
 
     /**
@@ -750,6 +786,11 @@ public class ForwWTFull extends ForwardWT {
      * lines and then all columns of the subband. In this class only filters
      * with floating point implementations can be used.
      *
+     * <P>In the multithreaded implementation the columns, and then the
+     * lines, are split among the threads. Each column or line is filtered
+     * exactly as in the single threaded implementation, so the result is the
+     * same.
+     *
      * @param band The band containing the float data to decompose
      *
      * @param subband The structure containing the coordinates of the subband
@@ -757,60 +798,126 @@ public class ForwWTFull extends ForwardWT {
      *
      * @param c The index of the current component to decompose
      * */
-    private void wavelet2DDecomposition(DataBlk band,
-        SubbandAn subband, int c) {
+    private void wavelet2DDecomposition(final DataBlk band,
+        final SubbandAn subband, int c) {
 
-        int ulx, uly, w, h;
-        int band_w, band_h;
+        final int band_w;
 
         // If subband is empty (i.e. zero size) nothing to do
         if (subband.w == 0 || subband.h == 0) {
             return;
         }
 
-        ulx = subband.ulx;
-        uly = subband.uly;
-        w = subband.w;
-        h = subband.h;
         band_w = getTileCompWidth(tIdx, c);
-        band_h = getTileCompHeight(tIdx, c);
 
-        if ( intData ) {
-            //Perform the decompositions if the filter is implemented with an
-            //integer arithmetic.
-            int i, j;
-            int offset;
-            int[] tmpVector = new int[java.lang.Math.max(w,h)];
-
-            int[] data = ((DataBlkInt)band).getDataInt();
+        //Perform the vertical decomposition
+        WorkScheduler.forRange(executor,nThreads,subband.w,MIN_RANGE_LEN,
+                               new WorkScheduler.RangeTask() {
+                public void run(int start, int end) {
+                    verticalDecomposition(band,subband,band_w,start,end);
+                }
+            });
 
-            //Perform the vertical decomposition
-            if (subband.ulcy%2==0) { // Even start index => use LPF
-                for(j=0; j<w; j++) {
-                    offset = uly*band_w + ulx+j;
-                    for(i=0; i<h; i++)
-                        tmpVector[i] = data[offset+(i*band_w)];
-                    subband.vFilter.analyze_lpf(tmpVector, 0, h, 1,
-                                             data, offset, band_w,
-                                             data, offset+((h+1)/2)*band_w,
-                                             band_w);
+        //Perform the horizontal decomposition.
+        WorkScheduler.forRange(executor,nThreads,subband.h,MIN_RANGE_LEN,
+                               new WorkScheduler.RangeTask() {
+                public void run(int start, int end) {
+                    horizontalDecomposition(band,subband,band_w,start,end);
                 }
+            });
+    }
+
+    /**
+     * Performs the vertical 1D forward wavelet transform on some columns of
+     * a subband of the initial band.
+     *
+     * <P>The columns are filtered by batches of COL_BATCH adjacent columns,
+     * which are copied line by line to a buffer and decomposed together, so
+     * that the whole cache lines of the band are used.
+     *
+     * @param band The band containing the data to decompose
+     *
+     * @param subband The structure containing the coordinates of the subband
+     * in the whole band to decompose.
+     *
+     * @param band_w The width of the band.
+     *
+     * @param start The index of the first column to filter, in the subband.
+     *
+     * @param end The index after the last column to filter, in the subband.
+     * */
+    private void verticalDecomposition(DataBlk band, SubbandAn subband,
+                                       int band_w, int start, int end) {
+        int i, j, nb;
+        int offset;
+        int ulx = subband.ulx;
+        int uly = subband.uly;
+        int h = subband.h;
+        boolean lpf = subband.ulcy%2==0;
+        int hOff = (lpf ? (h+1)/2 : h/2)*band_w;
+        Object data, tmpBuf;
+
+        if ( intData ) {
+            data = ((DataBlkInt)band).getDataInt();
+            tmpBuf = new int[h*Math.min(COL_BATCH,end-start)];
+        }
+        else {
+            data = ((DataBlkFloat)band).getDataFloat();
+            tmpBuf = new float[h*Math.min(COL_BATCH,end-start)];
+        }
+
+        for(j=start; j<end; j+=nb) {
+            nb = Math.min(COL_BATCH,end-j);
+            offset = uly*band_w + ulx+j;
+            for(i=0; i<h; i++) {
+                System.arraycopy(data,offset+i*band_w,tmpBuf,i*nb,nb);
+            }
+            if (lpf) { // Even start index => use LPF
+                subband.vFilter.analyze_lpf_cols(tmpBuf, 0, h, nb,
+                                                 data, offset, band_w,
+                                                 data, offset+hOff, band_w,
+                                                 nb);
             }
             else { // Odd start index => use HPF
-                for(j=0; j<w; j++) {
-                    offset = uly*band_w + ulx+j;
-                    for(i=0; i<h; i++)
-                        tmpVector[i] = data[offset+(i*band_w)];
-                    subband.vFilter.analyze_hpf(tmpVector, 0, h, 1,
-                                             data, offset, band_w,
-                                             data, offset+(h/2)*band_w,
-                                             band_w);
-                }
+                subband.vFilter.analyze_hpf_cols(tmpBuf, 0, h, nb,
+                                                 data, offset, band_w,
+                                                 data, offset+hOff, band_w,
+                                                 nb);
             }
+        }
+    }
+
+    /**
+     * Performs the horizontal 1D forward wavelet transform on some lines of
+     * a subband of the initial band.
+     *
+     * @param band The band containing the data to decompose
+     *
+     * @param subband The structure containing the coordinates of the subband
+     * in the whole band to decompose.
+     *
+     * @param band_w The width of the band.
+     *
+     * @param start The index of the first line to filter, in the subband.
+     *
+     * @param end The index after the last line to filter, in the subband.
+     * */
+    private void horizontalDecomposition(DataBlk band, SubbandAn subband,
+                                         int band_w, int start, int end) {
+        int i, j;
+        int offset;
+        int ulx = subband.ulx;
+        int uly = subband.uly;
+        int w = subband.w;
+
+        if ( intData ) {
+            //Perform the decompositions if the filter is implemented with an
+            //integer arithmetic.
+            int[] tmpVector = new int[w];
+            int[] data = ((DataBlkInt)band).getDataInt();
 
-            //Perform the horizontal decomposition.
             if (subband.ulcx%2==0) { // Even start index => use LPF
-                for(i=0; i<h; i++) {
+                for(i=start; i<end; i++) {
                     offset = (uly+i)*band_w + ulx;
                     for(j=0; j<w; j++)
                         tmpVector[j] = data[offset+j];
@@ -820,7 +927,7 @@ public class ForwWTFull extends ForwardWT {
                 }
             }
             else { // Odd start index => use HPF
-                for(i=0; i<h; i++) {
+                for(i=start; i<end; i++) {
                     offset = (uly+i)*band_w + ulx;
                     for(j=0; j<w; j++)
                         tmpVector[j] = data[offset+j];
@@ -833,37 +940,11 @@ public class ForwWTFull extends ForwardWT {
         else {
             //Perform the decompositions if the filter is implemented with a
             //float arithmetic.
-            int i, j;
-            int offset;
-            float[] tmpVector = new float[java.lang.Math.max(w,h)];
+            float[] tmpVector = new float[w];
             float[]data = ((DataBlkFloat)band).getDataFloat();
 
-            //Perform the vertical decomposition.
-            if (subband.ulcy%2==0) { // Even start index => use LPF
-                for(j=0; j<w; j++) {
-                    offset = uly*band_w + ulx+j;
-                    for(i=0; i<h; i++)
-                        tmpVector[i] = data[offset+(i*band_w)];
-                    subband.vFilter.analyze_lpf(tmpVector, 0, h, 1,
-                                             data, offset, band_w,
-                                             data, offset+((h+1)/2)*band_w,
-                                             band_w);
-                }
-            }
-            else { // Odd start index => use HPF
-                for(j=0; j<w; j++) {
-                    offset = uly*band_w + ulx+j;
-                    for(i=0; i<h; i++)
-                        tmpVector[i] = data[offset+(i*band_w)];
-                    subband.vFilter.analyze_hpf(tmpVector, 0, h, 1,
-                                             data, offset, band_w,
-                                             data, offset+(h/2)*band_w,
-                                             band_w);
-                }
-            }
-            //Perform the horizontal decomposition.
             if (subband.ulcx%2==0) { // Even start index => use LPF
-                for(i=0; i<h; i++) {
+                for(i=start; i<end; i++) {
                     offset = (uly+i)*band_w + ulx;
                     for(j=0; j<w; j++)
                         tmpVector[j] = data[offset+j];
@@ -873,7 +954,7 @@ public class ForwWTFull extends ForwardWT {
                 }
             }
             else { // Odd start index => use HPF
-                for(i=0; i<h; i++) {
+                for(i=start; i<end; i++) {
                     offset = (uly+i)*band_w + ulx;
                     for(j=0; j<w; j++)
                         tmpVector[j] = data[offset+j];
@@ -0,0 +1,667 @@
+/*
+ * $RCSfile: ForwWTLine.java,v $
+ *
+ * Class:                   ForwWTLine
+ *
+ * Description:             This class implements a line-based forward DWT
+ *                          for int and float data.
+ */
+
+package jj2000.j2k.wavelet.analysis;
+
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+
+import jj2000.j2k.image.BlkImgDataSrc;
+import jj2000.j2k.image.DataBlk;
+import jj2000.j2k.image.DataBlkFloat;
+import jj2000.j2k.image.DataBlkInt;
+import jj2000.j2k.util.WorkScheduler;
+import jj2000.j2k.wavelet.Subband;
+import jj2000.j2k.wavelet.WaveletTransform;
+
+import com.github.jaiimageio.jpeg2000.impl.J2KImageWriteParamJava;
+
+/**
+ * This class implements the ForwardWT with the line-based approach for int
+ * and float data.
+ *
+ * <P>Instead of buffering a whole tile-component before decomposing it, as
+ * ForwWTFull does, the lines of the tile-component are requested from the
+ * source one stripe at a time. Each decomposition level keeps the lines it
+ * received that are still needed, and decomposes the ones for which the
+ * lines covering the support of the vertical analysis filter are
+ * available. The lines of the resulting LL subband are passed to the next
+ * decomposition level, and the lines of the other subbands are gathered
+ * into rows of code-blocks, which are returned as soon as they are
+ * complete. Hence the memory used grows with the width of the
+ * tile-component but not with its height. The code-blocks are the same as
+ * the ones of ForwWTFull, but they are returned in a different order.
+ *
+ * <P>The lines and columns of each stripe can be filtered in parallel. The
+ * number of threads used is specified by the
+ * "jj2000.j2k.wavelet.analysis.ForwWTLine.nthreads" Java system property, or
+ * is the number of available processors if an executor is given in the
+ * parameters (see WorkScheduler). By default the filtering is done by the
+ * calling thread only.
+ *
+ * @see ForwWTFull
+ * */
+public class ForwWTLine extends ForwWTFull {
+
+    /** The Java system property name for the number of threads to use:
+     jj2000.j2k.wavelet.analysis.ForwWTLine.nthreads */
+    public static final String THREADS_PROP_NAME =
+        "jj2000.j2k.wavelet.analysis.ForwWTLine.nthreads";
+
+    /** The minimum number of lines decomposed at a time by a decomposition
+     * level, if the tile-component is higher */
+    public static final int STRIPE_HEIGHT = 64;
+
+    /** The minimum number of lines or columns filtered by a thread at a
+     * time */
+    private static final int MIN_RANGE_LEN = 16;
+
+    /** The executor on which lines and columns are filtered in parallel. It
+     * is null if the filtering is done by the calling thread only */
+    private ExecutorService executor;
+
+    /** The number of threads filtering lines and columns in parallel */
+    private int nThreads;
+
+    /** The source of image data */
+    private BlkImgDataSrc src;
+
+    /** Whether the current tile-component is dealt with as int or float
+     * data */
+    private boolean intData;
+
+    /** The receiver of the lines of each component in the current tile, or
+     * null if no code-block was requested yet */
+    private LineSink sinks[];
+
+    /** The number of lines of each component in the current tile that were
+     * given to its receiver */
+    private int nLines[];
+
+    /** The complete rows of code-blocks of each component in the current
+     * tile which are not all returned yet, by component */
+    private Vector<Vector<CBlkRow>> rows;
+
+    /** The block used to get the lines from the source */
+    private DataBlk bufblk;
+
+    /**
+     * Initializes this object with the given source of image data and with
+     * all the decompositon parameters
+     *
+     * @param src From where the image data should be obtained.
+     *
+     * @param wp The encoder parameters
+     *
+     * @param pox The horizontal coordinate of the cell and code-block
+     * partition origin with respect to the canvas origin, on the reference
+     * grid.
+     *
+     * @param poy The vertical coordinate of the cell and code-block partition
+     * origin with respect to the canvas origin, on the reference grid.
+     *
+     * @see ForwardWT
+     * */
+    public ForwWTLine(BlkImgDataSrc src,J2KImageWriteParamJava wp,
+                      int pox,int poy) {
+        super(src,wp,pox,poy);
+        this.src = src;
+
+        int ncomp = src.getNumComps();
+        sinks = new LineSink[ncomp];
+        nLines = new int[ncomp];
+        rows = new Vector<Vector<CBlkRow>>(ncomp);
+        rows.setSize(ncomp);
+
+        nThreads = WorkScheduler.getParallelism(THREADS_PROP_NAME,
+                                                wp.getExecutorService());
+        if (nThreads > 1) {
+            executor = WorkScheduler.getExecutor(wp.getExecutorService(),
+                                                 nThreads);
+        }
+    }
+
+    /**
+     * Returns the implementation type of this wavelet transform, WT_IMPL_LINE
+     * (line-based transform). All components return the same.
+     *
+     * @param c The index of the component.
+     *
+     * @return WT_IMPL_LINE
+     * */
+    public int getImplementationType(int c) {
+        return WaveletTransform.WT_IMPL_LINE;
+    }
+
+    /**
+     * Returns the next code-block in the current tile for the specified
+     * component. The code-blocks are returned by rows, in the order in
+     * which the rows are completed. Each code-block is returned only once
+     * and all code-blocks will be returned if the method is called 'N'
+     * times, where 'N' is the number of code-blocks in the tile. After all
+     * the code-blocks have been returned for the current tile calls to this
+     * method will return 'null'.
+     *
+     * <p>When changing the current tile (through 'setTile()' or 'nextTile()')
+     * this method will always return the first code-block, as if this method
+     * was never called before for the new current tile.</p>
+     *
+     * <p>The data returned by this method is shared by the code-blocks of a
+     * same row, but it is not used by this object any more once the
+     * code-block is returned. The 'offset' and 'scanw' of the returned data
+     * have, in general, some non-zero value. The 'magbits' of the returned
+     * data is not set by this method and should be ignored. See the
+     * 'CBlkWTData' class.</p>
+     *
+     * <p>The 'ulx' and 'uly' members of the returned 'CBlkWTData' object
+     * contain the coordinates of the top-left corner of the block, with
+     * respect to the tile, not the subband.</p>
+     *
+     * @param c The component for which to return the next code-block.
+     *
+     * @param cblk If non-null this object will be used to return the new
+     * code-block. If null a new one will be allocated and returned.
+     *
+     * @return The next code-block in the current tile for component 'n', or
+     * null if all code-blocks for the current tile have been returned.
+     *
+     * @see CBlkWTData
+     * */
+    public CBlkWTData getNextInternCodeBlock(int c, CBlkWTData cblk) {
+        int h,k,kk;
+        CBlkRow row;
+        SubbandAn sb;
+
+        intData = (getDataType(tIdx,c)==DataBlk.TYPE_INT);
+
+        // If no code-block was requested yet, set up the decomposition
+        if (sinks[c] == null) {
+            rows.setElementAt(new Vector<CBlkRow>(),c);
+            sinks[c] = createSink(getAnSubbandTree(tIdx,c),c);
+            nLines[c] = 0;
+        }
+
+        // Feed the decomposition with lines from the source until a row of
+        // code-blocks is complete
+        h = getTileCompHeight(tIdx,c);
+        while (rows.elementAt(c).isEmpty()) {
+            if (nLines[c] == h) {
+                // All code-blocks have been returned. Start again on the next
+                // call, as ForwWTFull does.
+                sinks[c] = null;
+                rows.setElementAt(null,c);
+                return null;
+            }
+            if (intData) {
+                if (!(bufblk instanceof DataBlkInt)) bufblk = new DataBlkInt();
+            } else {
+                if (!(bufblk instanceof DataBlkFloat)) {
+                    bufblk = new DataBlkFloat();
+                }
+            }
+            // Get data from source line by line (this diminishes the memory
+            // requirements on the data source)
+            bufblk.w = getTileCompWidth(tIdx,c);
+            bufblk.h = 1;
+            kk = getCompULY(c)+nLines[c];
+            for (k=Math.min(h-nLines[c],STRIPE_HEIGHT); k>0; k--, kk++) {
+                bufblk.ulx = getCompULX(c);
+                bufblk.uly = kk;
+                bufblk = src.getInternCompData(bufblk,c);
+                nLines[c]++;
+                sinks[c].push(bufblk.getData(),bufblk.offset,bufblk.scanw,1);
+            }
+        }
+
+        // Get the next code-block of the first complete row
+        row = rows.elementAt(c).firstElement();
+        sb = row.sb;
+        if (cblk==null) {
+            if (intData) {
+                cblk = new CBlkWTDataInt();
+            } else {
+                cblk = new CBlkWTDataFloat();
+            }
+        }
+        cblk.n = row.n;
+        cblk.m = row.m;
+        cblk.sb = sb;
+        // Calculate the position and size of the code-block as ForwWTFull
+        // does (see there). The vertical ones are those of the row.
+        int acb0x = (sb.sbandIdx==Subband.WT_ORIENT_LL ||
+                     sb.sbandIdx==Subband.WT_ORIENT_LH) ? getCbULX() : 0;
+        int cn = (sb.ulcx-acb0x+sb.nomCBlkW)/sb.nomCBlkW-1;
+        if (row.n == 0) {
+            cblk.ulx = sb.ulx;
+        } else {
+            cblk.ulx = (cn+row.n)*sb.nomCBlkW - (sb.ulcx-acb0x) + sb.ulx;
+        }
+        if (row.n < sb.numCb.x-1) {
+            cblk.w = (cn+row.n+1)*sb.nomCBlkW - (sb.ulcx-acb0x) + sb.ulx -
+                cblk.ulx;
+        } else {
+            cblk.w = sb.ulx+sb.w-cblk.ulx;
+        }
+        cblk.uly = sb.uly+row.y0;
+        cblk.h = row.h;
+        cblk.wmseScaling = 1f;
+        cblk.offset = cblk.ulx-sb.ulx;
+        cblk.scanw = sb.w;
+        cblk.setData(row.data);
+
+        // Go to the next code-block of the row, if any
+        row.n++;
+        if (row.n == sb.numCb.x) {
+            rows.elementAt(c).removeElementAt(0);
+        }
+        return cblk;
+    }
+
+    /**
+     * Creates the receiver of the lines of the specified subband. For a node
+     * this is a decomposition level, and for a leaf this is a gatherer of
+     * rows of code-blocks.
+     *
+     * @param sb The subband.
+     *
+     * @param c The index of the component.
+     *
+     * @return The receiver of the lines of the subband.
+     * */
+    private LineSink createSink(SubbandAn sb,int c) {
+        if (sb.isNode) {
+            return new Level(sb,c);
+        } else {
+            return new CBlkRowGatherer(sb,c);
+        }
+    }
+
+    /**
+     * Allocates an int or float array, depending on the type of data of the
+     * current tile-component.
+     *
+     * @param len The length of the array.
+     *
+     * @return The new array.
+     * */
+    private Object newArray(int len) {
+        return intData ? (Object)new int[len] : (Object)new float[len];
+    }
+
+    /**
+     * Changes the current tile, given the new coordinates.
+     *
+     * <P>This method resets the decomposition of all components.
+     *
+     * @param x The horizontal coordinate of the tile.
+     *
+     * @param y The vertical coordinate of the new tile.
+     * */
+    public void setTile(int x, int y) {
+        super.setTile(x,y);
+        reset();
+    }
+
+    /**
+     * Advances to the next tile, in standard scan-line order (by rows then
+     * columns). An NoNextElementException is thrown if the current tile is
+     * the last one (i.e. there is no next tile).
+     *
+     * <P>This method resets the decomposition of all components.
+     * */
+    public void nextTile() {
+        super.nextTile();
+        reset();
+    }
+
+    /**
+     * Resets the decomposition of all components, so that the first
+     * code-block of the current tile is returned next.
+     * */
+    private void reset() {
+        // The fields are not initialized yet if called from the constructor
+        // of the superclass
+        if (sinks != null) {
+            for (int i=sinks.length-1; i>=0; i--) {
+                sinks[i] = null;
+                rows.setElementAt(null,i);
+            }
+        }
+    }
+
+    /**
+     * A receiver of consecutive lines of a subband, from top to bottom.
+     * */
+    private abstract static class LineSink {
+
+        /**
+         * Gives the next lines of the subband.
+         *
+         * @param data The int[] or float[] array containing the lines.
+         *
+         * @param off The index of the first sample of the first line in
+         * 'data'.
+         *
+         * @param scanw The distance between two lines in 'data'.
+         *
+         * @param n The number of lines.
+         * */
+        abstract void push(Object data,int off,int scanw,int n);
+    }
+
+    /**
+     * A decomposition level. It decomposes the lines of a node subband into
+     * the lines of its four subbands.
+     * */
+    private class Level extends LineSink {
+
+        /** The decomposed subband */
+        private SubbandAn sb;
+
+        /** The receivers of the lines of the LL, HL, LH and HH subbands */
+        private LineSink ll,hl,lh,hh;
+
+        /** The number of lines, on each side, over which the boundary
+         * extension of a stripe affects the vertical decomposition */
+        private int margin;
+
+        /** The kept lines, from line 'base' of the subband */
+        private Object buf;
+
+        /** The index of the first line in 'buf' */
+        private int base;
+
+        /** The number of lines of the subband received so far */
+        private int avail;
+
+        /** The number of lines of the subband decomposed so far */
+        private int done;
+
+        /** The result of the decomposition of the last stripe */
+        private Object out;
+
+        /**
+         * Creates the decomposition level of the specified node subband.
+         *
+         * @param sb The node subband.
+         *
+         * @param c The index of the component.
+         * */
+        Level(SubbandAn sb,int c) {
+            this.sb = sb;
+            ll = createSink((SubbandAn)sb.getLL(),c);
+            hl = createSink((SubbandAn)sb.getHL(),c);
+            lh = createSink((SubbandAn)sb.getLH(),c);
+            hh = createSink((SubbandAn)sb.getHH(),c);
+            margin = 2*Math.max(Math.max(sb.vFilter.getAnLowNegSupport(),
+                                         sb.vFilter.getAnLowPosSupport()),
+                                Math.max(sb.vFilter.getAnHighNegSupport(),
+                                         sb.vFilter.getAnHighPosSupport()));
+        }
+
+        /**
+         * Gives the next lines of the subband, and decomposes the lines
+         * which are no longer affected by the boundary extension.
+         *
+         * @param data The int[] or float[] array containing the lines.
+         *
+         * @param off The index of the first sample of the first line in
+         * 'data'.
+         *
+         * @param scanw The distance between two lines in 'data'.
+         *
+         * @param n The number of lines.
+         * */
+        void push(Object data,int off,int scanw,int n) {
+            int i;
+            int w = sb.w;
+            int keep;
+
+            // If subband is empty (i.e. zero size) nothing to do
+            if (w == 0 || n == 0) {
+                return;
+            }
+
+            // Drop the lines which are not needed any more. The next stripe
+            // starts at an even line, as the whole subband does.
+            keep = Math.max(0,done-margin)&~1;
+            if (buf == null || (avail-keep+n)*w > getLength(buf)) {
+                Object nbuf =
+                    newArray(Math.max(2*(avail-keep+n),STRIPE_HEIGHT)*w);
+                if (buf != null) {
+                    System.arraycopy(buf,(keep-base)*w,nbuf,0,
+                                     (avail-keep)*w);
+                }
+                buf = nbuf;
+                base = keep;
+            } else if (keep > base) {
+                System.arraycopy(buf,(keep-base)*w,buf,0,(avail-keep)*w);
+                base = keep;
+            }
+            for (i=0; i<n; i++) {
+                System.arraycopy(data,off+i*scanw,buf,(avail-base)*w,w);
+                avail++;
+            }
+
+            if (avail == sb.h) {
+                decompose(sb.h);
+            } else if (avail-margin-done >= STRIPE_HEIGHT) {
+                decompose(avail-margin);
+            }
+        }
+
+        /**
+         * Decomposes the lines of the subband from 'done' to 'end',
+         * exclusive, and gives the resulting lines to the receivers of the
+         * four subbands.
+         *
+         * @param end The index of the line after the last one to decompose.
+         * */
+        private void decompose(int end) {
+            final int w = sb.w;
+            final int ya,n,nl;
+            final int l0,nlk,h0,nhk;
+            final boolean lpf = sb.ulcy%2==0;
+            final Object stripe;
+
+            // The stripe covers the lines to decompose and a margin on each
+            // side. It starts at an even line, so that it is decomposed as
+            // the whole subband is.
+            ya = Math.max(0,done-margin)&~1;
+            n = Math.min(sb.h,end+margin)-ya;
+            nl = lpf ? (n+1)/2 : n/2;
+            if (out == null || getLength(out) < n*w) {
+                out = newArray(n*w);
+            }
+            stripe = out;
+
+            //Perform the vertical decomposition
+            WorkScheduler.forRange(executor,nThreads,w,MIN_RANGE_LEN,
+                                   new WorkScheduler.RangeTask() {
+                    public void run(int start, int end) {
+                        // The columns are adjacent signals, which are all
+                        // filtered at once
+                        int inOff = (ya-base)*w+start;
+                        if (lpf) { // Even start index => use LPF
+                            sb.vFilter.analyze_lpf_cols(buf,inOff,n,w,
+                                                       stripe,start,w,
+                                                       stripe,nl*w+start,w,
+                                                       end-start);
+                        } else { // Odd start index => use HPF
+                            sb.vFilter.analyze_hpf_cols(buf,inOff,n,w,
+                                                       stripe,start,w,
+                                                       stripe,nl*w+start,w,
+                                                       end-start);
+                        }
+                    }
+                });
+
+            // The low-pass and high-pass lines which are not affected by the
+            // boundary extension of the stripe. Line 'p' of the subband gives
+            // line p/2 of the low-pass or high-pass side, depending on its
+            // parity.
+            l0 = (lpf ? (done+1)/2 : done/2)-ya/2;
+            nlk = (lpf ? (end+1)/2 : end/2)-ya/2-l0;
+            h0 = (lpf ? done/2 : (done+1)/2)-ya/2;
+            nhk = (lpf ? end/2 : (end+1)/2)-ya/2-h0;
+
+            //Perform the horizontal decomposition.
+            WorkScheduler.forRange(executor,nThreads,nlk+nhk,MIN_RANGE_LEN,
+                                   new WorkScheduler.RangeTask() {
+                    public void run(int start, int end) {
+                        Object tmpVector = newArray(w);
+                        int offset;
+                        for (int i=start; i<end; i++) {
+                            offset = (i<nlk ? l0+i : nl+h0+i-nlk)*w;
+                            System.arraycopy(stripe,offset,tmpVector,0,w);
+                            if (sb.ulcx%2==0) { // Even start index => use LPF
+                                sb.hFilter.analyze_lpf(tmpVector, 0, w, 1,
+                                                       stripe, offset, 1,
+                                                       stripe,
+                                                       offset+(w+1)/2, 1);
+                            } else { // Odd start index => use HPF
+                                sb.hFilter.analyze_hpf(tmpVector, 0, w, 1,
+                                                       stripe, offset, 1,
+                                                       stripe, offset+w/2,
+                                                       1);
+                            }
+                        }
+                    }
+                });
+            done = end;
+
+            // Give the lines to the four subbands
+            int wl = sb.ulcx%2==0 ? (w+1)/2 : w/2;
+            ll.push(stripe,l0*w,w,nlk);
+            hl.push(stripe,l0*w+wl,w,nlk);
+            lh.push(stripe,(nl+h0)*w,w,nhk);
+            hh.push(stripe,(nl+h0)*w+wl,w,nhk);
+        }
+    }
+
+    /**
+     * Returns the length of an int[] or float[] array.
+     *
+     * @param arr The array.
+     *
+     * @return The length of the array.
+     * */
+    private static int getLength(Object arr) {
+        return (arr instanceof int[]) ?
+            ((int[])arr).length : ((float[])arr).length;
+    }
+
+    /**
+     * A gatherer of the lines of a leaf subband into rows of code-blocks.
+     * The complete rows are appended to the ones to return.
+     * */
+    private class CBlkRowGatherer extends LineSink {
+
+        /** The subband */
+        private SubbandAn sb;
+
+        /** The rows of code-blocks to return, of the subband's component */
+        private Vector<CBlkRow> done;
+
+        /** The offset, in lines, of the first line of the subband in the
+         * first row of code-blocks */
+        private int cboff;
+
+        /** The row of code-blocks being gathered, or null if none */
+        private CBlkRow row;
+
+        /** The vertical index of the next row of code-blocks */
+        private int m;
+
+        /** The number of lines of the current row already gathered */
+        private int filled;
+
+        /**
+         * Creates the gatherer of the rows of code-blocks of the specified
+         * leaf subband.
+         *
+         * @param sb The leaf subband.
+         *
+         * @param c The index of the component.
+         * */
+        CBlkRowGatherer(SubbandAn sb,int c) {
+            this.sb = sb;
+            this.done = rows.elementAt(c);
+            // Project code-block partition origin to subband (see ForwWTFull)
+            int acb0y = (sb.sbandIdx==Subband.WT_ORIENT_LL ||
+                         sb.sbandIdx==Subband.WT_ORIENT_HL) ? getCbULY() : 0;
+            int cm = (sb.ulcy-acb0y+sb.nomCBlkH)/sb.nomCBlkH-1;
+            cboff = sb.ulcy-acb0y-cm*sb.nomCBlkH;
+        }
+
+        /**
+         * Gives the next lines of the subband, and appends the rows of
+         * code-blocks they complete to the ones to return.
+         *
+         * @param data The int[] or float[] array containing the lines.
+         *
+         * @param off The index of the first sample of the first line in
+         * 'data'.
+         *
+         * @param scanw The distance between two lines in 'data'.
+         *
+         * @param n The number of lines.
+         * */
+        void push(Object data,int off,int scanw,int n) {
+            // If subband is empty (i.e. zero size) nothing to do
+            if (sb.numCb.x == 0 || sb.numCb.y == 0) {
+                return;
+            }
+            for (int i=0; i<n; i++) {
+                if (row == null) {
+                    // Start the next row. Each row has its own buffer since
+                    // its code-blocks are returned to the caller.
+                    row = new CBlkRow();
+                    row.sb = sb;
+                    row.m = m;
+                    row.y0 = (m == 0) ? 0 : m*sb.nomCBlkH-cboff;
+                    row.h = Math.min(sb.h,(m+1)*sb.nomCBlkH-cboff)-row.y0;
+                    row.data = newArray(row.h*sb.w);
+                    filled = 0;
+                }
+                System.arraycopy(data,off+i*scanw,row.data,filled*sb.w,sb.w);
+                filled++;
+                if (filled == row.h) {
+                    done.addElement(row);
+                    row = null;
+                    m++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A complete row of code-blocks of a subband.
+     * */
+    private static class CBlkRow {
+
+        /** The subband */
+        SubbandAn sb;
+
+        /** The vertical index of the row of code-blocks */
+        int m;
+
+        /** The horizontal index of the next code-block to return */
+        int n;
+
+        /** The index of the first line of the row, in the subband */
+        int y0;
+
+        /** The height of the row */
+        int h;
+
+        /** The lines of the row, with the width of the subband */
+        Object data;
+    }
+}
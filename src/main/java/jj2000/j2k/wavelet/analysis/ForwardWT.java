@@ -151,6 +151,9 @@ public abstract class ForwardWT extends ImgDataAdapter
         prefx = 0;
         prefy = 0;
 
+        if (wp.getLineBasedEncoding()) {
+            return new ForwWTLine(src, wp, prefx,prefy);
+        }
         return new ForwWTFull(src, wp, prefx,prefy);
     }
 
@@ -46,13 +46,17 @@
  * */
 package jj2000.j2k.wavelet.synthesis;
 import java.awt.Point;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 import jj2000.j2k.decoder.DecoderSpecs;
 import jj2000.j2k.image.DataBlk;
 import jj2000.j2k.image.DataBlkFloat;
 import jj2000.j2k.image.DataBlkInt;
+import jj2000.j2k.util.ArrayPool;
 import jj2000.j2k.util.FacilityManager;
 import jj2000.j2k.util.ProgressWatch;
+import jj2000.j2k.util.WorkScheduler;
 import jj2000.j2k.wavelet.Subband;
 import jj2000.j2k.wavelet.WaveletTransform;
 
@@ -79,10 +83,43 @@ import jj2000.j2k.wavelet.WaveletTransform;
  * attribute of the 'DataBlk' class is always set to false, see the 'DataBlk'
  * class.
  *
+ * <P>The lines and columns of each subband can be filtered in parallel. The
+ * number of threads used is specified by the
+ * "jj2000.j2k.wavelet.synthesis.InvWTFull.nthreads" Java system property, or
+ * is the number of available processors if an executor is given to the
+ * constructor (see WorkScheduler). By default the filtering is done by the
+ * calling thread only. The result does not depend on the number of threads.
+ *
+ * <P>The reconstruction can be restricted to an area of each
+ * tile-component (see setDecodedArea()). Only the code-blocks, and the
+ * lines and columns of each subband, which are needed to reconstruct this
+ * area are then decoded and filtered, that is the area plus a margin
+ * covering the support of the synthesis filters at each resolution level.
+ *
  * @see DataBlk
  * */
 public class InvWTFull extends InverseWT {
 
+    /** The Java system property name for the number of threads to use:
+     jj2000.j2k.wavelet.synthesis.InvWTFull.nthreads */
+    public static final String THREADS_PROP_NAME =
+        "jj2000.j2k.wavelet.synthesis.InvWTFull.nthreads";
+
+    /** The minimum number of lines or columns filtered by a thread at a
+     * time */
+    private static final int MIN_RANGE_LEN = 16;
+
+    /** The number of adjacent columns filtered together by the vertical
+     * reconstruction */
+    private static final int COL_BATCH = 64;
+
+    /** The executor on which lines and columns are filtered in parallel. It
+     * is null if the filtering is done by the calling thread only */
+    private ExecutorService executor;
+
+    /** The number of threads filtering lines and columns in parallel */
+    private int nThreads;
+
     /** Reference to the ProgressWatch instance if any */
     private ProgressWatch pw = null;
 
@@ -106,6 +143,14 @@ public class InvWTFull extends InverseWT {
     /** Number of decomposition levels in each component */
     private int[] ndl;
 
+    /** The area of each component to reconstruct in the current tile, as
+     * {ulx,uly,w,h}, or null to reconstruct the whole tile-component */
+    private int[][] areas;
+
+    /** The area of each component that has been reconstructed in the
+     * current tile, or null if the whole tile-component was */
+    private int[][] recAreas;
+
     /**
      * The reversible flag for each component in each tile. The first index is
      * the tile index, the second one is the component index. The
@@ -125,13 +170,39 @@ public class InvWTFull extends InverseWT {
      * @param decSpec The decoder specifications
      * */
     public InvWTFull(CBlkWTDataSrcDec src, DecoderSpecs decSpec){
+        this(src,decSpec,null);
+    }
+
+    /**
+     * Initializes this object with the given source of wavelet
+     * coefficients. It initializes the resolution level for full resolutioin
+     * reconstruction.
+     *
+     * @param src from where the wavelet coefficinets should be
+     * obtained.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param executor The executor on which lines and columns are filtered
+     * in parallel. If null a shared one is used when the number of threads
+     * is set by the Java system property.
+     * */
+    public InvWTFull(CBlkWTDataSrcDec src, DecoderSpecs decSpec,
+                     ExecutorService executor){
         super(src,decSpec);
         this.src = src;
 
         int nc = src.getNumComps();
         reconstructedComps = new DataBlk[nc];
         ndl = new int[nc];
+        areas = new int[nc][];
+        recAreas = new int[nc][];
         pw = FacilityManager.getProgressWatch();
+
+        nThreads = WorkScheduler.getParallelism(THREADS_PROP_NAME,executor);
+        if (nThreads > 1) {
+            this.executor = WorkScheduler.getExecutor(executor,nThreads);
+        }
     }
 
    /**
@@ -246,7 +317,9 @@ public class InvWTFull extends InverseWT {
      * <p>The data returned by this method can be the data in the internal
      * buffer of this object, if any, and thus can not be modified by the
      * caller. The 'offset' and 'scanw' of the returned data can be
-     * arbitrary. See the 'DataBlk' class.</p>
+     * arbitrary. See the 'DataBlk' class. The internal buffer is released
+     * to the array pool when the tile changes, after which the returned data
+     * must not be used anymore.</p>
      *
      * <p>The returned data has its 'progressive' attribute unset
      * (i.e. false).</p>
@@ -268,24 +341,55 @@ public class InvWTFull extends InverseWT {
                 src.getSynSubbandTree(tIdx,c).getHorWFilter().getDataType();
         }
 
+        // If the requested area is out of the reconstructed one, reconstruct
+        // again
+        if(reconstructedComps[c]!=null && recAreas[c]!=null &&
+           !contains(recAreas[c],blk)) {
+            releaseComp(c);
+        }
+
         //If the source image has not been decomposed 
         if(reconstructedComps[c]==null) {
-            //Allocate component data buffer
+            // Reconstruct the whole tile-component if the requested area is
+            // not in the one to reconstruct
+            int[] area = areas[c];
+            if(area!=null && !contains(area,blk)) {
+                area = null;
+            }
+
+            //Get component data buffer from the array pool. It is cleared
+            //since the code-blocks which are not decoded leave it as is.
+            int tw = getTileCompWidth(tIdx,c);
+            int th = getTileCompHeight(tIdx,c);
             switch (dtype) {
             case DataBlk.TYPE_FLOAT:
-                reconstructedComps[c] =
-                    new DataBlkFloat(0,0,getTileCompWidth(tIdx,c),
-                                     getTileCompHeight(tIdx,c));
+                float[] fdata = ArrayPool.getFloat(tw*th);
+                Arrays.fill(fdata,0,tw*th,0f);
+                reconstructedComps[c] = new DataBlkFloat();
+                reconstructedComps[c].setData(fdata);
                 break;
             case DataBlk.TYPE_INT:
-                reconstructedComps[c] =
-                    new DataBlkInt(0,0,getTileCompWidth(tIdx,c),
-                                   getTileCompHeight(tIdx,c));
+                int[] idata = ArrayPool.getInt(tw*th);
+                Arrays.fill(idata,0,tw*th,0);
+                reconstructedComps[c] = new DataBlkInt();
+                reconstructedComps[c].setData(idata);
                 break;
             }
+            reconstructedComps[c].w = reconstructedComps[c].scanw = tw;
+            reconstructedComps[c].h = th;
             //Reconstruct source image
-            waveletTreeReconstruction(reconstructedComps[c],
-                                      src.getSynSubbandTree(tIdx,c),c);
+            DataBlk img = reconstructedComps[c];
+            if(area==null) {
+                waveletTreeReconstruction(img,src.getSynSubbandTree(tIdx,c),
+                                          c,0,0,img.w,img.h);
+            } else {
+                waveletTreeReconstruction(img,src.getSynSubbandTree(tIdx,c),
+                                          c,Math.max(0,area[0]),
+                                          Math.max(0,area[1]),
+                                          Math.min(img.w,area[0]+area[2]),
+                                          Math.min(img.h,area[1]+area[3]));
+            }
+            recAreas[c] = area;
             if(pw!=null && c==src.getNumComps()-1) {
                 pw.terminateProgressWatch();
             }
@@ -306,6 +410,64 @@ public class InvWTFull extends InverseWT {
         return blk;
     }
 
+    /**
+     * Releases the buffer of a reconstructed component to the array pool.
+     * The data returned by 'getInternCompData()' for this component must not
+     * be used anymore.
+     *
+     * @param c The index of the component.
+     * */
+    private void releaseComp(int c) {
+        DataBlk img = reconstructedComps[c];
+        if(img==null) {
+            return;
+        }
+        if(img.getDataType()==DataBlk.TYPE_INT) {
+            ArrayPool.release((int[])img.getData());
+        } else {
+            ArrayPool.release((float[])img.getData());
+        }
+        reconstructedComps[c] = null;
+    }
+
+    /**
+     * Restricts the reconstruction of the specified component, in the
+     * current tile, to the given area. Only the code-blocks and the wavelet
+     * coefficients needed to reconstruct this area are decoded and
+     * filtered. If an area out of it is requested afterwards, the whole
+     * tile-component is reconstructed. The area is reset to the whole
+     * tile-component when the tile changes.
+     *
+     * @param c The index of the component.
+     *
+     * @param ulx The horizontal coordinate of the upper-left corner of the
+     * area, in the tile-component.
+     *
+     * @param uly The vertical coordinate of the upper-left corner of the
+     * area, in the tile-component.
+     *
+     * @param w The width of the area.
+     *
+     * @param h The height of the area.
+     * */
+    public void setDecodedArea(int c,int ulx,int uly,int w,int h) {
+        areas[c] = new int[] {ulx,uly,w,h};
+    }
+
+    /**
+     * Returns whether or not an area contains the one of a data block.
+     *
+     * @param area The area, as {ulx,uly,w,h}.
+     *
+     * @param blk The data block.
+     *
+     * @return true if the area of the block is in the given area.
+     * */
+    private static boolean contains(int[] area,DataBlk blk) {
+        return blk.ulx>=area[0] && blk.uly>=area[1] &&
+            blk.ulx+blk.w<=area[0]+area[2] && blk.uly+blk.h<=area[1]+area[3];
+    }
+
     /**
      * Returns a block of image data containing the specifed rectangular area,
      * in the specified component, as a copy (see below). The rectangular area
@@ -378,122 +540,268 @@ public class InvWTFull extends InverseWT {
     }
 
     /**
-     * Performs the 2D inverse wavelet transform on a subband of the image, on
-     * the specified component. This method will successively perform 1D
-     * filtering steps on all columns and then all lines of the subband.
+     * Performs the 2D inverse wavelet transform on an area of a subband of
+     * the image, on the specified component. This method will successively
+     * perform 1D filtering steps on the lines and then the columns of the
+     * subband which are needed to reconstruct the area. The lines, and then
+     * the columns, may be filtered in parallel.
+     *
+     * <P>When the area is not the whole subband, its reconstructed values
+     * are only exact at a distance of the area boundaries that covers the
+     * support of the synthesis filters, unless the boundary is the one of
+     * the subband. The left and upper boundaries of the area must be at an
+     * even position on the canvas, unless they are the ones of the subband.
      *
      * @param db the buffer for the image/wavelet data.
      *
      * @param sb The subband to reconstruct.
      *
-     * @param c The index of the component to reconstruct 
+     * @param x0 The index of the first column of the area, in the subband.
+     *
+     * @param y0 The index of the first line of the area, in the subband.
+     *
+     * @param x1 The index after the last column of the area, in the
+     * subband.
+     *
+     * @param y1 The index after the last line of the area, in the subband.
      * */
-    private void wavelet2DReconstruction(DataBlk db,SubbandSyn sb,int c) {
-        Object data;
-        Object buf;
-        int ulx, uly, w, h;
-        int i,j,k;
-        int offset;
-
+    private void wavelet2DReconstruction(final DataBlk db,final SubbandSyn sb,
+                                         final int x0,final int y0,
+                                         final int x1,final int y1) {
         // If subband is empty (i.e. zero size) nothing to do
         if (sb.w==0 || sb.h==0) {
             return;
         }
 
-        data = db.getData();
+        // Lines of the low-pass and high-pass halves of the subband which
+        // are needed to reconstruct the area
+        int nl = lowLen(sb.ulcy,0,sb.h);
+        final int ly0 = lowLen(sb.ulcy,0,y0);
+        int ly1 = lowLen(sb.ulcy,0,y1);
+        final int hy0 = nl+y0-ly0;
+        int hy1 = nl+y1-ly1;
 
-        ulx = sb.ulx;
-        uly = sb.uly;
-        w = sb.w;
-        h = sb.h;
+        //Perform the horizontal reconstruction
+        WorkScheduler.forRange(executor,nThreads,ly1-ly0,MIN_RANGE_LEN,
+                               new WorkScheduler.RangeTask() {
+                public void run(int start, int end) {
+                    horizontalReconstruction(db,sb,x0,x1,ly0+start,ly0+end);
+                }
+            });
+        WorkScheduler.forRange(executor,nThreads,hy1-hy0,MIN_RANGE_LEN,
+                               new WorkScheduler.RangeTask() {
+                public void run(int start, int end) {
+                    horizontalReconstruction(db,sb,x0,x1,hy0+start,hy0+end);
+                }
+            });
+
+        //Perform the vertical reconstruction
+        WorkScheduler.forRange(executor,nThreads,x1-x0,MIN_RANGE_LEN,
+                               new WorkScheduler.RangeTask() {
+                public void run(int start, int end) {
+                    verticalReconstruction(db,sb,y0,y1,x0+start,x0+end);
+                }
+            });
+    }
+
+    /**
+     * Returns the number of low-pass samples in a range of positions of a
+     * subband, that is the number of even canvas positions in it.
+     *
+     * @param ulc The canvas coordinate of the first position of the
+     * subband.
+     *
+     * @param start The index of the first position of the range, in the
+     * subband.
+     *
+     * @param end The index after the last position of the range, in the
+     * subband.
+     *
+     * @return The number of even canvas positions in the range.
+     * */
+    private static int lowLen(int ulc,int start,int end) {
+        return (ulc+end+1)/2-(ulc+start+1)/2;
+    }
+
+    /**
+     * Performs the 1D inverse wavelet transform on some lines of a subband.
+     * Only the samples of the given columns are reconstructed.
+     *
+     * @param db the buffer for the image/wavelet data.
+     *
+     * @param sb The subband to reconstruct.
+     *
+     * @param x0 The index of the first column to reconstruct, in the
+     * subband.
+     *
+     * @param x1 The index after the last column to reconstruct, in the
+     * subband.
+     *
+     * @param start The index of the first line to filter, in the subband.
+     *
+     * @param end The index after the last line to filter, in the subband.
+     * */
+    private void horizontalReconstruction(DataBlk db,SubbandSyn sb,
+                                          int x0,int x1,int start,int end) {
+        Object data;
+        Object buf;
+        int i;
+        int offset;
+        int w = sb.w;
+        int nl,l0,ll,h0,hl;
+
+        data = db.getData();
 
         buf = null;  // To keep compiler happy
 
         switch (sb.getHorWFilter().getDataType()) {
         case DataBlk.TYPE_INT:
-            buf = new int[(w>=h) ? w : h];
+            buf = ArrayPool.getInt(w);
             break;
         case DataBlk.TYPE_FLOAT:
-            buf = new float[(w>=h) ? w : h];
+            buf = ArrayPool.getFloat(w);
             break;
         }
 
-        //Perform the horizontal reconstruction
-        offset = (uly-db.uly)*db.w + ulx-db.ulx;
-        if (sb.ulcx%2==0) { // start index is even => use LPF
-            for(i=0; i<h; i++, offset += db.w) {
-                System.arraycopy(data,offset,buf,0,w);
-                sb.hFilter.synthetize_lpf(buf,0,(w+1)/2,1,buf,(w+1)/2,w/2,1,
-                                          data,offset,1);
+        // Low-pass and high-pass coefficients needed for the columns
+        nl = lowLen(sb.ulcx,0,w);
+        l0 = lowLen(sb.ulcx,0,x0);
+        ll = lowLen(sb.ulcx,x0,x1);
+        h0 = nl+x0-l0;
+        hl = x1-x0-ll;
+
+        offset = (sb.uly-db.uly+start)*db.w + sb.ulx-db.ulx;
+        if ((sb.ulcx+x0)%2==0) { // start index is even => use LPF
+            for(i=start; i<end; i++, offset += db.w) {
+                System.arraycopy(data,offset+l0,buf,l0,ll);
+                System.arraycopy(data,offset+h0,buf,h0,hl);
+                sb.hFilter.synthetize_lpf(buf,l0,ll,1,buf,h0,hl,1,
+                                          data,offset+x0,1);
             }
         } else { // start index is odd => use HPF
-            for(i=0; i<h; i++, offset += db.w) {
-                System.arraycopy(data,offset,buf,0,w);
-                sb.hFilter.synthetize_hpf(buf,0,w/2,1,buf,w/2,(w+1)/2,1,
-                                          data,offset,1);
+            for(i=start; i<end; i++, offset += db.w) {
+                System.arraycopy(data,offset+l0,buf,l0,ll);
+                System.arraycopy(data,offset+h0,buf,h0,hl);
+                sb.hFilter.synthetize_hpf(buf,l0,ll,1,buf,h0,hl,1,
+                                          data,offset+x0,1);
             }
         }
 
-        //Perform the vertical reconstruction 
-        offset = (uly-db.uly)*db.w+ulx-db.ulx;
+        if (buf instanceof int[]) {
+            ArrayPool.release((int[])buf);
+        } else {
+            ArrayPool.release((float[])buf);
+        }
+    }
+
+    /**
+     * Performs the 1D inverse wavelet transform on some columns of a
+     * subband. Only the samples of the given lines are reconstructed.
+     *
+     * <P>The columns are filtered by batches of COL_BATCH adjacent columns,
+     * whose low-pass and high-pass coefficients are copied line by line to a
+     * buffer and reconstructed together, so that the whole cache lines of
+     * the image data are used.
+     *
+     * @param db the buffer for the image/wavelet data.
+     *
+     * @param sb The subband to reconstruct.
+     *
+     * @param y0 The index of the first line to reconstruct, in the subband.
+     *
+     * @param y1 The index after the last line to reconstruct, in the
+     * subband.
+     *
+     * @param start The index of the first column to filter, in the subband.
+     *
+     * @param end The index after the last column to filter, in the subband.
+     * */
+    private void verticalReconstruction(DataBlk db,SubbandSyn sb,
+                                        int y0,int y1,int start,int end) {
+        Object data;
+        Object buf;
+        int i,j,nb;
+        int offset;
+        int h = sb.h;
+        int nl,l0,ll,h0,hl;
+        boolean lpf;
+
+        data = db.getData();
+
+        buf = null;  // To keep compiler happy
+
         switch (sb.getVerWFilter().getDataType()) {
         case DataBlk.TYPE_INT:
-            int data_int[], buf_int[];
-            data_int = (int[]) data;
-            buf_int = (int[]) buf;
-            if (sb.ulcy%2==0) { // start index is even => use LPF
-                for(j=0; j<w; j++, offset++) {
-                    for(i=h-1, k=offset+i*db.w; i>=0; i--, k-=db.w)
-                        buf_int[i] = data_int[k];
-                    sb.vFilter.synthetize_lpf(buf,0,(h+1)/2,1,buf,(h+1)/2,
-                                              h/2,1,data,offset,db.w);
-                }
-            } else { // start index is odd => use HPF
-                for(j=0; j<w; j++, offset++) {
-                    for(i=h-1, k=offset+i*db.w; i>=0; i--, k-= db.w)
-                        buf_int[i] = data_int[k];
-                    sb.vFilter.synthetize_hpf(buf,0,h/2,1,buf,h/2,(h+1)/2,1,
-                                              data,offset,db.w);
-                }
-            }
+            buf = ArrayPool.getInt(h*Math.min(COL_BATCH,end-start));
             break;
         case DataBlk.TYPE_FLOAT:
-            float data_float[], buf_float[];
-            data_float = (float[]) data;
-            buf_float = (float[]) buf;
-            if (sb.ulcy%2==0) { // start index is even => use LPF
-                for(j=0; j<w; j++, offset++) {
-                    for(i=h-1, k=offset+i*db.w; i>=0; i--, k-= db.w)
-                        buf_float[i] = data_float[k];
-                    sb.vFilter.synthetize_lpf(buf,0,(h+1)/2,1,buf,(h+1)/2,
-                                              h/2,1,data,offset,db.w);
-                }
+            buf = ArrayPool.getFloat(h*Math.min(COL_BATCH,end-start));
+            break;
+        }
+
+        // Low-pass and high-pass coefficients needed for the lines
+        nl = lowLen(sb.ulcy,0,h);
+        l0 = lowLen(sb.ulcy,0,y0);
+        ll = lowLen(sb.ulcy,y0,y1);
+        h0 = nl+y0-l0;
+        hl = y1-y0-ll;
+        lpf = (sb.ulcy+y0)%2==0; // start index is even => use LPF
+
+        for(j=start; j<end; j+=nb) {
+            nb = Math.min(COL_BATCH,end-j);
+            offset = (sb.uly-db.uly)*db.w + sb.ulx-db.ulx+j;
+            for(i=l0; i<l0+ll; i++) {
+                System.arraycopy(data,offset+i*db.w,buf,i*nb,nb);
+            }
+            for(i=h0; i<h0+hl; i++) {
+                System.arraycopy(data,offset+i*db.w,buf,i*nb,nb);
+            }
+            if (lpf) {
+                sb.vFilter.synthetize_lpf_cols(buf,l0*nb,ll,nb,buf,h0*nb,hl,nb,
+                                               data,offset+y0*db.w,db.w,nb);
             } else { // start index is odd => use HPF
-                for(j=0; j<w; j++, offset++) {
-                    for(i=h-1, k=offset+i*db.w; i>=0; i--, k-= db.w)
-                        buf_float[i] = data_float[k];
-                    sb.vFilter.synthetize_hpf(buf,0,h/2,1,buf,h/2,(h+1)/2,1,
-                                              data,offset,db.w);
-                }
+                sb.vFilter.synthetize_hpf_cols(buf,l0*nb,ll,nb,buf,h0*nb,hl,nb,
+                                               data,offset+y0*db.w,db.w,nb);
             }
-            break;
+        }
+
+        if (buf instanceof int[]) {
+            ArrayPool.release((int[])buf);
+        } else {
+            ArrayPool.release((float[])buf);
         }
     }
 
     /**
-     * Performs the inverse wavelet transform on the whole component. It
-     * iteratively reconstructs the subbands from leaves up to the root
-     * node. This method is recursive, the first call to it the 'sb' must be
-     * the root of the subband tree. The method will then process the entire
-     * subband tree by calling itslef recursively.
+     * Performs the inverse wavelet transform on an area of the whole
+     * component. It iteratively reconstructs the subbands from leaves up to
+     * the root node. This method is recursive, the first call to it the 'sb'
+     * must be the root of the subband tree. The method will then process the
+     * entire subband tree by calling itslef recursively.
+     *
+     * <P>The area is in the highest reconstructed resolution level. For each
+     * reconstructed node, it is extended by a margin covering the support of
+     * the synthesis filters, and only the corresponding areas of the child
+     * subbands are in turn reconstructed, or decoded. When the area is the
+     * whole resolution level all code-blocks are decoded.
      *
      * @param img The buffer for the image/wavelet data.
      *
      * @param sb The subband to reconstruct.
      *
-     * @param c The index of the component to reconstruct 
+     * @param c The index of the component to reconstruct
+     *
+     * @param x0 The index of the first column of the area, in the subband.
+     *
+     * @param y0 The index of the first line of the area, in the subband.
+     *
+     * @param x1 The index after the last column of the area, in the
+     * subband.
+     *
+     * @param y1 The index after the last line of the area, in the subband.
      * */
-    private void waveletTreeReconstruction(DataBlk img,SubbandSyn sb,int c) {
+    private void waveletTreeReconstruction(DataBlk img,SubbandSyn sb,int c,
+                                           int x0,int y0,int x1,int y1) {
 
         DataBlk subbData;
 
@@ -502,12 +810,30 @@ public class InvWTFull extends InverseWT {
             int i,m,n;
             Object src_data,dst_data;
             Point ncblks;
+            int acb0x,acb0y,offx,offy;
 
-            if (sb.w==0 || sb.h==0) {
-                return; // If empty subband do nothing
+            if (sb.w==0 || sb.h==0 || x0>=x1 || y0>=y1) {
+                return; // If empty subband or area do nothing
             }
 
-            // Get all code-blocks in subband
+            // Project code-block partition origin to subband (see
+            // ForwWTFull) to find the code-blocks in the area
+            acb0x = src.getCbULX();
+            acb0y = src.getCbULY();
+            if(sb.sbandIdx==Subband.WT_ORIENT_HL ||
+               sb.sbandIdx==Subband.WT_ORIENT_HH) {
+                acb0x = 0;
+            }
+            if(sb.sbandIdx==Subband.WT_ORIENT_LH ||
+               sb.sbandIdx==Subband.WT_ORIENT_HH) {
+                acb0y = 0;
+            }
+            offx = sb.ulcx-acb0x-
+                ((sb.ulcx-acb0x+sb.nomCBlkW)/sb.nomCBlkW-1)*sb.nomCBlkW;
+            offy = sb.ulcy-acb0y-
+                ((sb.ulcy-acb0y+sb.nomCBlkH)/sb.nomCBlkH-1)*sb.nomCBlkH;
+
+            // Get the code-blocks in the area of the subband
             if(dtype==DataBlk.TYPE_INT) {
                 subbData = new DataBlkInt();
             } else {
@@ -515,8 +841,10 @@ public class InvWTFull extends InverseWT {
             }
             ncblks = sb.numCb;
             dst_data = img.getData();
-            for (m=0; m<ncblks.y; m++) {
-                for (n=0; n<ncblks.x; n++) {
+            int m1 = Math.min(ncblks.y-1,(y1-1+offy)/sb.nomCBlkH);
+            int n1 = Math.min(ncblks.x-1,(x1-1+offx)/sb.nomCBlkW);
+            for (m=(y0+offy)/sb.nomCBlkH; m<=m1; m++) {
+                for (n=(x0+offx)/sb.nomCBlkW; n<=n1; n++) {
                     subbData = src.getInternCodeBlock(c,m,n,sb,subbData);
                     src_data = subbData.getData();
                     if(pw!=null) {
@@ -537,17 +865,54 @@ public class InvWTFull extends InverseWT {
             // Reconstruct the lower resolution levels if the current subbands
             // is a node
 
-            //Perform the reconstruction of the LL subband
-            waveletTreeReconstruction(img,(SubbandSyn)sb.getLL(),c);
+            if(sb.resLvl<=reslvl-maxImgRes+ndl[c] && x0<x1 && y0<y1) {
+                // Extend the area by the margin needed by the synthesis
+                // filters. The area then starts at an even position, as the
+                // whole subband does when it starts at an odd one.
+                int mx = 2*Math.max(
+                    Math.max(sb.hFilter.getSynLowNegSupport(),
+                             sb.hFilter.getSynLowPosSupport()),
+                    Math.max(sb.hFilter.getSynHighNegSupport(),
+                             sb.hFilter.getSynHighPosSupport()));
+                int my = 2*Math.max(
+                    Math.max(sb.vFilter.getSynLowNegSupport(),
+                             sb.vFilter.getSynLowPosSupport()),
+                    Math.max(sb.vFilter.getSynHighNegSupport(),
+                             sb.vFilter.getSynHighPosSupport()));
+                x0 = Math.max(0,x0-mx);
+                y0 = Math.max(0,y0-my);
+                x1 = Math.min(sb.w,x1+mx);
+                y1 = Math.min(sb.h,y1+my);
+                if(x0>0 && (sb.ulcx+x0)%2!=0) x0--;
+                if(y0>0 && (sb.ulcy+y0)%2!=0) y0--;
+
+                // Area of the low-pass and high-pass child subbands
+                int lx0 = lowLen(sb.ulcx,0,x0);
+                int lx1 = lowLen(sb.ulcx,0,x1);
+                int ly0 = lowLen(sb.ulcy,0,y0);
+                int ly1 = lowLen(sb.ulcy,0,y1);
+                int hx0 = x0-lx0, hx1 = x1-lx1;
+                int hy0 = y0-ly0, hy1 = y1-ly1;
+
+                //Perform the reconstruction of the LL subband
+                waveletTreeReconstruction(img,(SubbandSyn)sb.getLL(),c,
+                                          lx0,ly0,lx1,ly1);
 
-            if(sb.resLvl<=reslvl-maxImgRes+ndl[c]){
                 //Reconstruct the other subbands
-                waveletTreeReconstruction(img,(SubbandSyn)sb.getHL(),c);
-                waveletTreeReconstruction(img,(SubbandSyn)sb.getLH(),c);
-                waveletTreeReconstruction(img,(SubbandSyn)sb.getHH(),c);
+                waveletTreeReconstruction(img,(SubbandSyn)sb.getHL(),c,
+                                          hx0,ly0,hx1,ly1);
+                waveletTreeReconstruction(img,(SubbandSyn)sb.getLH(),c,
+                                          lx0,hy0,lx1,hy1);
+                waveletTreeReconstruction(img,(SubbandSyn)sb.getHH(),c,
+                                          hx0,hy0,hx1,hy1);
 
                 //Perform the 2D wavelet decomposition of the current subband
-                wavelet2DReconstruction(img,(SubbandSyn)sb,c);
+                wavelet2DReconstruction(img,(SubbandSyn)sb,x0,y0,x1,y1);
+            } else {
+                //Perform the reconstruction of the LL subband, which is at
+                //the same position
+                waveletTreeReconstruction(img,(SubbandSyn)sb.getLL(),c,
+                                          x0,y0,x1,y1);
             }
         }
     }
@@ -587,10 +952,12 @@ public class InvWTFull extends InverseWT {
             ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
         }
 
-        // Reset the decomposed component buffers.
+        // Release the decomposed component buffers and reset the areas.
         if (reconstructedComps != null) {
             for (i=reconstructedComps.length-1; i>=0; i--) {
-                reconstructedComps[i] = null;
+                releaseComp(i);
+                areas[i] = null;
+                recAreas[i] = null;
             }
         }
 
@@ -636,10 +1003,12 @@ public class InvWTFull extends InverseWT {
             ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
         }
 
-        // Reset the decomposed component buffers.
+        // Release the decomposed component buffers and reset the areas.
         if (reconstructedComps != null) {
             for (i=reconstructedComps.length-1; i>=0; i--) {
-                reconstructedComps[i] = null;
+                releaseComp(i);
+                areas[i] = null;
+                recAreas[i] = null;
             }
         }
     }
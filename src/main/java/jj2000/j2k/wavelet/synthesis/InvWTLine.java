@@ -0,0 +1,841 @@
+/*
+ * $RCSfile: InvWTLine.java,v $
+ *
+ * Class:                   InvWTLine
+ *
+ * Description:             This class implements a line-based inverse DWT for
+ *                          int and float data.
+ */
+
+package jj2000.j2k.wavelet.synthesis;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import jj2000.j2k.decoder.DecoderSpecs;
+import jj2000.j2k.image.DataBlk;
+import jj2000.j2k.image.DataBlkFloat;
+import jj2000.j2k.image.DataBlkInt;
+import jj2000.j2k.util.FacilityManager;
+import jj2000.j2k.util.ProgressWatch;
+import jj2000.j2k.util.WorkScheduler;
+import jj2000.j2k.wavelet.Subband;
+import jj2000.j2k.wavelet.WaveletTransform;
+
+/**
+ * This class implements the InverseWT with the line-based approach for int
+ * and float data.
+ *
+ * <P>Instead of reconstructing a whole tile-component at once, as InvWTFull
+ * does, only the stripe of lines containing the requested area is
+ * reconstructed. To do so each resolution level reconstructs the lines it
+ * is asked for, plus a margin on each side which covers the support of the
+ * vertical synthesis filter, from the lines of its subbands. The lines of
+ * the LL subband are in turn requested from the lower resolution level, and
+ * the lines of the other subbands are obtained from the code-blocks, which
+ * are requested from the source one row of code-blocks at a time. The rows
+ * of code-blocks above the requested lines are dropped. Hence, when the
+ * lines are requested from top to bottom, the memory used grows with the
+ * width of the tile-component but not with its height. The reconstructed
+ * data is the same as the one of InvWTFull.
+ *
+ * <P>Areas can be requested in any order, but the code-blocks have to be
+ * decoded again each time an area above the last requested one is asked
+ * for.
+ *
+ * <P>The lines and columns of each stripe can be filtered in parallel. The
+ * number of threads used is specified by the
+ * "jj2000.j2k.wavelet.synthesis.InvWTLine.nthreads" Java system property, or
+ * is the number of available processors if an executor is given to the
+ * constructor (see WorkScheduler). By default the filtering is done by the
+ * calling thread only.
+ *
+ * <P>This implementation does not support progressive data, all data is
+ * considered to be non-progressive (i.e. "final" data) and the 'progressive'
+ * attribute of the 'DataBlk' class is always set to false, see the 'DataBlk'
+ * class.
+ *
+ * @see InvWTFull
+ * @see DataBlk
+ * */
+public class InvWTLine extends InverseWT {
+
+    /** The Java system property name for the number of threads to use:
+     jj2000.j2k.wavelet.synthesis.InvWTLine.nthreads */
+    public static final String THREADS_PROP_NAME =
+        "jj2000.j2k.wavelet.synthesis.InvWTLine.nthreads";
+
+    /** The minimum number of lines reconstructed at a time, if the
+     * requested area is not higher */
+    public static final int STRIPE_HEIGHT = 64;
+
+    /** The minimum number of lines or columns filtered by a thread at a
+     * time */
+    private static final int MIN_RANGE_LEN = 16;
+
+    /** The executor on which lines and columns are filtered in parallel. It
+     * is null if the filtering is done by the calling thread only */
+    private ExecutorService executor;
+
+    /** The number of threads filtering lines and columns in parallel */
+    private int nThreads;
+
+    /** Reference to the ProgressWatch instance if any */
+    private ProgressWatch pw = null;
+
+    /** The total number of code-blocks to decode */
+    private int cblkToDecode = 0;
+
+    /** The number of already decoded code-blocks */
+    private int nDecCblk = 0;
+
+    /** the code-block buffer's source i.e. the quantizer */
+    private CBlkWTDataSrcDec src;
+
+    /** The highest reconstructed resolution level of each component in the
+     * current tile, or null if no data was requested yet */
+    private Level levels[];
+
+    /** The last reconstructed stripe of each component in the current
+     * tile. Its 'uly' and 'h' give the lines it contains. */
+    private DataBlk stripes[];
+
+    /** Number of decomposition levels in each component */
+    private int[] ndl;
+
+    /**
+     * The reversible flag for each component in each tile. The first index is
+     * the tile index, the second one is the component index. The
+     * reversibility of the components for each tile are calculated on a as
+     * needed basis.
+     * */
+    private boolean reversible[][];
+
+    /**
+     * Initializes this object with the given source of wavelet
+     * coefficients. It initializes the resolution level for full resolutioin
+     * reconstruction.
+     *
+     * @param src from where the wavelet coefficinets should be
+     * obtained.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param executor The executor on which lines and columns are filtered
+     * in parallel. If null a shared one is used when the number of threads
+     * is set by the Java system property.
+     * */
+    public InvWTLine(CBlkWTDataSrcDec src, DecoderSpecs decSpec,
+                     ExecutorService executor){
+        super(src,decSpec);
+        this.src = src;
+
+        int nc = src.getNumComps();
+        levels = new Level[nc];
+        stripes = new DataBlk[nc];
+        ndl = new int[nc];
+        reversible = new boolean[src.getNumTiles()][];
+        pw = FacilityManager.getProgressWatch();
+
+        nThreads = WorkScheduler.getParallelism(THREADS_PROP_NAME,executor);
+        if (nThreads > 1) {
+            this.executor = WorkScheduler.getExecutor(executor,nThreads);
+        }
+    }
+
+   /**
+     * Returns the reversibility of the current subband. It computes
+     * iteratively the reversibility of the child subbands. For each subband
+     * it tests the reversibility of the horizontal and vertical synthesis
+     * filters used to reconstruct this subband.
+     *
+     * @param subband The current subband.
+     *
+     * @return true if all the  filters used to reconstruct the current 
+     * subband are reversible
+     * */
+    private boolean isSubbandReversible(Subband subband) {
+        if(subband.isNode) {
+            // It's reversible if the filters to obtain the 4 subbands are
+            // reversible and the ones for this one are reversible too.
+            return
+                isSubbandReversible(subband.getLL()) &&
+                isSubbandReversible(subband.getHL()) &&
+                isSubbandReversible(subband.getLH()) &&
+                isSubbandReversible(subband.getHH()) &&
+                ((SubbandSyn)subband).hFilter.isReversible() &&
+                ((SubbandSyn)subband).vFilter.isReversible();
+        } else {
+            // Leaf subband. Reversibility of data depends on source, so say
+            // it's true
+            return true;
+        }
+    }
+
+    /**
+     * Returns the reversibility of the wavelet transform for the specified
+     * component, in the current tile. A wavelet transform is reversible when
+     * it is suitable for lossless and lossy-to-lossless compression.
+     *
+     * @param t The index of the tile.
+     *
+     * @param c The index of the component.
+     *
+     * @return true is the wavelet transform is reversible, false if not.
+     * */
+    public boolean isReversible(int t,int c) {
+        if (reversible[t] == null) {
+            // Reversibility not yet calculated for this tile
+            reversible[t] = new boolean[getNumComps()];
+            for (int i=reversible[t].length-1; i>=0 ; i--) {
+                reversible[t][i] =
+                    isSubbandReversible(src.getSynSubbandTree(t,i));
+            }
+        }
+        return reversible[t][c];
+    }
+
+    /**
+     * Returns the number of bits, referred to as the "range bits",
+     * corresponding to the nominal range of the data in the specified
+     * component.
+     *
+     * @param c The index of the component.
+     *
+     * @return The number of bits corresponding to the nominal range of the
+     * data.
+     * */
+    public int getNomRangeBits(int c) {
+        return src.getNomRangeBits(c);
+    }
+
+    /**
+     * Returns the position of the fixed point in the specified
+     * component. The wavelet transform does not modify the fixed point.
+     *
+     * @param c The index of the component.
+     *
+     * @return The position of the fixed-point, which is the same as the
+     * number of fractional bits. For floating-point data 0 is returned.
+     * */
+    public int getFixedPoint(int c) {
+        return src.getFixedPoint(c);
+    }
+
+    /**
+     * Returns a block of image data containing the specifed rectangular area,
+     * in the specified component, as a reference to the internal buffer (see
+     * below). The rectangular area is specified by the coordinates and
+     * dimensions of the 'blk' object.
+     *
+     * <p>The area to return is specified by the 'ulx', 'uly', 'w' and 'h'
+     * members of the 'blk' argument. These members are not modified by this
+     * method.</p>
+     *
+     * <p>The data returned by this method is the data of the last
+     * reconstructed stripe, which is only valid until the next call to this
+     * method for the same component, and thus can not be modified by the
+     * caller. The 'offset' and 'scanw' of the returned data can be
+     * arbitrary. See the 'DataBlk' class.</p>
+     *
+     * <p>The returned data has its 'progressive' attribute unset
+     * (i.e. false).</p>
+     *
+     * @param blk Its coordinates and dimensions specify the area to return.
+     *
+     * @param c The index of the component from which to get the data.
+     *
+     * @return The requested DataBlk
+     *
+     * @see #getInternCompData
+     * */
+    public final DataBlk getInternCompData(DataBlk blk, int c) {
+        int tIdx = getTileIdx();
+        int dtype;
+        SubbandSyn sb;
+        DataBlk stripe;
+        int y0, y1, h;
+
+        sb = src.getSynSubbandTree(tIdx,c);
+        if(sb.getHorWFilter()==null) {
+            dtype = DataBlk.TYPE_INT;
+        } else {
+            dtype = sb.getHorWFilter().getDataType();
+        }
+
+        if(levels[c]==null) {
+            // Find the highest resolution level to reconstruct
+            while(sb.isNode && sb.resLvl>reslvl-maxImgRes+ndl[c]) {
+                sb = (SubbandSyn)sb.getLL();
+            }
+            levels[c] = new Level(sb,c,dtype);
+            // As in InvWTFull, the lines have the width of the tile-component
+            // at full resolution, and the lowest resolution levels are at
+            // its upper-left corner.
+            if(dtype==DataBlk.TYPE_INT) {
+                stripes[c] = new DataBlkInt(0,0,getTileCompWidth(tIdx,c),0);
+            } else {
+                stripes[c] = new DataBlkFloat(0,0,getTileCompWidth(tIdx,c),0);
+            }
+        }
+        stripe = stripes[c];
+        sb = levels[c].sb;
+        h = getTileCompHeight(tIdx,c);
+
+        if(blk.uly<0 || (blk.uly+blk.h-1)*stripe.w+blk.ulx+blk.w>stripe.w*h) {
+            throw new ArrayIndexOutOfBoundsException("Area out of "+
+                                                     "tile-component");
+        }
+
+        if(blk.uly<stripe.uly || blk.uly+blk.h>stripe.uly+stripe.h) {
+            // Reconstruct the stripe starting at the first requested line
+            y0 = blk.uly;
+            y1 = Math.min(h,Math.max(blk.uly+blk.h,y0+STRIPE_HEIGHT));
+            stripe.uly = y0;
+            stripe.h = y1-y0;
+            stripe.setData(ensureSize(stripe.getData(),dtype,
+                                      stripe.w*stripe.h));
+            levels[c].getLines(Math.min(y0,sb.h),Math.min(y1,sb.h),
+                               stripe.getData(),0,stripe.w);
+            // Outside of the reconstructed resolution level there is no
+            // data
+            if(sb.w<stripe.w || sb.h<y1) {
+                clear(stripe,sb.w,sb.h);
+            }
+            if(pw!=null && c==src.getNumComps()-1 && y1>=sb.h) {
+                pw.terminateProgressWatch();
+            }
+        }
+
+        if(blk.getDataType()!=dtype) {
+            if(dtype==DataBlk.TYPE_INT) {
+                blk = new DataBlkInt(blk.ulx,blk.uly,blk.w,blk.h);
+            } else {
+                blk = new DataBlkFloat(blk.ulx,blk.uly,blk.w,blk.h);
+            }
+        }
+        // Set the reference to the internal buffer
+        blk.setData(stripe.getData());
+        blk.offset = stripe.w*(blk.uly-stripe.uly)+blk.ulx;
+        blk.scanw = stripe.w;
+        blk.progressive = false;
+        return blk;
+    }
+
+    /**
+     * Returns a block of image data containing the specifed rectangular area,
+     * in the specified component, as a copy (see below). The rectangular area
+     * is specified by the coordinates and dimensions of the 'blk' object.
+     *
+     * <P>The area to return is specified by the 'ulx', 'uly', 'w' and 'h'
+     * members of the 'blk' argument. These members are not modified by this
+     * method.
+     *
+     * <P>The data returned by this method is always a copy of the internal
+     * data of this object, if any, and it can be modified "in place" without
+     * any problems after being returned. The 'offset' of the returned data is
+     * 0, and the 'scanw' is the same as the block's width. See the 'DataBlk'
+     * class.
+     *
+     * <P>If the data array in 'blk' is <tt>null</tt>, then a new one is
+     * created. If the data array is not <tt>null</tt> then it must be big
+     * enough to contain the requested area.
+     *
+     * <P>The returned data always has its 'progressive' attribute unset (i.e
+     * false)
+     *
+     * @param blk Its coordinates and dimensions specify the area to
+     * return. If it contains a non-null data array, then it must be large
+     * enough. If it contains a null data array a new one is created. The
+     * fields in this object are modified to return the data.
+     *
+     * @param c The index of the component from which to get the data.
+     *
+     * @return The requested DataBlk
+     *
+     * @see #getCompData
+     * */
+    public DataBlk getCompData(DataBlk blk, int c) {
+        Object dst_data;
+        int i;
+
+        // Ensure output buffer
+        dst_data = ensureSize(blk.getData(),blk.getDataType(),blk.w*blk.h);
+
+        // Use getInternCompData() to get the data, since getInternCompData()
+        // returns reference to internal buffer, we must copy it.
+        blk = getInternCompData(blk,c);
+
+        // Copy the data line by line
+        for (i=0; i<blk.h; i++) {
+            System.arraycopy(blk.getData(),blk.offset+i*blk.scanw,
+                             dst_data,i*blk.w,blk.w);
+        }
+        blk.setData(dst_data);
+        blk.offset = 0;
+        blk.scanw = blk.w;
+        return blk;
+    }
+
+    /**
+     * Returns the given array if it is at least of the given length, or a
+     * new array of the given data type and length.
+     *
+     * @param data The array to reuse, or null.
+     *
+     * @param dtype The data type of the array, DataBlk.TYPE_INT or
+     * DataBlk.TYPE_FLOAT.
+     *
+     * @param len The minimum length of the array.
+     *
+     * @return The given array or a new one.
+     * */
+    private static Object ensureSize(Object data, int dtype, int len) {
+        if(dtype==DataBlk.TYPE_INT) {
+            if(data==null || ((int[])data).length<len) {
+                data = new int[len];
+            }
+        } else {
+            if(data==null || ((float[])data).length<len) {
+                data = new float[len];
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Sets to zero the part of a stripe which is on the right of, or below,
+     * the given width and height.
+     *
+     * @param stripe The stripe.
+     *
+     * @param w The width of the data, from the left of the stripe.
+     *
+     * @param h The height of the data, from the top of the tile-component.
+     * */
+    private static void clear(DataBlk stripe, int w, int h) {
+        int i, from, to;
+
+        for(i=stripe.uly; i<stripe.uly+stripe.h; i++) {
+            from = (i-stripe.uly)*stripe.w+((i<h) ? w : 0);
+            to = (i-stripe.uly+1)*stripe.w;
+            if(stripe.getDataType()==DataBlk.TYPE_INT) {
+                Arrays.fill((int[])stripe.getData(),from,to,0);
+            } else {
+                Arrays.fill((float[])stripe.getData(),from,to,0f);
+            }
+        }
+    }
+
+    /**
+     * This class reconstructs lines of a resolution level of a
+     * tile-component, that is the lines of a node of the subband tree, or
+     * returns lines of a leaf subband.
+     * */
+    private class Level {
+
+        /** The subband, or node, whose lines are returned */
+        final SubbandSyn sb;
+
+        /** The lower resolution level, which returns the lines of the LL
+         * subband. It is null if 'sb' is a leaf. */
+        private Level ll;
+
+        /** The lines of 'sb' if it is a leaf, or of the HL, LH and HH
+         * subbands if it is a node */
+        private SubbandLines lines, hl, lh, hh;
+
+        /** The number of lines reconstructed above and below the requested
+         * ones, so that the boundary extension of the vertical filter does
+         * not affect them */
+        private int margin;
+
+        /** The horizontally filtered lines, the low-pass ones first */
+        private Object buf;
+
+        /** The vertically filtered lines */
+        private Object out;
+
+        /** The data type */
+        private final int dtype;
+
+        /**
+         * Creates the resolution levels down to the lowest one.
+         *
+         * @param sb The subband, or node, whose lines are returned.
+         *
+         * @param c The index of the component.
+         *
+         * @param dtype The data type, DataBlk.TYPE_INT or
+         * DataBlk.TYPE_FLOAT.
+         * */
+        Level(SubbandSyn sb, int c, int dtype) {
+            this.sb = sb;
+            this.dtype = dtype;
+            if(!sb.isNode) {
+                lines = new SubbandLines(sb,c,dtype);
+            } else {
+                ll = new Level((SubbandSyn)sb.getLL(),c,dtype);
+                hl = new SubbandLines((SubbandSyn)sb.getHL(),c,dtype);
+                lh = new SubbandLines((SubbandSyn)sb.getLH(),c,dtype);
+                hh = new SubbandLines((SubbandSyn)sb.getHH(),c,dtype);
+                margin = 2*Math.max(
+                    Math.max(sb.vFilter.getSynLowNegSupport(),
+                             sb.vFilter.getSynLowPosSupport()),
+                    Math.max(sb.vFilter.getSynHighNegSupport(),
+                             sb.vFilter.getSynHighPosSupport()));
+            }
+        }
+
+        /**
+         * Copies some lines of this resolution level to the given array.
+         *
+         * @param y0 The index of the first line, in the subband.
+         *
+         * @param y1 The index after the last line, in the subband.
+         *
+         * @param dst The destination array.
+         *
+         * @param dstOff The index in 'dst' of the first line.
+         *
+         * @param dstScan The scanwidth of 'dst'.
+         * */
+        void getLines(int y0, int y1, Object dst, int dstOff, int dstScan) {
+            final int w = sb.w;
+            final int wl;
+            int ya, yb, la, lb, ha, hb;
+            final int nl, nh;
+            int lowBase, highBase;
+            int i;
+
+            if(lines!=null) {
+                lines.copyLines(y0,y1,dst,dstOff,dstScan);
+                return;
+            }
+            if(w==0 || y0>=y1) {
+                return;
+            }
+
+            // Lines to reconstruct, with the margin. They start on an even
+            // line so that the same filtering method as InvWTFull is used,
+            // since its boundary extension may round float data differently.
+            ya = Math.max(0,y0-margin) & ~1;
+            yb = Math.min(sb.h,y1+margin);
+
+            // Low-pass and high-pass lines they are reconstructed from. Even
+            // canvas lines are low-pass ones, odd canvas lines high-pass ones.
+            lowBase = (sb.ulcy+1)/2;
+            highBase = sb.ulcy/2;
+            la = (sb.ulcy+ya+1)/2-lowBase;
+            lb = (sb.ulcy+yb+1)/2-lowBase;
+            ha = (sb.ulcy+ya)/2-highBase;
+            hb = (sb.ulcy+yb)/2-highBase;
+            nl = lb-la;
+            nh = hb-ha;
+
+            buf = ensureSize(buf,dtype,(nl+nh)*w);
+            out = ensureSize(out,dtype,(yb-ya)*w);
+
+            // Gather the subband lines
+            wl = sb.getLL().w;
+            ll.getLines(la,lb,buf,0,w);
+            hl.copyLines(la,lb,buf,wl,w);
+            lh.copyLines(ha,hb,buf,nl*w,w);
+            hh.copyLines(ha,hb,buf,nl*w+wl,w);
+
+            //Perform the horizontal reconstruction
+            WorkScheduler.forRange(executor,nThreads,nl+nh,MIN_RANGE_LEN,
+                                   new WorkScheduler.RangeTask() {
+                    public void run(int start, int end) {
+                        horizontalReconstruction(start,end);
+                    }
+                });
+
+            //Perform the vertical reconstruction
+            final boolean lpf = sb.ulcy%2==0;
+            WorkScheduler.forRange(executor,nThreads,w,MIN_RANGE_LEN,
+                                   new WorkScheduler.RangeTask() {
+                    public void run(int start, int end) {
+                        // The columns are adjacent signals, which are all
+                        // reconstructed at once
+                        if(lpf) { // start index is even => use LPF
+                            sb.vFilter.synthetize_lpf_cols(buf,start,nl,w,
+                                                          buf,nl*w+start,nh,w,
+                                                          out,start,w,
+                                                          end-start);
+                        } else { // start index is odd => use HPF
+                            sb.vFilter.synthetize_hpf_cols(buf,start,nl,w,
+                                                          buf,nl*w+start,nh,w,
+                                                          out,start,w,
+                                                          end-start);
+                        }
+                    }
+                });
+
+            // Copy the requested lines
+            for(i=y0; i<y1; i++) {
+                System.arraycopy(out,(i-ya)*w,dst,dstOff+(i-y0)*dstScan,w);
+            }
+        }
+
+        /**
+         * Performs the 1D inverse wavelet transform on some of the gathered
+         * lines.
+         *
+         * @param start The index of the first line to filter.
+         *
+         * @param end The index after the last line to filter.
+         * */
+        private void horizontalReconstruction(int start, int end) {
+            int w = sb.w;
+            Object line = ensureSize(null,dtype,w);
+            int i, offset;
+
+            offset = start*w;
+            if (sb.ulcx%2==0) { // start index is even => use LPF
+                for(i=start; i<end; i++, offset += w) {
+                    System.arraycopy(buf,offset,line,0,w);
+                    sb.hFilter.synthetize_lpf(line,0,(w+1)/2,1,
+                                              line,(w+1)/2,w/2,1,
+                                              buf,offset,1);
+                }
+            } else { // start index is odd => use HPF
+                for(i=start; i<end; i++, offset += w) {
+                    System.arraycopy(buf,offset,line,0,w);
+                    sb.hFilter.synthetize_hpf(line,0,w/2,1,
+                                              line,w/2,(w+1)/2,1,
+                                              buf,offset,1);
+                }
+            }
+        }
+    }
+
+    /**
+     * This class returns lines of a leaf subband. The code-blocks are
+     * requested from the source one row at a time, and the rows are kept
+     * until lines below them are requested.
+     * */
+    private class SubbandLines {
+
+        /** The subband */
+        private final SubbandSyn sb;
+
+        /** The index of the component */
+        private final int c;
+
+        /** The data type */
+        private final int dtype;
+
+        /** The number of lines between the upper boundary of the first
+         * code-block row and the one of the subband */
+        private final int off;
+
+        /** The decoded code-block rows, or null for the rows that were not
+         * decoded or were dropped */
+        private final Object rows[];
+
+        /** The index of the first code-block row that may be kept */
+        private int first;
+
+        /** The code-block returned by the source */
+        private DataBlk cblk;
+
+        /**
+         * Creates the lines of a leaf subband.
+         *
+         * @param sb The subband.
+         *
+         * @param c The index of the component.
+         *
+         * @param dtype The data type, DataBlk.TYPE_INT or
+         * DataBlk.TYPE_FLOAT.
+         * */
+        SubbandLines(SubbandSyn sb, int c, int dtype) {
+            int acb0y;
+            int cm;
+
+            this.sb = sb;
+            this.c = c;
+            this.dtype = dtype;
+
+            // Project code-block partition origin to subband (see ForwWTFull)
+            if(sb.sbandIdx==Subband.WT_ORIENT_LH ||
+               sb.sbandIdx==Subband.WT_ORIENT_HH) {
+                acb0y = 0;
+            } else {
+                acb0y = src.getCbULY();
+            }
+            cm = (sb.ulcy-acb0y+sb.nomCBlkH)/sb.nomCBlkH-1;
+            off = sb.ulcy-acb0y-cm*sb.nomCBlkH;
+            rows = new Object[(sb.numCb!=null) ? sb.numCb.y : 0];
+            if(dtype==DataBlk.TYPE_INT) {
+                cblk = new DataBlkInt();
+            } else {
+                cblk = new DataBlkFloat();
+            }
+        }
+
+        /**
+         * Copies some lines of the subband to the given array.
+         *
+         * @param y0 The index of the first line, in the subband.
+         *
+         * @param y1 The index after the last line, in the subband.
+         *
+         * @param dst The destination array.
+         *
+         * @param dstOff The index in 'dst' of the first line.
+         *
+         * @param dstScan The scanwidth of 'dst'.
+         * */
+        void copyLines(int y0, int y1, Object dst, int dstOff, int dstScan) {
+            int m, m0, m1, r0, r1, i;
+
+            if(sb.w==0 || sb.h==0 || y0>=y1) {
+                return;
+            }
+
+            m0 = (y0+off)/sb.nomCBlkH;
+            m1 = (y1-1+off)/sb.nomCBlkH;
+
+            // Drop the rows above the requested lines
+            for(m=first; m<m0; m++) {
+                rows[m] = null;
+            }
+            first = m0;
+
+            for(m=m0; m<=m1; m++) {
+                r0 = Math.max(0,m*sb.nomCBlkH-off);
+                r1 = Math.min(sb.h,(m+1)*sb.nomCBlkH-off);
+                if(rows[m]==null) {
+                    rows[m] = decodeRow(m,r0,r1);
+                }
+                for(i=Math.max(y0,r0); i<Math.min(y1,r1); i++) {
+                    System.arraycopy(rows[m],(i-r0)*sb.w,
+                                     dst,dstOff+(i-y0)*dstScan,sb.w);
+                }
+            }
+        }
+
+        /**
+         * Gets all the code-blocks of a row from the source.
+         *
+         * @param m The index of the code-block row.
+         *
+         * @param r0 The index of the first line of the row, in the subband.
+         *
+         * @param r1 The index after the last line of the row, in the
+         * subband.
+         *
+         * @return The lines of the row.
+         * */
+        private Object decodeRow(int m, int r0, int r1) {
+            Object data = ensureSize(null,dtype,(r1-r0)*sb.w);
+            int n, i;
+
+            for(n=0; n<sb.numCb.x; n++) {
+                cblk = src.getInternCodeBlock(c,m,n,sb,cblk);
+                if(pw!=null) {
+                    nDecCblk++;
+                    pw.updateProgressWatch(nDecCblk,null);
+                }
+                // Copy the data line by line
+                for(i=cblk.h-1; i>=0; i--) {
+                    System.arraycopy(cblk.getData(),
+                                     cblk.offset+i*cblk.scanw,
+                                     data,
+                                     (cblk.uly-sb.uly-r0+i)*sb.w+
+                                     cblk.ulx-sb.ulx,
+                                     cblk.w);
+                }
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Returns the implementation type of this wavelet transform, WT_IMPL_LINE
+     * (line-based transform). All components return the same.
+     *
+     * @param c The index of the component.
+     *
+     * @return WT_IMPL_LINE
+     *
+     * @see WaveletTransform#WT_IMPL_LINE
+     * */
+    public int getImplementationType(int c) {
+        return WaveletTransform.WT_IMPL_LINE;
+    }
+
+    /**
+     * Changes the current tile, given the new indexes. An
+     * IllegalArgumentException is thrown if the indexes do not correspond to
+     * a valid tile.
+     *
+     * @param x The horizontal index of the tile.
+     *
+     * @param y The vertical index of the new tile.
+     * */
+    public void setTile(int x,int y) {
+        // Change tile
+        super.setTile(x,y);
+
+        int nc = src.getNumComps();
+        int tIdx = src.getTileIdx();
+        for(int c=0; c<nc; c++) {
+            ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
+        }
+
+        // Reset the resolution levels and stripes
+        for (int i=levels.length-1; i>=0; i--) {
+            levels[i] = null;
+            stripes[i] = null;
+        }
+
+        cblkToDecode = 0;
+        SubbandSyn root,sb;
+        for(int c=0; c<nc; c++) {
+            root = src.getSynSubbandTree(tIdx,c);
+            for(int r=0; r<=reslvl-maxImgRes+root.resLvl; r++) {
+                if(r==0) {
+                    sb = (SubbandSyn)root.getSubbandByIdx(0,0);
+                    if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                } else {
+                    sb = (SubbandSyn)root.getSubbandByIdx(r,1);
+                    if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                    sb = (SubbandSyn)root.getSubbandByIdx(r,2);
+                    if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                    sb = (SubbandSyn)root.getSubbandByIdx(r,3);
+                    if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                }
+            } // Loop on resolution levels
+        } // Loop on components
+        nDecCblk = 0;
+
+        if(pw!=null) {
+            pw.initProgressWatch(0,cblkToDecode,"Decoding tile "+tIdx+"...");
+        }
+    }
+
+    /**
+     * Advances to the next tile, in standard scan-line order (by rows then
+     * columns). An 'NoNextElementException' is thrown if the current tile is
+     * the last one (i.e. there is no next tile).
+     * */
+    public void nextTile() {
+        // Change tile
+        super.nextTile();
+
+        int nc = src.getNumComps();
+        int tIdx = src.getTileIdx();
+        for(int c=0; c<nc; c++) {
+            ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
+        }
+
+        // Reset the resolution levels and stripes
+        for (int i=levels.length-1; i>=0; i--) {
+            levels[i] = null;
+            stripes[i] = null;
+        }
+    }
+}
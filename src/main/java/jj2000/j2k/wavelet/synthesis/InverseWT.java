@@ -47,6 +47,8 @@
  */
 package jj2000.j2k.wavelet.synthesis;
 
+import java.util.concurrent.ExecutorService;
+
 import jj2000.j2k.decoder.DecoderSpecs;
 import jj2000.j2k.image.BlkImgDataSrc;
 
@@ -89,6 +91,30 @@ public abstract class InverseWT extends InvWTAdapter
         super(src,decSpec);
     }
 
+    /**
+     * Restricts the reconstruction of the specified component, in the
+     * current tile, to the given area, so that the data which is not needed
+     * to reconstruct it may not be decoded. The area is reset to the whole
+     * tile-component when the tile changes.
+     *
+     * <P>This implementation does nothing, the whole tile-component is
+     * reconstructed.
+     *
+     * @param c The index of the component.
+     *
+     * @param ulx The horizontal coordinate of the upper-left corner of the
+     * area, in the tile-component.
+     *
+     * @param uly The vertical coordinate of the upper-left corner of the
+     * area, in the tile-component.
+     *
+     * @param w The width of the area.
+     *
+     * @param h The height of the area.
+     * */
+    public void setDecodedArea(int c,int ulx,int uly,int w,int h) {
+    }
+
     /**
      * Creates an InverseWT object that works on the data type of the source,
      * with the special additional parameters from the parameter
@@ -107,4 +133,52 @@ public abstract class InverseWT extends InvWTAdapter
         // full page wavelet transform
         return new InvWTFull(src,decSpec);
     }
+
+    /**
+     * Creates an InverseWT object that works on the data type of the source,
+     * filtering on the given executor.
+     *
+     * @param src The source of data for the inverse wavelet
+     * transform.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param executor The executor on which the filtering may be done in
+     * parallel, or null.
+     * */
+    public static InverseWT createInstance(CBlkWTDataSrcDec src,
+                                           DecoderSpecs decSpec,
+                                           ExecutorService executor) {
+
+        // full page wavelet transform
+        return new InvWTFull(src,decSpec,executor);
+    }
+
+    /**
+     * Creates an InverseWT object that works on the data type of the source,
+     * filtering on the given executor, with either the full-page or the
+     * line-based approach.
+     *
+     * @param src The source of data for the inverse wavelet
+     * transform.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param executor The executor on which the filtering may be done in
+     * parallel, or null.
+     *
+     * @param lineBased Whether to use the line-based transform, which
+     * reconstructs only the lines being requested (see InvWTLine).
+     * */
+    public static InverseWT createInstance(CBlkWTDataSrcDec src,
+                                           DecoderSpecs decSpec,
+                                           ExecutorService executor,
+                                           boolean lineBased) {
+        if (lineBased) {
+            // line-based wavelet transform
+            return new InvWTLine(src,decSpec,executor);
+        }
+        // full page wavelet transform
+        return new InvWTFull(src,decSpec,executor);
+    }
 }
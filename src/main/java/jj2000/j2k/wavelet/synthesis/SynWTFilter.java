@@ -246,6 +246,128 @@ public abstract class SynWTFilter implements WaveletFilter,
                         Object highSig, int highOff, int highLen, int highStep,
                         Object outSig, int outOff, int outStep);
 
+    /**
+     * Reconstructs several interleaved output signals by the synthesis
+     * filter, with the low pass first filtering convention. The signals are
+     * the ones that synthetize_lpf() would reconstruct with the offsets
+     * lowOff+k, highOff+k and outOff+k, for k from 0 to nSig-1, typically
+     * adjacent columns of a 2-D signal stored in line by line order. The
+     * output is the same as when calling synthetize_lpf() on each signal in
+     * turn.
+     *
+     * <P>This implementation just calls synthetize_lpf() on each
+     * signal. Subclasses should override it to apply each lifting step to
+     * all the signals at once, which gives loops over contiguous samples
+     * that are much faster for column filtering.
+     *
+     * @param lowSig This is the array that contains the low-pass
+     * input signals.
+     *
+     * @param lowOff This is the index in lowSig of the first sample of the
+     * first signal to filter.
+     *
+     * @param lowLen This is the number of samples in each low-pass
+     * input signal to filter.
+     *
+     * @param lowStep This is the step, or interleave factor, of the
+     * low-pass input signal samples in the lowSig array.
+     *
+     * @param highSig This is the array that contains the high-pass
+     * input signals.
+     *
+     * @param highOff This is the index in highSig of the first sample of
+     * the first signal to filter.
+     *
+     * @param highLen This is the number of samples in each high-pass
+     * input signal to filter.
+     *
+     * @param highStep This is the step, or interleave factor, of the
+     * high-pass input signal samples in the highSig array.
+     *
+     * @param outSig This is the array where the output signals are placed.
+     *
+     * @param outOff This is the index in outSig of the element where
+     * to put the first output sample of the first signal.
+     *
+     * @param outStep This is the step, or interleave factor, of the
+     * output samples in the outSig array.
+     *
+     * @param nSig The number of signals to reconstruct.
+     *
+     * @see #synthetize_lpf
+     * */
+    public
+        void synthetize_lpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_lpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
+    /**
+     * Reconstructs several interleaved output signals by the synthesis
+     * filter, with the high pass first filtering convention. The signals are
+     * the ones that synthetize_hpf() would reconstruct with the offsets
+     * lowOff+k, highOff+k and outOff+k, for k from 0 to nSig-1. The output is
+     * the same as when calling synthetize_hpf() on each signal in turn.
+     *
+     * <P>This implementation just calls synthetize_hpf() on each
+     * signal. Subclasses should override it as synthetize_lpf_cols().
+     *
+     * @param lowSig This is the array that contains the low-pass
+     * input signals.
+     *
+     * @param lowOff This is the index in lowSig of the first sample of the
+     * first signal to filter.
+     *
+     * @param lowLen This is the number of samples in each low-pass
+     * input signal to filter.
+     *
+     * @param lowStep This is the step, or interleave factor, of the
+     * low-pass input signal samples in the lowSig array.
+     *
+     * @param highSig This is the array that contains the high-pass
+     * input signals.
+     *
+     * @param highOff This is the index in highSig of the first sample of
+     * the first signal to filter.
+     *
+     * @param highLen This is the number of samples in each high-pass
+     * input signal to filter.
+     *
+     * @param highStep This is the step, or interleave factor, of the
+     * high-pass input signal samples in the highSig array.
+     *
+     * @param outSig This is the array where the output signals are placed.
+     *
+     * @param outOff This is the index in outSig of the element where
+     * to put the first output sample of the first signal.
+     *
+     * @param outStep This is the step, or interleave factor, of the
+     * output samples in the outSig array.
+     *
+     * @param nSig The number of signals to reconstruct.
+     *
+     * @see #synthetize_hpf
+     * */
+    public
+        void synthetize_hpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_hpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
 }
 
 
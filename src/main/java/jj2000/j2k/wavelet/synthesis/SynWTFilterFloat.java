@@ -275,6 +275,86 @@ public abstract class SynWTFilterFloat extends SynWTFilter {
                    (float[])outSig, outOff, outStep);
         }
 
+    /**
+     * A specific version of the synthetize_lpf_cols() method that works on
+     * float data. This implementation calls synthetize_lpf() on each
+     * signal. See the general description of the synthetize_lpf_cols()
+     * method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(float[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, float[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 float[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_lpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
+    /**
+     * The general version of the synthetize_lpf_cols() method, it just
+     * calls the specialized version. See the description of the
+     * synthetize_lpf_cols() method of the SynWTFilter class for more
+     * details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        synthetize_lpf_cols((float[])lowSig,lowOff,lowLen,lowStep,
+                            (float[])highSig,highOff,highLen,highStep,
+                            (float[])outSig,outOff,outStep,nSig);
+    }
+
+    /**
+     * A specific version of the synthetize_hpf_cols() method that works on
+     * float data. This implementation calls synthetize_hpf() on each
+     * signal. See the general description of the synthetize_hpf_cols()
+     * method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(float[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, float[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 float[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_hpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
+    /**
+     * The general version of the synthetize_hpf_cols() method, it just
+     * calls the specialized version. See the description of the
+     * synthetize_hpf_cols() method of the SynWTFilter class for more
+     * details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        synthetize_hpf_cols((float[])lowSig,lowOff,lowLen,lowStep,
+                            (float[])highSig,highOff,highLen,highStep,
+                            (float[])outSig,outOff,outStep,nSig);
+    }
+
     /**
      * Returns the type of data on which this filter works, as defined
      * in the DataBlk interface, which is always TYPE_FLOAT for this
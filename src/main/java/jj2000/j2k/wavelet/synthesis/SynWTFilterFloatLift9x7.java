@@ -409,6 +409,243 @@ public class SynWTFilterFloatLift9x7 extends SynWTFilterFloat {
             outSig[ik] -= 2*ALPHA*outSig[ik-outStep];
         }
     }
+
+    /**
+     * An implementation of the synthetize_lpf_cols() method that works on
+     * float data, for the inverse 9x7 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of synthetize_lpf(), each one
+     * being applied to all the signals before the next one, so that the
+     * innermost loops run over contiguous samples. The results are the same
+     * as the ones of synthetize_lpf(). See the general description of the
+     * synthetize_lpf_cols() method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(float[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, float[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 float[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        int i,k;
+        int outLen = lowLen + highLen; //Length of the output signal
+        int iStep = 2*outStep; //Upsampling in outSig
+        int ik; //Indexing outSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // Generate intermediate low frequency subband
+        lk = lowOff;
+        hk = highOff;
+        ik = outOff;
+        if(outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k]/KL - 2*DELTA*highSig[hk+k]/KH;
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k];
+            }
+        }
+        lk += lowStep;
+        hk += highStep;
+        ik += iStep;
+        for(i=2; i<outLen-1; i+=2, ik+=iStep, lk+=lowStep, hk+=highStep) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k]/KL -
+                    DELTA*(highSig[hk-highStep+k] + highSig[hk+k])/KH;
+            }
+        }
+        if(outLen%2 == 1 && outLen>2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k]/KL -
+                    2*DELTA*highSig[hk-highStep+k]/KH;
+            }
+        }
+
+        // Generate intermediate high frequency subband
+        hk = highOff;
+        ik = outOff + outStep;
+        for(i = 1; i<outLen-1; i+=2, ik+=iStep, hk+=highStep) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k]/KH -
+                    GAMMA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+        }
+        if(outLen % 2 == 0) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k]/KH - 2*GAMMA*outSig[ik-outStep+k];
+            }
+        }
+
+        // Generate even samples (inverse low-pass filter)
+        ik = outOff;
+        if(outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*BETA*outSig[ik+outStep+k];
+            }
+        }
+        ik += iStep;
+        for(i=2; i<outLen-1; i+=2, ik+=iStep) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -=
+                    BETA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+        }
+        if(outLen%2 == 1 && outLen>2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*BETA*outSig[ik-outStep+k];
+            }
+        }
+
+        // Generate odd samples (inverse high pass-filter)
+        ik = outOff + outStep;
+        for(i=1; i<outLen-1; i+=2, ik+=iStep) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -=
+                    ALPHA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+        }
+        if(outLen%2 == 0) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*ALPHA*outSig[ik-outStep+k];
+            }
+        }
+    }
+
+    /**
+     * An implementation of the synthetize_hpf_cols() method that works on
+     * float data, for the inverse 9x7 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of synthetize_hpf(), applied as
+     * in synthetize_lpf_cols(). The results are the same as the ones of
+     * synthetize_hpf(), including the "inverse normalization" of the input
+     * signals in place. See the general description of the
+     * synthetize_hpf_cols() method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(float[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, float[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 float[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        int i,k;
+        int outLen = lowLen + highLen; //Length of the output signal
+        int iStep = 2*outStep; //Upsampling in outSig
+        int ik; //Indexing outSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // "Inverse normalize" each sample
+        lk = lowOff;
+        hk = highOff;
+        if(outLen!=1) {
+            int outLen2 = outLen>>1;
+            for(i=0; i<outLen2; i++) {
+                for (k=0; k<nSig; k++) {
+                    lowSig[lk+k] /= KL;
+                    highSig[hk+k] /= KH;
+                }
+                lk += lowStep;
+                hk += highStep;
+            }
+            if(outLen%2==1) {
+                for (k=0; k<nSig; k++) {
+                    highSig[hk+k] /= KH;
+                }
+            }
+        } else {
+            // Normalize for Nyquist gain
+            for (k=0; k<nSig; k++) {
+                highSig[hk+k] /= 2;
+            }
+        }
+
+        // Generate intermediate low frequency subband
+        lk = lowOff;
+        hk = highOff;
+        ik = outOff + outStep;
+        for(i=1; i<outLen-1; i+=2 ) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] -
+                    DELTA*(highSig[hk+k] + highSig[hk+highStep+k]);
+            }
+            ik += iStep;
+            lk += lowStep;
+            hk += highStep;
+        }
+        if(outLen%2==0 && outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] - 2*DELTA*highSig[hk+k];
+            }
+        }
+
+        // Generate intermediate high frequency subband
+        hk = highOff;
+        ik = outOff;
+        if(outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] - 2*GAMMA*outSig[ik+outStep+k];
+            }
+        } else {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k];
+            }
+        }
+        ik += iStep;
+        hk += highStep;
+        for(i=2; i<outLen-1; i+=2 ) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] -
+                    GAMMA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+            ik += iStep;
+            hk += highStep;
+        }
+        if(outLen%2==1 && outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] - 2*GAMMA*outSig[ik-outStep+k];
+            }
+        }
+
+        // Generate even samples (inverse low-pass filter)
+        ik = outOff + outStep;
+        for(i=1; i<outLen-1; i+=2 ) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -=
+                    BETA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+            ik += iStep;
+        }
+        if(outLen%2==0 && outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*BETA*outSig[ik-outStep+k];
+            }
+        }
+
+        // Generate odd samples (inverse high pass-filter)
+        ik = outOff;
+        if(outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*ALPHA*outSig[ik+outStep+k];
+            }
+        }
+        ik += iStep;
+        for(i=2; i<outLen-1 ; i+=2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -=
+                    ALPHA*(outSig[ik-outStep+k] + outSig[ik+outStep+k]);
+            }
+            ik += iStep;
+        }
+        if((outLen%2==1) && (outLen>1)) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] -= 2*ALPHA*outSig[ik-outStep+k];
+            }
+        }
+    }
     
     /**
      * Returns the negative support of the low-pass analysis filter. That is
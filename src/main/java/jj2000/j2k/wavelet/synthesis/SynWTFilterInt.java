@@ -277,6 +277,86 @@ public abstract class SynWTFilterInt extends SynWTFilter {
                    (int[])outSig, outOff, outStep);
         }
 
+    /**
+     * A specific version of the synthetize_lpf_cols() method that works on
+     * int data. This implementation calls synthetize_lpf() on each
+     * signal. See the general description of the synthetize_lpf_cols()
+     * method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(int[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, int[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 int[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_lpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
+    /**
+     * The general version of the synthetize_lpf_cols() method, it just
+     * calls the specialized version. See the description of the
+     * synthetize_lpf_cols() method of the SynWTFilter class for more
+     * details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        synthetize_lpf_cols((int[])lowSig,lowOff,lowLen,lowStep,
+                            (int[])highSig,highOff,highLen,highStep,
+                            (int[])outSig,outOff,outStep,nSig);
+    }
+
+    /**
+     * A specific version of the synthetize_hpf_cols() method that works on
+     * int data. This implementation calls synthetize_hpf() on each
+     * signal. See the general description of the synthetize_hpf_cols()
+     * method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(int[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, int[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 int[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        for (int k=0; k<nSig; k++) {
+            synthetize_hpf(lowSig,lowOff+k,lowLen,lowStep,
+                           highSig,highOff+k,highLen,highStep,
+                           outSig,outOff+k,outStep);
+        }
+    }
+
+    /**
+     * The general version of the synthetize_hpf_cols() method, it just
+     * calls the specialized version. See the description of the
+     * synthetize_hpf_cols() method of the SynWTFilter class for more
+     * details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(Object lowSig, int lowOff, int lowLen,
+                                 int lowStep, Object highSig, int highOff,
+                                 int highLen, int highStep,
+                                 Object outSig, int outOff, int outStep,
+                                 int nSig) {
+        synthetize_hpf_cols((int[])lowSig,lowOff,lowLen,lowStep,
+                            (int[])highSig,highOff,highLen,highStep,
+                            (int[])outSig,outOff,outStep,nSig);
+    }
+
     /**
      * Returns the type of data on which this filter works, as defined
      * in the DataBlk interface, which is always TYPE_INT for this
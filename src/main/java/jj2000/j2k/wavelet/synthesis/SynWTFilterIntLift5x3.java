@@ -292,6 +292,154 @@ public class SynWTFilterIntLift5x3 extends SynWTFilterInt {
         }
     }
 
+    /**
+     * An implementation of the synthetize_lpf_cols() method that works on
+     * int data, for the inverse 5x3 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of synthetize_lpf(), each one
+     * being applied to all the signals before the next one, so that the
+     * innermost loops run over contiguous samples. The results are the same
+     * as the ones of synthetize_lpf(). See the general description of the
+     * synthetize_lpf_cols() method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_lpf_cols
+     * */
+    public
+        void synthetize_lpf_cols(int[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, int[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 int[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        int i,k;
+        int outLen = lowLen + highLen; //Length of the output signal
+        int iStep = 2*outStep; //Upsampling in outSig
+        int ik; //Indexing outSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // Generate even samples (inverse low-pass filter)
+        lk = lowOff;
+        hk = highOff;
+        ik = outOff;
+        if(outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] - ((highSig[hk+k]+1)>>1);
+            }
+        }
+        else {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k];
+            }
+        }
+        lk += lowStep;
+        hk += highStep;
+        ik += iStep;
+        for(i = 2; i < outLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] -
+                    ((highSig[hk-highStep+k] + highSig[hk+k] + 2)>>2);
+            }
+            lk += lowStep;
+            hk += highStep;
+            ik += iStep;
+        }
+        if((outLen % 2 == 1)&&(outLen>2)) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] -
+                    ((2*highSig[hk-highStep+k]+2)>>2);
+            }
+        }
+
+        // Generate odd samples (inverse high pass-filter)
+        hk = highOff;
+        ik = outOff + outStep;
+        for(i = 1; i < outLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] +
+                    ((outSig[ik-outStep+k] + outSig[ik+outStep+k]) >> 1);
+            }
+            hk += highStep;
+            ik += iStep;
+        }
+        if( outLen%2==0 && outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] + outSig[ik-outStep+k];
+            }
+        }
+    }
+
+    /**
+     * An implementation of the synthetize_hpf_cols() method that works on
+     * int data, for the inverse 5x3 wavelet transform using the lifting
+     * scheme. The lifting steps are the ones of synthetize_hpf(), applied as
+     * in synthetize_lpf_cols(). The results are the same as the ones of
+     * synthetize_hpf(). See the general description of the
+     * synthetize_hpf_cols() method in the SynWTFilter class for more details.
+     *
+     * @see SynWTFilter#synthetize_hpf_cols
+     * */
+    public
+        void synthetize_hpf_cols(int[] lowSig, int lowOff, int lowLen,
+                                 int lowStep, int[] highSig, int highOff,
+                                 int highLen, int highStep,
+                                 int[] outSig, int outOff, int outStep,
+                                 int nSig) {
+        int i,k;
+        int outLen = lowLen + highLen; //Length of the output signal
+        int iStep = 2*outStep; //Upsampling in outSig
+        int ik; //Indexing outSig
+        int lk; //Indexing lowSig
+        int hk; //Indexing highSig
+
+        // Generate even samples (inverse low-pass filter)
+        lk = lowOff;
+        hk = highOff;
+        ik = outOff + outStep;
+        for(i = 1; i<outLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] -
+                    ((highSig[hk+k] + highSig[hk+highStep+k] + 2)>>2);
+            }
+            lk += lowStep;
+            hk += highStep;
+            ik += iStep;
+        }
+        if ( (outLen>1) && (outLen%2==0) ) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = lowSig[lk+k] - ((2*highSig[hk+k]+2)>>2);
+            }
+        }
+
+        // Generate odd samples (inverse high pass-filter)
+        hk = highOff;
+        ik = outOff;
+        if ( outLen>1 ) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] + outSig[ik+outStep+k];
+            }
+        }
+        else {
+            // Normalize for Nyquist gain
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k]>>1;
+            }
+        }
+        hk += highStep;
+        ik += iStep;
+        for(i = 2; i < outLen-1; i += 2) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] +
+                    ((outSig[ik-outStep+k] + outSig[ik+outStep+k]) >> 1);
+            }
+            hk += highStep;
+            ik += iStep;
+        }
+        if(outLen%2==1 && outLen>1) {
+            for (k=0; k<nSig; k++) {
+                outSig[ik+k] = highSig[hk+k] + outSig[ik-outStep+k];
+            }
+        }
+    }
+
     /**
      * Returns the negative support of the low-pass analysis filter. That is
      * the number of taps of the filter in the negative direction.
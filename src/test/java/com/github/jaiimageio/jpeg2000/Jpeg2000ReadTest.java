@@ -0,0 +1,228 @@
+package com.github.jaiimageio.jpeg2000;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.impl.J2KImageReader;
+
+import jj2000.j2k.entropy.decoder.StdEntropyDecoder;
+
+/**
+ * Test JPEG2000 reading
+ */
+public class Jpeg2000ReadTest {
+
+    private static final int SIZE = 1024;
+
+    /** A lossy encoding of the test image */
+    private static File lossy;
+
+    /** A lossless encoding of the test image in 4 tiles */
+    private static File tiled;
+
+    /**
+     * The lossless encoding in 4 tiles with the tile-part and packet
+     * lengths in TLM and PLT marker segments
+     */
+    private static File marked;
+
+    @BeforeClass
+    public static void write() throws Exception {
+        BufferedImage image = TestImages.random(SIZE);
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setLossless(false);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionType("JPEG2000");
+        param.setEncodingRate(2.0f);
+        lossy = TestImages.write(image, param);
+        param = new J2KImageWriteParam();
+        param.setLossless(true);
+        param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setTiling(SIZE/2, SIZE/2, 0, 0);
+        tiled = TestImages.write(image, param);
+        param.setLengthMarkers(true);
+        marked = TestImages.write(image, param);
+    }
+
+    private static int[] read(File f, ExecutorService executor,
+                              boolean lineBased) throws Exception {
+        J2KImageReadParam param = new J2KImageReadParam();
+        param.setExecutorService(executor);
+        param.setLineBasedDecoding(lineBased);
+        return TestImages.pixels(TestImages.read(f, param));
+    }
+
+    private static int[] read(File f) throws Exception {
+        return read(f, null, false);
+    }
+
+    @Test
+    public void lineBasedDecoding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            int[] full = read(lossy);
+            assertArrayEquals(full, read(lossy, null, true));
+            assertArrayEquals(full, read(lossy, executor, true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelEntropyDecoding() throws Exception {
+        int[] lossySerial = read(lossy);
+        int[] tiledSerial = read(tiled);
+        System.setProperty(StdEntropyDecoder.THREADS_PROP_NAME, "3");
+        try {
+            assertArrayEquals(lossySerial, read(lossy));
+            assertArrayEquals(tiledSerial, read(tiled));
+        } finally {
+            System.clearProperty(StdEntropyDecoder.THREADS_PROP_NAME);
+        }
+    }
+
+    @Test
+    public void fileInput() throws Exception {
+        ImageReader reader = ImageIO.getImageReadersBySuffix("jp2").next();
+        reader.setInput(lossy);
+        assertSame(lossy, reader.getInput());
+        BufferedImage read = reader.read(0);
+        reader.dispose();
+        assertArrayEquals(read(lossy), TestImages.pixels(read));
+
+        // A reader without originating provider also accepts files
+        reader = new J2KImageReader(null);
+        reader.setInput(lossy);
+        assertSame(lossy, reader.getInput());
+        read = reader.read(0);
+        reader.dispose();
+        assertArrayEquals(read(lossy), TestImages.pixels(read));
+    }
+
+    @Test
+    public void readRasters() throws Exception {
+        J2KImageReadParam[] params = new J2KImageReadParam[3];
+        for (int i=0; i<params.length; i++) {
+            params[i] = new J2KImageReadParam();
+            params[i].setSourceRegion(
+                new Rectangle(SIZE/2-40+30*i, SIZE/2-50+20*i, 100, 60));
+        }
+        params[2].setSourceSubsampling(2, 3, 0, 0);
+        J2KImageReader reader =
+            (J2KImageReader) ImageIO.getImageReadersBySuffix("jp2").next();
+        ImageInputStream iis = ImageIO.createImageInputStream(tiled);
+        try {
+            reader.setInput(iis);
+            Raster[] rasters = reader.readRasters(0, params);
+            assertEquals(params.length, rasters.length);
+            for (int i=0; i<params.length; i++) {
+                Raster expected = reader.readRaster(0, params[i]);
+                int w = expected.getWidth();
+                int h = expected.getHeight();
+                assertEquals(expected.getBounds(), rasters[i].getBounds());
+                assertArrayEquals(expected.getPixels(0, 0, w, h, (int[]) null),
+                                  rasters[i].getPixels(0, 0, w, h,
+                                                       (int[]) null));
+            }
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    @Test
+    public void reducedResolutionThenFull() throws Exception {
+        ImageReader reader = ImageIO.getImageReadersBySuffix("jp2").next();
+        ImageInputStream iis = ImageIO.createImageInputStream(tiled);
+        try {
+            reader.setInput(iis);
+            J2KImageReadParam param = new J2KImageReadParam();
+            param.setResolution(1);
+            BufferedImage thumbnail = reader.read(0, param);
+            assertEquals(SIZE/16, thumbnail.getWidth());
+            BufferedImage read = reader.read(0);
+            assertArrayEquals(read(tiled), TestImages.pixels(read));
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    @Test
+    public void unsignedTilePartLength() throws Exception {
+        // Psot is an unsigned 32 bit value: a last tile-part length above
+        // 2^31 extends beyond the end of the file, which is then read as
+        // truncated instead of failing on a negative length
+        byte[] data = TestImages.bytes(tiled);
+        int sot = data.length-2;
+        while (data[sot] != (byte)0xff || data[sot+1] != (byte)0x90 ||
+               data[sot+2] != 0 || data[sot+3] != 10) {
+            sot--;
+        }
+        data[sot+6] |= 0x80;
+        File f = File.createTempFile("test-jpeg2000", ".jp2");
+        f.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        assertArrayEquals(read(tiled), read(f));
+    }
+
+    @Test
+    public void packetLengths() throws Exception {
+        // The packets which are not decoded are skipped with the lengths of
+        // the PLT marker segments. The regions are given at the full
+        // resolution and scaled to the decoded one.
+        Rectangle[] regions = {
+            null,
+            new Rectangle(SIZE/2-70, SIZE/2-30, 150, 90),
+            new Rectangle(10, 700, 300, 200),
+            new Rectangle(SIZE-100, 0, 100, SIZE)
+        };
+        for (int r=0; r<=5; r++) {
+            int d = 5-r;
+            for (int i=0; i<regions.length; i++) {
+                // The regions are too small at the lowest resolution
+                if (r == 0 && regions[i] != null)
+                    continue;
+                for (int s=1; s<=2; s++) {
+                    J2KImageReadParam param = new J2KImageReadParam();
+                    param.setResolution(r);
+                    if (regions[i] != null)
+                        param.setSourceRegion(
+                            new Rectangle(regions[i].x>>d, regions[i].y>>d,
+                                          regions[i].width>>d,
+                                          regions[i].height>>d));
+                    param.setSourceSubsampling(s, s, 0, 0);
+                    String msg = "resolution "+r+", region "+i+
+                        ", subsampling "+s;
+                    assertArrayEquals(msg,
+                                      TestImages.pixels(
+                                          TestImages.read(tiled, param)),
+                                      TestImages.pixels(
+                                          TestImages.read(marked, param)));
+                }
+            }
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.github.jaiimageio.jpeg2000;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -93,5 +101,206 @@ public class Jpeg2000WriteTest {
         BufferedImage read = ImageIO.read(f);
         assertEquals(SIZE, read.getWidth());
     }
-    
+
+    /** Returns the parameters of a lossy encoding at 2 bpp */
+    private static J2KImageWriteParam lossy() {
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setLossless(false);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionType("JPEG2000");
+        param.setEncodingRate(2.0f);
+        return param;
+    }
+
+    /** Returns the parameters of a lossless encoding in 4 tiles */
+    private static J2KImageWriteParam tiled() {
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setLossless(true);
+        param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setTiling(SIZE/2, SIZE/2, 0, 0);
+        return param;
+    }
+
+    private File write(J2KImageWriteParam param) throws Exception {
+        return TestImages.write(image, param);
+    }
+
+    private static int[] read(File f) throws Exception {
+        return TestImages.pixels(TestImages.read(f, null));
+    }
+
+    private static int[] read(File f, ExecutorService executor)
+        throws Exception {
+        J2KImageReadParam param = new J2KImageReadParam();
+        param.setExecutorService(executor);
+        return TestImages.pixels(TestImages.read(f, param));
+    }
+
+    @Test
+    public void sharedExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            File serial = write(lossy());
+            J2KImageWriteParam param = lossy();
+            param.setExecutorService(executor);
+            File parallel = write(param);
+            assertEquals(serial.length(), parallel.length());
+            assertArrayEquals(read(serial), read(parallel, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void writeOnExecutorThreads() throws Exception {
+        // Each write runs on a thread of the executor it encodes with, and
+        // keeps all its threads busy
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<File> write = new Callable<File>() {
+                public File call() throws Exception {
+                    J2KImageWriteParam param = lossy();
+                    param.setExecutorService(executor);
+                    return write(param);
+                }
+            };
+            Future<File> first = executor.submit(write);
+            Future<File> second = executor.submit(write);
+            File serial = write(lossy());
+            assertEquals(serial.length(),
+                         first.get(60, TimeUnit.SECONDS).length());
+            assertEquals(serial.length(),
+                         second.get(60, TimeUnit.SECONDS).length());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lineBasedEncoding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            byte[] full = TestImages.bytes(write(lossy()));
+            J2KImageWriteParam param = lossy();
+            param.setLineBasedEncoding(true);
+            assertArrayEquals(full, TestImages.bytes(write(param)));
+            param.setExecutorService(executor);
+            assertArrayEquals(full, TestImages.bytes(write(param)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean hasMarker(byte[] b, int marker) {
+        for (int i=0; i<b.length-1; i++) {
+            if ((b[i]&0xff) == marker>>8 && (b[i+1]&0xff) == (marker&0xff)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void tileParts() throws Exception {
+        int[] plain = read(write(tiled()));
+        J2KImageWriteParam param = tiled();
+        param.setPacketPerTilePart(2);
+        byte[] inMemory = TestImages.bytes(write(param));
+        assertTrue("Expected SOP markers", hasMarker(inMemory, 0xff91));
+        param.setCodeStreamSpillThreshold(1024);
+        File spilled = write(param);
+        assertArrayEquals(inMemory, TestImages.bytes(spilled));
+        assertArrayEquals(plain, read(spilled));
+    }
+
+    @Test
+    public void packedPacketHeaders() throws Exception {
+        int[] plain = read(write(tiled()));
+        J2KImageWriteParam param = tiled();
+        param.setPackPacketHeaderInMain(true);
+        File main = write(param);
+        assertTrue("Expected a PPM marker",
+                   hasMarker(TestImages.bytes(main), 0xff60));
+        assertArrayEquals(plain, read(main));
+        param = tiled();
+        param.setPackPacketHeaderInTile(true);
+        param.setCodeStreamSpillThreshold(0);
+        File tile = write(param);
+        assertTrue("Expected a PPT marker",
+                   hasMarker(TestImages.bytes(tile), 0xff61));
+        assertArrayEquals(plain, read(tile));
+    }
+
+    @Test
+    public void tileRateAllocation() throws Exception {
+        File plain = write(tiled());
+        J2KImageWriteParam param = tiled();
+        param.setLengthMarkers(true);
+        param.setTileRateAllocation(true);
+        File tiled = write(param);
+        byte[] b = TestImages.bytes(tiled);
+        // The main header ends at the first SOT marker
+        int end = 0;
+        while ((b[end]&0xff) != 0xff || (b[end+1]&0xff) != 0x90) {
+            end++;
+        }
+        assertFalse("Unexpected TLM marker",
+                    hasMarker(Arrays.copyOf(b, end), 0xff55));
+        assertTrue("Expected a PLT marker", hasMarker(b, 0xff58));
+        assertArrayEquals(read(plain), read(tiled));
+    }
+
+    /** Returns the parameters of a tiled encoding with quality layers */
+    private static J2KImageWriteParam qualities(double[] qualities,
+                                                boolean tileRateAllocation) {
+        J2KImageWriteParam param = tiled();
+        if (qualities[qualities.length-1] != Double.POSITIVE_INFINITY) {
+            param.setLossless(false);
+            param.setFilter(J2KImageWriteParam.FILTER_97);
+        }
+        param.setLayerQualities(qualities);
+        param.setTileRateAllocation(tileRateAllocation);
+        return param;
+    }
+
+    @Test
+    public void layerQualities() throws Exception {
+        File plain = write(tiled());
+        double[] lossless = {30, Double.POSITIVE_INFINITY};
+        assertArrayEquals(read(plain), read(write(qualities(lossless, false))));
+        assertArrayEquals(read(plain), read(write(qualities(lossless, true))));
+        File lossy = write(qualities(new double[] {30}, true));
+        assertTrue(lossy.length() < plain.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void losslessFiniteQualities() throws Exception {
+        J2KImageWriteParam param = tiled();
+        param.setLayerQualities(new double[] {30});
+        write(param);
+    }
+
+    @Test
+    public void earlyTermination() throws Exception {
+        int[] orig = read(write(tiled()));
+        double[] lossless = {30, Double.POSITIVE_INFINITY};
+        J2KImageWriteParam param = qualities(lossless, true);
+        param.setEarlyTerminationMargin(1);
+        assertArrayEquals(orig, read(write(param)));
+        // The coding passes which are not coded would have been discarded
+        double[] lossy = {30};
+        double full = squaredError(orig, read(write(qualities(lossy, true))));
+        param = qualities(lossy, true);
+        param.setEarlyTerminationMargin(1);
+        double stopped = squaredError(orig, read(write(param)));
+        assertTrue(stopped < 1.05*full);
+    }
+
+    private static double squaredError(int[] a, int[] b) {
+        double se = 0;
+        for (int i=0; i<a.length; i++) {
+            se += (a[i]-b[i])*(double)(a[i]-b[i]);
+        }
+        return se;
+    }
 }
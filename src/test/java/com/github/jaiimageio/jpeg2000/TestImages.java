@@ -0,0 +1,85 @@
+package com.github.jaiimageio.jpeg2000;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes and reads the images of the JPEG2000 tests
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /** Returns a square RGB image of random pixels */
+    static BufferedImage random(int size) {
+        BufferedImage image =
+            new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random r = new Random(1337);
+        for (int x=0; x<size; x++) {
+            for (int y=0; y<size; y++) {
+                image.setRGB(x, y, r.nextInt(0xffffff));
+            }
+        }
+        return image;
+    }
+
+    /** Writes an image to a temporary file with the given parameters */
+    static File write(BufferedImage image, J2KImageWriteParam param)
+        throws Exception {
+        File f = File.createTempFile("test-jpeg2000", ".jp2");
+        f.deleteOnExit();
+        ImageWriter writer = ImageIO.getImageWritersBySuffix("jp2").next();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(f);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        return f;
+    }
+
+    /** Reads an image with the given parameters, null for the defaults */
+    static BufferedImage read(File f, J2KImageReadParam param)
+        throws Exception {
+        ImageReader reader = ImageIO.getImageReadersBySuffix("jp2").next();
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        try {
+            reader.setInput(iis);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    /** Returns all the samples of an image */
+    static int[] pixels(BufferedImage image) {
+        return image.getRaster().getPixels(0, 0, image.getWidth(),
+                                           image.getHeight(), (int[]) null);
+    }
+
+    /** Returns the content of a file */
+    static byte[] bytes(File f) throws Exception {
+        byte[] b = new byte[(int) f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            in.readFully(b);
+        } finally {
+            in.close();
+        }
+        return b;
+    }
+}
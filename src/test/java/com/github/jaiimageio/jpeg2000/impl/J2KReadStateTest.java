@@ -0,0 +1,218 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.util.Hashtable;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.J2KImageReadParam;
+import com.github.jaiimageio.jpeg2000.J2KImageWriteParam;
+
+/**
+ * Test that the samples written directly into byte and unsigned short
+ * rasters, with the inverse component transformation done in the same pass
+ * for RGB images, are the ones written through the sample model of other
+ * rasters.
+ */
+public class J2KReadStateTest {
+
+    private static final int SIZE = 200;
+
+    /** Returns an RGB image of random pixels with the given bit depth */
+    private static BufferedImage image(int bits) {
+        int type = bits > 8 ? DataBuffer.TYPE_USHORT : DataBuffer.TYPE_BYTE;
+        BufferedImage image = create(SIZE, SIZE, bits, type);
+        WritableRaster raster = image.getRaster();
+        Random r = new Random(1337);
+        for (int y=0; y<SIZE; y++) {
+            for (int x=0; x<SIZE; x++) {
+                for (int b=0; b<3; b++) {
+                    // Smooth with some noise, so that lossy decoding
+                    // overflows the sample range at places
+                    int v = ((x+y+b*50) << bits >> 9) +
+                        r.nextInt(1 << (bits-2));
+                    raster.setSample(x, y, b, Math.min(v, (1 << bits)-1));
+                }
+            }
+        }
+        return image;
+    }
+
+    /** Creates an RGB image with the given bit depth and data type */
+    private static BufferedImage create(int w, int h, int bits, int type) {
+        ColorModel cm =
+            new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                                    new int[] {bits, bits, bits}, false,
+                                    false, Transparency.OPAQUE, type);
+        WritableRaster raster = cm.createCompatibleWritableRaster(w, h);
+        return new BufferedImage(cm, raster, false, new Hashtable());
+    }
+
+    private static File write(BufferedImage image, boolean lossless)
+        throws Exception {
+        File f = File.createTempFile("test-jpeg2000-direct", ".jp2");
+        f.deleteOnExit();
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setTiling(SIZE/2, SIZE/2, 0, 0);
+        if (!lossless) {
+            param.setLossless(false);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType("JPEG2000");
+            param.setEncodingRate(4.0f);
+        }
+        ImageWriter writer = ImageIO.getImageWritersBySuffix("jp2").next();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(f);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        return f;
+    }
+
+    private static BufferedImage read(File f, J2KImageReadParam param)
+        throws Exception {
+        J2KImageReader reader = new J2KImageReader(new J2KImageReaderSpi());
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        try {
+            reader.setInput(iis);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    private static int[] pixels(Raster raster) {
+        return raster.getPixels(raster.getMinX(), raster.getMinY(),
+                                raster.getWidth(), raster.getHeight(),
+                                (int[]) null);
+    }
+
+    /**
+     * Reads an image into the default byte or unsigned short raster, and
+     * into an int raster, which is written through its sample model, and
+     * checks that the samples are the same.
+     *
+     * @return The samples.
+     */
+    private static int[] check(File f, int bits, int[] bands,
+                               Rectangle region, int subsampling)
+        throws Exception {
+        J2KImageReadParam param = new J2KImageReadParam();
+        param.setSourceBands(bands);
+        if (region != null)
+            param.setSourceRegion(region);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage direct = read(f, param);
+        int type = bits > 8 ? DataBuffer.TYPE_USHORT : DataBuffer.TYPE_BYTE;
+        assertEquals(type, direct.getRaster().getDataBuffer().getDataType());
+
+        param.setDestination(create(direct.getWidth(), direct.getHeight(),
+                                    bits, DataBuffer.TYPE_INT));
+        BufferedImage bySamples = read(f, param);
+        int[] expected = pixels(bySamples.getRaster());
+        assertArrayEquals(expected, pixels(direct.getRaster()));
+        return expected;
+    }
+
+    /**
+     * Checks the full image, a region and a subsampled region read with
+     * the given source bands against samples written through the sample
+     * model.
+     */
+    private static void check(BufferedImage image, boolean lossless,
+                              int[] bands) throws Exception {
+        int bits = image.getColorModel().getComponentSize(0);
+        File f = write(image, lossless);
+        check(f, bits, bands, null, 1);
+        check(f, bits, bands, new Rectangle(37, 21, 101, 143), 1);
+        check(f, bits, bands, new Rectangle(13, 5, 170, 161), 3);
+    }
+
+    /**
+     * Checks an RGB image read with its bands in order, whose inverse
+     * component transformation is then done while writing the pixels, for
+     * the full image, a region, a subsampled region and the tiles of the
+     * rendered image.
+     */
+    private static void checkRGB(BufferedImage image, boolean lossless)
+        throws Exception {
+        int bits = image.getColorModel().getComponentSize(0);
+        File f = write(image, lossless);
+        int[] full = check(f, bits, null, null, 1);
+        if (lossless)
+            assertArrayEquals(pixels(image.getRaster()), full);
+        check(f, bits, null, new Rectangle(37, 21, 101, 143), 1);
+        check(f, bits, null, new Rectangle(13, 5, 170, 161), 3);
+
+        J2KImageReader reader = new J2KImageReader(new J2KImageReaderSpi());
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        try {
+            reader.setInput(iis);
+            RenderedImage rendered = reader.readAsRenderedImage(0, null);
+            assertArrayEquals(full, pixels(rendered.getData()));
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    @Test
+    public void reversibleByte() throws Exception {
+        checkRGB(image(8), true);
+    }
+
+    @Test
+    public void irreversibleByte() throws Exception {
+        checkRGB(image(8), false);
+    }
+
+    @Test
+    public void reversibleUShort() throws Exception {
+        checkRGB(image(16), true);
+    }
+
+    @Test
+    public void irreversibleUShort() throws Exception {
+        checkRGB(image(16), false);
+    }
+
+    @Test
+    public void byteSamples() throws Exception {
+        // The bands are not in the order of the components, so that each
+        // one is written separately
+        check(image(8), true, new int[] {2, 1, 0});
+        check(image(8), false, new int[] {2, 1, 0});
+    }
+
+    @Test
+    public void ushortSamples() throws Exception {
+        check(image(16), true, new int[] {2, 1, 0});
+        check(image(16), false, new int[] {2, 1, 0});
+    }
+}
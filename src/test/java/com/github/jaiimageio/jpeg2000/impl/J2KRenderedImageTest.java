@@ -0,0 +1,153 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.J2KImageReadParam;
+import com.github.jaiimageio.jpeg2000.J2KImageWriteParam;
+
+/**
+ * Test tiled decoding
+ */
+public class J2KRenderedImageTest {
+
+    private static final int SIZE = 512;
+    private static final int TILE = 128;
+
+    private File writeTiled() throws Exception {
+        BufferedImage image =
+            new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Random r = new Random(1337);
+        for (int x=0; x<SIZE; x++) {
+            for (int y=0; y<SIZE; y++) {
+                image.setRGB(x, y, r.nextInt(0xffffff));
+            }
+        }
+
+        File f = File.createTempFile("test-jpeg2000-tiled", ".jp2");
+        f.deleteOnExit();
+        ImageWriter writer = ImageIO.getImageWritersBySuffix("jp2").next();
+        J2KImageWriteParam writeParams =
+            (J2KImageWriteParam) writer.getDefaultWriteParam();
+        writeParams.setLossless(true);
+        writeParams.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParams.setTiling(TILE, TILE, 0, 0);
+        ImageOutputStream ios = ImageIO.createImageOutputStream(f);
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), writeParams);
+        writer.dispose();
+        ios.close();
+        return f;
+    }
+
+    private RenderedImage open(File f, int concurrency) throws Exception {
+        ImageReader reader = ImageIO.getImageReadersBySuffix("jp2").next();
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        reader.setInput(iis);
+        J2KImageReadParam param =
+            (J2KImageReadParam) reader.getDefaultReadParam();
+        param.setTileConcurrency(concurrency);
+        return reader.readAsRenderedImage(0, param);
+    }
+
+    private static int[] pixels(Raster tile) {
+        return tile.getPixels(tile.getMinX(), tile.getMinY(),
+                              tile.getWidth(), tile.getHeight(),
+                              (int[]) null);
+    }
+
+    @Test
+    public void concurrentTiles() throws Exception {
+        File f = writeTiled();
+        RenderedImage serial = open(f, 1);
+        final RenderedImage concurrent = open(f, 4);
+
+        final int nx = concurrent.getNumXTiles();
+        final int ny = concurrent.getNumYTiles();
+        final Raster[] tiles = new Raster[nx * ny];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[6];
+        for (int i = 0; i < threads.length; i++) {
+            final int start = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int k = 0; k < tiles.length; k++) {
+                            int t = (k + start * 3) % tiles.length;
+                            Raster tile = concurrent.getTile(t % nx, t / nx);
+                            if (start == 0)
+                                tiles[t] = tile;
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++)
+            threads[i].join();
+
+        assertNull(failure[0]);
+        for (int t = 0; t < tiles.length; t++) {
+            assertArrayEquals(pixels(serial.getTile(t % nx, t / nx)),
+                              pixels(tiles[t]));
+        }
+    }
+
+    private static ImageReader reader(File f) throws Exception {
+        ImageReader reader = ImageIO.getImageReadersBySuffix("jp2").next();
+        reader.setInput(ImageIO.createImageInputStream(f));
+        return reader;
+    }
+
+    @Test
+    public void repeatedRegionReads() throws Exception {
+        File f = writeTiled();
+        ImageReader shared = reader(f);
+        Random r = new Random(42);
+        for (int i = 0; i < 6; i++) {
+            ImageReadParam param = shared.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(r.nextInt(SIZE - 100),
+                                                r.nextInt(SIZE - 100),
+                                                100, 100));
+            ImageReader fresh = reader(f);
+            assertArrayEquals(pixels(fresh.readRaster(0, param)),
+                              pixels(shared.readRaster(0, param)));
+            fresh.dispose();
+        }
+    }
+
+    @Test
+    public void regionRead() throws Exception {
+        File f = writeTiled();
+        ImageReader reader = reader(f);
+        Raster full = reader.readRaster(0, null);
+        Rectangle region = new Rectangle(100, 77, 90, 121);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        Raster raster = reader.readRaster(0, param);
+        assertArrayEquals(full.getPixels(region.x, region.y,
+                                         region.width, region.height,
+                                         (int[]) null),
+                          pixels(raster));
+    }
+}
@@ -0,0 +1,246 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.J2KImageWriteParam;
+
+/**
+ * Test writing tiled images with precinct partitions and any progression
+ * order with the tile-part and packet lengths signalled in TLM and PLT
+ * marker segments.
+ */
+public class LengthMarkersTest {
+
+    private static final int WIDTH = 517;
+    private static final int HEIGHT = 389;
+
+    private static final String PRECINCTS = "64 64 32 32 16 16";
+
+    /** The number of tiles of 128x96 */
+    private static final int NUM_TILES = 25;
+
+    private static final int SOC = 0xff4f;
+    private static final int TLM = 0xff55;
+    private static final int PLT = 0xff58;
+    private static final int SOT = 0xff90;
+    private static final int SOD = 0xff93;
+    private static final int EOC = 0xffd9;
+
+    private static final String[] PROGRESSIONS = {
+        "layer", "res", "res-pos", "pos-comp", "comp-pos"
+    };
+
+    private static BufferedImage image() {
+        BufferedImage image =
+            new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Random r = new Random(1337);
+        for (int x=0; x<WIDTH; x++) {
+            for (int y=0; y<HEIGHT; y++) {
+                image.setRGB(x, y, (x+y)/4*0x010101 ^ r.nextInt(0x3f3f3f));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes an image in tiles of 128x96 with the given progression order,
+     * precinct partition (null for none) and length markers.
+     */
+    private static File write(BufferedImage image, boolean lossless,
+                              String progression, final String precincts,
+                              boolean lengthMarkers) throws Exception {
+        File f = File.createTempFile("test-jpeg2000-lengths", ".jp2");
+        f.deleteOnExit();
+        J2KImageWriter writer = new J2KImageWriter(new J2KImageWriterSpi()) {
+            J2KImageWriteParamJava createParamJava(IIOImage image,
+                                                   ImageWriteParam param) {
+                J2KImageWriteParamJava j2kwparam =
+                    super.createParamJava(image, param);
+                if (precincts != null)
+                    j2kwparam.setPrecinctPartition(precincts);
+                return j2kwparam;
+            }
+        };
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setTiling(128, 96, 0, 0);
+        param.setProgressionType(progression);
+        param.setLengthMarkers(lengthMarkers);
+        if (!lossless) {
+            param.setLossless(false);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType("JPEG2000");
+            param.setEncodingRate(2.0f);
+        }
+        ImageOutputStream ios = ImageIO.createImageOutputStream(f);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        return f;
+    }
+
+    private static int[] read(File f) throws Exception {
+        ImageReader reader = new J2KImageReader(new J2KImageReaderSpi());
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        try {
+            reader.setInput(iis);
+            BufferedImage image = reader.read(0);
+            return image.getRaster().getPixels(0, 0, image.getWidth(),
+                                               image.getHeight(),
+                                               (int[]) null);
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    private static byte[] bytes(File f) throws Exception {
+        byte[] b = new byte[(int) f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            in.readFully(b);
+        } finally {
+            in.close();
+        }
+        return b;
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return ((b[off]&0xff)<<8) | (b[off+1]&0xff);
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (readShort(b, off)<<16) | readShort(b, off+2);
+    }
+
+    /**
+     * Checks that the tile-part lengths of the TLM marker segments are the
+     * ones of the SOT marker segments, and that the packet lengths of the
+     * PLT marker segments of each tile-part add up to the length of its
+     * body.
+     */
+    private static void checkLengths(File f) throws Exception {
+        byte[] b = bytes(f);
+        int pos = 0;
+        while (readShort(b, pos) != SOC) {
+            pos++;
+        }
+        pos += 2;
+
+        // Main header
+        List<Integer> tiles = new ArrayList<Integer>();
+        List<Integer> lengths = new ArrayList<Integer>();
+        int marker;
+        while ((marker = readShort(b, pos)) != SOT) {
+            int end = pos+2+readShort(b, pos+2);
+            if (marker == TLM) {
+                int stlm = b[pos+5]&0xff;
+                int st = (stlm>>4)&3;
+                int sp = (stlm>>6)&1;
+                for (int i=pos+6; i<end; i+=st+(sp == 0 ? 2 : 4)) {
+                    tiles.add(st == 0 ? tiles.size() :
+                              st == 1 ? b[i]&0xff : readShort(b, i));
+                    lengths.add(sp == 0 ? readShort(b, i+st) :
+                                readInt(b, i+st));
+                }
+            }
+            pos = end;
+        }
+        assertEquals(NUM_TILES, lengths.size());
+
+        // Tile-parts
+        int n = 0;
+        while (readShort(b, pos) == SOT) {
+            int psot = readInt(b, pos+6);
+            assertEquals(tiles.get(n).intValue(), readShort(b, pos+4));
+            assertEquals(lengths.get(n).intValue(), psot);
+            int end = pos+psot;
+            int nPkts = 0;
+            long sum = 0;
+            pos += 12;
+            while ((marker = readShort(b, pos)) != SOD) {
+                int segEnd = pos+2+readShort(b, pos+2);
+                if (marker == PLT) {
+                    int len = 0;
+                    for (int i=pos+5; i<segEnd; i++) {
+                        len = (len<<7) | (b[i]&0x7f);
+                        if ((b[i]&0x80) == 0) {
+                            assertTrue(len > 0);
+                            sum += len;
+                            nPkts++;
+                            len = 0;
+                        }
+                    }
+                    assertEquals(0, len);
+                }
+                pos = segEnd;
+            }
+            assertTrue("Expected a PLT marker", nPkts > 0);
+            assertEquals(end-(pos+2), sum);
+            pos = end;
+            n++;
+        }
+        assertEquals(NUM_TILES, n);
+        assertEquals(EOC, readShort(b, pos));
+    }
+
+    /**
+     * Checks the length markers of the images written with the given
+     * precincts in every progression order, and that they are decoded with
+     * the same pixels, which are the ones of the source for a lossless
+     * encoding.
+     */
+    private static void check(boolean lossless, String precincts)
+        throws Exception {
+        BufferedImage image = image();
+        int[] expected = lossless ?
+            image.getRaster().getPixels(0, 0, WIDTH, HEIGHT, (int[]) null) :
+            null;
+        for (String progression : PROGRESSIONS) {
+            File f = write(image, lossless, progression, precincts, true);
+            checkLengths(f);
+            int[] pixels = read(f);
+            if (expected == null)
+                expected = pixels;
+            assertArrayEquals(progression, expected, pixels);
+        }
+    }
+
+    @Test
+    public void lossless() throws Exception {
+        check(true, null);
+    }
+
+    @Test
+    public void precinctsLossless() throws Exception {
+        check(true, PRECINCTS);
+    }
+
+    @Test
+    public void precinctsLossy() throws Exception {
+        check(false, PRECINCTS);
+    }
+}
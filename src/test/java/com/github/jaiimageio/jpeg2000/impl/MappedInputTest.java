@@ -0,0 +1,124 @@
+package com.github.jaiimageio.jpeg2000.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.J2KImageWriteParam;
+
+/**
+ * Test reading <code>File</code> inputs, which are decoded from views of
+ * the mapped file instead of copies of the code-block data
+ */
+public class MappedInputTest {
+
+    private static final int SIZE = 256;
+
+    /**
+     * Returns an RGB image which is smooth on its left half and random on
+     * its right half, so that the code-blocks of a layered encoding have
+     * their data either in one layer or spread over several.
+     */
+    private static BufferedImage image() {
+        BufferedImage image =
+            new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR);
+        Random r = new Random(1337);
+        for (int x=0; x<SIZE; x++) {
+            for (int y=0; y<SIZE; y++) {
+                image.setRGB(x, y, x < SIZE/2 ? (x+y)/2*0x010101 :
+                             r.nextInt(0xffffff));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes a lossless encoding of an image in two layers, with the given
+     * entropy coding options.
+     */
+    private static File write(BufferedImage image, final String bypass,
+                              final String terminateOnByte)
+        throws Exception {
+        File f = File.createTempFile("test-jpeg2000-mapped", ".jp2");
+        f.deleteOnExit();
+        J2KImageWriter writer = new J2KImageWriter(new J2KImageWriterSpi()) {
+            J2KImageWriteParamJava createParamJava(IIOImage image,
+                                                   ImageWriteParam param) {
+                J2KImageWriteParamJava j2kwparam =
+                    super.createParamJava(image, param);
+                j2kwparam.setBypass(bypass);
+                j2kwparam.setTerminateOnByte(terminateOnByte);
+                return j2kwparam;
+            }
+        };
+        J2KImageWriteParam param = new J2KImageWriteParam();
+        param.setLayerQualities(new double[] {30, Double.POSITIVE_INFINITY});
+        ImageOutputStream ios = ImageIO.createImageOutputStream(f);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        return f;
+    }
+
+    /** Reads an image from the given input */
+    private static int[] read(Object input) throws Exception {
+        ImageReader reader = new J2KImageReader(new J2KImageReaderSpi());
+        try {
+            reader.setInput(input);
+            BufferedImage image = reader.read(0);
+            return image.getRaster().getPixels(0, 0, image.getWidth(),
+                                               image.getHeight(),
+                                               (int[]) null);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static void checkFileInput(String bypass, String terminateOnByte)
+        throws Exception {
+        BufferedImage image = image();
+        int[] expected = image.getRaster().getPixels(0, 0, SIZE, SIZE,
+                                                     (int[]) null);
+        File f = write(image, bypass, terminateOnByte);
+        ImageInputStream iis = ImageIO.createImageInputStream(f);
+        try {
+            assertArrayEquals(expected, read(iis));
+        } finally {
+            iis.close();
+        }
+        assertArrayEquals(expected, read(f));
+    }
+
+    @Test
+    public void fileInput() throws Exception {
+        checkFileInput("false", "false");
+    }
+
+    @Test
+    public void fileInputBypass() throws Exception {
+        // Raw and MQ terminated segments
+        checkFileInput("true", "false");
+    }
+
+    @Test
+    public void fileInputTerminated() throws Exception {
+        // A terminated segment per coding pass
+        checkFileInput("false", "true");
+        checkFileInput("true", "true");
+    }
+}
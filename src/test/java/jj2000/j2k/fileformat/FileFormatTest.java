@@ -0,0 +1,135 @@
+package jj2000.j2k.fileformat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.Test;
+
+import com.github.jaiimageio.jpeg2000.impl.J2KMetadata;
+
+import jj2000.j2k.fileformat.reader.FileFormatReader;
+import jj2000.j2k.fileformat.writer.FileFormatWriter;
+import jj2000.j2k.util.ISRandomAccessIO;
+
+/**
+ * Test the boxes of the JP2 file format, in particular the lengths given in
+ * the XLBox field.
+ */
+public class FileFormatTest implements FileFormatBoxes {
+
+    /** A codestream box content, which is not decoded */
+    private static final byte[] CODESTREAM = {
+        (byte)0xff, (byte)0x4f, 1, 2, 3, 4, 5, 6, (byte)0xff, (byte)0xd9
+    };
+
+    /**
+     * Writes the signature, file type and (empty) JP2 header boxes.
+     */
+    private static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(0x0000000c);
+        out.writeInt(JP2_SIGNATURE_BOX);
+        out.writeInt(0x0d0a870a);
+        out.writeInt(20);
+        out.writeInt(FILE_TYPE_BOX);
+        out.writeInt(FT_BR);
+        out.writeInt(0);
+        out.writeInt(FT_BR);
+        out.writeInt(8);
+        out.writeInt(JP2_HEADER_BOX);
+    }
+
+    private static final int HEADER_LENGTH = 40;
+
+    private static FileFormatReader read(byte[] data) throws IOException {
+        FileFormatReader ff =
+            new FileFormatReader(new ISRandomAccessIO(
+                                     new ByteArrayInputStream(data)), null);
+        ff.readFileFormat();
+        return ff;
+    }
+
+    @Test
+    public void readExtendedLength() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out);
+        // A codestream box with its length in XLBox, followed by one with
+        // its length in LBox
+        out.writeInt(1);
+        out.writeInt(CONTIGUOUS_CODESTREAM_BOX);
+        out.writeLong(16+CODESTREAM.length);
+        out.write(CODESTREAM);
+        out.writeInt(8+CODESTREAM.length);
+        out.writeInt(CONTIGUOUS_CODESTREAM_BOX);
+        out.write(CODESTREAM);
+        out.close();
+
+        FileFormatReader ff = read(bytes.toByteArray());
+        long first = HEADER_LENGTH+16;
+        long second = first+CODESTREAM.length+8;
+        assertArrayEquals(new long[] {first, second}, ff.getCodeStreamPos());
+        assertEquals(first, ff.getFirstCodeStreamPos());
+        assertEquals(CODESTREAM.length+8, ff.getFirstCodeStreamLength());
+    }
+
+    /**
+     * Writes a file with a codestream box completed by
+     * <code>FileFormatWriter.completeFileFormat</code>, for an image of the
+     * given size, and checks that it is read back.
+     *
+     * @return The file
+     */
+    private static byte[] complete(int width, int height, boolean xlbox)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageOutputStream stream = new MemoryCacheImageOutputStream(bytes);
+        writeHeader(stream);
+        FileFormatWriter ffw =
+            new FileFormatWriter(stream, height, width, 1, new int[] {8},
+                                 null, null, new J2KMetadata());
+        ffw.writeFileFormatHeader();
+        stream.write(CODESTREAM);
+        int extra = ffw.completeFileFormat(CODESTREAM.length);
+        assertEquals(HEADER_LENGTH+CODESTREAM.length+extra,
+                     stream.getStreamPosition());
+        stream.close();
+
+        byte[] data = bytes.toByteArray();
+        FileFormatReader ff = read(data);
+        int boxHeader = xlbox ? 16 : 8;
+        assertEquals(boxHeader, extra);
+        assertEquals(HEADER_LENGTH+boxHeader, ff.getFirstCodeStreamPos());
+        assertEquals(CODESTREAM.length+8, ff.getFirstCodeStreamLength());
+        return data;
+    }
+
+    @Test
+    public void completeFileFormat() throws Exception {
+        byte[] data = complete(64, 64, false);
+        assertEquals(8+CODESTREAM.length, readInt(data, HEADER_LENGTH));
+    }
+
+    @Test
+    public void completeFileFormatExtendedLength() throws Exception {
+        // The uncompressed image does not fit in 2^31 bytes: the length is
+        // written in XLBox
+        byte[] data = complete(1<<16, 1<<16, true);
+        assertEquals(1, readInt(data, HEADER_LENGTH));
+        assertEquals(0, readInt(data, HEADER_LENGTH+8));
+        assertEquals(16+CODESTREAM.length, readInt(data, HEADER_LENGTH+12));
+    }
+
+    private static int readInt(byte[] data, int off) {
+        return ((data[off]&0xff)<<24) | ((data[off+1]&0xff)<<16) |
+            ((data[off+2]&0xff)<<8) | (data[off+3]&0xff);
+    }
+}
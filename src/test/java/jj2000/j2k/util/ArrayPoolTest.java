@@ -0,0 +1,92 @@
+package jj2000.j2k.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the size classes and the counters of the array pool
+ */
+public class ArrayPoolTest {
+
+    @Test
+    public void classes() {
+        assertEquals(0, ArrayPool.classIdx(1));
+        assertEquals(64, ArrayPool.classLen(0));
+        // Four classes between two consecutive powers of 2
+        assertEquals(80, ArrayPool.classLen(1));
+        assertEquals(96, ArrayPool.classLen(2));
+        assertEquals(112, ArrayPool.classLen(3));
+        assertEquals(128, ArrayPool.classLen(4));
+        int prev = 0;
+        for (int idx=0; ArrayPool.classLen(idx) > 0; idx++) {
+            int len = ArrayPool.classLen(idx);
+            assertTrue(len > prev);
+            assertEquals(idx, ArrayPool.classIdx(len));
+            assertEquals(idx+1, ArrayPool.classIdx(len+1));
+            prev = len;
+        }
+        // The class of a length is the smallest one holding it, which is
+        // at most 25% larger
+        for (int len=1; len<100000; len++) {
+            int idx = ArrayPool.classIdx(len);
+            assertTrue(ArrayPool.classLen(idx) >= len);
+            assertTrue(idx == 0 || ArrayPool.classLen(idx-1) < len);
+            assertTrue(idx == 0 || ArrayPool.classLen(idx) <= len*5L/4);
+        }
+        int idx = ArrayPool.classIdx(Integer.MAX_VALUE);
+        assertEquals(-1, ArrayPool.classLen(idx));
+        assertTrue(ArrayPool.classLen(idx-1) > 0);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertEquals(0, ArrayPool.getMaxBytes());
+        int[] a = ArrayPool.getInt(100);
+        assertEquals(100, a.length);
+        int[] b = ArrayPool.getInt(112);
+        ArrayPool.release(b);
+        assertNotSame(b, ArrayPool.getInt(112));
+    }
+
+    @Test
+    public void counters() {
+        long max = ArrayPool.getMaxBytes();
+        ArrayPool.setMaxBytes(1<<20);
+        try {
+            ArrayPool.resetCounters();
+            int[] a = ArrayPool.getInt(100);
+            assertEquals(112, a.length);
+            ArrayPool.release(a);
+            assertSame(a, ArrayPool.getInt(100));
+            float[] f = ArrayPool.getFloat(112);
+            ArrayPool.release(f);
+            assertSame(f, ArrayPool.getFloat(97));
+            // Arrays which are not of a class length are not kept
+            ArrayPool.release(new int[100]);
+            assertEquals(112, ArrayPool.getInt(100).length);
+            assertEquals(5, ArrayPool.getRequestCount());
+            assertEquals(2, ArrayPool.getHitCount());
+            assertEquals(0.4, ArrayPool.getHitRate(), 1e-9);
+
+            // At most the given number of bytes is kept by a thread
+            ArrayPool.setMaxBytes(4*112);
+            int[] b = ArrayPool.getInt(112);
+            int[] c = ArrayPool.getInt(112);
+            ArrayPool.release(b);
+            ArrayPool.release(c);
+            assertSame(b, ArrayPool.getInt(112));
+            assertNotSame(c, ArrayPool.getInt(112));
+
+            ArrayPool.resetCounters();
+            assertEquals(0, ArrayPool.getRequestCount());
+            assertEquals(0, ArrayPool.getHitCount());
+            assertEquals(0.0, ArrayPool.getHitRate(), 0);
+        } finally {
+            ArrayPool.setMaxBytes(max);
+        }
+    }
+}
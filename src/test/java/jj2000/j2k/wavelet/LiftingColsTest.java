@@ -0,0 +1,223 @@
+package jj2000.j2k.wavelet;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import jj2000.j2k.wavelet.analysis.AnWTFilterFloatLift9x7;
+import jj2000.j2k.wavelet.analysis.AnWTFilterIntLift5x3;
+import jj2000.j2k.wavelet.synthesis.SynWTFilterFloatLift9x7;
+import jj2000.j2k.wavelet.synthesis.SynWTFilterIntLift5x3;
+
+/**
+ * Test that the lifting filters applied to several interleaved columns at
+ * once give the same output as the filters applied to each column in turn.
+ */
+public class LiftingColsTest {
+
+    /** The signal lengths, odd and even */
+    private static final int[] LENGTHS = {1, 2, 3, 4, 5, 7, 8, 17, 32, 33};
+
+    /** The numbers of interleaved signals */
+    private static final int[] SIGNALS = {1, 2, 3, 5};
+
+    /**
+     * The padding between the last signal of a line and the first one of
+     * the next, so that the steps are larger than the number of signals.
+     */
+    private static final int[] PADS = {0, 1, 4};
+
+    /** The offset of the first sample in each array */
+    private static final int OFF = 3;
+
+    private final Random random = new Random(1337);
+
+    private int[] ints(int len) {
+        int[] a = new int[len];
+        for (int i=0; i<len; i++)
+            a[i] = random.nextInt(1<<12)-(1<<11);
+        return a;
+    }
+
+    private float[] floats(int len) {
+        float[] a = new float[len];
+        for (int i=0; i<len; i++)
+            a[i] = random.nextFloat()*4096-2048;
+        return a;
+    }
+
+    /** Returns the length of an array holding len samples with step */
+    private static int size(int len, int step) {
+        return OFF+len*step;
+    }
+
+    @Test
+    public void analyze5x3() {
+        AnWTFilterIntLift5x3 f = new AnWTFilterIntLift5x3();
+        for (int len : LENGTHS) {
+            for (int nSig : SIGNALS) {
+                for (int pad : PADS) {
+                    int step = nSig+pad;
+                    for (int lp=0; lp<2; lp++) {
+                        int lowLen = lp == 0 ? (len+1)/2 : len/2;
+                        int highLen = len-lowLen;
+                        int[] in = ints(size(len, step));
+                        int[] low = ints(size(lowLen, step));
+                        int[] high = ints(size(highLen, step));
+                        int[] in2 = in.clone();
+                        int[] low2 = low.clone();
+                        int[] high2 = high.clone();
+                        if (lp == 0) {
+                            f.analyze_lpf_cols(in, OFF, len, step,
+                                               low, OFF, step,
+                                               high, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.analyze_lpf(in2, OFF+k, len, step,
+                                              low2, OFF+k, step,
+                                              high2, OFF+k, step);
+                        } else {
+                            f.analyze_hpf_cols(in, OFF, len, step,
+                                               low, OFF, step,
+                                               high, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.analyze_hpf(in2, OFF+k, len, step,
+                                              low2, OFF+k, step,
+                                              high2, OFF+k, step);
+                        }
+                        assertArrayEquals(in2, in);
+                        assertArrayEquals(low2, low);
+                        assertArrayEquals(high2, high);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void analyze9x7() {
+        AnWTFilterFloatLift9x7 f = new AnWTFilterFloatLift9x7();
+        for (int len : LENGTHS) {
+            for (int nSig : SIGNALS) {
+                for (int pad : PADS) {
+                    int step = nSig+pad;
+                    for (int lp=0; lp<2; lp++) {
+                        int lowLen = lp == 0 ? (len+1)/2 : len/2;
+                        int highLen = len-lowLen;
+                        float[] in = floats(size(len, step));
+                        float[] low = floats(size(lowLen, step));
+                        float[] high = floats(size(highLen, step));
+                        float[] in2 = in.clone();
+                        float[] low2 = low.clone();
+                        float[] high2 = high.clone();
+                        if (lp == 0) {
+                            f.analyze_lpf_cols(in, OFF, len, step,
+                                               low, OFF, step,
+                                               high, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.analyze_lpf(in2, OFF+k, len, step,
+                                              low2, OFF+k, step,
+                                              high2, OFF+k, step);
+                        } else {
+                            f.analyze_hpf_cols(in, OFF, len, step,
+                                               low, OFF, step,
+                                               high, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.analyze_hpf(in2, OFF+k, len, step,
+                                              low2, OFF+k, step,
+                                              high2, OFF+k, step);
+                        }
+                        assertArrayEquals(in2, in, 1e-3f);
+                        assertArrayEquals(low2, low, 1e-3f);
+                        assertArrayEquals(high2, high, 1e-3f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void synthetize5x3() {
+        SynWTFilterIntLift5x3 f = new SynWTFilterIntLift5x3();
+        for (int len : LENGTHS) {
+            for (int nSig : SIGNALS) {
+                for (int pad : PADS) {
+                    int step = nSig+pad;
+                    for (int lp=0; lp<2; lp++) {
+                        int lowLen = lp == 0 ? (len+1)/2 : len/2;
+                        int highLen = len-lowLen;
+                        int[] low = ints(size(lowLen, step));
+                        int[] high = ints(size(highLen, step));
+                        int[] out = ints(size(len, step));
+                        int[] low2 = low.clone();
+                        int[] high2 = high.clone();
+                        int[] out2 = out.clone();
+                        if (lp == 0) {
+                            f.synthetize_lpf_cols(low, OFF, lowLen, step,
+                                                  high, OFF, highLen, step,
+                                                  out, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.synthetize_lpf(low2, OFF+k, lowLen, step,
+                                                 high2, OFF+k, highLen, step,
+                                                 out2, OFF+k, step);
+                        } else {
+                            f.synthetize_hpf_cols(low, OFF, lowLen, step,
+                                                  high, OFF, highLen, step,
+                                                  out, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.synthetize_hpf(low2, OFF+k, lowLen, step,
+                                                 high2, OFF+k, highLen, step,
+                                                 out2, OFF+k, step);
+                        }
+                        assertArrayEquals(low2, low);
+                        assertArrayEquals(high2, high);
+                        assertArrayEquals(out2, out);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void synthetize9x7() {
+        SynWTFilterFloatLift9x7 f = new SynWTFilterFloatLift9x7();
+        for (int len : LENGTHS) {
+            for (int nSig : SIGNALS) {
+                for (int pad : PADS) {
+                    int step = nSig+pad;
+                    for (int lp=0; lp<2; lp++) {
+                        int lowLen = lp == 0 ? (len+1)/2 : len/2;
+                        int highLen = len-lowLen;
+                        float[] low = floats(size(lowLen, step));
+                        float[] high = floats(size(highLen, step));
+                        float[] out = floats(size(len, step));
+                        float[] low2 = low.clone();
+                        float[] high2 = high.clone();
+                        float[] out2 = out.clone();
+                        if (lp == 0) {
+                            f.synthetize_lpf_cols(low, OFF, lowLen, step,
+                                                  high, OFF, highLen, step,
+                                                  out, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.synthetize_lpf(low2, OFF+k, lowLen, step,
+                                                 high2, OFF+k, highLen, step,
+                                                 out2, OFF+k, step);
+                        } else {
+                            f.synthetize_hpf_cols(low, OFF, lowLen, step,
+                                                  high, OFF, highLen, step,
+                                                  out, OFF, step, nSig);
+                            for (int k=0; k<nSig; k++)
+                                f.synthetize_hpf(low2, OFF+k, lowLen, step,
+                                                 high2, OFF+k, highLen, step,
+                                                 out2, OFF+k, step);
+                        }
+                        assertArrayEquals(low2, low, 1e-3f);
+                        assertArrayEquals(high2, high, 1e-3f);
+                        assertArrayEquals(out2, out, 1e-3f);
+                    }
+                }
+            }
+        }
+    }
+}